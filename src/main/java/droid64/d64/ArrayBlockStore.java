@@ -0,0 +1,80 @@
+package droid64.d64;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Image data kept in a byte[] on the heap.
+ */
+public class ArrayBlockStore implements BlockStore, Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private final byte[] data;
+
+	public ArrayBlockStore(byte[] data) {
+		this.data = data;
+	}
+
+	/**
+	 * @return the backing array
+	 */
+	public byte[] array() {
+		return data;
+	}
+
+	@Override
+	public int size() {
+		return data.length;
+	}
+
+	@Override
+	public int get(int position) {
+		return data[position] & 0xff;
+	}
+
+	@Override
+	public void set(int position, int value) {
+		data[position] = (byte) value;
+	}
+
+	@Override
+	public void get(int position, byte[] dest, int destPos, int length) {
+		System.arraycopy(data, position, dest, destPos, length);
+	}
+
+	@Override
+	public void put(int position, byte[] src, int srcPos, int length) {
+		System.arraycopy(src, srcPos, data, position, length);
+	}
+
+	@Override
+	public void put(int position, ByteBuffer src) {
+		src.get(data, position, src.remaining());
+	}
+
+	@Override
+	public void fill(int from, int to, byte value) {
+		Arrays.fill(data, from, to, value);
+	}
+
+	@Override
+	public ByteBuffer slice(int position, int length) {
+		return ByteBuffer.wrap(data, position, length).slice().asReadOnlyBuffer();
+	}
+
+	@Override
+	public boolean isMapped() {
+		return false;
+	}
+
+	@Override
+	public byte[] toByteArray() {
+		return Arrays.copyOf(data, data.length);
+	}
+
+	@Override
+	public String toString() {
+		return "ArrayBlockStore[size=" + data.length + ']';
+	}
+}
@@ -0,0 +1,115 @@
+package droid64.d64;
+
+/**
+ * Free blocks of a disk image, as found in the BAM.<br>
+ * One bit per block, indexed by linear block number (track * max sectors + sector), and a free counter per track.
+ * Finding a free block on a track is a scan of a few longs instead of reading BAM bytes one sector at a time.
+ */
+class BamBitmap {
+	private final int maxSectors;
+	private final long[] bits;
+	/** Number of free blocks on each track */
+	private final int[] freeCount;
+	/** Number of sectors held in the bitmap for each track */
+	private final int[] sectors;
+
+	/**
+	 * @param trackCount highest track number
+	 * @param maxSectors max number of sectors on any track
+	 */
+	BamBitmap(int trackCount, int maxSectors) {
+		this.maxSectors = maxSectors;
+		this.bits = new long[((trackCount + 1) * maxSectors + 63) >> 6];
+		this.freeCount = new int[trackCount + 1];
+		this.sectors = new int[trackCount + 1];
+	}
+
+	/**
+	 * Set number of sectors of a track held in the bitmap.
+	 * @param track track
+	 * @param count number of sectors
+	 */
+	void setSectorCount(int track, int count) {
+		sectors[track] = Math.min(count, maxSectors);
+	}
+
+	/**
+	 * @param track track
+	 * @param sector sector
+	 * @return true if the block is held in the bitmap
+	 */
+	boolean contains(int track, int sector) {
+		return track >= 0 && track < sectors.length && sector >= 0 && sector < sectors[track];
+	}
+
+	/**
+	 * @param track track
+	 * @param sector sector
+	 * @return true if block is free
+	 */
+	boolean isFree(int track, int sector) {
+		int block = track * maxSectors + sector;
+		return (bits[block >> 6] & (1L << block)) != 0;
+	}
+
+	/**
+	 * @param track track
+	 * @param sector sector
+	 * @param free true to mark block as free, false to mark it as used
+	 */
+	void setFree(int track, int sector, boolean free) {
+		int block = track * maxSectors + sector;
+		long mask = 1L << block;
+		boolean wasFree = (bits[block >> 6] & mask) != 0;
+		if (free && !wasFree) {
+			bits[block >> 6] |= mask;
+			freeCount[track]++;
+		} else if (!free && wasFree) {
+			bits[block >> 6] &= ~mask;
+			freeCount[track]--;
+		}
+	}
+
+	/**
+	 * @param track track
+	 * @return number of free blocks on track
+	 */
+	int getFreeCount(int track) {
+		return track >= 0 && track < freeCount.length ? freeCount[track] : 0;
+	}
+
+	/**
+	 * Find a free sector on a track, starting at a sector and wrapping around to sector zero.
+	 * @param track track
+	 * @param fromSector first sector to check
+	 * @return free sector, or -1 if there is no free sector on the track.
+	 */
+	int nextFree(int track, int fromSector) {
+		if (getFreeCount(track) == 0) {
+			return -1;
+		}
+		int base = track * maxSectors;
+		int from = Math.max(0, Math.min(fromSector, sectors[track]));
+		int block = nextSetBit(base + from, base + sectors[track]);
+		if (block < 0) {
+			block = nextSetBit(base, base + from);
+		}
+		return block < 0 ? -1 : block - base;
+	}
+
+	private int nextSetBit(int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+		int word = from >> 6;
+		long w = bits[word] & (-1L << from);
+		while (w == 0) {
+			if (++word << 6 >= to) {
+				return -1;
+			}
+			w = bits[word];
+		}
+		int block = (word << 6) + Long.numberOfTrailingZeros(w);
+		return block < to ? block : -1;
+	}
+}
@@ -0,0 +1,140 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * Storage of the raw bytes of a disk image.<br>
+ * All positions are offsets from the beginning of the image, as returned by {@link DiskImage#getSectorOffset(int, int)}.
+ */
+public interface BlockStore {
+
+	/**
+	 * @return size of image in bytes
+	 */
+	int size();
+
+	/**
+	 * Get unsigned byte at position.
+	 * @param position offset into image
+	 * @return value 0-255
+	 * @throws IndexOutOfBoundsException if position is outside of image
+	 */
+	int get(int position);
+
+	/**
+	 * Set byte at position.
+	 * @param position offset into image
+	 * @param value the value. Only the lowest eight bits are stored.
+	 * @throws IndexOutOfBoundsException if position is outside of image
+	 */
+	void set(int position, int value);
+
+	/**
+	 * Copy bytes from the image.
+	 * @param position offset into image
+	 * @param dest the array to copy into
+	 * @param destPos position in dest
+	 * @param length number of bytes to copy
+	 */
+	void get(int position, byte[] dest, int destPos, int length);
+
+	/**
+	 * Copy bytes into the image.
+	 * @param position offset into image
+	 * @param src the array to copy from
+	 * @param srcPos position in src
+	 * @param length number of bytes to copy
+	 */
+	void put(int position, byte[] src, int srcPos, int length);
+
+	/**
+	 * Copy the remaining bytes of a buffer into the image.
+	 * @param position offset into image
+	 * @param src the buffer to copy from. Its position is moved past the copied bytes.
+	 */
+	void put(int position, ByteBuffer src);
+
+	/**
+	 * Fill a range of the image with a value.
+	 * @param from first position (inclusive)
+	 * @param to last position (exclusive)
+	 * @param value the value
+	 */
+	void fill(int from, int to, byte value);
+
+	/**
+	 * Get a read-only view of a part of the image. No data is copied.
+	 * @param position offset into image
+	 * @param length number of bytes
+	 * @return ByteBuffer
+	 */
+	ByteBuffer slice(int position, int length);
+
+	/**
+	 * Write the whole image to file. The file is not truncated until all data is written,
+	 * which makes it safe to save a memory mapped image to the file it is mapped from.
+	 * @param file the file to write to
+	 * @throws IOException when error
+	 */
+	default void save(File file) throws IOException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			var buffer = slice(0, size());
+			long pos = 0;
+			while (buffer.hasRemaining()) {
+				pos += channel.write(buffer, pos);
+			}
+			channel.truncate(pos);
+		}
+	}
+
+	/**
+	 * Write some blocks of the image to an existing file using positional writes.
+	 * Consecutive blocks are written with a single write.
+	 * @param file the file to write to. Must already contain the rest of the image.
+	 * @param blocks the blocks to write. Bit number is position / blockSize.
+	 * @param blockSize the size of a block
+	 * @throws IOException when error
+	 */
+	default void save(File file, BitSet blocks, int blockSize) throws IOException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			for (int from = blocks.nextSetBit(0); from >= 0 && from * blockSize < size(); from = blocks.nextSetBit(from)) {
+				int to = blocks.nextClearBit(from);
+				int pos = from * blockSize;
+				var buffer = slice(pos, Math.min(to * blockSize, size()) - pos);
+				while (buffer.hasRemaining()) {
+					pos += channel.write(buffer, pos);
+				}
+				from = to;
+			}
+		}
+	}
+
+	/**
+	 * @return true if image data lives outside of the heap
+	 */
+	boolean isMapped();
+
+	/**
+	 * Copy bytes from the image.
+	 * @param position offset into image
+	 * @param length number of bytes
+	 * @return a new array with the bytes
+	 */
+	default byte[] getBytes(int position, int length) {
+		var data = new byte[length];
+		get(position, data, 0, length);
+		return data;
+	}
+
+	/**
+	 * @return a copy of the whole image
+	 */
+	default byte[] toByteArray() {
+		return getBytes(0, size());
+	}
+}
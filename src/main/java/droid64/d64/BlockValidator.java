@@ -0,0 +1,257 @@
+package droid64.d64;
+
+import java.util.Arrays;
+import java.util.List;
+
+import droid64.d64.ValidationError.Error;
+
+/**
+ * Validation of the block chains and BAM of a disk image.<br>
+ * The state of each block is kept in a byte[] indexed by linear block number (track * max sectors + sector).
+ * Blocks seen twice in a chain are tracked in a bitset, so finding a cycle is linear in the length of the chain.
+ * Arrays are reused between validations of the same image.
+ */
+class BlockValidator {
+	/** Stop following chains after this many errors */
+	private static final int MAX_ERRORS = 1000;
+	private static final byte UNSEEN = 0;
+	private static final byte USED = 1;
+
+	private final DiskImage image;
+	private byte[] state = new byte[0];
+	/** Bitset of blocks which caused an error in the current chain */
+	private long[] chainErrors = new long[0];
+	/** Bits set in chainErrors, to clear them when next chain starts */
+	private int[] chainErrorLog = new int[16];
+	private int chainErrorCount = 0;
+	private int trackCount;
+	private int maxSectors;
+	private int errors;
+	private int warnings;
+
+	BlockValidator(DiskImage image) {
+		this.image = image;
+	}
+
+	/**
+	 * Prepare for a new validation. All blocks are unseen, and counters are zero.
+	 * Errors are added to the validation error list of the image, which is not cleared.
+	 */
+	void reset() {
+		trackCount = image.getTrackCount();
+		maxSectors = image.getMaxSectorCount();
+		int size = (trackCount + 1) * maxSectors;
+		if (state.length < size) {
+			state = new byte[size];
+			chainErrors = new long[(size + 63) >> 6];
+		} else {
+			Arrays.fill(state, 0, size, UNSEEN);
+		}
+		clearChainErrors();
+		errors = 0;
+		warnings = 0;
+	}
+
+	/**
+	 * @return number of errors found since reset
+	 */
+	int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return number of warnings found since reset
+	 */
+	int getWarnings() {
+		return warnings;
+	}
+
+	void addError(ValidationError error) {
+		image.getValidationErrorList().add(error);
+		errors++;
+	}
+
+	void addWarning(ValidationError error) {
+		image.getValidationErrorList().add(error);
+		warnings++;
+	}
+
+	/**
+	 * @param track track
+	 * @param sector sector
+	 * @return true if block is within the validated area
+	 */
+	boolean isInside(int track, int sector) {
+		return track >= 0 && track <= trackCount && sector >= 0 && sector < maxSectors;
+	}
+
+	/**
+	 * @param track track
+	 * @param sector sector
+	 * @return true if block has been found in a chain
+	 */
+	boolean isUsed(int track, int sector) {
+		return isInside(track, sector) && state[track * maxSectors + sector] == USED;
+	}
+
+	/**
+	 * Mark block as used, without following any chain.
+	 * @param track track
+	 * @param sector sector
+	 * @return true if block was not used before
+	 */
+	boolean markUsed(int track, int sector) {
+		int block = track * maxSectors + sector;
+		if (state[block] != UNSEEN) {
+			return false;
+		}
+		state[block] = USED;
+		return true;
+	}
+
+	/**
+	 * Follow the chain of directory blocks.
+	 * @param track first track
+	 * @param sector first sector
+	 */
+	void validateDirChain(int track, int sector) {
+		validateChain(track, sector, null, Error.ERROR_DIR_SECTOR_OUTSIDE_IMAGE, Error.ERROR_DIR_SECTOR_ALREADY_SEEN,
+				Error.ERROR_DIR_SECTOR_ALREADY_USED, Error.ERROR_DIR_SECTOR_ALREADY_FREE);
+	}
+
+	/**
+	 * Follow the chain of blocks of a file.
+	 * @param track first track
+	 * @param sector first sector
+	 * @param fileName name of file, used in errors
+	 */
+	void validateFileChain(int track, int sector, String fileName) {
+		validateChain(track, sector, fileName, Error.ERROR_FILE_SECTOR_OUTSIDE_IMAGE, Error.ERROR_FILE_SECTOR_ALREADY_SEEN,
+				Error.ERROR_FILE_SECTOR_ALREADY_USED, Error.ERROR_FILE_SECTOR_ALREADY_FREE);
+	}
+
+	/**
+	 * Follow the chains of a file, and the side sector chain if it is a REL file.
+	 * @param cf the file
+	 */
+	void validateFile(CbmFile cf) {
+		if (cf.getFileType() != FileType.DEL && cf.getTrack() != 0) {
+			validateFileChain(cf.getTrack(), cf.getSector(), cf.getName());
+			if (cf.getFileType() == FileType.REL && cf.getRelTrack() != 0) {
+				// Follow REL file side sectors
+				validateFileChain(cf.getRelTrack(), cf.getRelSector(), cf.getName());
+			}
+		}
+	}
+
+	/**
+	 * Follow the chains of all files in the image. Partitions are reported as unsupported.
+	 */
+	void validateFiles() {
+		for (int n = 0; n < image.getCbmFileSize(); n++) {
+			var cf = image.getCbmFile(n);
+			if (cf.getFileType() == FileType.CBM) {
+				addError(Error.ERROR_PARTITIONS_UNSUPPORTED.getError(cf.getTrack(), cf.getSector(), cf.getName()));
+			} else {
+				validateFile(cf);
+			}
+		}
+	}
+
+	private void validateChain(int startTrack, int startSector, String fileName,
+			Error outside, Error alreadySeen, Error alreadyUsed, Error alreadyFree) {
+		clearChainErrors();
+		int track = startTrack;
+		int sector = startSector;
+		do {
+			if (errors > MAX_ERRORS) {
+				image.getValidationErrorList().add(Error.ERROR_TOO_MANY.getError(track, sector));
+				return;
+			} else if (!isInside(track, sector)) {
+				addError(outside.getError(track, sector, fileName));
+				return;
+			}
+			int block = track * maxSectors + sector;
+			if (state[block] == UNSEEN) {
+				state[block] = USED;
+			} else {
+				errors++;
+				if (!addChainError(block)) {
+					image.getValidationErrorList().add(alreadySeen.getError(track, sector, fileName));
+					return;
+				}
+				image.getValidationErrorList().add((state[block] == USED ? alreadyUsed : alreadyFree).getError(track, sector, fileName));
+			}
+			int pos = image.geometry.getSectorOffset(track, sector);
+			track = image.getCbmDiskValue(pos + 0x00);
+			sector = image.getCbmDiskValue(pos + 0x01);
+		} while (track != 0);
+	}
+
+	/**
+	 * Compare state of a block in BAM with what was found when following the chains.
+	 * @param track track
+	 * @param sector sector
+	 * @param bamFree true if block is free in BAM
+	 * @param reserved true if block is allowed to be allocated in BAM although not used by any chain
+	 * @param repairList errors which should be repaired instead of reported. Can be null.
+	 */
+	void validateBam(int track, int sector, boolean bamFree, boolean reserved, List<Error> repairList) {
+		boolean used = isUsed(track, sector);
+		if (used == bamFree) {
+			if (used) {
+				if (repairList != null && repairList.contains(Error.ERROR_USED_SECTOR_IS_FREE)) {
+					image.markSectorUsed(track, sector);
+					image.feedbackStream.append("Info: marked sector ").append(track).append('/').append(sector).append(" as used.\n");
+				} else {
+					addError(Error.ERROR_USED_SECTOR_IS_FREE.getError(track, sector));
+				}
+			} else if (!reserved) {
+				if (repairList != null && repairList.contains(Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED)) {
+					image.markSectorFree(track, sector);
+					image.feedbackStream.append("Info: marked sector ").append(track).append('/').append(sector).append(" as free.\n");
+				} else {
+					addWarning(Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED.getError(track, sector));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compare the number of free sectors found in BAM with the free counter of the track.
+	 * @param track track
+	 * @param freeSectors number of free sectors in BAM
+	 * @param counterPos position of free counter in image
+	 * @param repairList errors which should be repaired instead of reported. Can be null.
+	 */
+	void validateFreeCount(int track, int freeSectors, int counterPos, List<Error> repairList) {
+		if (freeSectors != image.getCbmDiskValue(counterPos)) {
+			if (repairList != null && repairList.contains(Error.ERROR_BAM_FREE_SECTOR_MISMATCH)) {
+				image.setCbmDiskValue(counterPos, freeSectors);
+				image.feedbackStream.append("Info: corrected free counter on track ").append(track).append(". New free count is ").append(freeSectors).append(".\n");
+			} else {
+				addError(Error.ERROR_BAM_FREE_SECTOR_MISMATCH.getError(track, 0));
+			}
+		}
+	}
+
+	private boolean addChainError(int block) {
+		long mask = 1L << (block & 63);
+		if ((chainErrors[block >> 6] & mask) != 0) {
+			return false;
+		}
+		chainErrors[block >> 6] |= mask;
+		if (chainErrorCount == chainErrorLog.length) {
+			chainErrorLog = Arrays.copyOf(chainErrorLog, chainErrorCount * 2);
+		}
+		chainErrorLog[chainErrorCount++] = block;
+		return true;
+	}
+
+	private void clearChainErrors() {
+		for (int i = 0; i < chainErrorCount; i++) {
+			chainErrors[chainErrorLog[i] >> 6] = 0L;
+		}
+		chainErrorCount = 0;
+	}
+}
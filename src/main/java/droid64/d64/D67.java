@@ -1,13 +1,12 @@
 package droid64.d64;
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.gui.BAMPanel.BamState;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**<pre style='font-family:sans-serif;'>
  * Created on 21.06.2004
@@ -47,6 +46,8 @@ public class D67 extends DiskImage {
 	protected static final int BAM_SECTOR = 0;
 	/** The normal size of a D67 image (690 * 256) */
 	private static final int D67_SIZE = 176640;
+	/** Layout of tracks and sectors */
+	static final DiskGeometry GEOMETRY = DiskGeometry.of(D67Constants.D67_TRACKS, D67_SIZE);
 	/** D67 format is restricted to a maximum of 144 directory entries (18 sectors with 8 entries each). Track 18 has 19 sectors, of which the first is the BAM. */
 	protected static final int FILE_NUMBER_LIMIT = 144;
 	/** Number of tracks */
@@ -67,8 +68,9 @@ public class D67 extends DiskImage {
 	 * @param imageFormat
 	 * @param consoleStream the stream for errors
 	 */
-	public D67(DiskImageType imageFormat, ConsoleStream consoleStream) {
+	public D67(DiskImageType imageFormat, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D67);
 		this.feedbackStream = consoleStream;
 		initCbmFile(FILE_NUMBER_LIMIT);
 		bam = new CbmBam(D67Constants.D67_TRACKS.length, 4);
@@ -80,10 +82,11 @@ public class D67 extends DiskImage {
 	 * @param imageData the disk image data
 	 * @param consoleStream the stream for errors
 	 */
-	public D67(DiskImageType imageFormat, byte[] imageData, ConsoleStream consoleStream) {
+	public D67(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D67);
 		this.feedbackStream = consoleStream;
-		cbmDisk = imageData;
+		setImageData(imageData);
 		initCbmFile(FILE_NUMBER_LIMIT);
 		bam = new CbmBam(D67Constants.D67_TRACKS.length, 4);
 	}
@@ -135,8 +138,8 @@ public class D67 extends DiskImage {
 				bam.setTrackBits(track, i, (byte) getCbmDiskValue(bamOffset + 4 + (track-1) * 4 + i));
 			}
 		}
-		bam.setDiskName(Utility.getString(cbmDisk, bamOffset + 144, DISK_NAME_LENGTH));
-		bam.setDiskId(Utility.getString(cbmDisk, bamOffset + 162, DISK_ID_LENGTH));
+		bam.setDiskName(getString(bamOffset + 144, DISK_NAME_LENGTH));
+		bam.setDiskId(getString(bamOffset + 162, DISK_ID_LENGTH));
 		checkImageFormat();
 	}
 
@@ -185,11 +188,6 @@ public class D67 extends DiskImage {
 		}
 	}
 
-	@Override
-	public int getSectorOffset(int track, int sector) {
-		return D67Constants.D67_TRACKS[track].getOffset() + (BLOCK_SIZE * sector);
-	}
-
 	@Override
 	public void readDirectory() {
 		if (isCpmImage()) {
@@ -204,12 +202,12 @@ public class D67 extends DiskImage {
 			int filenumber = 0;
 			do {
 				if (track >= D67Constants.D67_TRACKS.length || sector >=  getMaxSectors(track)) {
-					feedbackStream.append("Error: Sector ").append(track).append('/').append(sector).append(" is not within image.\n");
+					feedbackStream.append(Level.ERROR, "Error: Sector ").append(track).append('/').append(sector).append(" is not within image.\n");
 					break;
 				}
 				int dataPosition = getSectorOffset(track, sector);
 				for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i ++) {
-					setCbmFile(filenumber, new CbmFile(cbmDisk, dataPosition + (i * DIR_ENTRY_SIZE)));
+					setCbmFile(filenumber, readCbmFile(dataPosition + (i * DIR_ENTRY_SIZE)));
 					if (!getCbmFile(filenumber).isFileScratched()) {
 						getCbmFile(filenumber).setDirPosition(dirPosition);
 						if (filenumber < FILE_NUMBER_LIMIT)  {
@@ -225,50 +223,18 @@ public class D67 extends DiskImage {
 				sector = getCbmDiskValue(dataPosition + 1);
 			} while (track != 0 && !fileLimitReached);
 			if (fileLimitReached) {
-				feedbackStream.append("Error: Too many entries in directory (more than ").append(FILE_NUMBER_LIMIT).append(")!\n");
+				feedbackStream.append(Level.ERROR, "Error: Too many entries in directory (more than ").append(FILE_NUMBER_LIMIT).append(")!\n");
 			}
 			filesUsedCount = filenumber;
 		} catch (ArrayIndexOutOfBoundsException e) {	//NOSONAR
-			feedbackStream.append("Error: Sector ").append(track).append('/').append(sector).append(" is outside of image.\n");
-		}
-		validate(new ArrayList<>());
-	}
-
-	/**
-	 * Find first free directory entry.
-	 * Looks through the allocated directory sectors.
-	 * @return number of next free directory entry, or -1 if none is free.
-	 */
-	private int findFreeDirEntry() {
-		int track = DIR_TRACK;
-		int sector = 1;
-		int dirPosition = 0;
-		do {
-			int dataPosition = getSectorOffset(track, sector);
-			for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i++) {
-				int fileType = cbmDisk[dataPosition + (i * DIR_ENTRY_SIZE) + 0x02] & 0xff;
-				if (fileType  == 0) {
-					// Free or scratched entry
-					return dirPosition;
-				}
-				dirPosition++;
-			}
-			track = getCbmDiskValue( dataPosition + 0);
-			sector = getCbmDiskValue( dataPosition + 1);
-		} while (track != 0);
-		if (dirPosition < FILE_NUMBER_LIMIT + 2) {
-			// next entry, on a new dir sector. not yet hit max number of entries.
-			return dirPosition;
-		} else {
-			// Hit max number of file entries. can't add more.
-			feedbackStream.append("Error: No free directory entry avaiable.\n");
-			return -1;
+			feedbackStream.append(Level.ERROR, "Error: Sector ").append(track).append('/').append(sector).append(" is outside of image.\n");
 		}
+		deferValidation();
 	}
 
 	@Override
 	public byte[] getFileData(int number) throws CbmException {
-		if (cbmDisk == null) {
+		if (blockStore == null) {
 			throw new CbmException("getFileData: No disk data exist.");
 		} else if (number >= getCbmFileSize()) {
 			throw new CbmException("getFileData: File number " + number + " does not exist.");
@@ -286,7 +252,7 @@ public class D67 extends DiskImage {
 						}
 						int srcPos = getSectorOffset(ts.getTrack(), ts.getSector());
 						for (int c=0; c<BLOCK_SIZE && dstPos < data.length; c++) {
-							data[dstPos++] = cbmDisk[srcPos + c];
+							data[dstPos++] = (byte) blockStore.get(srcPos + c);
 						}
 					}
 				}
@@ -298,7 +264,7 @@ public class D67 extends DiskImage {
 			throw new CbmException("getFileData: File number " + number + " is deleted.");
 		}
 		feedbackStream.append("getFileData: ").append(number).append(" '").append(getCbmFile(number).getName()).append("'\n");
-		feedbackStream.append("Tracks / Sectors: ");
+		feedbackStream.append(Level.TRACE, "Tracks / Sectors: ");
 		return getData(getCbmFile(number).getTrack(), getCbmFile(number).getSector());
 	}
 
@@ -306,7 +272,8 @@ public class D67 extends DiskImage {
 	 * Find a sector for the first block of the file,
 	 * @return track/sector or null if none is available.
 	 */
-	private TrackSector findFirstCopyBlock() {
+	@Override
+	protected TrackSector findFirstCopyBlock() {
 		TrackSector block = new TrackSector(0, 0);
 		if (geosFormat) {
 			// GEOS formatted disk, so use the other routine, from track one upwards.
@@ -338,14 +305,8 @@ public class D67 extends DiskImage {
 			}
 			if (found) {
 				// Found a track with, at least one free sector, so search for a free sector in it.
-				int maxSector = D67Constants.D67_TRACKS[block.track].getSectors();	// Determine how many sectors there are on that track.
-				block.sector = 0;									// Start off with sector zero.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try the next sector.
-					}
-				} while (!found && block.sector <= maxSector);	// Repeat until there is a free sector or run off the track.
+				block.sector = findFreeSector(block.track, 0);	// Start off with sector zero.
+				found = block.sector >= 0;
 			} else {
 				// Disk full. No tracks with any free blocks.
 				block = null;
@@ -354,7 +315,7 @@ public class D67 extends DiskImage {
 		if (block != null) {
 			feedbackStream.append("firstCopyBlock: The first block will be ").append(block.track).append('/').append(block.sector).append(".\n");
 		} else {
-			feedbackStream.append("firstCopyBlock: Error: Disk is full!\n");
+			feedbackStream.append(Level.ERROR, "firstCopyBlock: Error: Disk is full!\n");
 		}
 		return block;
 	}
@@ -364,7 +325,8 @@ public class D67 extends DiskImage {
 	 * @param block
 	 * @return sector which was found or null if no more sectors left
 	 */
-	private TrackSector findNextCopyBlock(TrackSector block) {
+	@Override
+	protected TrackSector findNextCopyBlock(TrackSector block) {
 		boolean found;
 		if ((block.track == 0) || (block.track > TRACK_COUNT)) {
 			// If we somehow already ran off the disk then there are no more free sectors left.
@@ -388,7 +350,7 @@ public class D67 extends DiskImage {
 					// For a different track of a GEOS-formatted disk, use sector skew.
 					block.sector = (block.track - curTrack) << 1 + 4 + C1541_INTERLEAVE;
 				}
-				int maxSector = D67Constants.D67_TRACKS[block.track].getSectors();	// Determine how many sectors there are on track.
+				int maxSector = geometry.getSectors(block.track);	// Determine how many sectors there are on track.
 				while (block.sector >= maxSector) {
 					// If we ran off the track then correct the result.
 					block.sector = block.sector - maxSector + 1;	// Subtract the number of sectors on the track.
@@ -397,20 +359,15 @@ public class D67 extends DiskImage {
 						block.sector--;
 					}
 				}
-				int curSector = block.sector;	// Remember the first sector to be checked.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try next sector
-					}
-					if (block.sector >= maxSector) {
-						block.sector = 0;	// Went off track, wrap around to sector 0.
-					}
-				} while (!found && block.sector != curSector);	// Continue until finding a free sector, or we are back on the curSector again.
+				int freeSector = findFreeSector(block.track, block.sector);	// Search from current sector, wrapping around to sector 0.
+				found = freeSector >= 0;
+				if (found) {
+					block.sector = freeSector;
+				}
 				if (!found) {
 					// According to the free sector counter in BAM, this track should have free sectors, but it didn't.
 					// Try a different track. Obviously, this disk needs to be validated.
-					feedbackStream.append("Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
+					feedbackStream.append(Level.WARNING, "Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
 					if (block.track > FIRST_TRACK && block.track <= DIR_TRACK) {
 						block.track = block.track - 1 ;
 					} else if (block.track < TRACK_COUNT && block.track > DIR_TRACK) {
@@ -461,7 +418,7 @@ public class D67 extends DiskImage {
 	 * @param sector sectorNumber
 	 */
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		int trackPos = getSectorOffset(BAM_TRACK, BAM_SECTOR) + track * 4;
 		int pos = (sector / 8) + 1;
 		setCbmDiskValue(trackPos + pos, getCbmDiskValue(trackPos + pos) & INVERTED_BYTE_BIT_MASKS[sector & 0x07] );
@@ -474,7 +431,7 @@ public class D67 extends DiskImage {
 	 * @param sector sectorNumber
 	 */
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		int trackPos = getSectorOffset(BAM_TRACK, BAM_SECTOR) + track * 4;
 		int pos = (sector / 8) + 1;
 		setCbmDiskValue(trackPos + pos, getCbmDiskValue(trackPos + pos) | BYTE_BIT_MASKS[sector & 0x07] );
@@ -488,7 +445,7 @@ public class D67 extends DiskImage {
 	 * @return when True, the sector is free; otherwise used
 	 */
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean readSectorFree(int track, int sector) {
 		int trackPos = getSectorOffset(BAM_TRACK, BAM_SECTOR) + track * 4;
 		int pos = (sector / 8) + 1;
 		int value =  getCbmDiskValue(trackPos + pos) & BYTE_BIT_MASKS[sector & 0x07];
@@ -498,53 +455,8 @@ public class D67 extends DiskImage {
 	@Override
 	protected void setDiskName(String newDiskName, String newDiskID){
 		feedbackStream.append("setDiskName: '").append(newDiskName).append("', '").append(newDiskID).append("'\n");
-		Utility.setPaddedString(cbmDisk, getSectorOffset(BAM_TRACK, BAM_SECTOR) + 144, newDiskName, DISK_NAME_LENGTH);
-		Utility.setPaddedString(cbmDisk, getSectorOffset(BAM_TRACK, BAM_SECTOR) + 162, newDiskID, DISK_ID_LENGTH);
-	}
-
-	@Override
-	protected TrackSector saveFileData(byte[] saveData) {
-		if (isCpmImage()) {
-			feedbackStream.append(NOT_IMPLEMENTED_FOR_CPM);
-			return null;
-		}
-		int usedBlocks = 0;
-		int dataRemain = saveData.length;
-		feedbackStream.append("SaveFileData: ").append(dataRemain).append(" bytes of data.\n");
-		TrackSector firstBlock = findFirstCopyBlock();
-		if (firstBlock == null) {
-			feedbackStream.append("\nsaveFileData: Error: No free sectors on disk. Disk is full.\n");
-			return null;
-		}
-		TrackSector block = new TrackSector(firstBlock.track, firstBlock.sector);
-		int thisTrack;
-		int thisSector;
-		int dataPos = 0;
-		while (dataRemain >= 0 && block != null) {
-			thisTrack = block.track;
-			thisSector = block.sector;
-			markSectorUsed(thisTrack, thisSector);
-			if (dataRemain >= (BLOCK_SIZE - 2)) {
-				block = findNextCopyBlock(block);
-				if (block != null) {
-					fillSector(thisTrack, thisSector, dataPos, block.track, block.sector, saveData);
-					usedBlocks++;
-					dataRemain = dataRemain - (BLOCK_SIZE - 2);
-					dataPos = dataPos + (BLOCK_SIZE - 2);
-				} else {
-					feedbackStream.append("\nsaveFileData: Error: Not enough free sectors on disk. Disk is full.\n");
-					firstBlock = null;
-				}
-			} else {
-				fillSector(thisTrack, thisSector, dataPos, 0, dataRemain + 1, saveData);
-				usedBlocks++;
-				dataRemain = -1;
-			}
-		}
-		if (dataRemain <= 0) {
-			feedbackStream.append("All data written ("+usedBlocks+" blocks).\n");
-		}
-		return firstBlock;
+		setPaddedString(getSectorOffset(BAM_TRACK, BAM_SECTOR) + 144, newDiskName, DISK_NAME_LENGTH);
+		setPaddedString(getSectorOffset(BAM_TRACK, BAM_SECTOR) + 162, newDiskID, DISK_ID_LENGTH);
 	}
 
 	/**
@@ -556,7 +468,7 @@ public class D67 extends DiskImage {
 	 */
 	private boolean setNewDirLocation(CbmFile cbmFile, int dirEntryNumber){
 		if (dirEntryNumber < 0 || dirEntryNumber >= FILE_NUMBER_LIMIT) {
-			feedbackStream.append( "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
+			feedbackStream.append(Level.ERROR, "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
 			return false;
 		} else if ( (dirEntryNumber & 0x07) != 0) {
 			// If this is not the eighth entry we are lucky and do not need to do anything...
@@ -583,7 +495,7 @@ public class D67 extends DiskImage {
 					allocSector(thisTrack, thisSector, nextTrack, nextSector);
 					feedbackStream.append("Allocated additonal directory sector (").append(nextTrack).append('/').append(nextSector).append(") for dir entry ").append(dirEntryNumber).append(".\n");
 				} else {
-					feedbackStream.append( "Error: no more directory sectors. Can't add file.\n");
+					feedbackStream.append(Level.ERROR, "Error: no more directory sectors. Can't add file.\n");
 					return false;
 				}
 			}
@@ -655,7 +567,7 @@ public class D67 extends DiskImage {
 			return ;
 		}
 		feedbackStream.append("writeSingleDirectoryEntry: dirpos=").append(cbmFile.getDirPosition()).append('\n');
-		cbmFile.toBytes(cbmDisk, where);
+		writeCbmFile(cbmFile, where);
 	}
 
 	@Override
@@ -675,13 +587,13 @@ public class D67 extends DiskImage {
 		}
 		cbmFile.setDirTrack(0);
 		cbmFile.setDirSector(-1);
-		int dirEntryNumber = findFreeDirEntry();
+		int dirEntryNumber = findFreeDirEntry(DIR_TRACK, 1, FILE_NUMBER_LIMIT);
 		if (dirEntryNumber != -1 && setNewDirLocation(cbmFile, dirEntryNumber)) {
 			writeSingleDirectoryEntry(cbmFile, getDirectoryEntryPosition(dirEntryNumber));
 			filesUsedCount++;	// increase the maximum file numbers
 			return true;
 		} else {
-			feedbackStream.append("Error: Could not find a free sector on track "+DIR_TRACK+" for new directory entries.\n");
+			feedbackStream.append(Level.ERROR, "Error: Could not find a free sector on track "+DIR_TRACK+" for new directory entries.\n");
 			return false;
 		}
 	}
@@ -695,7 +607,7 @@ public class D67 extends DiskImage {
 	 */
 	@Override
 	public boolean saveNewImage(File file, String newDiskName, String newDiskID){
-		cbmDisk = new byte[D67_SIZE];
+		setImageData(new byte[D67_SIZE]);
 		Arrays.fill(cbmDisk, (byte) 0);
 		if (!isCpmImage()) {
 			Utility.copyBytes(D67Constants.NEWD67DATA, cbmDisk, 0x00000, 0x16500, D67Constants.NEWD67DATA.length);
@@ -749,15 +661,10 @@ public class D67 extends DiskImage {
 		return bamEntry;
 	}
 
-	@Override
-	public int getMaxSectors(int trackNumber) {
-		return D67Constants.D67_TRACKS[trackNumber].getSectors();
-	}
-
 	@Override
 	public int getBlocksFree() {
 		int blocksFree = 0;
-		if (cbmDisk != null) {
+		if (blockStore != null) {
 			for (int track = 1; track <= getTrackCount(); track++) {
 				if (track != DIR_TRACK) {
 					blocksFree = blocksFree + bam.getFreeSectors(track);
@@ -810,189 +717,46 @@ public class D67 extends DiskImage {
 				freeBlocks(cbmFile.getRelTrack(), cbmFile.getRelSector());
 			}
 		} else {
-			feedbackStream.append("Error: Failed to delete ").append(cbmFile.getName());
+			feedbackStream.append(Level.ERROR, "Error: Failed to delete ").append(cbmFile.getName());
 		}
 	}
 
 	@Override
 	public Integer validate(List<ValidationError.Error> repairList) {
 		getValidationErrorList().clear();
-		// init to null
-		Boolean[][] bamEntry = new Boolean[getTrackCount() + 1][getMaxSectorCount()];
-		for (int trk = 0; trk < bamEntry.length; trk++) {
-			Arrays.fill(bamEntry[trk], null);
-		}
+		var validator = getValidator();
 		// read all the chains of BAM/directory blocks. Mark each block as used and also check that
 		// the block is not already marked as used. It would mean a block is referred to twice.
 		// first check the chain of directory blocks.
-		errors = 0;
-		warnings = 0;
-		validateDirEntries(BAM_TRACK, BAM_SECTOR, bamEntry);
+		validator.validateDirChain(BAM_TRACK, BAM_SECTOR);
 		// follow each file and check data blocks
-		for (int n=0; n < getCbmFileSize(); n++) {
-			var cf = getCbmFile(n);
-			if (cf.getFileType() == FileType.CBM) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_PARTITIONS_UNSUPPORTED.getError(cf.getTrack(), cf.getSector(), cf.getName()));
-				errors++;
-			} else if (cf.getFileType() != FileType.DEL && cf.getTrack() != 0) {
-				validateFileData(cf.getTrack(), cf.getSector(), bamEntry, n);
-				if (cf.getFileType() == FileType.REL && cf.getRelTrack() != 0) {
-					// Follow REL file side sectors
-					validateFileData(cf.getRelTrack(), cf.getRelSector(), bamEntry, n);
-				}
-			}
-		}
+		validator.validateFiles();
 		// iterate BAM and verify used blocks is matching what we got when following data chains above.
 		int bamOffset = getSectorOffset(BAM_TRACK, BAM_SECTOR);
 		for (int trk = 1; trk <= getTrackCount(); trk++) {
-			validateBam(trk, bamEntry, repairList, bamOffset) ;
-		}
-		return errors + warnings;
-	}
-
-	private void validateBam(int trk, Boolean[][] bamEntry, List<ValidationError.Error> repairList, int bamOffset) {
-		int freeSectors = 0;
-		for (int sec = 0; sec < getMaxSectors(trk); sec++) {
-			boolean bamFree = isSectorFree(trk,sec);
-			Boolean fileFree = bamEntry[trk][sec];
-			if (Boolean.TRUE.equals(bamFree)) {
-				freeSectors++;
-			}
-			if (fileFree == null && bamFree || fileFree != null && bamFree == Boolean.TRUE.equals(fileFree)) {
-				// OK
-			} else if (Boolean.FALSE.equals(fileFree) && !Boolean.FALSE.equals(bamFree)) {
-				if (repairList.contains(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE)) {
-					markSectorUsed(trk, sec);
-					feedbackStream.append("Info: marked sector ").append(trk).append('/').append(sec).append(" as used.\n");
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE.getError(trk, sec));
-					errors++;
-				}
-			} else if (trk != BAM_TRACK){
-				if (repairList.contains(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED)) {
-					markSectorFree(trk, sec);
-					feedbackStream.append("Info: marked sector ").append(trk).append('/').append(sec).append(" as free.\n");
-				} else {
-					getValidationErrorList().add( ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED.getError(trk, sec));
-					warnings++;
+			int freeSectors = 0;
+			for (int sec = 0; sec < getMaxSectors(trk); sec++) {
+				boolean bamFree = isSectorFree(trk, sec);
+				if (bamFree) {
+					freeSectors++;
 				}
+				validator.validateBam(trk, sec, bamFree, trk == BAM_TRACK, repairList);
 			}
+			validator.validateFreeCount(trk, freeSectors, bamOffset + trk * 4, repairList);
 		}
-		int bamFreeSectors = getCbmDiskValue(bamOffset + trk * 4);
-		if (freeSectors != bamFreeSectors) {
-			if (repairList.contains(ValidationError.Error.ERROR_BAM_FREE_SECTOR_MISMATCH)) {
-				setCbmDiskValue(bamOffset + trk * 4, freeSectors);
-				feedbackStream.append("Info: corrected free founter on track ").append(trk).append(". New free count is ").append(freeSectors).append(".\n");
-			} else {
-				getValidationErrorList().add(ValidationError.Error.ERROR_BAM_FREE_SECTOR_MISMATCH.getError(trk, 0));
-				errors++;
-			}
-		}
-	}
-
-	private void validateFileData(int startTrack, int startSector, Boolean[][] bamEntry, int fileNum) {
-		int track = startTrack;
-		int sector = startSector;
-		List<TrackSector> fileErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_OUTSIDE_IMAGE.getError(track, sector, getCbmFile(fileNum).getName()));
-				errors++;
-				return;
-			}
-			if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;	// OK file's sector marked as used
-			} else {
-				errors++;
-				TrackSector thisBlock = new TrackSector(track, sector);
-				if (fileErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_SEEN.getError(track, sector, getCbmFile(fileNum).getName()));
-					return;
-				} else {
-					fileErrorList.add(thisBlock);
-				}
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_USED.getError(track,sector, getCbmFile(fileNum).getName()));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_FREE.getError(track,sector, getCbmFile(fileNum).getName()));
-				}
-			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
-	}
-
-	private void validateDirEntries(int dirTrack, int dirSector, Boolean[][] bamEntry) {
-		int track = dirTrack;
-		int sector = dirSector;
-		List<TrackSector> dirErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_OUTSIDE_IMAGE.getError(track, sector));
-				errors++;
-				return;
-			} else if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;	// OK
-			} else {
-				// Detect cyclic references by keeping track of all sectors used by one file and check if a sector is already seen.
-				TrackSector thisBlock = new TrackSector(track, sector);
-				if (dirErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_SEEN.getError(track, sector));
-					errors++;
-					return;
-				} else {
-					dirErrorList.add(thisBlock);
-				}
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_USED.getError(track, sector));
-					errors++;
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_FREE.getError(track, sector));
-					errors++;
-				}
-			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
+		errors = validator.getErrors();
+		warnings = validator.getWarnings();
+		return errors + warnings;
 	}
 
-
-
 	@Override
 	public int getNextSector(int track, int sector) {
-		if (track < getTrackCount() && sector < D67Constants.D67_TRACKS[track].getSectors()) {
+		if (track < getTrackCount() && sector < geometry.getSectors(track)) {
 			return sector + 1;
 		}
 		return this.getFirstSector();
 	}
 
-	@Override
-	public TrackSector getSector(int offset) {
-		if (offset < 0 || offset >= D67_SIZE) {
-			return null;
-		}
-		int t;
-		int blockNum = offset / BLOCK_SIZE;
-		for (t=1; t<D67Constants.D67_TRACKS.length; t++) {
-			if (D67Constants.D67_TRACKS[t].getSectorsIn()>blockNum) {
-				t--;
-				break;
-			}
-		}
-		int s = blockNum - D67Constants.D67_TRACKS[t].getSectorsIn();
-		return new TrackSector(t,s);
-	}
-
 	@Override
 	public int getFirstSector() {
 		return DEFAULT_ZERO;
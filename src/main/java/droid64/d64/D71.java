@@ -1,14 +1,13 @@
 package droid64.d64;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.gui.BAMPanel.BamState;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**<pre style='font-family:sans-serif;'>
  * Created on 2015-Oct-15
@@ -46,6 +45,8 @@ public class D71 extends DiskImage {
 	private static final int MAX_SECTORS = 21;
 	/** The normal size of a D71 image (1366 * 256) */
 	private static final  int D71_SIZE = 349696;
+	/** Layout of tracks and sectors */
+	static final DiskGeometry GEOMETRY = DiskGeometry.of(D71Constants.D71_TRACKS, D71_SIZE);
 	/** Track number of directory */
 	private static final int DIR_TRACK   = 18;
 	/** Sector number of directory */
@@ -65,27 +66,23 @@ public class D71 extends DiskImage {
 	/** Track number of first track (may be above one for sub directories on 1581 disks) */
 	private static final int FIRST_TRACK = 1;
 
-
-	public D71(DiskImageType imageFormat, ConsoleStream consoleStream) {
+	public D71(DiskImageType imageFormat, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D71);
 		this.feedbackStream = consoleStream;
 		bam = new CbmBam(D71Constants.D71_TRACKS.length, 4);
 		initCbmFile(FILE_NUMBER_LIMIT);
 	}
 
-	public D71(DiskImageType imageFormat, byte[] imageData, ConsoleStream consoleStream) {
+	public D71(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D71);
 		this.feedbackStream = consoleStream;
-		cbmDisk = imageData;
+		setImageData(imageData);
 		bam = new CbmBam(D71Constants.D71_TRACKS.length, 4);
 		initCbmFile(FILE_NUMBER_LIMIT);
 	}
 
-	@Override
-	public int getMaxSectors(int trackNumber) {
-		return D71Constants.D71_TRACKS[trackNumber].getSectors();
-	}
-
 	@Override
 	public int getTrackCount() {
 		return TRACK_COUNT;
@@ -99,7 +96,7 @@ public class D71 extends DiskImage {
 	@Override
 	public int getBlocksFree() {
 		int blocksFree = 0;
-		if (cbmDisk != null) {
+		if (blockStore != null) {
 			for (int track = 1; track <= getTrackCount(); track++) {
 				if (track != DIR_TRACK) {
 					blocksFree = blocksFree + bam.getFreeSectors(track);
@@ -135,8 +132,8 @@ public class D71 extends DiskImage {
 				}
 			}
 		}
-		bam.setDiskName(Utility.getString(cbmDisk, bamOffset1 + 0x90, DISK_NAME_LENGTH));
-		bam.setDiskId(Utility.getString(cbmDisk, bamOffset1 + 0xa2, DISK_ID_LENGTH));
+		bam.setDiskName(getString(bamOffset1 + 0x90, DISK_NAME_LENGTH));
+		bam.setDiskId(getString(bamOffset1 + 0xa2, DISK_ID_LENGTH));
 		checkImageFormat();
 	}
 
@@ -146,7 +143,7 @@ public class D71 extends DiskImage {
 			readCpmDirectory(D71Constants.C128_DS_DIR_TRACK, D71Constants.C128_DS_DIR_SECTORS, false);
 		} else {
 			readDirectory(DIR_TRACK, DIR_SECT, FILE_NUMBER_LIMIT);
-			validate(new ArrayList<>());
+			deferValidation();
 		}
 	}
 
@@ -181,7 +178,7 @@ public class D71 extends DiskImage {
 
 	@Override
 	public byte[] getFileData(int number) throws CbmException {
-		if (cbmDisk == null) {
+		if (blockStore == null) {
 			throw new CbmException("getFileData: No disk data exist.");
 		} else if (number >= getCbmFileSize()) {
 			throw new CbmException("getFileData: File number " + number + " does not exist.");
@@ -199,7 +196,7 @@ public class D71 extends DiskImage {
 						}
 						int srcPos = getSectorOffset(ts.getTrack(), ts.getSector());
 						for (int c=0; c < BLOCK_SIZE && dstPos < data.length; c++) {
-							data[dstPos++] = cbmDisk[srcPos + c];
+							data[dstPos++] = (byte) blockStore.get(srcPos + c);
 						}
 					}
 				}
@@ -211,63 +208,17 @@ public class D71 extends DiskImage {
 			throw new CbmException("getFileData: File number " + number + " is deleted.");
 		}
 		feedbackStream.append("getFileData: ").append(number).append(" '").append(getCbmFile(number).getName()).append("'\n");
-		feedbackStream.append("Tracks / Sectors: ");
+		feedbackStream.append(Level.TRACE, "Tracks / Sectors: ");
 		return getData(getCbmFile(number).getTrack(), getCbmFile(number).getSector());
 	}
 
-	@Override
-	protected TrackSector saveFileData(byte[] saveData) {
-		if (isCpmImage()) {
-			feedbackStream.append(NOT_IMPLEMENTED_FOR_CPM);
-			return null;
-		}
-		int usedBlocks = 0;
-		int dataRemain = saveData.length;
-		feedbackStream.append("SaveFileData: ").append(dataRemain).append(" bytes of data.\n");
-		TrackSector firstBlock = findFirstCopyBlock();
-		if (firstBlock == null) {
-			feedbackStream.append("\nsaveFileData: Error: No free sectors on disk. Disk is full.\n");
-			return null;
-		}
-		TrackSector block = new TrackSector(firstBlock.track, firstBlock.sector);
-		int thisTrack;
-		int thisSector;
-		int dataPos = 0;
-		while (dataRemain >= 0 && block != null) {
-			feedbackStream.append(dataRemain).append(" bytes remain: block ").append(block.track).append('/').append(block.sector).append('\n');
-			thisTrack = block.track;
-			thisSector = block.sector;
-			markSectorUsed(thisTrack, thisSector);
-			if (dataRemain >= (BLOCK_SIZE - 2)) {
-				block = findNextCopyBlock(block);
-				if (block != null) {
-					fillSector(thisTrack, thisSector, dataPos, block.track, block.sector, saveData);
-					usedBlocks++;
-					dataRemain = dataRemain - (BLOCK_SIZE - 2);
-					dataPos = dataPos + (BLOCK_SIZE - 2);
-				} else {
-					feedbackStream.append("\nsaveFileData: Error: Not enough free sectors on disk. Disk is full.\n");
-					firstBlock = null;
-				}
-			} else {
-				fillSector(thisTrack, thisSector, dataPos, 0, dataRemain + 1, saveData);
-				usedBlocks++;
-				dataRemain = -1;
-			}
-		}
-		if (dataRemain <= 0) {
-			feedbackStream.append("All data written ("+usedBlocks+" blocks).\n");
-		}
-		return firstBlock;
-	}
-
 	/**
 	 * Mark a sector in BAM as used.
 	 * @param track trackNumber
 	 * @param sector sectorNumber
 	 */
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		int trackPos;
 		int freePos;
 		if (track <= 35) {
@@ -288,7 +239,7 @@ public class D71 extends DiskImage {
 	 * @param sector sectorNumber
 	 */
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		int trackPos;
 		int freePos;
 		if (track <= 35) {
@@ -310,7 +261,7 @@ public class D71 extends DiskImage {
 	 * @return when True, the sector is free; otherwise used
 	 */
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean readSectorFree(int track, int sector) {
 		int trackPos;
 		if (track <= 35) {
 			trackPos = getSectorOffset(BAM_TRACK_1, BAM_SECT) + 4 * (track) + 1;
@@ -325,7 +276,8 @@ public class D71 extends DiskImage {
 	 * Find a sector for the first block of the file,
 	 * @return track/sector or null if none is available.
 	 */
-	private TrackSector findFirstCopyBlock() {
+	@Override
+	protected TrackSector findFirstCopyBlock() {
 		TrackSector block = new TrackSector(0, 0);
 		if (geosFormat) {
 			// GEOS formatted disk, so use the other routine, from track one upwards.
@@ -357,14 +309,8 @@ public class D71 extends DiskImage {
 			}
 			if (found) {
 				// Found a track with, at least one free sector, so search for a free sector in it.
-				int maxSector = getMaximumSectors(block.track);		// Determine how many sectors there are on that track.
-				block.sector = 0;									// Start off with sector zero.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try the next sector.
-					}
-				} while (!found && block.sector <= maxSector);	// Repeat until there is a free sector or run off the track.
+				block.sector = findFreeSector(block.track, 0);	// Start off with sector zero.
+				found = block.sector >= 0;
 			} else {
 				// Disk full. No tracks with any free blocks.
 				block = null;
@@ -373,7 +319,7 @@ public class D71 extends DiskImage {
 		if (block != null) {
 			feedbackStream.append("firstCopyBlock: The first block will be ").append(block.track).append('/').append(block.sector).append(".\n");
 		} else {
-			feedbackStream.append("firstCopyBlock: Error: Disk is full!\n");
+			feedbackStream.append(Level.ERROR, "firstCopyBlock: Error: Disk is full!\n");
 		}
 		return block;
 	}
@@ -383,7 +329,8 @@ public class D71 extends DiskImage {
 	 * @param block
 	 * @return sector found, null if no more sectors left
 	 */
-	private TrackSector findNextCopyBlock(TrackSector block) {
+	@Override
+	protected TrackSector findNextCopyBlock(TrackSector block) {
 		boolean found;
 		if ((block.track == 0) || (block.track > TRACK_COUNT)) {
 			// If we somehow already ran off the disk then there are no more free sectors left.
@@ -416,20 +363,15 @@ public class D71 extends DiskImage {
 						block.sector--;
 					}
 				}
-				int curSector = block.sector;	// Remember the first sector to be checked.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try next sector
-					}
-					if (block.sector >= maxSector) {
-						block.sector = 0;	// Went off track, wrap around to sector 0.
-					}
-				} while (!found && block.sector != curSector);	// Continue until finding a free sector, or we are back on the curSector again.
+				int freeSector = findFreeSector(block.track, block.sector);	// Search from current sector, wrapping around to sector 0.
+				found = freeSector >= 0;
+				if (found) {
+					block.sector = freeSector;
+				}
 				if (!found) {
 					// According to the free sector counter in BAM, this track should have free sectors, but it didn't.
 					// Try a different track. Obviously, this disk needs to be validated.
-					feedbackStream.append("Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
+					feedbackStream.append(Level.WARNING, "Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
 					if (block.track > FIRST_TRACK && block.track <= BAM_TRACK_1) {
 						block.track = block.track - 1 ;
 					} else if (block.track < TRACK_COUNT && block.track > BAM_TRACK_1) {
@@ -486,14 +428,14 @@ public class D71 extends DiskImage {
 	 * @return the number of sectors on the track
 	 */
 	private int getMaximumSectors(int trackNumber) {
-		return D71Constants.D71_TRACKS[trackNumber].getSectors();
+		return geometry.getSectors(trackNumber);
 	}
 
 	@Override
 	protected void setDiskName(String newDiskName, String newDiskID) {
 		feedbackStream.append("setDiskName('").append(newDiskName).append("', '").append(newDiskID).append("')\n");
-		Utility.setPaddedString(cbmDisk, getSectorOffset(BAM_TRACK_1, BAM_SECT) + 144, newDiskName, DISK_NAME_LENGTH);
-		Utility.setPaddedString(cbmDisk, getSectorOffset(BAM_TRACK_1, BAM_SECT) + 162, newDiskID, DISK_ID_LENGTH);
+		setPaddedString(getSectorOffset(BAM_TRACK_1, BAM_SECT) + 144, newDiskName, DISK_NAME_LENGTH);
+		setPaddedString(getSectorOffset(BAM_TRACK_1, BAM_SECT) + 162, newDiskID, DISK_ID_LENGTH);
 	}
 
 	@Override
@@ -519,7 +461,7 @@ public class D71 extends DiskImage {
 
 	@Override
 	public boolean saveNewImage(File file, String newDiskName, String newDiskID) {
-		cbmDisk = new byte[D71_SIZE];
+		setImageData(new byte[D71_SIZE]);
 		Arrays.fill(cbmDisk, (byte) 0);
 		Utility.copyBytes(D71Constants.NEWD71BAM1DATA, cbmDisk, 0x00000, 0x16500, D71Constants.NEWD71BAM1DATA.length);
 		Utility.copyBytes(D71Constants.NEWD71BAM2DATA, cbmDisk, 0x00000, 0x41000, D71Constants.NEWD71BAM2DATA.length);
@@ -544,13 +486,13 @@ public class D71 extends DiskImage {
 		}
 		cbmFile.setDirTrack(0);
 		cbmFile.setDirSector(-1);
-		int dirEntryNumber = findFreeDirEntry();
+		int dirEntryNumber = findFreeDirEntry(DIR_TRACK, 1, FILE_NUMBER_LIMIT);
 		if (dirEntryNumber != -1 && setNewDirLocation(cbmFile, dirEntryNumber)) {
 			writeSingleDirectoryEntry(cbmFile, getDirectoryEntryPosition(dirEntryNumber));
 			filesUsedCount++;	// increase the maximum file numbers
 			return true;
 		} else {
-			feedbackStream.append("Error: Could not find a free sector on track "+DIR_TRACK+" for new directory entries.\n");
+			feedbackStream.append(Level.ERROR, "Error: Could not find a free sector on track "+DIR_TRACK+" for new directory entries.\n");
 			return false;
 		}
 	}
@@ -566,7 +508,7 @@ public class D71 extends DiskImage {
 			return ;
 		}
 		feedbackStream.append("writeSingleDirectoryEntry: dirpos=").append(cbmFile.getDirPosition()).append('\n');
-		cbmFile.toBytes(cbmDisk, where);
+		writeCbmFile(cbmFile, where);
 	}
 
 	/**
@@ -602,7 +544,7 @@ public class D71 extends DiskImage {
 	 */
 	private boolean setNewDirLocation(CbmFile cbmFile, int dirEntryNumber){
 		if (dirEntryNumber < 0 || dirEntryNumber >= FILE_NUMBER_LIMIT) {
-			feedbackStream.append( "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
+			feedbackStream.append(Level.ERROR, "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
 			return false;
 		} else if ( (dirEntryNumber & 0x07) != 0) {
 			// If this is not the eighth entry we are lucky and do not need to do anything...
@@ -637,7 +579,7 @@ public class D71 extends DiskImage {
 						setCbmDiskValue(getSectorOffset(nextTrack, nextSector) + 0x01, -1);
 						feedbackStream.append("Allocated additonal directory sector (").append(nextTrack).append('/').append(nextSector).append(") for dir entry ").append(dirEntryNumber).append(".\n");
 					} else {
-						feedbackStream.append( "Error: no more directory sectors. Can't add file.\n");
+						feedbackStream.append(Level.ERROR, "Error: no more directory sectors. Can't add file.\n");
 						return false;
 					}
 				}
@@ -649,38 +591,6 @@ public class D71 extends DiskImage {
 		}
 	}
 
-	/**
-	 * Find first free directory entry.
-	 * Looks through the allocated directory sectors.
-	 * @return number of next free directory entry, or -1 if none is free.
-	 */
-	private int findFreeDirEntry() {
-		int track = DIR_TRACK;
-		int sector = 1;
-		int dirPosition = 0;
-		do {
-			int dataPosition = getSectorOffset(track, sector);
-			for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i++) {
-				int fileType = cbmDisk[dataPosition + (i * DIR_ENTRY_SIZE) + 0x02] & 0xff;
-				if (fileType  == 0) {
-					// Free or scratched entry
-					return dirPosition;
-				}
-				dirPosition++;
-			}
-			track = getCbmDiskValue(dataPosition + 0);
-			sector = getCbmDiskValue(dataPosition + 1);
-		} while (track != 0);
-		if (dirPosition < FILE_NUMBER_LIMIT + 2) {
-			// next entry, on a new dir sector. not yet hit max number of entries.
-			return dirPosition;
-		} else {
-			// Hit max number of file entries. can't add more.
-			feedbackStream.append("Error: No free directory entry avaiable.\n");
-			return -1;
-		}
-	}
-
 	@Override
 	public BamTrack[] getBamTable() {
 		BamTrack[] bamEntry = new BamTrack[TRACK_COUNT];
@@ -707,12 +617,6 @@ public class D71 extends DiskImage {
 		return bamEntry;
 	}
 
-
-	@Override
-	public int getSectorOffset(int track, int sector) {
-		return D71Constants.D71_TRACKS[track].getOffset() + (BLOCK_SIZE * sector);
-	}
-
 	@Override
 	public void deleteFile(CbmFile cbmFile) throws CbmException {
 		if (isCpmImage()) {
@@ -731,169 +635,40 @@ public class D71 extends DiskImage {
 				freeBlocks(cbmFile.getRelTrack(), cbmFile.getRelSector());
 			}
 		} else {
-			feedbackStream.append("Error: Failed to delete ").append(cbmFile.getName());
+			feedbackStream.append(Level.ERROR, "Error: Failed to delete ").append(cbmFile.getName());
 		}
 	}
 
 	@Override
 	public Integer validate(List<ValidationError.Error> repairList) {
 		getValidationErrorList().clear();
-		// init to null
-		Boolean[][] bamEntry = new Boolean[getTrackCount() + 1][getMaxSectorCount()];
-		for (int trk = 0; trk < bamEntry.length; trk++) {
-			Arrays.fill(bamEntry[trk], null);
-		}
+		var validator = getValidator();
 		// read all the chains of BAM/directory blocks. Mark each block as used and also check that
 		// the block is not already marked as used. It would mean a block is referred to twice.
 		// first check the chain of directory blocks.
-		errors = 0;
-		warnings = 0;
-		int track = BAM_TRACK_1;
-		int sector = BAM_SECT;
-		validateDirEntries(track, sector, bamEntry);
+		validator.validateDirChain(BAM_TRACK_1, BAM_SECT);
 		// follow each file and check data blocks
-		for (int n=0; n < getCbmFileSize(); n++) {
-			var cf = getCbmFile(n);
-			if (cf.getFileType() == FileType.CBM) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_PARTITIONS_UNSUPPORTED.getError(track, sector, cf.getName()));
-				errors++;
-			} else if (cf.getFileType() != FileType.DEL) {
-				track = cf.getTrack();
-				sector = cf.getSector();
-				if (track != 0) {
-					validateFileData(track, sector, bamEntry, n);
-					if (cf.getFileType() == FileType.REL && cf.getRelTrack() != 0) {
-						// Follow REL file side sectors
-						validateFileData(cf.getRelTrack(), cf.getRelSector(), bamEntry, n);
-					}
-				}
-			}
-		}
+		validator.validateFiles();
 		// iterate BAM and verify used blocks is matching what we got when following data chains above.
 		for (int trk = 1; trk <= getTrackCount(); trk++) {
 			for (int sec = 0; sec < getMaxSectors(trk); sec++) {
-				Boolean bamFree = Boolean.valueOf(isSectorFree(trk,sec));
-				Boolean fileFree = bamEntry[trk][sec];
-				if (fileFree == null && bamFree || fileFree != null && bamFree.equals(fileFree)) {
-					// no action
-				} else if (Boolean.FALSE.equals(fileFree) && !Boolean.FALSE.equals(bamFree)) {
-					if (repairList!= null && repairList.contains(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE)) {
-						markSectorUsed(trk, sec);
-						feedbackStream.append("Info: marked sector ").append(trk).append('/').append(sec).append(" as used.\n");
-					} else {
-						getValidationErrorList().add(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE.getError(trk, sec));
-						errors++;
-					}
-				} else if (trk != BAM_TRACK_1 && trk != BAM_TRACK_2){
-					if (repairList != null && repairList.contains(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED)) {
-						markSectorFree(trk, sec);
-						feedbackStream.append("Info: marked sector ").append(trk).append('/').append(sec).append(" as free.\n");
-					} else {
-						getValidationErrorList().add(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED.getError(trk, sec));
-						warnings++;
-					}
-				}
+				boolean bamFree = isSectorFree(trk, sec);
+				validator.validateBam(trk, sec, bamFree, trk == BAM_TRACK_1 || trk == BAM_TRACK_2, repairList);
 			}
 		}
+		errors = validator.getErrors();
+		warnings = validator.getWarnings();
 		return errors + warnings;
 	}
 
-	private void validateFileData(int startTrack, int startSector, Boolean[][] bamEntry, int fileNum) {
-		int track = startTrack;
-		int sector = startSector;
-		List<TrackSector> fileErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_OUTSIDE_IMAGE.getError(track, sector, getCbmFile(fileNum).getName()));
-				errors++;
-				return;
-			} else if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;	// OK
-			} else {
-				errors++;
-				// Detect cyclic references by keeping track of all sectors used by one file and check if a sector is already seen.
-				TrackSector thisBlock = new TrackSector(track, sector);
-				if (fileErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_SEEN.getError(track, sector, getCbmFile(fileNum).getName()));
-					return;
-				} else {
-					fileErrorList.add(thisBlock);
-				}
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_USED.getError(track, sector));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_FREE.getError(track, sector));
-				}
-			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
-	}
-
-	private void validateDirEntries(int dirTrack, int dirSector, Boolean[][] bamEntry) {
-		int track = dirTrack;
-		int sector = dirSector;
-		List<TrackSector> dirErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_OUTSIDE_IMAGE.getError(track, sector));
-				errors++;
-				return;
-			} else if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;
-			} else {
-				errors++;
-				TrackSector thisBlock = new TrackSector(track, sector);
-				if (dirErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_SEEN.getError(track, sector));
-					return;
-				} else {
-					dirErrorList.add(thisBlock);
-				}
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_USED.getError(track, sector));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_FREE.getError(track, sector));
-				}
-			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
-	}
-
 	@Override
 	public int getNextSector(int track, int sector) {
-		if (track < getTrackCount() && sector < D71Constants.D71_TRACKS[track].getSectors()) {
-			return D71Constants.D71_TRACKS[track].getSectors() + 1;
+		if (track < getTrackCount() && sector < geometry.getSectors(track)) {
+			return sector + 1;
 		}
 		return this.getFirstSector();
 	}
 
-	@Override
-	public TrackSector getSector(int offset) {
-		if (offset < 0 || offset >= D71_SIZE) {
-			return null;
-		}
-		int blockNum = offset / BLOCK_SIZE;
-		int t;
-		for (t = 1; t < D71Constants.D71_TRACKS.length && blockNum >=
-		D71Constants.D71_TRACKS[t].getSectorsIn() + D71Constants.D71_TRACKS[t].getSectors(); t++) {
-			// nothing
-		}
-		int s = blockNum - D71Constants.D71_TRACKS[t].getSectorsIn();
-		return new TrackSector(t, s);
-	}
-
 	@Override
 	public int getFirstSector() {
 		return DEFAULT_ZERO;
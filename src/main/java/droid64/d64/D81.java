@@ -1,7 +1,6 @@
 package droid64.d64;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -10,9 +9,9 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.gui.BAMPanel.BamState;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**<pre style='font-family:sans-serif;'>
  * Created on 2015-Oct-15
@@ -54,6 +53,8 @@ public class D81 extends DiskImage {
 	private static final int TRACK_SECTORS	= 40;
 	/** Number of tracks (80) of image */
 	private static final int TRACK_COUNT	= 80;
+	/** Layout of tracks and sectors */
+	static final DiskGeometry GEOMETRY = DiskGeometry.of(1, TRACK_COUNT, TRACK_SECTORS, D81_SIZE, null);
 	/** Track of BAM block 1 and BAM block 2 */
 	private static final int BAM_TRACK	    = 40;
 	/** Sector of BAM block 1 (40/1) */
@@ -73,6 +74,10 @@ public class D81 extends DiskImage {
 
 	/** Track of currently open partition .*/
 	private Integer currentPartitionTrack = null;
+	/** Directory block and partition size of the directory last read, used when validating. */
+	private int validateDirTrack = DIR_TRACK;
+	private int validateDirSector = DIR_SECT;
+	private int validatePartitionSectorCount = 0;
 	/** Maps track to the CbmFile for partition. Note: partitions may contain partitions. */
 	private Map<Integer,CbmFile> partMap = new HashMap<>();
 
@@ -80,17 +85,19 @@ public class D81 extends DiskImage {
 	 * @param imageFormat
 	 * @param consoleStream the stream for errors
 	 */
-	public D81(DiskImageType imageFormat, ConsoleStream consoleStream) {
+	public D81(DiskImageType imageFormat, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D81);
 		this.feedbackStream = consoleStream;
 		bam = new CbmBam(TRACK_COUNT, BYTES_PER_BAM_TRACK);
 		initCbmFile(FILE_NUMBER_LIMIT);
 	}
 
-	public D81(DiskImageType imageFormat, byte[] imageData, ConsoleStream consoleStream) {
+	public D81(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D81);
 		this.feedbackStream = consoleStream;
-		cbmDisk = imageData;
+		setImageData(imageData);
 		bam = new CbmBam(TRACK_COUNT, BYTES_PER_BAM_TRACK);
 		initCbmFile(FILE_NUMBER_LIMIT);
 	}
@@ -102,7 +109,7 @@ public class D81 extends DiskImage {
 
 	@Override
 	public int getBlocksFree() {
-		if (cbmDisk != null) {
+		if (blockStore != null) {
 			final IntStream trackStream;
 			if (getCurrentPartition() != null) {
 				CbmFile pf = partMap.get(getCurrentPartition());
@@ -137,13 +144,12 @@ public class D81 extends DiskImage {
 				bam.setTrackBits(track, cnt, (byte) getCbmDiskValue(bamOffset + cnt));
 			}
 		}
-		bam.setDiskName(Utility.getString(cbmDisk, headerOffset + 0x04, DISK_NAME_LENGTH));
-		bam.setDiskId(Utility.getString(cbmDisk, headerOffset + 0x16, DISK_ID_LENGTH));
+		bam.setDiskName(getString(headerOffset + 0x04, DISK_NAME_LENGTH));
+		bam.setDiskId(getString(headerOffset + 0x16, DISK_ID_LENGTH));
 		checkImageFormat();
 		partMap.values().stream().distinct().forEach(cf -> readBAM(cf.getTrack(), cf.getSizeInBlocks()/TRACK_SECTORS));
 	}
 
-
 	/**
 	 * Read BAM from partition
 	 * @param track
@@ -159,8 +165,8 @@ public class D81 extends DiskImage {
 			bam.setDiskName(Utility.EMPTY);
 			bam.setDiskId(Utility.EMPTY);
 			bam.setDiskDosType(getCbmDiskValue(headerOffset + 2 ));
-			bam.setDiskName(Utility.getString(cbmDisk, headerOffset + 0x04, DISK_NAME_LENGTH));
-			bam.setDiskId(Utility.getString(cbmDisk, headerOffset + 0x16, DISK_ID_LENGTH));
+			bam.setDiskName(getString(headerOffset + 0x04, DISK_NAME_LENGTH));
+			bam.setDiskId(getString(headerOffset + 0x16, DISK_ID_LENGTH));
 		}
 		for (int t = track; t < track+numTracks && t <= TRACK_COUNT; t++) {
 			int bamOffset = (t<=40 ? bamOffset1 : bamOffset2) + ((t % 40) - 1) * BYTES_PER_BAM_TRACK;
@@ -222,7 +228,10 @@ public class D81 extends DiskImage {
 	/** Read normal Commodore directory structure */
 	private void readDirectory(final int dirTrack, final int dirSector, boolean isPartition, int partitionSectorCount) {
 		readDirectory(dirTrack, dirSector, FILE_NUMBER_LIMIT);
-		validate(dirTrack, dirSector, isPartition, partitionSectorCount);
+		validateDirTrack = dirTrack;
+		validateDirSector = dirSector;
+		validatePartitionSectorCount = isPartition ? partitionSectorCount : 0;
+		deferValidation();
 	}
 
 	/**
@@ -236,23 +245,28 @@ public class D81 extends DiskImage {
 	public void readPartition(int track, int sector, int numBlocks) throws CbmException {
 		if (sector!=0 || numBlocks/TRACK_SECTORS < 3) {
 			feedbackStream.append("readPartition: No sub directory partition").append('\n');
-			currentPartitionTrack = null;
+			setPartitionTrack(null);
 			return;
 		}
-		int dirTrack = cbmDisk[getSectorOffset(track, sector) + 0x00] & 0x0ff;
-		int dirSector = cbmDisk[getSectorOffset(track, sector) + 0x01] & 0x0ff;
+		int dirTrack = getCbmDiskValue(getSectorOffset(track, sector) + 0x00);
+		int dirSector = getCbmDiskValue(getSectorOffset(track, sector) + 0x01);
 		feedbackStream.append("readPartition: ").append(dirTrack).append('/').append(dirSector).append('\n');
 		readDirectory(dirTrack, dirSector, true, numBlocks);
-		currentPartitionTrack = track;
+		setPartitionTrack(track);
 		readBAM(track, numBlocks / TRACK_SECTORS);
 	}
 
+	/** Set track of currently open partition. Free blocks are found in the BAM of the partition. */
+	private void setPartitionTrack(Integer track) {
+		currentPartitionTrack = track;
+		resetBamBitmap();
+	}
+
 	@Override
 	public boolean isPartitionOpen() {
 		return currentPartitionTrack!=null;
 	}
 
-
 	public CbmFile getPartitionFile(int track) {
 		return partMap.get(track);
 	}
@@ -260,12 +274,12 @@ public class D81 extends DiskImage {
 	@Override
 	public CbmFile setCurrentPartition(Integer partitionTrack) {
 		if (partitionTrack == null) {
-			this.currentPartitionTrack = null;
+			setPartitionTrack(null);
 			return null;
 		}
 		CbmFile part = partMap.get(partitionTrack);
 		if (part != null) {
-			this.currentPartitionTrack = partitionTrack;
+			setPartitionTrack(partitionTrack);
 		}
 		return part;
 	}
@@ -277,7 +291,7 @@ public class D81 extends DiskImage {
 
 	@Override
 	public byte[] getFileData(int number) throws CbmException {
-		if (cbmDisk == null) {
+		if (blockStore == null) {
 			throw new CbmException("getFileData: No disk data exist.");
 		} else if (number >= getCbmFileSize()) {
 			throw new CbmException("getFileData: File number " + number + " does not exist.");
@@ -296,7 +310,7 @@ public class D81 extends DiskImage {
 						srcPos = (au * BLOCKS_PER_ALLOC_UNIT * BLOCK_SIZE) + (20*BLOCK_SIZE);
 					}
 					for (int j=0; j < BLOCKS_PER_ALLOC_UNIT * BLOCK_SIZE && dstPos < data.length; j++) {
-						data[dstPos++] = cbmDisk[srcPos + j];
+						data[dstPos++] = (byte) blockStore.get(srcPos + j);
 					}
 				}
 				return data;
@@ -308,10 +322,10 @@ public class D81 extends DiskImage {
 		} else if (getCbmFile(number).getFileType() == FileType.CBM) {
 			int blockPos = getSectorOffset(getCbmFile(number).getTrack(), 0);
 			int len = getCbmFile(number).getSizeInBlocks() * BLOCK_SIZE;
-			return Arrays.copyOfRange(cbmDisk, blockPos, blockPos + len);
+			return blockStore.getBytes(blockPos, len);
 		}
 		feedbackStream.append("getFileData: ").append(number).append(" '").append(getCbmFile(number).getName()).append("'\n");
-		feedbackStream.append("Tracks / Sectors: ");
+		feedbackStream.append(Level.TRACE, "Tracks / Sectors: ");
 
 		return getData(getCbmFile(number).getTrack(), getCbmFile(number).getSector());
 	}
@@ -321,21 +335,21 @@ public class D81 extends DiskImage {
 		feedbackStream.append("setDiskName('").append(newDiskName).append("', '").append(newDiskID).append("')\n");
 		int bam1Offset = getSectorOffset(BAM_TRACK, BAM_SECT_1);
 		int bam2Offset = getSectorOffset(BAM_TRACK, BAM_SECT_2);
-		Utility.setPaddedString(cbmDisk, getSectorOffset(HEADER_TRACK, HEADER_SECT) + 0x04, newDiskName, DISK_NAME_LENGTH);
+		setPaddedString(getSectorOffset(HEADER_TRACK, HEADER_SECT) + 0x04, newDiskName, DISK_NAME_LENGTH);
 		char id0 = newDiskID.length() > 0 ? newDiskID.charAt(0) : '\u0240';
 		char id1 = newDiskID.length() > 1 ? newDiskID.charAt(1) : '\u0240';
 		setCbmDiskValue(bam1Offset + 0x04, id0);
 		setCbmDiskValue(bam1Offset + 0x05, id1);
 		setCbmDiskValue(bam2Offset + 0x04, id0);
 		setCbmDiskValue(bam2Offset + 0x05, id1);
-		Utility.setPaddedString(cbmDisk, getSectorOffset(HEADER_TRACK, HEADER_SECT) + 0x16, newDiskID, DISK_ID_LENGTH);
+		setPaddedString(getSectorOffset(HEADER_TRACK, HEADER_SECT) + 0x16, newDiskID, DISK_ID_LENGTH);
 	}
 
 	@Override
 	public boolean saveNewImage(File file, String newDiskName, String newDiskID) {
 		final int hdrOffset = getSectorOffset(HEADER_TRACK, HEADER_SECT);
 		final int dirOffset = getSectorOffset(DIR_TRACK, DIR_SECT);
-		cbmDisk = new byte[D81_SIZE];
+		setImageData(new byte[D81_SIZE]);
 		Arrays.fill(cbmDisk, (byte) 0);
 		setCbmDiskValue( hdrOffset + 0x00,	40);
 		setCbmDiskValue( hdrOffset + 0x01,	3);
@@ -354,11 +368,6 @@ public class D81 extends DiskImage {
 		return saveAs(file);
 	}
 
-	@Override
-	public int getSectorOffset(int track, int sector) {
-		return ((track - 1) * TRACK_SECTORS + sector) * BLOCK_SIZE;
-	}
-
 	@Override
 	public int getTrackCount() {
 		return TRACK_COUNT;
@@ -372,7 +381,7 @@ public class D81 extends DiskImage {
 	@Override
 	public Integer validate(List<ValidationError.Error> repairList) {
 		getValidationErrorList().clear();
-		return validate(DIR_TRACK, DIR_SECT, false, 0);
+		return validate(validateDirTrack, validateDirSector, validatePartitionSectorCount > 0, validatePartitionSectorCount);
 	}
 
 	/**
@@ -385,34 +394,21 @@ public class D81 extends DiskImage {
 	 */
 	private Integer validate(final int dirTrack, final int dirSector, boolean isPartition, int partitionSectorCount) {
 		feedbackStream.append("validate: D81 dirSector ").append(dirTrack).append('/').append(dirSector).append(isPartition ? " partition " : Utility.SPACE);
-		// init to null
-		Boolean[][] bamEntry = new Boolean[getTrackCount() + 1][getMaxSectorCount()];
-		for (int trk = 0; trk < bamEntry.length; trk++) {
-			Arrays.fill(bamEntry[trk], null);
-		}
+		var validator = getValidator();
 		// read all the chains of BAM/directory blocks. Mark each block as used and also check that
 		// the block is not already marked as used. It would mean a block is referred to twice.
 		// first check the chain of directory blocks.
-		int sector = dirSector;
-		int track = dirTrack;
-		int bamTrack = dirTrack;
-		errors = 0;
-		warnings = 0;
-		validateDirEntries(track, sector, bamEntry);
+		validator.validateDirChain(dirTrack, dirSector);
 		// follow each file and check data blocks
 		for (int n=0; n < getCbmFileSize(); n++) {
 			var cf = getCbmFile(n);
-
-			track = cf.getTrack();
-			sector = cf.getSector();
 			if (cf.getFileType() == FileType.CBM) {
+				int track = cf.getTrack();
+				int sector = cf.getSector();
 				int blocks = cf.getSizeInBlocks();
 				for (int i=0; i<blocks; i++) {
-					if (bamEntry[track][sector] == null) {
-						bamEntry[track][sector] = Boolean.FALSE;	// OK
-					} else {
-						getValidationErrorList().add(ValidationError.Error.ERROR_PARTITIONS_UNSUPPORTED.getError(track, sector, cf.getName()));
-						errors++;
+					if (!validator.isInside(track, sector) || !validator.markUsed(track, sector)) {
+						validator.addError(ValidationError.Error.ERROR_PARTITIONS_UNSUPPORTED.getError(track, sector, cf.getName()));
 					}
 					if (sector < 39) {
 						sector++;
@@ -421,123 +417,30 @@ public class D81 extends DiskImage {
 						sector = 0;
 					}
 				}
-			} else if (cf.getFileType() != FileType.DEL && track != 0) {
-				validateFileData(track, sector, bamEntry, n);
-				if (cf.getFileType() == FileType.REL && cf.getRelTrack() != 0) {
-					// Follow REL file side sectors
-					validateFileData(cf.getRelTrack(), cf.getRelSector(), bamEntry, n);
-				}
+			} else {
+				validator.validateFile(cf);
 			}
 		}
 		// iterate BAM and verify used blocks is matching what we got when following data chains above.
 		if (isPartition) {
 			int count = 0;
-			for (int trk = bamTrack; count<partitionSectorCount && trk <= getTrackCount(); trk++) {
+			for (int trk = dirTrack; count<partitionSectorCount && trk <= getTrackCount(); trk++) {
 				for (int sec = 0; count<partitionSectorCount && sec < getMaxSectors(trk); sec++, count++) {
-					Boolean bamFree = Boolean.valueOf(isSectorFree(trk,sec, bamTrack, 0));
-					Boolean fileFree = bamEntry[trk][sec];
-					validateBam(bamFree, fileFree, trk, sec);
+					validator.validateBam(trk, sec, isSectorFree(trk, sec, dirTrack, 0), trk == BAM_TRACK, null);
 				}
 			}
 		} else {
 			for (int trk = 1; trk <= getTrackCount(); trk++) {
 				for (int sec = 0; sec < getMaxSectors(trk); sec++) {
-					Boolean bamFree = Boolean.valueOf(isSectorFree(trk,sec));
-					Boolean fileFree = bamEntry[trk][sec];
-					validateBam(bamFree, fileFree, trk, sec);
+					validator.validateBam(trk, sec, isSectorFree(trk, sec), trk == BAM_TRACK, null);
 				}
 			}
 		}
+		errors = validator.getErrors();
+		warnings = validator.getWarnings();
 		return errors + warnings;
 	}
 
-	private void validateBam(Boolean bamFree, Boolean fileFree, int track, int sector) {
-		if (fileFree == null && bamFree || bamFree.equals(fileFree)) {
-			// OK
-		} else if (Boolean.FALSE.equals(fileFree)) {
-			getValidationErrorList().add(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE.getError(track, sector));
-			errors++;
-		} else if (track != BAM_TRACK){
-			getValidationErrorList().add(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED.getError(track, sector));
-			warnings++;
-		}
-	}
-
-	private void validateDirEntries(int dirTrack, int dirSector, Boolean[][] bamEntry) {
-		int track = dirTrack;
-		int sector = dirSector;
-		List<TrackSector> dirErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_OUTSIDE_IMAGE.getError(track, sector));
-				errors++;
-				return;
-			} else if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;
-			} else {
-				errors++;
-				// Detect cyclic references by keeping track of all sectors used by one file and check if a sector is already seen.
-				TrackSector thisBlock = new TrackSector(track, sector);
-				if (dirErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_SEEN.getError(track, sector));
-					return;
-				} else {
-					dirErrorList.add(thisBlock);
-				}
-
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_USED.getError(track, sector));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_FREE.getError(track, sector));
-				}
-			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
-	}
-
-	private void validateFileData(int startTrack, int startSector, Boolean[][] bamEntry, int fileNum) {
-		int track = startTrack;
-		int sector = startSector;
-		List<TrackSector> fileErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_OUTSIDE_IMAGE.getError(track, sector, getCbmFile(fileNum).getName()));
-				errors++;
-				return;
-			} else if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;	// OK
-			} else {
-				errors++;
-				// Detect cyclic references by keeping track of all sectors used by one file and check if a sector is already seen.
-				TrackSector thisBlock = new TrackSector(track, sector);
-				if (fileErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_SEEN.getError(track, sector, getCbmFile(fileNum).getName()));
-					return;
-				} else {
-					fileErrorList.add(thisBlock);
-				}
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_USED.getError(track, sector));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_FREE.getError(track, sector));
-				}
-			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
-	}
-
 	/**
 	 * Determine if a sector is free.
 	 * @param track the track number of sector to check
@@ -545,7 +448,7 @@ public class D81 extends DiskImage {
 	 * @return when True, the sector is free; otherwise used
 	 */
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean readSectorFree(int track, int sector) {
 		return isSectorFree(track, sector, currentPartitionTrack == null ? BAM_TRACK : currentPartitionTrack, track<=40 ? BAM_SECT_1 : BAM_SECT_2);
 	}
 
@@ -567,7 +470,7 @@ public class D81 extends DiskImage {
 	 * @param sector sectorNumber
 	 */
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		if (!isTrackInCurrentPartition(track)) {
 			feedbackStream.append("\nmark used in wrong BAM!\n");
 			return;
@@ -590,7 +493,7 @@ public class D81 extends DiskImage {
 	 * @param sector sectorNumber
 	 */
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		if (!isTrackInCurrentPartition(track)) {
 			feedbackStream.append("\n mark free in wrong BAM!\n");
 			return;
@@ -611,23 +514,12 @@ public class D81 extends DiskImage {
 		return currentPartitionTrack == null || Optional.ofNullable(partMap.get(track)).map(CbmFile::getTrack).filter(currentPartitionTrack::equals).isPresent();
 	}
 
-
-	/**
-	 * Determine if there's, at least, one free sector on a track.
-	 * @param trackNumber the track number of sector to check.
-	 * @return when true, there is at least one free sector on the track.
-	 */
-	@Override
-	protected boolean isTrackFree(int trackNumber) {
-		readBAM();
-		return bam.getFreeSectors(trackNumber) > 0;
-	}
-
 	/**
 	 * Find a sector for the first block of the file,
 	 * @return track/sector or null if none is available.
 	 */
-	private TrackSector findFirstCopyBlock() {
+	@Override
+	protected TrackSector findFirstCopyBlock() {
 		TrackSector block = new TrackSector(0, 0);
 		if (geosFormat) {
 			// GEOS formatted disk, so use the other routine, from track one upwards.
@@ -676,14 +568,8 @@ public class D81 extends DiskImage {
 			}
 			if (found) {
 				// Found a track with, at least one free sector, so search for a free sector in it.
-				int maxSector = TRACK_SECTORS;		// Determine how many sectors there are on that track.
-				block.sector = 0;									// Start off with sector zero.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try the next sector.
-					}
-				} while (!found && block.sector <= maxSector);	// Repeat until there is a free sector or run off the track.
+				block.sector = findFreeSector(block.track, 0);	// Start off with sector zero.
+				found = block.sector >= 0;
 			} else {
 				// Disk full. No tracks with any free blocks.
 				block = null;
@@ -692,7 +578,7 @@ public class D81 extends DiskImage {
 		if (block != null) {
 			feedbackStream.append("firstCopyBlock: The first block will be ").append(block.track).append('/').append(block.sector).append(".\n");
 		} else {
-			feedbackStream.append("firstCopyBlock: Error: Disk is full!\n");
+			feedbackStream.append(Level.ERROR, "firstCopyBlock: Error: Disk is full!\n");
 		}
 		return block;
 	}
@@ -702,7 +588,8 @@ public class D81 extends DiskImage {
 	 * @param block
 	 * @return sector when found, or null if no more sectors left
 	 */
-	private TrackSector findNextCopyBlock(TrackSector block) {
+	@Override
+	protected TrackSector findNextCopyBlock(TrackSector block) {
 		boolean found ;
 		if ((block.track == 0) || (block.track > TRACK_COUNT)) {
 			// If we somehow already ran off the disk then there are no more free sectors left.
@@ -778,20 +665,15 @@ public class D81 extends DiskImage {
 						block.sector--;
 					}
 				}
-				int curSector = block.sector;	// Remember the first sector to be checked.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try next sector
-					}
-					if (block.sector >= maxSector) {
-						block.sector = 0;	// Went off track, wrap around to sector 0.
-					}
-				} while (!found && block.sector != curSector);	// Continue until finding a free sector, or we are back on the curSector again.
+				int freeSector = findFreeSector(block.track, block.sector);	// Search from current sector, wrapping around to sector 0.
+				found = freeSector >= 0;
+				if (found) {
+					block.sector = freeSector;
+				}
 				if (!found) {
 					// According to the free sector counter in BAM, this track should have free sectors, but it didn't.
 					// Try a different track. Obviously, this disk needs to be validated.
-					feedbackStream.append("Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
+					feedbackStream.append(Level.WARNING, "Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
 					if (block.track > FIRST_TRACK && block.track <= BAM_TRACK) {
 						block.track = block.track - 1 ;
 					} else if (block.track < TRACK_COUNT && block.track > BAM_TRACK) {
@@ -842,52 +724,6 @@ public class D81 extends DiskImage {
 		return found ? block : null;
 	}
 
-	@Override
-	protected TrackSector saveFileData(byte[] saveData) {
-		if (isCpmImage()) {
-			feedbackStream.append(NOT_IMPLEMENTED_FOR_CPM);
-			return null;
-		}
-		int usedBlocks = 0;
-		int dataRemain = saveData.length;
-		feedbackStream.append("SaveFileData: ").append(dataRemain).append(" bytes ("+((dataRemain+253)/254)+" blocks) of data.\n");
-		TrackSector firstBlock = findFirstCopyBlock();
-		if (firstBlock == null) {
-			feedbackStream.append("\nsaveFileData: Error: No free sectors on disk. Disk is full.\n");
-			return null;
-		}
-		TrackSector block = new TrackSector(firstBlock.track, firstBlock.sector);
-		int thisTrack;
-		int thisSector;
-		int dataPos = 0;
-		while (dataRemain >= 0 && block != null) {
-			feedbackStream.append(dataRemain).append(" bytes remain: block ").append(block.track).append('/').append(block.sector).append('\n');
-			thisTrack = block.track;
-			thisSector = block.sector;
-			markSectorUsed(thisTrack, thisSector);
-			if (dataRemain >= (BLOCK_SIZE - 2)) {
-				block = findNextCopyBlock(block);
-				if (block != null) {
-					fillSector(thisTrack, thisSector, dataPos, block.track, block.sector, saveData);
-					usedBlocks++;
-					dataRemain = dataRemain - (BLOCK_SIZE - 2);
-					dataPos = dataPos + (BLOCK_SIZE - 2);
-				} else {
-					feedbackStream.append("\nsaveFileData: Error: Not enough free sectors on disk. Disk is full.\n");
-					firstBlock = null;
-				}
-			} else {
-				fillSector(thisTrack, thisSector, dataPos, 0, dataRemain + 1, saveData);
-				usedBlocks++;
-				dataRemain = -1;
-			}
-		}
-		if (dataRemain <= 0) {
-			feedbackStream.append("All data written ("+usedBlocks+" blocks).\n");
-		}
-		return firstBlock;
-	}
-
 	@Override
 	public boolean addDirectoryEntry(CbmFile cbmFile, int fileTrack, int fileSector, boolean isCopyFile, int lengthInBytes) {
 		feedbackStream.append(String.format("addDirectoryEntry: \"%s\", %s, %d/%d%n", cbmFile.getName(), cbmFile.getFileType(), fileTrack, fileSector));
@@ -905,49 +741,17 @@ public class D81 extends DiskImage {
 		cbmFile.setDirTrack(0);
 		cbmFile.setDirSector(-1);
 		int dirTrack = currentPartitionTrack == null ? DIR_TRACK : currentPartitionTrack;
-		int dirEntryNumber = findFreeDirEntry(dirTrack, DIR_SECT);
+		int dirEntryNumber = findFreeDirEntry(dirTrack, DIR_SECT, FILE_NUMBER_LIMIT);
 		if (dirEntryNumber != -1 && setNewDirLocation(cbmFile, dirEntryNumber)) {
 			writeSingleDirectoryEntry(cbmFile, getDirectoryEntryPosition(dirTrack, DIR_SECT, dirEntryNumber));
 			filesUsedCount++;	// increase the maximum file numbers
 			return true;
 		} else {
-			feedbackStream.append("Error: Could not find a free sector on track "+dirTrack+" for new directory entries.\n");
+			feedbackStream.append(Level.ERROR, "Error: Could not find a free sector on track "+dirTrack+" for new directory entries.\n");
 			return false;
 		}
 	}
 
-	/**
-	 * Find first free directory entry.
-	 * Looks through the allocated directory sectors.
-	 * @param track track of first dir block
-	 * @param sector of first dir block
-	 * @return number of next free directory entry, or -1 if none is free.
-	 */
-	private int findFreeDirEntry(int track, int sector) {
-		int dirPosition = 0;
-		do {
-			int dataPosition = getSectorOffset(track, sector);
-			for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i++) {
-				int fileType = cbmDisk[dataPosition + (i * DIR_ENTRY_SIZE) + 0x02] & 0xff;
-				if (fileType  == 0) {
-					// Free or scratched entry
-					return dirPosition;
-				}
-				dirPosition++;
-			}
-			track = getCbmDiskValue( dataPosition + 0);
-			sector = getCbmDiskValue( dataPosition + 1);
-		} while (track != 0);
-		if (dirPosition < FILE_NUMBER_LIMIT + 2) {
-			// next entry, on a new dir sector. not yet hit max number of entries.
-			return dirPosition;
-		} else {
-			// Hit max number of file entries. can't add more.
-			feedbackStream.append("Error: No free directory entry avaiable.\n");
-			return -1;
-		}
-	}
-
 	/**
 	 * Iterate directory sectors to find the specified directory entry. If needed, attempt to allocate more directory sectors
 	 * and continue iterating until either directory entry is available or FILE_NUMBER_LIMIT is reached,
@@ -957,7 +761,7 @@ public class D81 extends DiskImage {
 	 */
 	private boolean setNewDirLocation(CbmFile cbmFile, int dirEntryNumber){
 		if (dirEntryNumber < 0 || dirEntryNumber >= FILE_NUMBER_LIMIT) {
-			feedbackStream.append( "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
+			feedbackStream.append(Level.ERROR, "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
 			return false;
 		} else if ( (dirEntryNumber & 0x07) != 0) {
 			// If this is not the eighth entry we are lucky and do not need to do anything...
@@ -988,7 +792,7 @@ public class D81 extends DiskImage {
 					setCbmDiskValue(getSectorOffset(nextTrack, nextSector) + 0x01, -1);
 					feedbackStream.append("Added another directory block ").append(nextTrack).append('/').append(nextSector).append(") for dir entry ").append(dirEntryNumber).append(".\n");
 				} else {
-					feedbackStream.append( "Error: No more directory sectors. Can't add file.\n");
+					feedbackStream.append(Level.ERROR, "Error: No more directory sectors. Can't add file.\n");
 					return false;
 				}
 			}
@@ -1030,7 +834,7 @@ public class D81 extends DiskImage {
 			setCbmDiskValue(pos + 1, cbmFile.getDirSector());
 			writeSingleDirectoryEntry(cbmFile, pos);
 		} else {
-			feedbackStream.append("Error: writeDirectoryEntry failed for entry ").append(dirEntryNumber).append('\n');
+			feedbackStream.append(Level.ERROR, "Error: writeDirectoryEntry failed for entry ").append(dirEntryNumber).append('\n');
 		}
 	}
 
@@ -1045,7 +849,7 @@ public class D81 extends DiskImage {
 			return ;
 		}
 		feedbackStream.append("writeSingleDirectoryEntry: dirpos=").append(cbmFile.getDirPosition()).append('\n');
-		cbmFile.toBytes(cbmDisk, where);
+		writeCbmFile(cbmFile, where);
 	}
 
 	@Override
@@ -1076,7 +880,7 @@ public class D81 extends DiskImage {
 				}
 			}
 		} else {
-			feedbackStream.append("Error: Failed to delete ").append(cbmFile.getName());
+			feedbackStream.append(Level.ERROR, "Error: Failed to delete ").append(cbmFile.getName());
 		}
 	}
 
@@ -1085,7 +889,6 @@ public class D81 extends DiskImage {
 		return true;
 	}
 
-
 	@Override
 	public CbmFile makedir(String dirName, int numBlocks, String diskId) throws CbmException {
 		int numTracks = Math.max((numBlocks + TRACK_SECTORS - 1) / TRACK_SECTORS, 3);
@@ -1133,13 +936,16 @@ public class D81 extends DiskImage {
 		int  p1 = getSectorOffset(track, sector + 1); // bam1
 		int  p2 = getSectorOffset(track, sector + 2); // bam2
 		int  p3 = getSectorOffset(track, sector + 3); // first dir
-		Arrays.fill(cbmDisk, p0, p0 + numBlocks * BLOCK_SIZE, (byte) 0);
+		blockStore.fill(p0, p0 + numBlocks * BLOCK_SIZE, (byte) 0);
+		markDirty(p0, p0 + numBlocks * BLOCK_SIZE);
 		setCbmDiskValue(p0 + 0x00, track, sector+3, 0x44, 0x00);
 		setCbmDiskValue(p0 + 0x18, 0xa0, 0x33, 0x44, 0xa0, 0xa0);
-		Utility.setPaddedString(cbmDisk, p0 + 0x04, partName, DISK_NAME_LENGTH);
-		Utility.setPaddedString(cbmDisk, p0 + 0x16, partId, 2);
+		setPaddedString(p0 + 0x04, partName, DISK_NAME_LENGTH);
+		setPaddedString(p0 + 0x16, partId, 2);
 		// BAM1
-		Utility.copyBytes(D81Constants.EMPTY_BAM1, cbmDisk, 0, p1, 16);
+		for (int i = 0; i < 16; i++) {
+			setCbmDiskValue(p1 + i, D81Constants.EMPTY_BAM1[i]);
+		}
 		for (int t=1; t<=TRACK_COUNT; t++) {
 			int bamIdx = (t <= 40 ? p1 : p2) + 0x10 + ( (t % 40) - 1 ) * 6;
 			if (t == track) {
@@ -1151,8 +957,8 @@ public class D81 extends DiskImage {
 			}
 		}
 		setCbmDiskValue(p1 + 0x00, track, sector+2);
-		Utility.setPaddedString(cbmDisk, p1 + 0x04, partId, 2);
-		Utility.setPaddedString(cbmDisk, p2 + 0x04, partId, 2);
+		setPaddedString(p1 + 0x04, partId, 2);
+		setPaddedString(p2 + 0x04, partId, 2);
 		// BAM2
 		setCbmDiskValue(p2 + 0x00, 0x00, 0xff, 0x44, 0xbb);
 		setCbmDiskValue(p2 + 0x06, 0xc0);
@@ -1168,13 +974,6 @@ public class D81 extends DiskImage {
 		return this.getFirstSector();
 	}
 
-	@Override
-	public TrackSector getSector(int offset) {
-		int t = offset / (TRACK_SECTORS * BLOCK_SIZE);
-		int s = ((offset - t * TRACK_SECTORS * BLOCK_SIZE) / BLOCK_SIZE);
-		return new TrackSector(t + 1,s);
-	}
-
 	@Override
 	public int getFirstSector() {
 		return DEFAULT_ZERO;
@@ -5,9 +5,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.gui.BAMPanel.BamState;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**<pre style='font-family:sans-serif;'>
  * Created on 2019-Jan-15
@@ -45,6 +45,9 @@ public class D88 extends DiskImage {
 	private static final int MAX_SECTORS    = 52;
 	/** Number of tracks of image */
 	private static final int TRACK_COUNT	= 77;
+	/** Layout of tracks and sectors. Sector numbers are 1-26 on the first head and 33-58 on the second head. */
+	static final DiskGeometry GEOMETRY = DiskGeometry.of(0, TRACK_COUNT, MAX_SECTORS, D88_SIZE,
+			IntStream.range(0, 256).map(s -> s > 32 ? s - 7 : s - 1).toArray());
 	/** Double sided, thus two heads. */
 	private static final int HEAD_COUNT = 2;
 	/** Array with track/sector to BAM sectors */
@@ -52,27 +55,29 @@ public class D88 extends DiskImage {
 	/** 1 byte for free sectors on track, and one bit per sector (5 bytes / 40 bits) for each head */
 	private static final int BYTES_PER_BAM_GROUP = 5;
 
-	public D88(DiskImageType imageFormat, ConsoleStream consoleStream) {
+	public D88(DiskImageType imageFormat, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D88);
 		this.feedbackStream = consoleStream;
 		bam = new CbmBam(TRACK_COUNT, BYTES_PER_BAM_GROUP * HEAD_COUNT - 1);
 		initCbmFile(FILE_NUMBER_LIMIT);
 	}
 
-	public D88(DiskImageType imageFormat, byte[] imageData, ConsoleStream consoleStream) {
+	public D88(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(DiskImageType.D88);
 		this.feedbackStream = consoleStream;
-		cbmDisk = imageData;
+		setImageData(imageData);
 		bam = new CbmBam(TRACK_COUNT, BYTES_PER_BAM_GROUP * HEAD_COUNT - 1);
 		initCbmFile(FILE_NUMBER_LIMIT);
 	}
 
 	private TrackSector getDirBlock() {
-		return new TrackSector(cbmDisk[0x04] & 0xff, cbmDisk[0x05] & 0xff);
+		return new TrackSector(getCbmDiskValue(0x04), getCbmDiskValue(0x05));
 	}
 
 	private TrackSector getHeaderBlock() {
-		return new TrackSector(cbmDisk[0x06] & 0xff, cbmDisk[0x07] & 0xff);
+		return new TrackSector(getCbmDiskValue(0x06), getCbmDiskValue(0x07));
 	}
 
 	private TrackSector[] getBamSectors() {
@@ -111,7 +116,7 @@ public class D88 extends DiskImage {
 	@Override
 	public int getBlocksFree() {
 		int blocksFree = 0;
-		if (cbmDisk != null) {
+		if (blockStore != null) {
 			for (int track = getFirstTrack(); track < getTrackCount() + getFirstTrack(); track++) {
 				blocksFree += bam.getFreeSectors(track + 1);
 			}
@@ -128,8 +133,8 @@ public class D88 extends DiskImage {
 	public void readBAM() {
 		getBamSectors();
 		int headerOffset = getSectorOffset(getHeaderBlock());
-		bam.setDiskName(Utility.getString(cbmDisk, headerOffset + 0x06, DISK_NAME_LENGTH));
-		bam.setDiskId(Utility.getString(cbmDisk, headerOffset + 0x18, DISK_ID_LENGTH));
+		bam.setDiskName(getString(headerOffset + 0x06, DISK_NAME_LENGTH));
+		bam.setDiskId(getString(headerOffset + 0x18, DISK_ID_LENGTH));
 		bam.setDiskDosType(getCbmDiskValue(headerOffset + 2 ));
 		for (int track = 0; track < TRACK_COUNT; track++) {
 			int pos = getBamTrackPos(track);
@@ -183,13 +188,13 @@ public class D88 extends DiskImage {
 		} else {
 			TrackSector dirBlock = getDirBlock();
 			readDirectory(dirBlock.track, dirBlock.sector, FILE_NUMBER_LIMIT);
-			validate(null);
+			deferValidation();
 		}
 	}
 
 	@Override
 	public byte[] getFileData(int number) throws CbmException {
-		if (cbmDisk == null) {
+		if (blockStore == null) {
 			throw new CbmException("getFileData: No disk data exist.");
 		} else if (number >= getCbmFileSize()) {
 			throw new CbmException("getFileData: File number " + number + " does not exist.");
@@ -200,62 +205,16 @@ public class D88 extends DiskImage {
 			throw new CbmException("getFileData: File number " + number + " is deleted.");
 		}
 		feedbackStream.append("getFileData: ").append(number).append(" '").append(getCbmFile(number).getName()).append("'\n");
-		feedbackStream.append("Tracks / Sectors: ");
+		feedbackStream.append(Level.TRACE, "Tracks / Sectors: ");
 		return getData(getCbmFile(number).getTrack(), getCbmFile(number).getSector());
 	}
 
-	@Override
-	protected TrackSector saveFileData(byte[] saveData) {
-		if (isCpmImage()) {
-			feedbackStream.append(NOT_IMPLEMENTED_FOR_CPM);
-			return null;
-		}
-		int usedBlocks = 0;
-		int dataRemain = saveData.length;
-		feedbackStream.append("SaveFileData: ").append(dataRemain).append(" bytes of data.\n");
-		TrackSector firstBlock = findFirstCopyBlock();
-		if (firstBlock != null) {
-			TrackSector block = new TrackSector(firstBlock.track, firstBlock.sector);
-			int thisTrack;
-			int thisSector;
-			int dataPos = 0;
-			while (dataRemain >= 0 && block != null) {
-				feedbackStream.append(dataRemain).append(" bytes remain: block ").append(block.track).append('/').append(block.sector).append('\n');
-				thisTrack = block.track;
-				thisSector = block.sector;
-				markSectorUsed(thisTrack, thisSector);
-				if (dataRemain >= (BLOCK_SIZE - 2)) {
-					block = findNextCopyBlock(block);
-					if (block != null) {
-						fillSector(thisTrack, thisSector, dataPos, block.track, block.sector, saveData);
-						usedBlocks++;
-						dataRemain = dataRemain - (BLOCK_SIZE - 2);
-						dataPos = dataPos + (BLOCK_SIZE - 2);
-					} else {
-						feedbackStream.append("\nsaveFileData: Error: Not enough free sectors on disk. Disk is full.\n");
-						firstBlock = null;
-					}
-				} else {
-					fillSector(thisTrack, thisSector, dataPos, 0, dataRemain + 1, saveData);
-					usedBlocks++;
-					dataRemain = -1;
-				}
-			}
-			if (dataRemain <= 0) {
-				feedbackStream.append("All data written (").append(usedBlocks).append(" blocks).\n");
-			}
-		} else {
-			feedbackStream.append("\nsaveFileData: Error: No free sectors on disk. Disk is full.\n");
-			return null;
-		}
-		return firstBlock;
-	}
-
 	/**
 	 * Find a sector for the first block of the file,
 	 * @return track/sector or null if none is available.
 	 */
-	private TrackSector findFirstCopyBlock() {
+	@Override
+	protected TrackSector findFirstCopyBlock() {
 		TrackSector dirBlock = getDirBlock();
 		TrackSector block = new TrackSector(0, 0);
 		if (geosFormat) {
@@ -299,7 +258,7 @@ public class D88 extends DiskImage {
 					}
 				} while (!found && block.sector <= 58);	// Repeat until there is a free sector or run off the track.
 				if (!found) {
-					feedbackStream.append("firstCopyBlock: Error: "+block.track +" should have free sectors but didn't.\n");
+					feedbackStream.append(Level.ERROR, "firstCopyBlock: Error: "+block.track +" should have free sectors but didn't.\n");
 					block = null;
 				}
 			} else {
@@ -310,7 +269,7 @@ public class D88 extends DiskImage {
 		if (block != null) {
 			feedbackStream.append("firstCopyBlock: The first block will be ").append(block.track).append('/').append(block.sector).append(".\n");
 		} else {
-			feedbackStream.append("firstCopyBlock: Error: Disk is full!\n");
+			feedbackStream.append(Level.ERROR, "firstCopyBlock: Error: Disk is full!\n");
 		}
 		return block;
 	}
@@ -320,7 +279,8 @@ public class D88 extends DiskImage {
 	 * @param block
 	 * @return sector found, null if no more sectors left
 	 */
-	private TrackSector findNextCopyBlock(TrackSector block) {
+	@Override
+	protected TrackSector findNextCopyBlock(TrackSector block) {
 		TrackSector dirBlock = getDirBlock();
 		boolean found;
 		if ((block.track == 0) || (block.track >= TRACK_COUNT)) {
@@ -375,7 +335,7 @@ public class D88 extends DiskImage {
 				if (!found) {
 					// According to the free sector counter in BAM, this track should have free sectors, but it didn't.
 					// Try a different track. Obviously, this disk needs to be validated.
-					feedbackStream.append("Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
+					feedbackStream.append(Level.WARNING, "Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
 					if (block.track > getFirstTrack() && block.track <= dirBlock.track) {
 						block.track = block.track - 1 ;
 					} else if (block.track < TRACK_COUNT && block.track > dirBlock.track) {
@@ -430,8 +390,8 @@ public class D88 extends DiskImage {
 	protected void setDiskName(String newDiskName, String newDiskID) {
 		feedbackStream.append("setDiskName: '").append(newDiskName).append("', '").append(newDiskID).append("'\n");
 		int headerPos = getSectorOffset(getHeaderBlock());
-		Utility.setPaddedString(cbmDisk, headerPos + 0x06, newDiskName, DISK_NAME_LENGTH);
-		Utility.setPaddedString(cbmDisk, headerPos + 0x18, newDiskID, DISK_ID_LENGTH);
+		setPaddedString(headerPos + 0x06, newDiskName, DISK_NAME_LENGTH);
+		setPaddedString(headerPos + 0x18, newDiskID, DISK_ID_LENGTH);
 	}
 
 	@Override
@@ -457,7 +417,7 @@ public class D88 extends DiskImage {
 
 	@Override
 	public boolean saveNewImage(File file, String newDiskName, String newDiskID) {
-		cbmDisk = new byte[D88_SIZE];
+		setImageData(new byte[D88_SIZE]);
 		Arrays.fill(cbmDisk, (byte) 0);
 		if (!isCpmImage()) {
 			// BadSectorBlock (0/2), ?? (00/ff), dirBlock (38/10), headerBlock (38/20), BAM (1/1)
@@ -556,13 +516,14 @@ public class D88 extends DiskImage {
 		}
 		cbmFile.setDirTrack(0);
 		cbmFile.setDirSector(-1);
-		int dirEntryNumber = findFreeDirEntry();
+		var dirBlock = getDirBlock();
+		int dirEntryNumber = findFreeDirEntry(dirBlock.track, dirBlock.sector, FILE_NUMBER_LIMIT);
 		if (dirEntryNumber != -1 && setNewDirLocation(cbmFile, dirEntryNumber)) {
 			writeSingleDirectoryEntry(cbmFile, getDirectoryEntryPosition(dirEntryNumber));
 			filesUsedCount++;	// increase the maximum file numbers
 			return true;
 		} else {
-			feedbackStream.append("Error: Could not find a free sector on track ").append(getDirBlock().track).append(" for new directory entries.\n");
+			feedbackStream.append(Level.ERROR, "Error: Could not find a free sector on track ").append(getDirBlock().track).append(" for new directory entries.\n");
 			return false;
 		}
 	}
@@ -577,7 +538,7 @@ public class D88 extends DiskImage {
 			feedbackStream.append("Not yet implemented for CP/M format.\n");
 		} else {
 			feedbackStream.append("writeSingleDirectoryEntry: dirpos=").append(cbmFile.getDirPosition()).append('\n');
-			cbmFile.toBytes(cbmDisk, where);
+			writeCbmFile(cbmFile, where);
 		}
 	}
 
@@ -615,7 +576,7 @@ public class D88 extends DiskImage {
 	 */
 	private boolean setNewDirLocation(CbmFile cbmFile, int dirEntryNumber){
 		if (dirEntryNumber < 0 || dirEntryNumber >= FILE_NUMBER_LIMIT) {
-			feedbackStream.append( "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
+			feedbackStream.append(Level.ERROR, "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
 			return false;
 		} else if ( (dirEntryNumber & 0x07) != 0) {
 			// If this is not the eighth entry we are lucky and do not need to do anything...
@@ -647,7 +608,7 @@ public class D88 extends DiskImage {
 					setCbmDiskValue(getSectorOffset(nextTrack, nextSector) + 0x01, -1);
 					feedbackStream.append("Allocated additonal directory sector (").append(nextTrack).append('/').append(nextSector).append(") for dir entry ").append(dirEntryNumber).append(".\n");
 				} else {
-					feedbackStream.append( "Error: no more directory sectors. Can't add file.\n");
+					feedbackStream.append(Level.ERROR, "Error: no more directory sectors. Can't add file.\n");
 					return false;
 				}
 			}
@@ -658,39 +619,6 @@ public class D88 extends DiskImage {
 		return true;
 	}
 
-	/**
-	 * Find first free directory entry.
-	 * Looks through the allocated directory sectors.
-	 * @return number of next free directory entry, or -1 if none is free.
-	 */
-	private int findFreeDirEntry() {
-		TrackSector ts = getDirBlock();
-		int track = ts.track;
-		int sector = ts.sector;
-		int dirPosition = 0;
-		do {
-			int dataPosition = getSectorOffset(track, sector);
-			for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i++) {
-				int fileType = cbmDisk[dataPosition + (i * DIR_ENTRY_SIZE) + 0x02] & 0xff;
-				if (fileType  == 0) {
-					// Free or scratched entry
-					return dirPosition;
-				}
-				dirPosition++;
-			}
-			track = getCbmDiskValue(dataPosition + 0);
-			sector = getCbmDiskValue(dataPosition + 1);
-		} while (track != 0);
-		if (dirPosition < FILE_NUMBER_LIMIT + 2) {
-			// next entry, on a new dir sector. not yet hit max number of entries.
-			return dirPosition;
-		} else {
-			// Hit max number of file entries. can't add more.
-			feedbackStream.append("Error: No free directory entry avaiable.\n");
-			return -1;
-		}
-	}
-
 	@Override
 	public BamTrack[] getBamTable() {
 		BamTrack[] bamEntry = new BamTrack[TRACK_COUNT];
@@ -731,14 +659,6 @@ public class D88 extends DiskImage {
 		return getSectorOffset(ts.track, ts.sector);
 	}
 
-	@Override
-	public int getSectorOffset(int track, int sector) {
-		if (sector > 32) {
-			sector -= 6;
-		}
-		return (track * MAX_SECTORS + sector - 1) * BLOCK_SIZE;
-	}
-
 	@Override
 	public void deleteFile(CbmFile cbmFile) throws CbmException {
 		if (isCpmImage()) {
@@ -757,7 +677,7 @@ public class D88 extends DiskImage {
 				freeBlocks(cbmFile.getRelTrack(), cbmFile.getRelSector());
 			}
 		} else {
-			feedbackStream.append("Error: Failed to delete ").append(cbmFile.getName());
+			feedbackStream.append(Level.ERROR, "Error: Failed to delete ").append(cbmFile.getName());
 		}
 	}
 
@@ -766,8 +686,20 @@ public class D88 extends DiskImage {
 		return 0;
 	}
 
+	/**
+	 * Sector numbers are 1-26 and 33-58, which does not fit the free block bitmap, so use free counters read from BAM.
+	 * Note: counters in CbmBam are stored with track number plus one.
+	 * @param trackNumber the track number plus one
+	 * @return when true, there is at least one free sector on the track.
+	 */
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean isTrackFree(int trackNumber) {
+		readBAM();
+		return bam.getFreeSectors(trackNumber) > 0;
+	}
+
+	@Override
+	protected boolean readSectorFree(int track, int sector) {
 		int pos;
 		if (track == 0) {
 			return false;
@@ -781,7 +713,7 @@ public class D88 extends DiskImage {
 	}
 
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		int trackPos;
 		int pos;
 		if (sector <= 32) {
@@ -797,7 +729,7 @@ public class D88 extends DiskImage {
 	}
 
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		int trackPos;
 		int pos;
 		if (sector <= 32) {
@@ -820,17 +752,4 @@ public class D88 extends DiskImage {
 		return getFirstSector();
 	}
 
-	@Override
-	public TrackSector getSector(int offset) {
-		if (offset < 0 || offset >= D88_SIZE) {
-			return null;
-		}
-		int t = offset / (26 * 2 * BLOCK_SIZE);
-		int s = ((offset - t * 26 * 2 * BLOCK_SIZE) / BLOCK_SIZE) + 1;
-		if (s > 26) {
-			s += 6;
-		}
-		return new TrackSector(t,s);
-	}
-
 }
@@ -6,10 +6,10 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.IntStream;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.d64.ValidationError.Error;
 import droid64.gui.BAMPanel.BamState;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**
 * Created on 2024-01-10
@@ -51,6 +51,10 @@ public class D90 extends DiskImage {
 	public static final int D9060_SIZE = 5013504;
 	/** D90 D9090 size (153 * 32 * 6 * 256 : 29376 blocks) */
 	public static final int D9090_SIZE = 7520256;
+	/** Layout of tracks and sectors of D9060 */
+	static final DiskGeometry GEOMETRY_9060 = DiskGeometry.of(0, TRACK_COUNT, TRACK_SECTORS * D9060_HEAD_COUNT, D9060_SIZE, null);
+	/** Layout of tracks and sectors of D9090 */
+	static final DiskGeometry GEOMETRY_9090 = DiskGeometry.of(0, TRACK_COUNT, TRACK_SECTORS * D9090_HEAD_COUNT, D9090_SIZE, null);
 	
 	private static final int DIR_INTERLEAVE = 3;
 	private static final int DATA_INTERLEAVE = 10;
@@ -74,13 +78,14 @@ public class D90 extends DiskImage {
 	 * @param imageFormat
 	 * @param consoleStream
 	 */
-	public D90(DiskImageType imageFormat, ConsoleStream consoleStream) {
+	public D90(DiskImageType imageFormat, FeedbackSink consoleStream) {
 		this.feedbackStream = consoleStream;
 		updateImageType(imageFormat);
 	}
 
 	private void updateImageType(DiskImageType imageFormat) {
 		this.imageFormat  = imageFormat;
+		this.geometry = DiskGeometry.get(imageFormat);
 		this.d90size = imageFormat == DiskImageType.D90_9090 ? D9090_SIZE : D9060_SIZE;
 		this.headCount = imageFormat == DiskImageType.D90_9090 ? D9090_HEAD_COUNT : D9060_HEAD_COUNT;
 		bam = new CbmBam(TRACK_COUNT, BYTES_PER_BAM_GROUP * headCount - 1);		
@@ -92,10 +97,10 @@ public class D90 extends DiskImage {
 	 * @param imageData
 	 * @param consoleStream
 	 */
-	public D90(DiskImageType imageFormat, byte[] imageData, ConsoleStream consoleStream) {
+	public D90(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
 		this.feedbackStream = consoleStream;
 		updateImageType(imageData.length == D9060_SIZE ? DiskImageType.D90_9060 : DiskImageType.D90_9090 );
-		cbmDisk = imageData;
+		setImageData(imageData);
 	}
 
 	@Override
@@ -121,7 +126,7 @@ public class D90 extends DiskImage {
 	@Override
 	public int getBlocksFree() {
 		int blocksFree = 0;
-		if (cbmDisk != null) {			
+		if (blockStore != null) {			
 			for (int track = 1; track < getTrackCount(); track++) {
 				blocksFree = blocksFree + bam.getFreeSectors(track+1);
 			}
@@ -141,8 +146,8 @@ public class D90 extends DiskImage {
 	public void readBAM() {
 		getBamSectors();
 		int headerOffset = getSectorOffset(getHeaderBlock());
-		bam.setDiskName(Utility.getString(cbmDisk, headerOffset + 0x06, DISK_NAME_LENGTH));
-		bam.setDiskId(Utility.getString(cbmDisk, headerOffset + 0x18, DISK_ID_LENGTH));
+		bam.setDiskName(getString(headerOffset + 0x06, DISK_NAME_LENGTH));
+		bam.setDiskId(getString(headerOffset + 0x18, DISK_ID_LENGTH));
 		bam.setDiskDosType(getCbmDiskValue(headerOffset + 2 ));
 		
 		for (int track = 0; track < TRACK_COUNT; track++) {
@@ -172,7 +177,7 @@ public class D90 extends DiskImage {
 
 	@Override
 	public byte[] getFileData(int number) throws CbmException {
-		if (cbmDisk == null) {
+		if (blockStore == null) {
 			throw new CbmException("getFileData: No disk data exist.");
 		} else if (number >= getCbmFileSize()) {
 			throw new CbmException("getFileData: File number " + number + " does not exist.");
@@ -183,62 +188,16 @@ public class D90 extends DiskImage {
 			throw new CbmException("getFileData: File number " + number + " is deleted.");
 		}
 		feedbackStream.append("getFileData: ").append(number).append(" '").append(getCbmFile(number).getName()).append("'\n");
-		feedbackStream.append("Tracks / Sectors: ");
+		feedbackStream.append(Level.TRACE, "Tracks / Sectors: ");
 		return getData(getCbmFile(number).getTrack(), getCbmFile(number).getSector());
 	}
 
-	@Override
-	protected TrackSector saveFileData(byte[] saveData) {
-		if (isCpmImage()) {
-			feedbackStream.append(NOT_IMPLEMENTED_FOR_CPM);
-			return null;
-		}
-		int usedBlocks = 0;
-		int dataRemain = saveData.length;
-		feedbackStream.append("SaveFileData: ").append(dataRemain).append(" bytes ("+((dataRemain+253)/254)+" blocks) of data.\n");
-		TrackSector firstBlock = findFirstCopyBlock(DATA_INTERLEAVE);
-		if (firstBlock == null) {
-			feedbackStream.append("\nsaveFileData: Error: No free sectors on disk. Disk is full.\n");
-			return null;
-		}
-		var block = new TrackSector(firstBlock.track, firstBlock.sector);
-		int thisTrack;
-		int thisSector;
-		int dataPos = 0;
-		while (dataRemain >= 0 && block != null) {
-			feedbackStream.append(dataRemain).append(" bytes remain: block ").append(block.track).append('/').append(block.sector).append('\n');
-			thisTrack = block.track;
-			thisSector = block.sector;
-			markSectorUsed(thisTrack, thisSector);
-			if (dataRemain >= (BLOCK_SIZE - 2)) {
-				block = findNextCopyBlock(block, DATA_INTERLEAVE, false);
-				if (block != null) {
-					fillSector(thisTrack, thisSector, dataPos, block.track, block.sector, saveData);
-					usedBlocks++;
-					dataRemain = dataRemain - (BLOCK_SIZE - 2);
-					dataPos = dataPos + (BLOCK_SIZE - 2);
-				} else {
-					feedbackStream.append("\nsaveFileData: Error: Not enough free sectors on disk. Disk is full.\n");
-					firstBlock = null;
-				}
-			} else {
-				fillSector(thisTrack, thisSector, dataPos, 0, dataRemain + 1, saveData);
-				usedBlocks++;
-				dataRemain = -1;
-			}
-		}
-		if (dataRemain <= 0) {
-			feedbackStream.append("All data written ("+usedBlocks+" blocks).\n");
-		}
-		return firstBlock;
-	}
-
 	@Override
 	protected void setDiskName(String newDiskName, String newDiskID) {
 		feedbackStream.append("setDiskName: '").append(newDiskName).append("', '").append(newDiskID).append("'\n");
 		int headerPos = getSectorOffset(getHeaderBlock());
-		Utility.setPaddedString(cbmDisk, headerPos + 0x06, newDiskName, DISK_NAME_LENGTH);
-		Utility.setPaddedString(cbmDisk, headerPos + 0x18, newDiskID, DISK_ID_LENGTH);
+		setPaddedString(headerPos + 0x06, newDiskName, DISK_NAME_LENGTH);
+		setPaddedString(headerPos + 0x18, newDiskID, DISK_ID_LENGTH);
 	}
 
 	@Override
@@ -275,12 +234,12 @@ public class D90 extends DiskImage {
 			return ;
 		}
 		feedbackStream.append("writeSingleDirectoryEntry: dirpos=").append(cbmFile.getDirPosition()).append('\n');
-		cbmFile.toBytes(cbmDisk, where);
+		writeCbmFile(cbmFile, where);
 	}
 	
 	@Override
 	public boolean saveNewImage(File file, String newDiskName, String newDiskID) {
-		cbmDisk = new byte[d90size];
+		setImageData(new byte[d90size]);
 		Arrays.fill(cbmDisk, (byte) 0);
 		int[] bamBlockTracks = {1,9,17,25,33,41,49,57,65,73,81,89,97,105,113,121,129,137,145,152};
 		bamSectors.clear();
@@ -346,7 +305,8 @@ public class D90 extends DiskImage {
 		}
 		cbmFile.setDirTrack(0);
 		cbmFile.setDirSector(-1);
-		int dirEntryNumber = findFreeDirEntry();
+		var dirBlock = getDirBlock();
+		int dirEntryNumber = findFreeDirEntry(dirBlock.track, dirBlock.sector, D9090_FILE_NUMBER_LIMIT);
 		if (dirEntryNumber != -1 && setNewDirLocation(cbmFile, dirEntryNumber)) {
 			int entryPos = getDirectoryEntryPosition(dirEntryNumber);
 			if (entryPos != -1) {
@@ -355,7 +315,7 @@ public class D90 extends DiskImage {
 				return true;
 			}
 		} 
-		feedbackStream.append("Error: Could not find a free directory sector for new directory entries.\n");
+		feedbackStream.append(Level.ERROR, "Error: Could not find a free directory sector for new directory entries.\n");
 		return false;
 	}
 
@@ -391,7 +351,7 @@ public class D90 extends DiskImage {
 	 */
 	private boolean setNewDirLocation(CbmFile cbmFile, int dirEntryNumber){
 		if (dirEntryNumber < 0 || dirEntryNumber >= D9090_FILE_NUMBER_LIMIT) {
-			feedbackStream.append( "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
+			feedbackStream.append(Level.ERROR, "Error: Invalid directory entry number ").append(dirEntryNumber).append(" at setNewDirectoryLocation.\n");
 			return false;
 		} else if ( (dirEntryNumber & 0x07) != 0) {
 			// If this is not the eighth entry we are lucky and do not need to do anything...
@@ -416,7 +376,7 @@ public class D90 extends DiskImage {
 					feedbackStream.append("Allocated additonal directory sector (").append(nextDirBlock)
 						.append(") for dir entry ").append(dirEntryNumber).append(".\n");
 				} else {
-					feedbackStream.append( "Error: no more directory sectors. Can't add file.\n");
+					feedbackStream.append(Level.ERROR, "Error: no more directory sectors. Can't add file.\n");
 					return false;
 				}
 			}
@@ -426,36 +386,6 @@ public class D90 extends DiskImage {
 		return true;
 	}
 	
-	/**
-	 * Find first free directory entry.
-	 * Looks through the allocated directory sectors.
-	 * @return number of next free directory entry, or -1 if none is free.
-	 */
-	private int findFreeDirEntry() {
-		var dirBlock = getDirBlock();
-		int dirPosition = 0;
-		do {
-			int dataPosition = getSectorOffset(dirBlock);
-			for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i++) {
-				int fileType = cbmDisk[dataPosition + (i * DIR_ENTRY_SIZE) + 0x02] & 0xff;
-				if (fileType  == 0) {
-					// Free or scratched entry
-					return dirPosition;
-				}
-				dirPosition++;
-			}
-			dirBlock = new TrackSector(getCbmDiskValue(dataPosition + 0x00),  getCbmDiskValue(dataPosition + 0x01));
-		} while (dirBlock.track != 0);
-		if (dirPosition < D9090_FILE_NUMBER_LIMIT + 2) {
-			// next entry, on a new dir sector. not yet hit max number of entries.
-			return dirPosition;
-		} else {
-			// Hit max number of file entries. can't add more.
-			feedbackStream.append("Error: No free directory entry avaiable.\n");
-			return -1;
-		}
-	}
-	
 	@Override
 	public BamTrack[] getBamTable() {
 		BamTrack[] bamEntry = new BamTrack[TRACK_COUNT];
@@ -486,11 +416,6 @@ public class D90 extends DiskImage {
 			bamEntry[trk].bam[sec] = BamState.FREE;
 		}
 	}
-	
-	@Override
-	public int getSectorOffset(int track, int sector) {
-		return (track * TRACK_SECTORS * headCount + sector ) * BLOCK_SIZE;
-	}
 
 	@Override
 	public void deleteFile(CbmFile cbmFile) throws CbmException {
@@ -510,146 +435,52 @@ public class D90 extends DiskImage {
 				freeBlocks(cbmFile.getRelTrack(), cbmFile.getRelSector());
 			}
 		} else {
-			feedbackStream.append("Error: Failed to delete ").append(cbmFile.getName());
+			feedbackStream.append(Level.ERROR, "Error: Failed to delete ").append(cbmFile.getName());
 		}
 	}
 
 	@Override
 	public Integer validate(List<Error> repairList) {
 		getValidationErrorList().clear();
-
-		// reset with nulls
-		var bamEntry = new Boolean[getTrackCount() + 1][getMaxSectorCount()];
-		for (int trk = 0; trk < bamEntry.length; trk++) {
-			Arrays.fill(bamEntry[trk], null);
-		}
-
-		errors = 0;
-		warnings = 0;
-
+		var validator = getValidator();
 		// read all the chains of BAM/directory blocks. Mark each block as used and also check that
 		// the block is not already marked as used. It would mean a block is referred to twice.
 		// first check the chain of directory blocks.
 		var dirBlock = getDirBlock();
-		var dirErrorList = new ArrayList<TrackSector>();
-		do {
-			int dirBlkPos = getSectorOffset(dirBlock);
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(dirBlock));
-				break;
-			} else if (dirBlock.track >= bamEntry.length || dirBlock.sector >= bamEntry[dirBlock.track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_OUTSIDE_IMAGE.getError(dirBlock));
-				errors++;
-				break;
-			} else if (bamEntry[dirBlock.track][dirBlock.sector] == null) {
-				bamEntry[dirBlock.track][dirBlock.sector] = Boolean.FALSE;
-			} else {
-				errors++;
-				var thisBlock = new TrackSector(dirBlock);
-				if (dirErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_SEEN.getError(dirBlock));
-					break;
-				} else {
-					dirErrorList.add(thisBlock);
-				}
-				if (bamEntry[dirBlock.track][dirBlock.sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_USED.getError(dirBlock));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_DIR_SECTOR_ALREADY_FREE.getError(dirBlock));
-				}
-			}
-			dirBlock.track = getCbmDiskValue(dirBlkPos + 0x00);
-			dirBlock.sector = getCbmDiskValue(dirBlkPos + 0x01);
-		} while (dirBlock.track != 0x00);
-
+		validator.validateDirChain(dirBlock.track, dirBlock.sector);
 		// follow each file and check data blocks
-		for (int n=0; n < getCbmFileSize(); n++) {
-			var cf = getCbmFile(n);
-			var startBlock = new TrackSector(cf.getTrack(), cf.getSector());
-			if (cf.getFileType() == FileType.CBM) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_PARTITIONS_UNSUPPORTED.getError(startBlock, cf.getName()));
-				errors++;
-			} else if (cf.getFileType() != FileType.DEL&&startBlock.track != 0) {
-					validateFileData(startBlock, bamEntry, n);
-					if (cf.getFileType() == FileType.REL && cf.getRelTrack() != 0) {
-						// Follow REL file side sectors
-						validateFileData(new TrackSector(cf.getRelTrack(), cf.getRelSector()), bamEntry, n);
-					}
-			}
-		}
-
+		validator.validateFiles();
 		// iterate BAM and verify used blocks is matching what we got when following data chains above.
+		// Unless they are to be repaired, BAM sectors and header are not reported as unused blocks.
+		boolean reportReserved = repairList != null && repairList.contains(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED);
 		List<TrackSector> bamList = getBamSectors();
+		var headerBlock = getHeaderBlock();
 		for (int trk = 1; trk < getTrackCount(); trk++) {
 			for (int sec = 0; sec < getMaxSectors(trk); sec++) {
-				var block = new TrackSector(trk, sec);
-				var bamFree = Boolean.valueOf(isSectorFree(block));
-				var fileFree = bamEntry[trk][sec];
-				if (fileFree == null && bamFree || bamFree.equals(fileFree)) {
-					// no action
-				} else if (Boolean.FALSE.equals(fileFree) && !Boolean.FALSE.equals(bamFree)) {
-					if (repairList != null && repairList.contains(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE)) {
-						markSectorUsed(block);
-						feedbackStream.append("Info: marked sector ").append(block).append(" as used.\n");
-					} else {
-						getValidationErrorList().add(ValidationError.Error.ERROR_USED_SECTOR_IS_FREE.getError(block));
-						errors++;
-					}
-				} else if (trk != 0 && trk != 0xff){
-					if (repairList != null && repairList.contains(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED)) {
-						markSectorFree(block);
-						feedbackStream.append("Info: marked sector ").append(block).append(" as free.\n");
-					} else {
-						if (!bamList.contains(block) && !block.equals(getHeaderBlock())) {
-							getValidationErrorList().add(ValidationError.Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED.getError(block));
-							warnings++;
-						}
-					}
-				}
+				boolean bamFree = isSectorFree(trk, sec);
+				boolean reserved = !reportReserved && !bamFree && isReservedBlock(trk, sec, bamList, headerBlock);
+				validator.validateBam(trk, sec, bamFree, reserved, repairList);
 			}
 		}
+		errors = validator.getErrors();
+		warnings = validator.getWarnings();
 		return errors + warnings;
 	}
 
-	private void validateFileData(TrackSector startBlock, Boolean[][] bamEntry, int fileNum) {
-		int track = startBlock.track;
-		int sector = startBlock.sector;
-		List<TrackSector> fileErrorList = new ArrayList<>();
-		do {
-			if (errors > 1000) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_TOO_MANY.getError(track, sector));
-				return;
-			} else if (track >= bamEntry.length || sector >= bamEntry[track].length) {
-				getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_OUTSIDE_IMAGE.getError(track, sector, getCbmFile(fileNum).getName()));
-				errors++;
-				return;
-			} else if (bamEntry[track][sector] == null) {
-				bamEntry[track][sector] = Boolean.FALSE;	// OK
-			} else {
-				errors++;
-				// Detect cyclic references by keeping track of all sectors used by one file and check if a sector is already seen.
-				var thisBlock = new TrackSector(track, sector);
-				if (fileErrorList.contains(thisBlock)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_SEEN.getError(track, sector, getCbmFile(fileNum).getName()));
-					return;
-				} else {
-					fileErrorList.add(thisBlock);
-				}
-				if (bamEntry[track][sector].equals(Boolean.FALSE)) {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_USED.getError(track, sector));
-				} else {
-					getValidationErrorList().add(ValidationError.Error.ERROR_FILE_SECTOR_ALREADY_FREE.getError(track, sector));
-				}
+	private boolean isReservedBlock(int track, int sector, List<TrackSector> bamList, TrackSector headerBlock) {
+		if (headerBlock.track == track && headerBlock.sector == sector) {
+			return true;
+		}
+		for (var block : bamList) {
+			if (block.track == track && block.sector == sector) {
+				return true;
 			}
-			int tmpTrack = track;
-			int tmpSector = sector;
-			track = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x00);
-			sector = getCbmDiskValue(getSectorOffset(tmpTrack, tmpSector) + 0x01);
-		} while (track != 0);
+		}
+		return false;
 	}
-	
+
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean readSectorFree(int track, int sector) {
 		try {
 			int trackPos = getBamTrackHeadPos(track, sector);
 			int pos = ((sector % TRACK_SECTORS) / 8) + 1;		
@@ -661,7 +492,7 @@ public class D90 extends DiskImage {
 	}
 
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		try {
 			int trackPos = getBamTrackHeadPos(track, sector);
 			int pos = ((sector % TRACK_SECTORS) / 8) + 1;
@@ -673,7 +504,7 @@ public class D90 extends DiskImage {
 	}
 
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		try {
 			int trackPos = getBamTrackHeadPos(track, sector);
 			int pos = ((sector % TRACK_SECTORS) / 8) + 1;
@@ -692,34 +523,27 @@ public class D90 extends DiskImage {
 		return getFirstSector();
 	}
 
-	@Override
-	public TrackSector getSector(int offset) {
-		int t = offset / (TRACK_SECTORS * headCount * BLOCK_SIZE);
-		int s = ((offset - t * TRACK_SECTORS * headCount * BLOCK_SIZE) / BLOCK_SIZE);
-		return new TrackSector(t, s);
-	}
-
 	private List<TrackSector> getBamSectors() {
 		try {
 			bamSectors.clear();
-			var block = new TrackSector(cbmDisk[0x08] & 0xff, cbmDisk[0x09] & 0xff);
+			var block = new TrackSector(getCbmDiskValue(0x08), getCbmDiskValue(0x09));
 			while (block.track >= 0 && block.sector != 0xff) {
 				if (bamSectors.contains(block)) {
 					throw new BadSectorException("Cyclic BAM sector", block);
 				}
 				bamSectors.add(block);
 				int offset = getSectorOffset(block);
-				block = new TrackSector(cbmDisk[offset + 0x00] & 0xff, cbmDisk[offset + 0x01] & 0xff);			
+				block = new TrackSector(getCbmDiskValue(offset + 0x00), getCbmDiskValue(offset + 0x01));			
 			}
 		} catch (IndexOutOfBoundsException | BadSectorException e) {
 			// ignore
-			feedbackStream.append("Error:" + e.getMessage());
+			feedbackStream.append(Level.ERROR, "Error:" + e.getMessage());
 		}
 		return bamSectors;
 	}
 	
 	private TrackSector getHeaderBlock() {
-		return new TrackSector(cbmDisk[0x06] & 0xff, cbmDisk[0x07] & 0xff);
+		return new TrackSector(getCbmDiskValue(0x06), getCbmDiskValue(0x07));
 	}
 
 	private int getSectorOffset(TrackSector ts) {
@@ -748,8 +572,8 @@ public class D90 extends DiskImage {
 	private int getBamTrackPos(int track) throws BadSectorException {
 		for (var b : bamSectors) {
 			int o = getSectorOffset(b);
-			int p0 = cbmDisk[o + 0x04] & 0xff;
-			int p1 = cbmDisk[o + 0x05] & 0xff;
+			int p0 = getCbmDiskValue(o + 0x04);
+			int p1 = getCbmDiskValue(o + 0x05);
 			if (track >= p0 && track < p1) {
 				int x = track - p0;				
 				return o + 0x10 + x * BYTES_PER_BAM_GROUP * headCount;
@@ -761,8 +585,7 @@ public class D90 extends DiskImage {
 	private int getBamTrackHeadPos(int track, int sector) throws BadSectorException {
 		return getBamTrackPos(track) + (sector/TRACK_SECTORS) * BYTES_PER_BAM_GROUP;
 	}
-	
-	
+
 	@Override
 	public String toString() {
 		var buf = new StringBuilder()
@@ -784,9 +607,19 @@ public class D90 extends DiskImage {
 	}
 	
 	private TrackSector getDirBlock() {
-		return new TrackSector(cbmDisk[0x04] & 0xff, cbmDisk[0x05] & 0xff);
+		return new TrackSector(getCbmDiskValue(0x04), getCbmDiskValue(0x05));
 	}
 	
+	@Override
+	protected TrackSector findFirstCopyBlock() {
+		return findFirstCopyBlock(DATA_INTERLEAVE);
+	}
+
+	@Override
+	protected TrackSector findNextCopyBlock(TrackSector block) {
+		return findNextCopyBlock(block, DATA_INTERLEAVE, false);
+	}
+
 	/**
 	 * Find a sector for the first block of the file,
 	 * @return track/sector or null if none is available.
@@ -807,27 +640,21 @@ public class D90 extends DiskImage {
 				block.track = dirTrack - distance;
 				if (block.track >= 1 && block.track < TRACK_COUNT && block.track != dirTrack) {
 					// Check track below the directory track
-					found = isTrackFree(block.track + 1);
+					found = isTrackFree(block.track);
 				}
 				if (!found) {
 					block.track = dirTrack + distance;
 					if (block.track < TRACK_COUNT && block.track != dirTrack) {
 						// Check track above the directory track
-						found = isTrackFree(block.track + 1);
+						found = isTrackFree(block.track);
 					}
 				}
 				distance++;	// Step further away from the directory track and try again.
 			}
 			if (found) {
 				// Found track with at least one free sector. Find a free sector in it.
-				final int maxSector = TRACK_SECTORS * headCount;	// Determine how many sectors there are on that track.
-				block.sector = 0;									// Start off with sector zero.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try next sector.
-					}
-				} while (!found && block.sector < maxSector);	// Repeat until there is a free sector or run off the track.			
+				block.sector = findFreeSector(block.track, 0);	// Start off with sector zero.
+				found = block.sector >= 0;
 			}
 			if (!found) {
 				// no track with free sectors, or the track which should have a free sector didn't.
@@ -837,12 +664,11 @@ public class D90 extends DiskImage {
 		if (block != null) {
 			feedbackStream.append("firstCopyBlock: The first block will be ").append(block).append("\n");
 		} else {
-			feedbackStream.append("firstCopyBlock: Error: Disk is full!\n");
+			feedbackStream.append(Level.ERROR, "firstCopyBlock: Error: Disk is full!\n");
 		}
 		return block;
 	}
-	
-	
+
 	/**
 	 * Find a sector for the next block of the file, using variables Track and Sector.
 	 * @param block
@@ -863,7 +689,7 @@ public class D90 extends DiskImage {
 		int curTrack = block.track;		// Remember the current track number.
 		while (!found && tries > 0) {
 			// Keep trying until we find a free sector or run out of tries.
-			if (isTrackFree(block.track+1)) {
+			if (isTrackFree(block.track)) {
 
 				// If there's, at least, one free sector on the track then get searching.
 				if (block.track == curTrack || !geosFormat) {
@@ -886,20 +712,15 @@ public class D90 extends DiskImage {
 						block.sector--;
 					}
 				}
-				int curSector = block.sector;	// Remember the first sector to be checked.
-				do {
-					found = isSectorFree(block.track, block.sector);
-					if (!found) {
-						block.sector++;	// Try next sector
-					}
-					if (block.sector >= maxSector) {
-						block.sector = 0;	// Went off track, wrap around to sector 0.
-					}
-				} while (!found && block.sector != curSector);	// Continue until finding a free sector, or we are back on the curSector again.
+				int freeSector = findFreeSector(block.track, block.sector);	// Search from current sector, wrapping around to sector 0.
+				found = freeSector >= 0;
+				if (found) {
+					block.sector = freeSector;
+				}
 				if (!found) {
 					// According to the free sector counter in BAM, this track should have free sectors, but it didn't.
 					// Try a different track. Obviously, this disk needs to be validated.
-					feedbackStream.append("Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
+					feedbackStream.append(Level.WARNING, "Warning: Track ").append(block.track).append(" should have at least one free sector, but didn't.");
 					if (block.track > 1 && block.track <= dirTrack) {
 						block.track = block.track - 1 ;
 					} else if (block.track < TRACK_COUNT && block.track > dirTrack) {
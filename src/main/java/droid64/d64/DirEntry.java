@@ -75,7 +75,7 @@ public class DirEntry implements Serializable {
 		isFile = !file.isDirectory();
 		type = file.isDirectory() ? "DIR" : "FILE";
 		flags =	(file.canRead() ? "r" : "-") + (file.canWrite() ? "w" : "-") + (file.canExecute() ? "x" : "-");
-		isImageFile = isFile && Setting.isImageFileName(file);
+		isImageFile = isFile && Setting.isImageFileName(name);
 	}
 
 	public DirEntry(File zipFile, ZipEntry zipEntry, int fileNum) {
@@ -83,7 +83,7 @@ public class DirEntry implements Serializable {
 		name = zipEntry.getName();
 		blocks = (int) zipEntry.getSize();
 		isFile = !zipEntry.isDirectory();
-		isImageFile = isFile && Setting.isImageFileName(new File(name));
+		isImageFile = isFile && Setting.isImageFileName(name);
 		flags = zipEntry.getComment() != null ? zipEntry.getComment() : Utility.EMPTY;
 		this.zipFile = zipFile;
 	}
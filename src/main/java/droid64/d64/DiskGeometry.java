@@ -0,0 +1,174 @@
+package droid64.d64;
+
+import java.io.Serializable;
+
+/**
+ * Layout of the blocks of a disk image type.<br>
+ * Immutable tables of image offset and number of sectors per track, and track/sector of each block in the image,
+ * so going between track/sector and image offset is an array lookup instead of arithmetic or a search per format.
+ */
+public final class DiskGeometry implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Offset of a block which is not on the disk. Stays negative when sector and position within block are added. */
+	public static final int OUTSIDE = -DiskImage.BLOCK_SIZE * DiskImage.BLOCK_SIZE * 2;
+
+	/** Geometry of images without tracks and sectors */
+	public static final DiskGeometry NONE = new DiskGeometry(new int[0], new int[0], null, 0);
+
+	/** Offset in image of sector zero on each track */
+	private final int[] trackOffset;
+	/** Number of sectors on each track */
+	private final int[] trackSectors;
+	/** Position within track of each sector number, or null when the sector number is the position */
+	private final int[] sectorIndex;
+	/** Track of each block in image */
+	private final int[] blockTrack;
+	/** Sector of each block in image */
+	private final int[] blockSector;
+	private final int size;
+
+	private DiskGeometry(int[] trackOffset, int[] trackSectors, int[] sectorIndex, int size) {
+		this.trackOffset = trackOffset;
+		this.trackSectors = trackSectors;
+		this.sectorIndex = sectorIndex;
+		this.size = size;
+		int blocks = size / DiskImage.BLOCK_SIZE;
+		this.blockTrack = new int[blocks];
+		this.blockSector = new int[blocks];
+		for (int t = 0; t < trackOffset.length; t++) {
+			if (trackOffset[t] == OUTSIDE) {
+				continue;
+			}
+			int firstBlock = trackOffset[t] / DiskImage.BLOCK_SIZE;
+			if (sectorIndex == null) {
+				for (int s = 0; s < trackSectors[t] && firstBlock + s < blocks; s++) {
+					blockTrack[firstBlock + s] = t;
+					blockSector[firstBlock + s] = s;
+				}
+			} else {
+				// When several sector numbers share a position, the highest number is the one used for the block.
+				for (int s = 0; s < sectorIndex.length; s++) {
+					int block = firstBlock + sectorIndex[s];
+					if (sectorIndex[s] >= 0 && sectorIndex[s] < trackSectors[t] && block < blocks) {
+						blockTrack[block] = t;
+						blockSector[block] = s;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Geometry from a table of tracks, where entry zero is unused.
+	 * @param tracks the tracks
+	 * @param size size of image in bytes
+	 * @return geometry
+	 */
+	static DiskGeometry of(CbmTrack[] tracks, int size) {
+		var offsets = new int[tracks.length];
+		var sectors = new int[tracks.length];
+		offsets[0] = OUTSIDE;
+		for (int t = 1; t < tracks.length; t++) {
+			offsets[t] = tracks[t].getOffset();
+			sectors[t] = tracks[t].getSectors();
+		}
+		return new DiskGeometry(offsets, sectors, null, size);
+	}
+
+	/**
+	 * Geometry of an image with the same number of sectors on each track.
+	 * @param firstTrack number of first track
+	 * @param trackCount number of tracks
+	 * @param sectors number of sectors on each track
+	 * @param size size of image in bytes
+	 * @param sectorIndex position within track of each sector number, or null when the sector number is the position.
+	 * @return geometry
+	 */
+	static DiskGeometry of(int firstTrack, int trackCount, int sectors, int size, int[] sectorIndex) {
+		var offsets = new int[firstTrack + trackCount];
+		var sectorCount = new int[firstTrack + trackCount];
+		for (int t = 0; t < offsets.length; t++) {
+			offsets[t] = t < firstTrack ? OUTSIDE : (t - firstTrack) * sectors * DiskImage.BLOCK_SIZE;
+			sectorCount[t] = t < firstTrack ? 0 : sectors;
+		}
+		return new DiskGeometry(offsets, sectorCount, sectorIndex, size);
+	}
+
+	/**
+	 * @param type image type
+	 * @return geometry of image type
+	 */
+	public static DiskGeometry get(DiskImageType type) {
+		switch (type) {
+		case D64:
+		case D64_CPM_C64:
+		case D64_CPM_C128:
+			return D64.GEOMETRY;
+		case D67:
+			return D67.GEOMETRY;
+		case D71:
+		case D71_CPM:
+			return D71.GEOMETRY;
+		case D80:
+			return D80.GEOMETRY;
+		case D81:
+		case D81_CPM:
+			return D81.GEOMETRY;
+		case D82:
+			return D82.GEOMETRY;
+		case D88:
+			return D88.GEOMETRY;
+		case D90_9060:
+			return D90.GEOMETRY_9060;
+		case D90_9090:
+			return D90.GEOMETRY_9090;
+		default:
+			return NONE;
+		}
+	}
+
+	/**
+	 * @param track track
+	 * @param sector sector
+	 * @return offset of block in image, or a negative number if track or sector is not on disk.
+	 */
+	public int getSectorOffset(int track, int sector) {
+		if (track < 0 || track >= trackOffset.length || trackOffset[track] == OUTSIDE) {
+			return OUTSIDE;
+		} else if (sectorIndex == null) {
+			return trackOffset[track] + sector * DiskImage.BLOCK_SIZE;
+		} else if (sector < 0 || sector >= sectorIndex.length) {
+			return OUTSIDE;
+		}
+		return trackOffset[track] + sectorIndex[sector] * DiskImage.BLOCK_SIZE;
+	}
+
+	/**
+	 * @param offset offset in image
+	 * @return track and sector of block at offset, or null if offset is outside of image.
+	 */
+	public TrackSector getSector(int offset) {
+		if (offset < 0 || offset >= size) {
+			return null;
+		}
+		int block = offset / DiskImage.BLOCK_SIZE;
+		return new TrackSector(blockTrack[block], blockSector[block]);
+	}
+
+	/**
+	 * @param track track
+	 * @return number of sectors on track, or zero if track is not on disk.
+	 */
+	public int getSectors(int track) {
+		return track >= 0 && track < trackSectors.length ? trackSectors[track] : 0;
+	}
+
+	/**
+	 * @return size of image in bytes
+	 */
+	public int getSize() {
+		return size;
+	}
+}
@@ -1,17 +1,19 @@
 package droid64.d64;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.stream.Stream;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.db.Disk;
 import droid64.db.DiskFile;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 import droid64.gui.Setting;
 
 /**<pre style='font-family:sans-serif;'>
@@ -82,19 +84,29 @@ public abstract class DiskImage implements Serializable {
 	protected static final int CPM_RECORD_SIZE = 128;
 	/** Type of image (D64, D71, D81, CP/M ... ) */
 	protected DiskImageType imageFormat = DiskImageType.UNDEFINED;
+	/** Layout of tracks and sectors in image */
+	protected DiskGeometry geometry = DiskGeometry.NONE;
 	protected static final String NOT_IMPLEMENTED_FOR_CPM = "Not yet implemented for CP/M format.\n";
 	/** When True, this is a GEOS-formatted disk, therefore files must be saved the GEOS way. */
 	protected boolean geosFormat = false;
 	/** True if image is compressed */
 	protected boolean compressed;
 	/** Error messages are appended here, and get presented in GUI */
-	protected transient ConsoleStream feedbackStream;
-	/** Data of the whole image. */
+	protected transient FeedbackSink feedbackStream;
+	/** Data of the whole image, when kept on the heap. Null when image is memory mapped. */
 	protected byte[] cbmDisk = null;
+	/** All access to image data goes through this store. Wraps cbmDisk unless image is memory mapped. */
+	protected transient BlockStore blockStore = null;
+	/** Blocks changed since image was loaded or saved. Bit number is image position / BLOCK_SIZE. */
+	protected transient BitSet dirtyBlocks = new BitSet();
+	/** The file which matches the image data, except for the dirty blocks. Null if the whole image must be written. */
+	private transient File syncedFile = null;
 	/** Number of files in image */
 	protected int filesUsedCount;
 	/** The file where this image is stored */
 	protected File file = null;
+	/** Where the image was read, when it is inside an archive */
+	private transient ImageSource source = null;
 	/**
 	 * A cbmFile holds all additional attributes (like fileName, fileType etc) for a file on the image.<br>
 	 * These attributes are used in the directory and are initialized in initCbmFiles() and filled with data in readDirectory().<br>
@@ -106,7 +118,25 @@ public abstract class DiskImage implements Serializable {
 	/** The number of validation errors, or null is no validation has been done. */
 	protected Integer errors = null;
 	protected Integer warnings = null;
+	/** True if validation has been deferred until errors or warnings are asked for. */
+	private transient boolean validationPending = false;
 	private final List<ValidationError> validationErrorList = new ArrayList<>();
+	/** Validation state, reused between validations */
+	private transient BlockValidator validator = null;
+	/** Free blocks according to BAM. Built on first use, and dropped if BAM is changed other than by markSectorFree/markSectorUsed. */
+	private transient BamBitmap bamBitmap = null;
+	/** Image blocks read when bamBitmap was built. Bit number is image position / BLOCK_SIZE. */
+	private transient BitSet bamBlocks = null;
+	/** Image blocks read while bamBitmap is being built, or null. */
+	private transient BitSet bamReadTracker = null;
+	/** True while BAM is written by markSectorFree/markSectorUsed */
+	private transient boolean bamWriteThrough = false;
+	/** True while a batch of files is saved */
+	private transient boolean savingBatch = false;
+	/** Directory block where the search for a free directory entry continues while a batch of files is saved, or null. */
+	private transient TrackSector freeEntryBlock = null;
+	/** Number of the first directory entry in freeEntryBlock */
+	private transient int freeEntryBase;
 
 	public int getFirstTrack() {
 		return DEFAULT_ONE;
@@ -120,6 +150,11 @@ public abstract class DiskImage implements Serializable {
 		this.file = file;
 	}
 
+	/** @return where the image was read, when it is inside an archive. Otherwise null. */
+	public ImageSource getSource() {
+		return source;
+	}
+
 	public abstract int getFirstSector();
 
 	/**
@@ -127,7 +162,10 @@ public abstract class DiskImage implements Serializable {
 	 * @param trackNumber track number
 	 * @return number of sectors on specified track.
 	 */
-	public abstract int getMaxSectors(int trackNumber);
+	public int getMaxSectors(int trackNumber) {
+		return geometry.getSectors(trackNumber);
+	}
+
 	/**
 	 * Get numbers of tracks on image.
 	 * @return number of tracks.
@@ -147,7 +185,6 @@ public abstract class DiskImage implements Serializable {
 		return getMaxSectorCount() + getFirstSector();
 	}
 
-
 	/**
 	 * Get number of free blocks.
 	 * @return blocks free
@@ -191,9 +228,83 @@ public abstract class DiskImage implements Serializable {
 	/**
 	 * Write the data of a single file to image.
 	 * @param saveData byte[]
-	 * @return the first track/sector of the file (for use in directory entry).
+	 * @return the first track/sector of the file (for use in directory entry), or null if it could not be written.
 	 */
-	protected abstract TrackSector saveFileData(byte[] saveData);
+	protected TrackSector saveFileData(byte[] saveData) {
+		if (isCpmImage()) {
+			feedbackStream.append(NOT_IMPLEMENTED_FOR_CPM);
+			return null;
+		}
+		feedbackStream.append("SaveFileData: ").append(saveData.length).append(" bytes of data.\n");
+		var writer = ImageFileWriter.ofBlocks(this, null, false);
+		try {
+			writer.write(saveData);
+			return writer.finish();
+		} catch (IOException e) {	//NOSONAR
+			feedbackStream.append(Level.ERROR, "\nsaveFileData: Error: ").append(e.getMessage()).append('\n');
+			return null;
+		}
+	}
+
+	/**
+	 * Find a free block for the first block of a file.
+	 * @return track/sector, or null if none is available.
+	 */
+	protected TrackSector findFirstCopyBlock() {
+		return null;
+	}
+
+	/**
+	 * Find a free block to follow a block of a file, using the interleave of the image format.
+	 * @param block the current block
+	 * @return track/sector, or null if none is available.
+	 */
+	protected TrackSector findNextCopyBlock(TrackSector block) {
+		return null;
+	}
+
+	/**
+	 * Find first free directory entry.
+	 * Looks through the allocated directory sectors. While a batch of files is saved, the search continues
+	 * from the directory sector where the previous free entry was found.
+	 * @param track track of first directory block
+	 * @param sector sector of first directory block
+	 * @param fileNumberLimit maximum number of directory entries
+	 * @return number of next free directory entry, or -1 if none is free.
+	 */
+	protected int findFreeDirEntry(int track, int sector, int fileNumberLimit) {
+		int dirPosition = 0;
+		if (savingBatch && freeEntryBlock != null) {
+			track = freeEntryBlock.track;
+			sector = freeEntryBlock.sector;
+			dirPosition = freeEntryBase;
+		}
+		do {
+			int dataPosition = geometry.getSectorOffset(track, sector);
+			if (savingBatch) {
+				freeEntryBlock = new TrackSector(track, sector);
+				freeEntryBase = dirPosition;
+			}
+			for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i++) {
+				int fileType = getCbmDiskValue(dataPosition + (i * DIR_ENTRY_SIZE) + 0x02);
+				if (fileType  == 0) {
+					// Free or scratched entry
+					return dirPosition;
+				}
+				dirPosition++;
+			}
+			track = getCbmDiskValue(dataPosition + 0);
+			sector = getCbmDiskValue(dataPosition + 1);
+		} while (track != 0);
+		if (dirPosition < fileNumberLimit + 2) {
+			// next entry, on a new dir sector. not yet hit max number of entries.
+			return dirPosition;
+		} else {
+			// Hit max number of file entries. can't add more.
+			feedbackStream.append(Level.ERROR, "Error: No free directory entry avaiable.\n");
+			return -1;
+		}
+	}
 	/**
 	 * Set a disk name and disk-id in BAM.
 	 * @param newDiskName the new name of the disk
@@ -235,7 +346,9 @@ public abstract class DiskImage implements Serializable {
 	 * @param sector sector
 	 * @return offset offset to position in image where sector starts
 	 * */
-	public abstract int getSectorOffset(int track, int sector);
+	public int getSectorOffset(int track, int sector) {
+		return geometry.getSectorOffset(track, sector);
+	}
 	/**
 	 * Delete a file from disk image
 	 * @param cbmFile The file to be deleted
@@ -248,9 +361,114 @@ public abstract class DiskImage implements Serializable {
 	 * @return number or validation errors
 	 */
 	public abstract Integer validate(List<ValidationError.Error> repairList);
-	public abstract boolean isSectorFree(int track, int sector);
-	public abstract void markSectorFree(int track, int sector);
-	public abstract void markSectorUsed(int track, int sector);
+
+	/**
+	 * Read state of a sector from the BAM of the image.
+	 * @param track the track number of sector to check
+	 * @param sector the sector number of sector to check
+	 * @return when True, the sector is free; otherwise used
+	 */
+	protected abstract boolean readSectorFree(int track, int sector);
+
+	/**
+	 * Mark a sector as free in the BAM of the image, and update free counter of track.
+	 * @param track trackNumber
+	 * @param sector sectorNumber
+	 */
+	protected abstract void writeSectorFree(int track, int sector);
+
+	/**
+	 * Mark a sector as used in the BAM of the image, and update free counter of track.
+	 * @param track trackNumber
+	 * @param sector sectorNumber
+	 */
+	protected abstract void writeSectorUsed(int track, int sector);
+
+	/**
+	 * Determine if a sector is free
+	 * @param track the track number of sector to check
+	 * @param sector the sector number of sector to check
+	 * @return when True, the sector is free; otherwise used
+	 */
+	public boolean isSectorFree(int track, int sector) {
+		var bitmap = getBamBitmap();
+		return bitmap.contains(track, sector) ? bitmap.isFree(track, sector) : readSectorFree(track, sector);
+	}
+
+	/**
+	 * Mark a sector in BAM as free.
+	 * @param track trackNumber
+	 * @param sector sectorNumber
+	 */
+	public void markSectorFree(int track, int sector) {
+		bamWriteThrough = true;
+		try {
+			writeSectorFree(track, sector);
+		} finally {
+			bamWriteThrough = false;
+		}
+		updateBamBitmap(track, sector);
+	}
+
+	/**
+	 * Mark a sector in BAM as used.
+	 * @param track trackNumber
+	 * @param sector sectorNumber
+	 */
+	public void markSectorUsed(int track, int sector) {
+		bamWriteThrough = true;
+		try {
+			writeSectorUsed(track, sector);
+		} finally {
+			bamWriteThrough = false;
+		}
+		updateBamBitmap(track, sector);
+	}
+
+	/**
+	 * Find a free sector on a track.
+	 * @param track the track
+	 * @param fromSector the first sector to check. The search wraps around to sector zero.
+	 * @return a free sector, or -1 if the track has no free sectors.
+	 */
+	protected int findFreeSector(int track, int fromSector) {
+		return getBamBitmap().nextFree(track, fromSector);
+	}
+
+	/**
+	 * Drop free blocks read from BAM. Must be called when the location of the BAM changes.
+	 */
+	protected void resetBamBitmap() {
+		bamBitmap = null;
+		bamBlocks = null;
+	}
+
+	private BamBitmap getBamBitmap() {
+		if (bamBitmap == null) {
+			var bitmap = new BamBitmap(getTrackCount(), getMaxSectorCount());
+			bamReadTracker = new BitSet();
+			try {
+				for (int trk = getFirstTrack(); trk <= getTrackCount(); trk++) {
+					bitmap.setSectorCount(trk, getMaxSectors(trk));
+					for (int sec = 0; bitmap.contains(trk, sec); sec++) {
+						bitmap.setFree(trk, sec, readSectorFree(trk, sec));
+					}
+				}
+				bamBlocks = bamReadTracker;
+			} finally {
+				bamReadTracker = null;
+			}
+			bamBitmap = bitmap;
+		}
+		return bamBitmap;
+	}
+
+	private void updateBamBitmap(int track, int sector) {
+		if (bamBitmap != null && bamBitmap.contains(track, sector)) {
+			// Read back, as some formats refuse to mark sectors outside of current partition
+			bamBitmap.setFree(track, sector, readSectorFree(track, sector));
+		}
+	}
 
 	/**
 	 * @param block the block to be marked as free
@@ -292,19 +510,37 @@ public abstract class DiskImage implements Serializable {
 				imageFormat == DiskImageType.D81_CPM;
 	}
 
-	public static DiskImage getDiskImage(File file, byte[] imageData, ConsoleStream consoleStream) throws CbmException {
+	public static DiskImage getDiskImage(File file, byte[] imageData, FeedbackSink consoleStream) throws CbmException {
 		return Setting.getDiskImageType(file).getInstance(imageData, consoleStream);
 	}
 
 	/**
-	 * Load disk image from file. Use file name extension to identify type of disk image.
+	 * Load disk image from a source, which may be inside an archive. Use name extension to identify type of disk image.<br>
+	 * An image inside an archive is saved back into its archive.
+	 * @param source where to read the image
+	 * @param consoleStream the stream for error messages
+	 * @return DiskImage
+	 * @throws CbmException if image could not be loaded
+	 */
+	public static DiskImage getDiskImage(ImageSource source, FeedbackSink consoleStream) throws CbmException {
+		if (!source.isArchived()) {
+			return getDiskImage(source.getFile(), consoleStream);
+		}
+		var image = Setting.getDiskImageType(source.getName()).getInstance(source.read(), consoleStream);
+		image.source = source;
+		image.setFile(new File(source.toString()));
+		return image;
+	}
+
+	/**
+	 * Load disk image from file. Use file name extension, file size and image header to identify type of disk image.
 	 * @param file the file
 	 * @param consoleStream the stream for error messages
 	 * @return DiskImage
 	 * @throws CbmException if image could not be loaded (file missing, file corrupt out of memory etc).
 	 */
-	public static DiskImage getDiskImage(File file, ConsoleStream consoleStream) throws CbmException {
-		var image = Setting.getDiskImageType(file).getInstance(consoleStream).readImage(file);
+	public static DiskImage getDiskImage(File file, FeedbackSink consoleStream) throws CbmException {
+		var image = ImageTypeDetector.detect(file).getInstance(consoleStream).readImage(file);
 		if (image != null) {
 			image.setFile(file);
 		}
@@ -320,10 +556,10 @@ public abstract class DiskImage implements Serializable {
 	 */
 	protected DiskImage readImage(File file,  DiskImageType type) throws CbmException {
 		feedbackStream.append("Trying to load ").append(type).append(" image ").append(file).append('\n');
-		this.cbmDisk = null;
+		setImageData((byte[]) null);
 		if (Utility.isGZipped(file)) {
 			feedbackStream.append("GZIP compressed file detected.\n");
-			cbmDisk = Utility.readGZippedFile(file);
+			setImageData(Utility.readGZippedFile(file, type.expectedSize));
 			compressed = true;
 		} else {
 			if (!file.isFile()) {
@@ -335,15 +571,133 @@ public abstract class DiskImage implements Serializable {
 			} else if (file.length() < type.expectedSize && type.expectedSize > 0) {
 				throw new CbmException("File smaller than normal size. A "+type+" file should be " + type.expectedSize + " bytes.");
 			} else if (file.length() > type.expectedSize && type.expectedSize > 0) {
-				feedbackStream.append("Warning: File larger than normal size. A "+type+" file should be ").append(type.expectedSize).append(" bytes.\n");
+				feedbackStream.append(Level.WARNING, "Warning: File larger than normal size. A "+type+" file should be ").append(type.expectedSize).append(" bytes.\n");
+			}
+			if (supportsMappedStorage() && file.canWrite() && Boolean.TRUE.equals(Setting.MAPPED_IMAGES.getBoolean())) {
+				try {
+					setImageData(MappedBlockStore.open(file));
+				} catch (IOException e) {
+					throw new CbmException("Failed to map file. " + e.getMessage(), e);
+				}
+			} else {
+				setImageData(Utility.readFile(file));
 			}
-			this.cbmDisk = Utility.readFile(file);
 		}
 		this.file = file;
+		this.syncedFile = file;
 		feedbackStream.append(type+" disk image was loaded.\n");
 		return this;
 	}
 
+	/**
+	 * @return true if the image can be accessed through a memory mapped file. Only block based images support this.
+	 */
+	protected boolean supportsMappedStorage() {
+		return true;
+	}
+
+	/**
+	 * @return true if only changed blocks needs to be written when saving to the file the image was loaded from.
+	 */
+	protected boolean supportsIncrementalSave() {
+		return supportsMappedStorage();
+	}
+
+	/**
+	 * Use data in a byte[] as image data.
+	 * @param data the image data, or null to clear
+	 */
+	protected void setImageData(byte[] data) {
+		cbmDisk = data;
+		blockStore = data != null ? new ArrayBlockStore(data) : null;
+		dirtyBlocks.clear();
+		syncedFile = null;
+		resetBamBitmap();
+	}
+
+	/**
+	 * Use a block store as image data.
+	 * @param store the block store
+	 */
+	protected void setImageData(BlockStore store) {
+		blockStore = store;
+		cbmDisk = store instanceof ArrayBlockStore ? ((ArrayBlockStore) store).array() : null;
+		dirtyBlocks.clear();
+		syncedFile = null;
+		resetBamBitmap();
+	}
+
+	/**
+	 * Mark blocks within a range of the image as changed.
+	 * @param from first position (inclusive)
+	 * @param to last position (exclusive)
+	 */
+	protected void markDirty(int from, int to) {
+		if (to > from && from >= 0) {
+			dirtyBlocks.set(from / BLOCK_SIZE, (to - 1) / BLOCK_SIZE + 1);
+			if (errors != null) {
+				deferValidation();
+			}
+			if (bamBitmap != null && !bamWriteThrough) {
+				int bamBlock = bamBlocks.nextSetBit(from / BLOCK_SIZE);
+				if (bamBlock >= 0 && bamBlock <= (to - 1) / BLOCK_SIZE) {
+					// BAM changed by someone else
+					resetBamBitmap();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the result of any previous validation. The image is validated again when errors or warnings are asked for.
+	 */
+	protected void deferValidation() {
+		errors = null;
+		warnings = null;
+		validationPending = true;
+	}
+
+	/**
+	 * @return true if validation has been deferred and not yet been done
+	 */
+	public boolean isValidationPending() {
+		return validationPending;
+	}
+
+	private void validateIfPending() {
+		if (validationPending) {
+			validationPending = false;
+			validate(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * @return number of blocks changed since the image was loaded or saved
+	 */
+	public int getDirtyBlockCount() {
+		return dirtyBlocks.cardinality();
+	}
+
+	/**
+	 * @return the store holding image data, or null if no image is loaded.
+	 */
+	public BlockStore getBlockStore() {
+		return blockStore;
+	}
+
+	/**
+	 * @return true if image data is memory mapped
+	 */
+	public boolean isMapped() {
+		return blockStore != null && blockStore.isMapped();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		blockStore = cbmDisk != null ? new ArrayBlockStore(cbmDisk) : null;
+		dirtyBlocks = new BitSet();
+	}
+
 	/**
 	 * @param dirTrack directory track
 	 * @param dirSectors directory sectors
@@ -356,7 +710,7 @@ public abstract class DiskImage implements Serializable {
 		int filenumber = 0;
 		CpmFile entry = null;
 		for (int s=0; s<dirSectors.length; s++) {
-			int idx = getSectorOffset(dirTrack, dirSectors[s]);
+			int idx = geometry.getSectorOffset(dirTrack, dirSectors[s]);
 			for (int i=0; i < DIR_ENTRIES_PER_SECTOR; i++) {
 				var newFile = getCpmFile(entry, idx + i * DIR_ENTRY_SIZE, use16bitau);
 				if (newFile != null) {
@@ -392,13 +746,7 @@ public abstract class DiskImage implements Serializable {
 			feedbackStream.append("saveFile: Not yet implemented for CP/M format.\n");
 			return false;
 		}
-		if (!isCopyFile) {
-			for (String ext : Setting.EXT_REMOVAL.getList()) {
-				if (!Utility.isEmpty(ext) && cbmFile.getName().toLowerCase().endsWith(ext.toLowerCase())) {
-					cbmFile.setName(cbmFile.getName().substring(0, cbmFile.getName().length() - ext.length()));
-				}
-			}
-		}
+		removeFileNameExtension(cbmFile, isCopyFile);
 		TrackSector firstBlock;
 		if (cbmFile.getFileType() == FileType.DEL && saveData.length == 0) {
 			feedbackStream.append("saveFile: '").append(cbmFile.getName()).append("'  (empty DEL file)\n");
@@ -412,11 +760,93 @@ public abstract class DiskImage implements Serializable {
 				return true;
 			}
 		} else {
-			feedbackStream.append("saveFile: Error occurred.\n");
+			feedbackStream.append(Level.ERROR, "saveFile: Error occurred.\n");
 		}
 		return false;
 	}
 
+	/**
+	 * Write a batch of files to the image, and save the image once when done.<br>
+	 * The space needed is checked before anything is written, and the search for free directory entries continues
+	 * from where the previous file was put. Files written before an error are kept.
+	 * @param files the files to write
+	 * @return number of files written
+	 * @throws CbmException if files can not be written to the image, or if there is not enough free blocks for all files.
+	 */
+	public int saveFiles(List<FileCopy> files) throws CbmException {
+		if (isCpmImage()) {
+			throw new CbmException("saveFiles: Not yet implemented for CP/M format.");
+		}
+		int blocksNeeded = files.stream().mapToInt(FileCopy::getBlocks).sum();
+		readBAM();
+		// Images without a block layout grow as needed
+		if (geometry != DiskGeometry.NONE && blocksNeeded > getBlocksFree()) {
+			throw new CbmException("saveFiles: " + blocksNeeded + " blocks needed, but only " + getBlocksFree() + " blocks free.");
+		}
+		feedbackStream.append("saveFiles: ").append(files.size()).append(" files, ").append(blocksNeeded).append(" blocks.\n");
+		int count = 0;
+		savingBatch = true;
+		freeEntryBlock = null;
+		try {
+			for (var file : files) {
+				var writer = openFileForWrite(file.getCbmFile(), file.isCopyFile());
+				try {
+					file.transferTo(writer);
+					writer.close();
+					count++;
+				} catch (IOException e) {
+					writer.cancel();
+					feedbackStream.append(Level.ERROR, "saveFiles: Error: ").append(e.getMessage()).append('\n');
+					break;
+				}
+			}
+		} finally {
+			savingBatch = false;
+			freeEntryBlock = null;
+		}
+		if (count > 0 && !save()) {
+			throw new CbmException("saveFiles: Failed to save image.");
+		}
+		return count;
+	}
+
+	private void removeFileNameExtension(CbmFile cbmFile, boolean isCopyFile) {
+		if (!isCopyFile) {
+			for (String ext : Setting.EXT_REMOVAL.getList()) {
+				if (!Utility.isEmpty(ext) && cbmFile.getName().toLowerCase().endsWith(ext.toLowerCase())) {
+					cbmFile.setName(cbmFile.getName().substring(0, cbmFile.getName().length() - ext.length()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open a file for writing. Blocks are allocated as data is written, and the directory entry is written when the stream is closed.
+	 * @param cbmFile the file to write
+	 * @param isCopyFile indicates whether a file is copied or whether a file gets inserted into the directory
+	 * @return stream to write the data of the file to
+	 * @throws CbmException if files can not be written to the image
+	 */
+	public ImageFileWriter openFileForWrite(CbmFile cbmFile, boolean isCopyFile) throws CbmException {
+		if (isCpmImage()) {
+			throw new CbmException("openFileForWrite: Not yet implemented for CP/M format.");
+		}
+		removeFileNameExtension(cbmFile, isCopyFile);
+		feedbackStream.append("openFileForWrite: '").append(cbmFile.getName()).append("'\n");
+		return ImageFileWriter.ofBlocks(this, cbmFile, isCopyFile);
+	}
+
+	/**
+	 * Open a file for writing for images which can not write the data in parts.
+	 * The data is kept in memory and saved using {@link #saveFile(CbmFile, boolean, byte[])} when the stream is closed.
+	 * @param cbmFile the file to write
+	 * @param isCopyFile indicates whether a file is copied or whether a file gets inserted into the directory
+	 * @return stream to write the data of the file to
+	 */
+	protected ImageFileWriter openBufferedFileForWrite(CbmFile cbmFile, boolean isCopyFile) {
+		return ImageFileWriter.ofBuffer(this, cbmFile, isCopyFile);
+	}
+
 	/**
 	 * Renames a disk image (label) <BR>
 	 * @param newDiskName	the new name (label) of the disk
@@ -456,12 +886,13 @@ public abstract class DiskImage implements Serializable {
 	 */
 	protected CpmFile getCpmFile(CpmFile previousFile, int pos, boolean use16bitau) {
 		CpmFile newFile = null;
-		int userNum = cbmDisk[pos + 0x00] & 0xff;
+		var entry = blockStore.getBytes(pos, DIR_ENTRY_SIZE);
+		int userNum = entry[0x00] & 0xff;
 		if (userNum >=0x00 && userNum <= 0x0f) {
-			return getCpmFileEntry(previousFile, pos, use16bitau);
+			return getCpmFileEntry(previousFile, entry, use16bitau);
 		} else if (userNum == 0x20) {
-			var label = Utility.getCpmString(cbmDisk, pos + 0x01, 8);
-			var labelType = Utility.getCpmString(cbmDisk, pos + 0x09, 3);
+			var label = Utility.getCpmString(entry, 0x01, 8);
+			var labelType = Utility.getCpmString(entry, 0x09, 3);
 			bam.setDiskName(label+"."+labelType);
 			feedbackStream.append("CP/M label "+label+"."+labelType);
 		} else if (userNum != (UNUSED & 0xff)) {
@@ -471,17 +902,17 @@ public abstract class DiskImage implements Serializable {
 		return newFile;
 	}
 
-	private CpmFile getCpmFileEntry(CpmFile previousFile, int pos, boolean use16bitau) {
+	private CpmFile getCpmFileEntry(CpmFile previousFile, byte[] entry, boolean use16bitau) {
 		CpmFile newFile = null;
 		CpmFile tempFile = null;
-		String name = Utility.getCpmString(cbmDisk, pos + 0x01, 8);
-		String nameExt = Utility.getCpmString(cbmDisk, pos + 0x09, 3);
-		boolean readOnly = (cbmDisk[pos + 0x09] & 0x80 ) == 0x80;
-		boolean hidden   = (cbmDisk[pos + 0x0a] & 0x80 ) == 0x80;
-		boolean archive  = (cbmDisk[pos + 0x0b] & 0x80 ) == 0x80;
-		int extNum       =  cbmDisk[pos + 0x0c] & 0xff | ((cbmDisk[pos + 0x0e] & 0xff) << 8);
-		int s1           =  cbmDisk[pos + 0x0d] & 0xff;	// Last Record Byte Count
-		int rc           =  cbmDisk[pos + 0x0f] & 0xff;	// Record Count
+		String name = Utility.getCpmString(entry, 0x01, 8);
+		String nameExt = Utility.getCpmString(entry, 0x09, 3);
+		boolean readOnly = (entry[0x09] & 0x80 ) == 0x80;
+		boolean hidden   = (entry[0x0a] & 0x80 ) == 0x80;
+		boolean archive  = (entry[0x0b] & 0x80 ) == 0x80;
+		int extNum       =  entry[0x0c] & 0xff | ((entry[0x0e] & 0xff) << 8);
+		int s1           =  entry[0x0d] & 0xff;	// Last Record Byte Count
+		int rc           =  entry[0x0f] & 0xff;	// Record Count
 		// Obviously, extNum is in numerical order, but it doesn't always start with 0, and it can skip some numbers.
 		if (previousFile == null || !(previousFile.getCpmName().equals(name) && previousFile.getCpmNameExt().equals(nameExt)) ) {
 			newFile = new CpmFile();
@@ -504,21 +935,21 @@ public abstract class DiskImage implements Serializable {
 		tempFile.setLastExtNum(extNum);
 		tempFile.setLastRecordByteCount(s1);
 		tempFile.setRecordCount(extNum * 128 + rc);
-		readCpmAllocUnits(use16bitau, pos, tempFile);
+		readCpmAllocUnits(use16bitau, entry, tempFile);
 		return newFile;
 	}
 
-	private void readCpmAllocUnits(boolean use16bitau, int pos, CpmFile cpmFile ) {
+	private void readCpmAllocUnits(boolean use16bitau, byte[] entry, CpmFile cpmFile ) {
 		if (use16bitau) {
 			for (int al=0; al < 8; al++) {
-				int au = ((cbmDisk[pos + 0x10 + al * 2 + 1] & 0xff) << 8) | (cbmDisk[pos + 0x10 + al * 2 + 0] & 0xff);
+				int au = ((entry[0x10 + al * 2 + 1] & 0xff) << 8) | (entry[0x10 + al * 2 + 0] & 0xff);
 				if (au != 0) {
 					cpmFile.addAllocUnit(au);
 				}
 			}
 		} else {
 			for (int al=0; al < 16; al++) {
-				int au = cbmDisk[pos + 0x10 + al] & 0xff;
+				int au = entry[0x10 + al] & 0xff;
 				if (au != 0) {
 					cpmFile.addAllocUnit(au);
 				}
@@ -563,6 +994,18 @@ public abstract class DiskImage implements Serializable {
 	 * @return Disk
 	 */
 	public Disk getDisk() {
+		return getDisk(true);
+	}
+
+	/**
+	 * Get <code>Disk</code> instance of current image. This is used when saving to database.
+	 * @param validate if true, a deferred validation is done to get errors and warnings. If false, errors and warnings are only set if already known.
+	 * @return Disk
+	 */
+	public Disk getDisk(boolean validate) {
+		if (validate) {
+			validateIfPending();
+		}
 		var disk = new Disk();
 		disk.setLabel(Utility.rinseCtrlChars(getBam().getDiskName()));
 		disk.setImageType(imageFormat);
@@ -586,9 +1029,9 @@ public abstract class DiskImage implements Serializable {
 	 * @return String, or null if outside of disk image.
 	 */
 	private String getStringFromBlock(int track, int sector, int pos, int length) {
-		int dataPos = getSectorOffset(track, sector) + pos;
-		if (dataPos + length < cbmDisk.length) {
-			return new String(Arrays.copyOfRange(cbmDisk, dataPos, dataPos + length));
+		int dataPos = geometry.getSectorOffset(track, sector) + pos;
+		if (dataPos + length < size()) {
+			return new String(blockStore.getBytes(dataPos, length));
 		} else {
 			return null;
 		}
@@ -659,7 +1102,7 @@ public abstract class DiskImage implements Serializable {
 			imageFormat = DiskImageType.D88;
 			geosFormat = false;
 		} else if (this instanceof D90) {
-			imageFormat = cbmDisk.length == D90.D9060_SIZE ? DiskImageType.D90_9060 : DiskImageType.D90_9090;
+			imageFormat = size() == D90.D9060_SIZE ? DiskImageType.D90_9060 : DiskImageType.D90_9090;
 			geosFormat = false;
 		} else {
 			imageFormat = DiskImageType.UNDEFINED;
@@ -681,20 +1124,25 @@ public abstract class DiskImage implements Serializable {
 	 * @return true if successfully written
 	 */
 	public boolean saveAs(File file) {
-		if (cbmDisk == null || file == null) {
+		if (blockStore == null || file == null) {
 			feedbackStream.append("No disk data. Nothing to write.\n");
 			return false;
 		}
 		feedbackStream.append("writeImage: Trying to save ").append(compressed ? " compressed " : Utility.EMPTY).append(file).append("... \n");
 		try {
 			if (compressed) {
-				Utility.writeGZippedFile(file, cbmDisk);
+				Utility.writeGZippedFileAtomic(file, cbmDisk != null ? cbmDisk : blockStore.toByteArray());
+			} else if (supportsIncrementalSave() && file.equals(syncedFile) && file.isFile() && file.length() == size()) {
+				feedbackStream.append("writeImage: Writing ").append(dirtyBlocks.cardinality()).append(" changed blocks.\n");
+				blockStore.save(file, dirtyBlocks, BLOCK_SIZE);
 			} else {
-				Utility.writeFile(file, cbmDisk);
+				blockStore.save(file);
 			}
+			dirtyBlocks.clear();
+			syncedFile = file;
 			return true;
 		} catch (Exception e) {	//NOSONAR
-			feedbackStream.append("Error: Could not write filedata.\n").append(e.getMessage()).append('\n');
+			feedbackStream.append(Level.ERROR, "Error: Could not write filedata.\n").append(e.getMessage()).append('\n');
 			return false;
 		}
 	}
@@ -704,7 +1152,21 @@ public abstract class DiskImage implements Serializable {
 	 * @return true if save was successful
 	 */
 	public boolean save() {
-		return saveAs(file);
+		if (source == null) {
+			return saveAs(file);
+		} else if (blockStore == null) {
+			feedbackStream.append("No disk data. Nothing to write.\n");
+			return false;
+		}
+		feedbackStream.append("writeImage: Trying to save ").append(source).append("... \n");
+		try {
+			source.write(cbmDisk != null ? cbmDisk : blockStore.toByteArray());
+			dirtyBlocks.clear();
+			return true;
+		} catch (CbmException e) {	//NOSONAR
+			feedbackStream.append(Level.ERROR, "Error: Could not write filedata.\n").append(e.getMessage()).append('\n');
+			return false;
+		}
 	}
 
 	/**
@@ -732,8 +1194,7 @@ public abstract class DiskImage implements Serializable {
 	 * @return when true, there is at least one free sector on the track.
 	 */
 	protected boolean isTrackFree(int trackNumber) {
-		readBAM();
-		return bam.getFreeSectors(trackNumber) > 0;
+		return getBamBitmap().getFreeCount(trackNumber) > 0;
 	}
 
 	/**
@@ -742,10 +1203,13 @@ public abstract class DiskImage implements Serializable {
 	 * @return data at position, or 0 if position is not within the size of image.
 	 */
 	protected int getCbmDiskValue(int position){
+		if (bamReadTracker != null) {
+			bamReadTracker.set(position / BLOCK_SIZE);
+		}
 		try {
-			return cbmDisk[ position ] & 0xff;
-		} catch (ArrayIndexOutOfBoundsException e) {	// NOSONAR
-			feedbackStream.append("Error: reading outside of image at position ").append(position).append('\n');
+			return blockStore.get(position);
+		} catch (IndexOutOfBoundsException e) {	// NOSONAR
+			feedbackStream.append(Level.ERROR, "Error: reading outside of image at position ").append(position).append('\n');
 			return 0;
 		}
 	}
@@ -758,13 +1222,7 @@ public abstract class DiskImage implements Serializable {
 	 * @return data at position, or 0 if position is not within the size of image.
 	 */
 	protected int getCbmDiskValue(int track, int sector, int offset){
-		int pos = getSectorOffset(track, sector) + offset;
-		try {
-			return cbmDisk[ pos ] & 0xff;
-		} catch (ArrayIndexOutOfBoundsException e) {	// NOSONAR
-			feedbackStream.append("Error: reading outside of image at position ").append(pos).append('\n');
-			return 0;
-		}
+		return getCbmDiskValue(geometry.getSectorOffset(track, sector) + offset);
 	}
 
 	/**
@@ -773,16 +1231,18 @@ public abstract class DiskImage implements Serializable {
 	 * @param value value
 	 */
 	public void setCbmDiskValue(int position, int value){
-		if (cbmDisk != null) {
-			cbmDisk[position] = (byte) value;
+		if (blockStore != null) {
+			blockStore.set(position, value);
+			markDirty(position, position + 1);
 		}
 	}
 
 	protected void setCbmDiskValue(int position, int...values) {
 		int i = 0;
 		for (int value : values) {
-			cbmDisk[position + (i++)] = (byte) value;
+			blockStore.set(position + (i++), value);
 		}
+		markDirty(position, position + i);
 	}
 
 	/**
@@ -793,10 +1253,63 @@ public abstract class DiskImage implements Serializable {
 	 * @param value value
 	 */
 	protected void setCbmDiskValue(int track, int sector, int  offset, int value){
-		int pos = getSectorOffset(track, sector) + offset;
-		if (cbmDisk != null) {
-			cbmDisk[ pos] = (byte) value;
+		int pos = geometry.getSectorOffset(track, sector) + offset;
+		if (blockStore != null) {
+			blockStore.set(pos, value);
+			markDirty(pos, pos + 1);
+		}
+	}
+
+	/**
+	 * Get string from a position on the disk image. Bytes outside of image are returned as zeroes.
+	 * @param position the position within disk image
+	 * @param length the length of the string
+	 * @return string
+	 */
+	protected String getString(int position, int length) {
+		int available = Math.max(0, Math.min(length, size() - position));
+		var data = new byte[length];
+		if (available > 0) {
+			blockStore.get(position, data, 0, available);
+		}
+		return Utility.getString(data, 0, length);
+	}
+
+	/**
+	 * Write string to disk image. If string is shorter than length, then pad it with 0xA0 (blank).
+	 * @param position the position within disk image
+	 * @param string the string
+	 * @param length the length of the string
+	 */
+	protected void setPaddedString(int position, String string, int length) {
+		var data = new byte[length];
+		Utility.setPaddedString(data, 0, string, length);
+		blockStore.put(position, data, 0, length);
+		markDirty(position, position + length);
+	}
+
+	/**
+	 * Read a directory entry.
+	 * @param position the position of the directory entry within disk image
+	 * @return CbmFile
+	 */
+	protected CbmFile readCbmFile(int position) {
+		return new CbmFile(blockStore.getBytes(position, DIR_ENTRY_SIZE), 0);
+	}
+
+	/**
+	 * Write a directory entry.
+	 * @param cbmFile the file to write
+	 * @param position the position of the directory entry within disk image
+	 */
+	protected void writeCbmFile(CbmFile cbmFile, int position) {
+		if (position < 0 || position + DIR_ENTRY_SIZE > size()) {
+			return;
 		}
+		var data = blockStore.getBytes(position, DIR_ENTRY_SIZE);
+		cbmFile.toBytes(data, 0);
+		blockStore.put(position, data, 0, DIR_ENTRY_SIZE);
+		markDirty(position, position + DIR_ENTRY_SIZE);
 	}
 
 	/**
@@ -861,17 +1374,37 @@ public abstract class DiskImage implements Serializable {
 	}
 
 	/**
+	 * Validation is done first if it has been deferred.
 	 * @return the number of validation errors, or null if validation has not been performed.
 	 */
 	public Integer getErrors() {
+		validateIfPending();
 		return this.errors;
 	}
+
+	/**
+	 * Validation is done first if it has been deferred.
+	 * @return the number of validation warnings, or null if validation has not been performed.
+	 */
 	public Integer getWarnings() {
+		validateIfPending();
 		return warnings;
 	}
 	public List<ValidationError> getValidationErrorList() {
 		return validationErrorList;
 	}
+
+	/**
+	 * @return the validator of this image, reset and ready for a new validation.
+	 */
+	protected BlockValidator getValidator() {
+		if (validator == null) {
+			validator = new BlockValidator(this);
+		}
+		validationPending = false;
+		validator.reset();
+		return validator;
+	}
 	public static String getImageTypeName(DiskImageType imageType) {
 		return imageType.id;
 	}
@@ -885,8 +1418,8 @@ public abstract class DiskImage implements Serializable {
 	 */
 	public byte[] getBlock(int track, int sector) throws CbmException {
 		verifyTrackSector(track, sector);
-		int pos = getSectorOffset(track, sector);
-		return Arrays.copyOfRange(cbmDisk, pos, pos + BLOCK_SIZE);
+		int pos = geometry.getSectorOffset(track, sector);
+		return blockStore.getBytes(pos, BLOCK_SIZE);
 	}
 
 	public void verifyTrackSector(int track, int sector) throws CbmException {
@@ -919,26 +1452,6 @@ public abstract class DiskImage implements Serializable {
 		return cbmFile.stream().filter(f -> f != null && f.getName() != null && !f.isFileScratched());
 	}
 
-	/**
-	 * Fill sector in image with data. Pad with zeroes if saveData is smaller than BLOCK_SIZE - 2.
-	 * @param track track number
-	 * @param sector sector number
-	 * @param dataPosition start filling sector at this position in saveData
-	 * @param nextTrack next track
-	 * @param nextSector next sector
-	 * @param saveData data to fill sector with
-	 */
-	protected void fillSector(int track, int sector, int dataPosition, int nextTrack, int nextSector, byte[] saveData) {
-		final int pos = getSectorOffset(track, sector);
-		Arrays.fill(cbmDisk, pos + 0x02, pos + BLOCK_SIZE, (byte) 0);
-		setCbmDiskValue(pos + 0x00, nextTrack);
-		setCbmDiskValue(pos + 0x01, nextSector);
-		for (int i = 0; i < (BLOCK_SIZE - 2); i++) {
-			int value = saveData.length > dataPosition + i ? saveData[dataPosition + i] & 0xff : 0;
-			setCbmDiskValue(pos + 0x02 + i, value);
-		}
-	}
-
 	/**
 	 * @return true if mounted image support directories (or partitions)
 	 */
@@ -977,9 +1490,9 @@ public abstract class DiskImage implements Serializable {
 			int filenumber = 0;
 			do {
 				verifyTrackSector(track, sector);
-				int dataPosition = getSectorOffset(track, sector);
+				int dataPosition = geometry.getSectorOffset(track, sector);
 				for (int i = 0; i < DIR_ENTRIES_PER_SECTOR; i ++) {
-					cbmFile.set(filenumber, new CbmFile(cbmDisk, dataPosition + i * DIR_ENTRY_SIZE));
+					cbmFile.set(filenumber, readCbmFile(dataPosition + i * DIR_ENTRY_SIZE));
 					if (!getCbmFile(filenumber).isFileScratched()) {
 						getCbmFile(filenumber).setDirPosition(dirPosition);
 						if (filenumber < maxNumFiles)  {
@@ -995,24 +1508,31 @@ public abstract class DiskImage implements Serializable {
 				sector = getCbmDiskValue(dataPosition + 1);
 			} while (track >= 0 && !fileLimitReached && sector != 0xff);
 			if (fileLimitReached) {
-				feedbackStream.append("Error: Too many entries in directory (more than ").append(maxNumFiles).append(")!\n");
+				feedbackStream.append(Level.ERROR, "Error: Too many entries in directory (more than ").append(maxNumFiles).append(")!\n");
 			}
 			filesUsedCount = filenumber;
-		} catch (ArrayIndexOutOfBoundsException | CbmException e) { //NOSONAR
-			feedbackStream.append("Error: Sector ").append(track).append('/').append(sector).append(" is outside of image.\n");
+		} catch (IndexOutOfBoundsException | CbmException e) { //NOSONAR
+			feedbackStream.append(Level.ERROR, "Error: Sector ").append(track).append('/').append(sector).append(" is outside of image.\n");
 		}
 	}
 
 	public abstract int getNextSector(int track, int sector);
 
-	public abstract TrackSector getSector(int offset);
+	/**
+	 * Get track and sector of a block
+	 * @param offset offset from beginning of image
+	 * @return track and sector at offset, or null if offset is outside of image.
+	 */
+	public TrackSector getSector(int offset) {
+		return geometry.getSector(offset);
+	}
 
 	public boolean isPartitionOpen() {
 		return false;
 	}
 
 	public int size() {
-		return cbmDisk != null ? cbmDisk.length : -1;
+		return blockStore != null ? blockStore.size() : -1;
 	}
 
 	public Integer getCurrentPartition() {
@@ -1024,29 +1544,26 @@ public abstract class DiskImage implements Serializable {
 	}
 
 	public byte[] getData(int track, int sector) throws CbmException {
-		var out = new ByteArrayOutputStream();
-		var guard = new CyclicGuard<TrackSector>();
-		var ts = new TrackSector(track,sector);
-		do {
-			if (ts.track > getTrackCount()) {
-				throw new CbmException("Track " + ts.track + " outside of image.");
-			}
-			int blockPos = getSectorOffset(ts.track, ts.sector);
-			int nextTrack  = getCbmDiskValue(blockPos + 0x00);
-			int nextSector = getCbmDiskValue(blockPos + 0x01);
-			feedbackStream.append(ts.track).append('/').append(ts.sector).append(Utility.SPACE);
-			if (nextTrack > 0) {
-				out.write(cbmDisk, blockPos + 2, BLOCK_SIZE - 2);
-			} else {
-				feedbackStream.append("\nRemaining bytes: ").append(nextSector).append('\n');
-				out.write(cbmDisk, blockPos + 2, nextSector - 2 + 1);
-			}
-			if (!guard.addSilent(ts)) {
-				throw new CbmException("Cyclic error. Sector " + ts + " already seen. "+guard);
+		return FileDataChannel.ofChain(this, track, sector).toByteArray();
+	}
+
+	/**
+	 * Get the data of a file as a channel. Files stored as a chain of blocks are read from the image as the channel is read,
+	 * other files are read using {@link #getFileData(int)}.
+	 * @param number the file number
+	 * @return channel with the data of the file
+	 * @throws CbmException when error
+	 */
+	public FileDataChannel getFileChannel(int number) throws CbmException {
+		if (blockStore != null && number >= 0 && number < getCbmFileSize() && !isCpmImage()) {
+			var cf = getCbmFile(number);
+			if (!cf.isFileScratched() && cf.getFileType() != FileType.CBM && !(cf instanceof CpmFile)) {
+				feedbackStream.append("getFileChannel: ").append(number).append(" '").append(cf.getName()).append("'\n");
+				feedbackStream.append(Level.TRACE, "Tracks / Sectors: ");
+				return FileDataChannel.ofChain(this, cf.getTrack(), cf.getSector());
 			}
-			ts = new TrackSector(nextTrack, nextSector);
-		} while (ts.track != 0);
-		return out.toByteArray();
+		}
+		return FileDataChannel.of(getFileData(number));
 	}
 
 	protected void freeBlocks(int track, int sector) {
@@ -1,8 +1,6 @@
 package droid64.d64;
 import java.util.stream.Stream;
 
-import droid64.gui.ConsoleStream;
-
 
 public enum DiskImageType {
 	UNDEFINED(0, "Undefined", "Undefined image", "", "", "1541", 0, true, null),
@@ -64,23 +62,23 @@ public enum DiskImageType {
 		return stream().filter(ft -> ft.type == type).findFirst().orElse(UNDEFINED);
 	}
 
-	public DiskImage getInstance(ConsoleStream consoleStream) throws CbmException {
+	public DiskImage getInstance(FeedbackSink consoleStream) throws CbmException {
 		if (clazz == null) {
 			throw new CbmException("Unknown file format.");
 		}
 		try {
-			return clazz.getConstructor(DiskImageType.class, ConsoleStream.class).newInstance(this, consoleStream);
+			return clazz.getConstructor(DiskImageType.class, FeedbackSink.class).newInstance(this, consoleStream);
 		} catch (Exception e) {
 			throw new CbmException("Failed to create " + id + " instance.", e);
 		}
 	}
 
-	public DiskImage getInstance(byte[] imageData, ConsoleStream consoleStream) throws CbmException {
+	public DiskImage getInstance(byte[] imageData, FeedbackSink consoleStream) throws CbmException {
 		if (clazz == null) {
 			throw new CbmException("Unknown file format.");
 		}
 		try {
-			return clazz.getConstructor(DiskImageType.class, byte[].class, ConsoleStream.class).newInstance(this, imageData, consoleStream);
+			return clazz.getConstructor(DiskImageType.class, byte[].class, FeedbackSink.class).newInstance(this, imageData, consoleStream);
 		} catch (Exception e) {
 			throw new CbmException("Failed to create " + id + " instance.", e);
 		}
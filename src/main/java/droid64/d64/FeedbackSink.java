@@ -0,0 +1,52 @@
+package droid64.d64;
+
+/**
+ * Receiver of feedback messages from disk image operations.<br>
+ * Messages without level are logged at INFO level. Use {@link #isEnabled(Level)} to avoid building messages which would be discarded.
+ */
+public interface FeedbackSink {
+
+	/** Message levels, from most to least verbose. */
+	enum Level {
+		/** Per block chatter, like the track/sector chain of a file. */
+		TRACE,
+		/** Normal progress messages. */
+		INFO,
+		/** Something is odd, but operation continues. */
+		WARNING,
+		/** Operation failed. */
+		ERROR
+	}
+
+	/**
+	 * @param level the level
+	 * @return true if messages at level are kept
+	 */
+	boolean isEnabled(Level level);
+
+	/**
+	 * Append message at a level.
+	 * @param level the level
+	 * @param str the message
+	 * @return this
+	 */
+	FeedbackSink append(Level level, String str);
+
+	/**
+	 * Append message at INFO level.
+	 * @param str the message
+	 * @return this
+	 */
+	default FeedbackSink append(String str) {
+		return append(Level.INFO, str);
+	}
+
+	/**
+	 * Append message at INFO level.
+	 * @param obj the message
+	 * @return this
+	 */
+	default FeedbackSink append(Object obj) {
+		return append(Level.INFO, String.valueOf(obj));
+	}
+}
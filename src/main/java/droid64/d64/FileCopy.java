@@ -0,0 +1,106 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A file to write to a disk image as part of a batch, see {@link DiskImage#saveFiles(java.util.List)}.<br>
+ * The data is not read until the file is written.
+ */
+public final class FileCopy {
+	/** Number of data bytes in a block */
+	private static final int DATA_SIZE = DiskImage.BLOCK_SIZE - 2;
+
+	@FunctionalInterface
+	interface Source {
+		long transferTo(OutputStream out) throws IOException;
+	}
+
+	private final CbmFile cbmFile;
+	private final boolean isCopyFile;
+	private final int blocks;
+	private final Source source;
+
+	private FileCopy(CbmFile cbmFile, boolean isCopyFile, int blocks, Source source) {
+		this.cbmFile = cbmFile;
+		this.isCopyFile = isCopyFile;
+		this.blocks = blocks;
+		this.source = source;
+	}
+
+	/**
+	 * File copied from another disk image.
+	 * @param cbmFile copy of the directory entry of the file
+	 * @param channel the data of the file
+	 * @return file copy
+	 */
+	public static FileCopy of(CbmFile cbmFile, FileDataChannel channel) {
+		return new FileCopy(cbmFile, true, cbmFile.getSizeInBlocks(), channel::transferTo);
+	}
+
+	/**
+	 * File inserted from the local file system.
+	 * @param cbmFile the directory entry to write
+	 * @param file the local file
+	 * @return file copy
+	 */
+	public static FileCopy of(CbmFile cbmFile, File file) {
+		return new FileCopy(cbmFile, false, getBlocks(file.length()), out -> {
+			try (var in = new FileInputStream(file)) {
+				return in.transferTo(out);
+			}
+		});
+	}
+
+	/**
+	 * File inserted from data in memory.
+	 * @param cbmFile the directory entry to write
+	 * @param data the data of the file
+	 * @return file copy
+	 */
+	public static FileCopy of(CbmFile cbmFile, byte[] data) {
+		return new FileCopy(cbmFile, false, getBlocks(data.length), FileDataChannel.of(data)::transferTo);
+	}
+
+	/**
+	 * Get number of blocks used by a file. A block is always added after a full block.
+	 * @param length length in bytes
+	 * @return number of blocks
+	 */
+	private static int getBlocks(long length) {
+		return (int) Math.min(Integer.MAX_VALUE, length / DATA_SIZE + 1);
+	}
+
+	/**
+	 * @return the directory entry to write
+	 */
+	public CbmFile getCbmFile() {
+		return cbmFile;
+	}
+
+	/**
+	 * @return true if a file is copied, false if a new file is inserted into the directory.
+	 */
+	public boolean isCopyFile() {
+		return isCopyFile;
+	}
+
+	/**
+	 * @return expected number of blocks needed to store the file
+	 */
+	public int getBlocks() {
+		return blocks;
+	}
+
+	/**
+	 * Write the data of the file.
+	 * @param out the stream to write to
+	 * @return number of bytes written
+	 * @throws IOException when error
+	 */
+	long transferTo(OutputStream out) throws IOException {
+		return source.transferTo(out);
+	}
+}
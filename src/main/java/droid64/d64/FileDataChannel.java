@@ -0,0 +1,194 @@
+package droid64.d64;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import droid64.d64.FeedbackSink.Level;
+
+/**
+ * The data of a file as a channel.<br>
+ * When reading a chain of blocks, each block is read from the image when the previous block has been consumed.
+ * The data is handed out as read-only views of the image, so nothing is copied until the data reaches its destination.
+ */
+public final class FileDataChannel implements ReadableByteChannel {
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+	private final DiskImage image;
+	/** Blocks already read. Bit number is image position / BLOCK_SIZE. */
+	private final BitSet seen;
+	private final boolean trace;
+	private int track;
+	private int sector;
+	private ByteBuffer current;
+	private boolean open = true;
+
+	private FileDataChannel(DiskImage image, int track, int sector, ByteBuffer data) {
+		this.image = image;
+		this.seen = image != null ? new BitSet() : null;
+		this.trace = image != null && image.feedbackStream.isEnabled(Level.TRACE);
+		this.track = track;
+		this.sector = sector;
+		this.current = data;
+	}
+
+	/**
+	 * Channel following a chain of blocks. The first two bytes of each block is the track and sector of the next block.
+	 * @param image the disk image
+	 * @param track track of first block
+	 * @param sector sector of first block
+	 * @return channel
+	 */
+	static FileDataChannel ofChain(DiskImage image, int track, int sector) {
+		return new FileDataChannel(image, track, sector, EMPTY);
+	}
+
+	/**
+	 * Channel of data which is already in memory.
+	 * @param data the data. Can be null.
+	 * @return channel
+	 */
+	public static FileDataChannel of(byte[] data) {
+		return of(data != null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : EMPTY);
+	}
+
+	/**
+	 * Channel of data which is already in memory.
+	 * @param data the data
+	 * @return channel
+	 */
+	public static FileDataChannel of(ByteBuffer data) {
+		return new FileDataChannel(null, 0, 0, data);
+	}
+
+	/**
+	 * Get the next part of the data as a read-only buffer. When following a chain, a part is the data of one block.
+	 * @return buffer with remaining bytes, or null at end of data.
+	 * @throws CbmException when the chain points outside of image or back to a block already read.
+	 */
+	public ByteBuffer nextSlice() throws CbmException {
+		while (!current.hasRemaining()) {
+			if (image == null || track == 0) {
+				return null;
+			}
+			current = readBlock();
+		}
+		var slice = current;
+		current = EMPTY;
+		return slice;
+	}
+
+	private ByteBuffer readBlock() throws CbmException {
+		if (track > image.getTrackCount()) {
+			throw new CbmException("Track " + track + " outside of image.");
+		}
+		int blockPos = image.geometry.getSectorOffset(track, sector);
+		if (blockPos < 0) {
+			throw new CbmException("Sector " + track + "/" + sector + " outside of image.");
+		} else if (seen.get(blockPos / DiskImage.BLOCK_SIZE)) {
+			throw new CbmException("Cyclic error. Sector " + track + "/" + sector + " already seen.");
+		}
+		seen.set(blockPos / DiskImage.BLOCK_SIZE);
+		int nextTrack  = image.getCbmDiskValue(blockPos + 0x00);
+		int nextSector = image.getCbmDiskValue(blockPos + 0x01);
+		if (trace) {
+			image.feedbackStream.append(Level.TRACE, track + "/" + sector + Utility.SPACE);
+			if (nextTrack == 0) {
+				image.feedbackStream.append(Level.TRACE, "\nRemaining bytes: " + nextSector + '\n');
+			}
+		}
+		track = nextTrack;
+		sector = nextSector;
+		int length = nextTrack > 0 ? DiskImage.BLOCK_SIZE - 2 : nextSector - 2 + 1;
+		return length > 0 ? image.blockStore.slice(blockPos + 2, length) : EMPTY;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		ByteBuffer slice;
+		try {
+			slice = nextSlice();
+		} catch (CbmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		if (slice == null) {
+			return -1;
+		}
+		int length = Math.min(dst.remaining(), slice.remaining());
+		var part = slice.duplicate();
+		part.limit(part.position() + length);
+		dst.put(part);
+		slice.position(slice.position() + length);
+		current = slice;
+		return length;
+	}
+
+	/**
+	 * Write all remaining data to a stream. When the stream is also a channel, the parts are written without copying.
+	 * @param out the stream to write to
+	 * @return number of bytes written
+	 * @throws IOException when error
+	 */
+	public long transferTo(OutputStream out) throws IOException {
+		var channel = out instanceof WritableByteChannel ? (WritableByteChannel) out : null;
+		var buffer = channel == null ? new byte[DiskImage.BLOCK_SIZE] : null;
+		long count = 0;
+		try {
+			for (var slice = nextSlice(); slice != null; slice = nextSlice()) {
+				count += slice.remaining();
+				while (slice.hasRemaining()) {
+					if (channel != null) {
+						channel.write(slice);
+					} else {
+						int length = Math.min(buffer.length, slice.remaining());
+						slice.get(buffer, 0, length);
+						out.write(buffer, 0, length);
+					}
+				}
+			}
+		} catch (CbmException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		return count;
+	}
+
+	/**
+	 * Read all remaining data.
+	 * @return the data
+	 * @throws CbmException when error
+	 */
+	public byte[] toByteArray() throws CbmException {
+		var slices = new ArrayList<ByteBuffer>();
+		int size = 0;
+		for (var slice = nextSlice(); slice != null; slice = nextSlice()) {
+			slices.add(slice);
+			size += slice.remaining();
+		}
+		var data = new byte[size];
+		int pos = 0;
+		for (var slice : slices) {
+			int length = slice.remaining();
+			slice.get(data, pos, length);
+			pos += length;
+		}
+		return data;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+}
@@ -0,0 +1,234 @@
+package droid64.d64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+import droid64.d64.FeedbackSink.Level;
+
+/**
+ * Writes the data of a file into a disk image.<br>
+ * For images storing files as chains of blocks, blocks are allocated as the data arrives, using the interleave
+ * of the image format, and the data is copied straight into the image. When the stream is closed, the last block
+ * is terminated and the directory entry is written. If the disk gets full or the writing is cancelled,
+ * the blocks written so far are freed again and no directory entry is written.<br>
+ * Other images get the data kept in memory until the stream is closed.
+ */
+public final class ImageFileWriter extends OutputStream implements WritableByteChannel {
+	/** Number of data bytes in a block */
+	private static final int DATA_SIZE = DiskImage.BLOCK_SIZE - 2;
+
+	private final DiskImage image;
+	/** File to add to directory on close, or null to only write the data */
+	private final CbmFile cbmFile;
+	private final boolean isCopyFile;
+	/** Data of images which can not be written in parts, or null */
+	private final ByteArrayOutputStream buffer;
+	private final boolean trace;
+	private TrackSector firstBlock;
+	private TrackSector block;
+	/** Position of current block in image */
+	private int blockPos;
+	/** Number of data bytes in current block */
+	private int filled;
+	private int length;
+	private int usedBlocks;
+	private boolean open = true;
+
+	private ImageFileWriter(DiskImage image, CbmFile cbmFile, boolean isCopyFile, ByteArrayOutputStream buffer) {
+		this.image = image;
+		this.cbmFile = cbmFile;
+		this.isCopyFile = isCopyFile;
+		this.buffer = buffer;
+		this.trace = image.feedbackStream.isEnabled(Level.TRACE);
+	}
+
+	/**
+	 * Writer putting the data in a chain of blocks.
+	 * @param image the image to write to
+	 * @param cbmFile the file to add to the directory when closed, or null to only write the data.
+	 * @param isCopyFile true if a file is copied, false if a new file is inserted into the directory.
+	 * @return writer
+	 */
+	static ImageFileWriter ofBlocks(DiskImage image, CbmFile cbmFile, boolean isCopyFile) {
+		return new ImageFileWriter(image, cbmFile, isCopyFile, null);
+	}
+
+	/**
+	 * Writer keeping the data in memory, and saving it using {@link DiskImage#saveFile(CbmFile, boolean, byte[])} when closed.
+	 * @param image the image to write to
+	 * @param cbmFile the file to save
+	 * @param isCopyFile true if a file is copied, false if a new file is inserted into the directory.
+	 * @return writer
+	 */
+	static ImageFileWriter ofBuffer(DiskImage image, CbmFile cbmFile, boolean isCopyFile) {
+		return new ImageFileWriter(image, cbmFile, isCopyFile, new ByteArrayOutputStream());
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		prepareBlock();
+		if (buffer != null) {
+			buffer.write(b);
+			return;
+		}
+		image.blockStore.set(blockPos + 2 + filled, b);
+		advance(1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		int pos = off;
+		int remain = len;
+		while (remain > 0) {
+			prepareBlock();
+			if (buffer != null) {
+				buffer.write(b, pos, remain);
+				return;
+			}
+			int n = Math.min(remain, DATA_SIZE - filled);
+			image.blockStore.put(blockPos + 2 + filled, b, pos, n);
+			pos += n;
+			remain -= n;
+			advance(n);
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		int count = src.remaining();
+		while (src.hasRemaining()) {
+			prepareBlock();
+			int n = Math.min(src.remaining(), buffer != null ? DiskImage.BLOCK_SIZE : DATA_SIZE - filled);
+			if (buffer != null) {
+				var data = new byte[n];
+				src.get(data);
+				buffer.write(data, 0, n);
+				continue;
+			}
+			var part = src.duplicate();
+			part.limit(part.position() + n);
+			image.blockStore.put(blockPos + 2 + filled, part);
+			src.position(src.position() + n);
+			advance(n);
+		}
+		return count;
+	}
+
+	private void prepareBlock() throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		} else if (block == null && buffer == null) {
+			firstBlock = image.findFirstCopyBlock();
+			if (firstBlock == null) {
+				open = false;
+				throw new IOException("No free sectors on disk. Disk is full.");
+			}
+			startBlock(firstBlock);
+		}
+	}
+
+	private void advance(int n) throws IOException {
+		filled += n;
+		length += n;
+		if (filled == DATA_SIZE) {
+			nextBlock();
+		}
+	}
+
+	/** Allocate a block to follow the current block, which is full. */
+	private void nextBlock() throws IOException {
+		var next = image.findNextCopyBlock(new TrackSector(block.track, block.sector));
+		if (next == null) {
+			cancel();
+			throw new IOException("Not enough free sectors on disk. Disk is full.");
+		}
+		image.blockStore.set(blockPos + 0x00, next.track);
+		image.blockStore.set(blockPos + 0x01, next.sector);
+		image.markDirty(blockPos, blockPos + DiskImage.BLOCK_SIZE);
+		usedBlocks++;
+		startBlock(next);
+	}
+
+	private void startBlock(TrackSector ts) {
+		if (trace) {
+			image.feedbackStream.append(Level.TRACE, length + " bytes written: block " + ts.track + '/' + ts.sector + '\n');
+		}
+		image.markSectorUsed(ts.track, ts.sector);
+		block = ts;
+		blockPos = image.geometry.getSectorOffset(ts.track, ts.sector);
+		filled = 0;
+	}
+
+	/** Terminate the chain at the current block */
+	private void endChain() {
+		image.blockStore.set(blockPos + 0x00, 0);
+		image.blockStore.set(blockPos + 0x01, filled + 1);
+		image.blockStore.fill(blockPos + 2 + filled, blockPos + DiskImage.BLOCK_SIZE, (byte) 0);
+		image.markDirty(blockPos, blockPos + DiskImage.BLOCK_SIZE);
+		usedBlocks++;
+	}
+
+	/**
+	 * Stop writing without saving the file. Blocks written so far are freed.
+	 */
+	public void cancel() {
+		if (open && block != null) {
+			endChain();
+			image.freeBlocks(firstBlock.track, firstBlock.sector);
+		}
+		open = false;
+	}
+
+	/**
+	 * Terminate the chain of blocks without writing a directory entry.
+	 * An empty DEL file does not get any block.
+	 * @return the first block of the file
+	 * @throws IOException if the disk is full
+	 */
+	TrackSector finish() throws IOException {
+		if (block == null) {
+			if (cbmFile != null && cbmFile.getFileType() == FileType.DEL) {
+				open = false;
+				return new TrackSector(0, 0);
+			}
+			prepareBlock();
+		}
+		open = false;
+		endChain();
+		image.feedbackStream.append("All data written (").append(usedBlocks).append(" blocks).\n");
+		return firstBlock;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Save the file. The chain of blocks is terminated and the directory entry is written.
+	 * @throws IOException if the disk is full or the directory entry could not be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!open) {
+			return;
+		} else if (buffer != null) {
+			open = false;
+			if (!image.saveFile(cbmFile, isCopyFile, buffer.toByteArray())) {
+				throw new IOException("Failed to save " + cbmFile.getName() + '.');
+			}
+			return;
+		}
+		var first = finish();
+		if (cbmFile != null && !image.addDirectoryEntry(cbmFile, first.track, first.sector, isCopyFile, length)) {
+			if (first.track != 0) {
+				image.freeBlocks(first.track, first.sector);
+			}
+			throw new IOException("Failed to add directory entry for " + cbmFile.getName() + '.');
+		}
+	}
+}
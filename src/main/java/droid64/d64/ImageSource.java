@@ -0,0 +1,350 @@
+package droid64.d64;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Where the data of a disk image is found. Either a file, or an entry inside a zip file, which may itself be an entry
+ * of another zip file. Entries which are gzipped are decompressed when read, and compressed again when written.<br>
+ * Data read from archives is kept in a cache of limited size, so opening several images from the same archive
+ * decompresses the archive once, and reloading an image after it has been written does not read the archive again.
+ * An image is written back by replacing its entry in each archive containing it.
+ */
+public final class ImageSource {
+	/** Separates the entries of nested archives in the path of a source */
+	public static final String SEPARATOR = "!/";
+	/** Maximum number of bytes kept in the cache */
+	private static final long MAX_CACHE_SIZE = 64L * 1024L * 1024L;
+	private static final Cache CACHE = new Cache(MAX_CACHE_SIZE);
+
+	/** The file on the file system */
+	private final File file;
+	/** Entry names, from the outermost archive in */
+	private final List<String> entries;
+
+	private ImageSource(File file, List<String> entries) {
+		this.file = file;
+		this.entries = entries;
+	}
+
+	/**
+	 * @param file a file on the file system
+	 * @return a source which is the file
+	 */
+	public static ImageSource of(File file) {
+		return new ImageSource(file, Collections.emptyList());
+	}
+
+	/**
+	 * @param name name of an entry of this source, which must be a zip archive
+	 * @return a source which is the entry
+	 */
+	public ImageSource resolve(String name) {
+		var list = new ArrayList<>(entries);
+		list.add(name);
+		return new ImageSource(file, Collections.unmodifiableList(list));
+	}
+
+	/** @return the archive containing this source, or null if this is a file */
+	public ImageSource getParent() {
+		return entries.isEmpty() ? null : new ImageSource(file, entries.subList(0, entries.size() - 1));
+	}
+
+	/** @return the file on the file system */
+	public File getFile() {
+		return file;
+	}
+
+	/** @return true if this is an entry in an archive */
+	public boolean isArchived() {
+		return !entries.isEmpty();
+	}
+
+	/** @return name of the entry, or of the file */
+	public String getName() {
+		return entries.isEmpty() ? file.getName() : entries.get(entries.size() - 1);
+	}
+
+	/** @return true if the data can be written back */
+	public boolean isWritable() {
+		return file.isFile() && file.canWrite();
+	}
+
+	/**
+	 * List the entries of this source, which must be a zip archive.
+	 * @param firstFileNum the fileNumber to assign to the first entry.
+	 * @return the entries which are not directories
+	 * @throws CbmException when error
+	 */
+	public List<DirEntry> getDirEntries(int firstFileNum) throws CbmException {
+		if (entries.isEmpty()) {
+			return Utility.getZipFileEntries(file, firstFileNum);
+		}
+		var list = new ArrayList<DirEntry>();
+		try (var zin = new ZipInputStream(new ByteArrayInputStream(raw()))) {
+			int fileNum = firstFileNum;
+			for (var entry = zin.getNextEntry(); entry != null; entry = zin.getNextEntry()) {
+				if (!entry.isDirectory()) {
+					list.add(new DirEntry(file, entry, fileNum++));
+				}
+			}
+		} catch (IOException e) {
+			throw new CbmException("Failed to read zip file " + this + ". " + e.getMessage(), e);
+		}
+		return list;
+	}
+
+	/**
+	 * Read the data, decompressed if gzipped.
+	 * @return a copy of the data, which can be changed without changing the source
+	 * @throws CbmException when error
+	 */
+	public byte[] read() throws CbmException {
+		var key = key(true);
+		var data = CACHE.get(key);
+		if (data == null) {
+			var raw = raw();
+			data = isGZipped(raw) ? Utility.gunzip(raw) : raw.clone();
+			CACHE.put(key, data);
+		}
+		return data.clone();
+	}
+
+	/**
+	 * @return true if the data is gzipped, and is compressed again when written
+	 * @throws CbmException when error
+	 */
+	public boolean isCompressed() throws CbmException {
+		return isGZipped(raw());
+	}
+
+	/**
+	 * Read the data as stored in its archive.
+	 * @return a copy of the data
+	 * @throws CbmException when error
+	 */
+	public byte[] readRaw() throws CbmException {
+		return entries.isEmpty() ? raw() : raw().clone();
+	}
+
+	/** @return the data as stored in its archive, shared with the cache, so it must not be changed */
+	private byte[] raw() throws CbmException {
+		if (entries.isEmpty()) {
+			return Utility.readFile(file);
+		}
+		var key = key(false);
+		var data = CACHE.get(key);
+		if (data != null) {
+			return data;
+		}
+		var parent = getParent();
+		if (!parent.isArchived()) {
+			try (var archive = ZipArchive.open(file)) {
+				data = archive.getData(getName());
+			}
+		} else {
+			// Entries of an archive inside an archive can only be read in order. Keep those passed on the way.
+			try (var zin = new ZipInputStream(new ByteArrayInputStream(parent.raw()))) {
+				for (var entry = zin.getNextEntry(); entry != null && data == null; entry = zin.getNextEntry()) {
+					if (!entry.isDirectory()) {
+						var entryData = zin.readAllBytes();
+						if (entry.getName().equals(getName())) {
+							data = entryData;
+						} else {
+							CACHE.put(parent.resolve(entry.getName()).key(false), entryData);
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new CbmException("Failed to read zip file " + parent + ". " + e.getMessage(), e);
+			}
+		}
+		if (data == null) {
+			throw new CbmException("No " + getName() + " in " + parent + ".");
+		}
+		CACHE.put(key, data);
+		return data;
+	}
+
+	/**
+	 * Write the data, gzipped if it was when read. Entries are replaced in each archive containing this source.
+	 * @param data the data
+	 * @throws CbmException when error
+	 */
+	public void write(byte[] data) throws CbmException {
+		if (!isWritable()) {
+			throw new CbmException("Can't write " + file + ".");
+		}
+		var compressed = isCompressed();
+		writeRaw(compressed ? Utility.gzip(data) : data.clone());
+		CACHE.put(key(true), data.clone());
+	}
+
+	private void writeRaw(byte[] data) throws CbmException {
+		if (entries.isEmpty()) {
+			Utility.writeFile(file, data);
+			return;
+		}
+		var parent = getParent();
+		if (parent.isArchived()) {
+			var out = new ByteArrayOutputStream(data.length);
+			replaceEntry(new ByteArrayInputStream(parent.raw()), out, getName(), data);
+			parent.writeRaw(out.toByteArray());
+		} else {
+			replaceEntry(file, getName(), data);
+			CACHE.removeFile(file);
+		}
+		CACHE.put(key(false), data);
+	}
+
+	/** Replace an entry in a zip file. The zip file is replaced when the new one has been written. */
+	private static void replaceEntry(File zipFile, String name, byte[] data) throws CbmException {
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile(".droid64_", ".tmp", zipFile.getAbsoluteFile().getParentFile());
+			try (var in = new BufferedInputStream(new FileInputStream(zipFile)); var out = new FileOutputStream(tmpFile)) {
+				replaceEntry(in, out, name, data);
+			}
+			try {
+				Files.move(tmpFile.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {	// NOSONAR
+				Files.move(tmpFile.toPath(), zipFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			throw new CbmException("Failed to write zip file " + zipFile + ". " + e.getMessage(), e);
+		} finally {
+			if (tmpFile != null && tmpFile.exists()) {
+				tmpFile.delete();	// NOSONAR
+			}
+		}
+	}
+
+	/** Copy a zip archive with one entry replaced, or added last if it was missing. */
+	private static void replaceEntry(InputStream in, OutputStream out, String name, byte[] data) throws CbmException {
+		try (var zin = new ZipInputStream(in); var zout = new ZipOutputStream(out)) {
+			boolean found = false;
+			for (var entry = zin.getNextEntry(); entry != null; entry = zin.getNextEntry()) {
+				var copy = new ZipEntry(entry.getName());
+				copy.setTime(entry.getTime());
+				copy.setComment(entry.getComment());
+				zout.putNextEntry(copy);
+				if (entry.getName().equals(name)) {
+					zout.write(data);
+					found = true;
+				} else {
+					zin.transferTo(zout);
+				}
+				zout.closeEntry();
+			}
+			if (!found) {
+				zout.putNextEntry(new ZipEntry(name));
+				zout.write(data);
+				zout.closeEntry();
+			}
+		} catch (IOException e) {
+			throw new CbmException("Failed to write zip file. " + e.getMessage(), e);
+		}
+	}
+
+	private static boolean isGZipped(byte[] data) {
+		return data.length > 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+	}
+
+	/** Cache key, which changes when the file is changed */
+	private String key(boolean decompressed) {
+		return file.getAbsolutePath() + '\0' + file.lastModified() + '\0' + file.length() + '\0' + (decompressed ? 'D' : 'R')
+				+ String.join("\0", entries);
+	}
+
+	/** Drop all cached data. */
+	static void clearCache() {
+		CACHE.clear();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ImageSource)) {
+			return false;
+		}
+		var other = (ImageSource) obj;
+		return file.equals(other.file) && entries.equals(other.entries);
+	}
+
+	@Override
+	public int hashCode() {
+		return file.hashCode() * 31 + entries.hashCode();
+	}
+
+	/** @return the path of the file, followed by the entries */
+	@Override
+	public String toString() {
+		var buf = new StringBuilder(file.getPath());
+		entries.forEach(entry -> buf.append(SEPARATOR).append(entry));
+		return buf.toString();
+	}
+
+	/** Least recently used data, dropped when the total size is above a limit */
+	private static class Cache {
+		private final long maxSize;
+		private final Map<String, byte[]> map = new LinkedHashMap<>(16, 0.75f, true);
+		private long size = 0L;
+
+		Cache(long maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		synchronized byte[] get(String key) {
+			return map.get(key);
+		}
+
+		synchronized void put(String key, byte[] data) {
+			if (data.length > maxSize) {
+				var old = map.remove(key);
+				size -= old != null ? old.length : 0;
+				return;
+			}
+			var old = map.put(key, data);
+			size += data.length - (old != null ? old.length : 0);
+			var it = map.values().iterator();
+			while (size > maxSize && it.hasNext()) {
+				size -= it.next().length;
+				it.remove();
+			}
+		}
+
+		synchronized void removeFile(File file) {
+			var prefix = file.getAbsolutePath() + '\0';
+			var it = map.entrySet().iterator();
+			while (it.hasNext()) {
+				var entry = it.next();
+				if (entry.getKey().startsWith(prefix)) {
+					size -= entry.getValue().length;
+					it.remove();
+				}
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			size = 0L;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import droid64.gui.Setting;
+
+/**
+ * Finds the type of disk images.<br>
+ * By name, the configured file name extensions are matched. The extensions are looked up by the end of the name
+ * instead of being tried one at a time, and are prepared once until the extension settings change.<br>
+ * By contents, the size of the file and the header block of the image are read, without loading the image. This
+ * tells which of the types with the same extension an image is, and gives the type of images with the wrong name.
+ */
+public final class ImageTypeDetector {
+	/** Header track, and DOS type at offset 2 of the header block, of types which have one at a fixed position */
+	private static final Map<DiskImageType, int[]> HEADERS = new EnumMap<>(DiskImageType.class);
+	/** Types by size of image, with and without error bytes */
+	private static final Map<Long, DiskImageType> SIZES = new HashMap<>();
+	private static final String T64_SIGNATURE = "C64";
+	private static final int GZIP_MAGIC = 0x8b1f;
+
+	private static volatile Matcher matcher = null;
+
+	static {
+		HEADERS.put(DiskImageType.D64, new int[] { 18, 'A' });
+		HEADERS.put(DiskImageType.D67, new int[] { 18, 'A' });
+		HEADERS.put(DiskImageType.D71, new int[] { 18, 'A' });
+		HEADERS.put(DiskImageType.D80, new int[] { 39, 'C' });
+		HEADERS.put(DiskImageType.D82, new int[] { 39, 'C' });
+		HEADERS.put(DiskImageType.D81, new int[] { 40, 'D' });
+		for (var type : DiskImageType.values()) {
+			if (type.expectedSize > 0 && type.clazz != null && !type.isReadonly()) {
+				SIZES.putIfAbsent(Long.valueOf(type.expectedSize), type);
+				SIZES.putIfAbsent(Long.valueOf(type.expectedSize + type.expectedSize / DiskImage.BLOCK_SIZE), type);
+			}
+		}
+	}
+
+	private ImageTypeDetector() {
+		super();
+	}
+
+	/** Drop the prepared file name extensions. Must be called when the extension settings change. */
+	public static void invalidate() {
+		matcher = null;
+	}
+
+	/**
+	 * Get type of image by its name.
+	 * @param name file name
+	 * @return type of image, or UNDEFINED if the name is not a disk image name
+	 */
+	public static DiskImageType getType(String name) {
+		var m = matcher;
+		if (m == null) {
+			m = new Matcher(Setting.getFileExtensionMap());
+			matcher = m;
+		}
+		return m.match(name);
+	}
+
+	/**
+	 * Get type of image by its name and contents. When the contents match another type than the name, the
+	 * type of the contents is used.
+	 * @param file the image file
+	 * @return type of image, or UNDEFINED if not a disk image
+	 */
+	public static DiskImageType detect(File file) {
+		if (file.isDirectory()) {
+			return DiskImageType.UNDEFINED;
+		}
+		var nameType = getType(file.getName());
+		if (nameType == DiskImageType.T64 || nameType == DiskImageType.LNX) {
+			return nameType;
+		}
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			var head = read(channel, 0L, 64);
+			if (head.remaining() >= 2 && (head.getShort(0) & 0xffff) == GZIP_MAGIC) {
+				// Only the size is known without decompressing
+				var trailer = read(channel, channel.size() - 4, 4);
+				var sizeType = trailer.remaining() == 4 ? SIZES.get(Long.valueOf(trailer.getInt() & 0xffffffffL)) : null;
+				return sizeType != null && sizeType.clazz == nameType.clazz ? sizeType : nameType;
+			} else if (isT64(head)) {
+				return DiskImageType.T64;
+			}
+			var sizeType = SIZES.get(Long.valueOf(channel.size()));
+			if (sizeType == null || sizeType == nameType) {
+				return nameType;
+			} else if (sizeType.clazz == nameType.clazz || hasHeader(channel, sizeType)) {
+				return sizeType;
+			}
+			return nameType;
+		} catch (IOException | RuntimeException e) {	//NOSONAR
+			return nameType;
+		}
+	}
+
+	private static boolean isT64(ByteBuffer head) {
+		if (head.remaining() < T64_SIGNATURE.length()) {
+			return false;
+		}
+		for (int i = 0; i < T64_SIGNATURE.length(); i++) {
+			if (head.get(i) != T64_SIGNATURE.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return true if the header block of the type is found in the image, or the type has no header to check */
+	private static boolean hasHeader(FileChannel channel, DiskImageType type) throws IOException {
+		var header = HEADERS.get(type);
+		if (header == null) {
+			return true;
+		}
+		int offset = DiskGeometry.get(type).getSectorOffset(header[0], 0);
+		var block = read(channel, offset, 4);
+		return offset >= 0 && block.remaining() == 4 && (block.get(2) & 0xff) == header[1];
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		var buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		if (position >= 0) {
+			while (buf.hasRemaining() && channel.read(buf, position + buf.position()) > 0) {
+				// Read until full or end of file
+			}
+		}
+		return buf.flip();
+	}
+
+	/** File name extensions by their length, so a name is matched by looking up its endings */
+	private static final class Matcher {
+		/** Type of extension, for each length of extensions. Longest first. */
+		private final TreeMap<Integer, Map<String, DiskImageType>> extensions = new TreeMap<>((a, b) -> b - a);
+
+		Matcher(Map<DiskImageType, List<String>> map) {
+			for (var entry : map.entrySet()) {
+				for (var ext : entry.getValue()) {
+					if (ext != null && !ext.isEmpty()) {
+						// Of types with the same extension, the first type is used
+						extensions.computeIfAbsent(ext.length(), k -> new HashMap<>())
+								.merge(ext.toLowerCase(Locale.ROOT), entry.getKey(), (a, b) -> a.compareTo(b) <= 0 ? a : b);
+					}
+				}
+			}
+		}
+
+		DiskImageType match(String name) {
+			if (name == null) {
+				return DiskImageType.UNDEFINED;
+			}
+			var found = DiskImageType.UNDEFINED;
+			for (var entry : extensions.entrySet()) {
+				int len = entry.getKey();
+				if (len <= name.length()) {
+					var type = entry.getValue().get(name.substring(name.length() - len).toLowerCase(Locale.ROOT));
+					if (type != null && (found == DiskImageType.UNDEFINED || type.compareTo(found) < 0)) {
+						found = type;
+					}
+				}
+			}
+			return found;
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package droid64.d64;
 
 import java.io.File;
-import java.text.ParseException;
 import java.util.Arrays;
 import java.util.List;
 
+import droid64.d64.FeedbackSink.Level;
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**
  * <p> Created on 2015-Oct-15 </p>
@@ -28,30 +27,45 @@ import droid64.gui.ConsoleStream;
 public class LNX extends DiskImage {
 
 	private static final long serialVersionUID = 1L;
-	/** All LNX blocks are 254 bytes. No track/sector byte first in each block.*/
-	private static final int LNX_BLOCK_SIZE = 254;
-	/** The CR delimiter used in the LNX directory structure. */
-	private static final int LNX_MARK = 0x0d;
 
-	public LNX(ConsoleStream consoleStream) {
+	/** The directory, parsed once */
+	private transient LnxIndex index = null;
+
+	public LNX(FeedbackSink consoleStream) {
 		this.feedbackStream = consoleStream;
 		bam = new CbmBam(0, 1);
 	}
 
-	public LNX(byte[] imageData, ConsoleStream consoleStream) {
+	public LNX(byte[] imageData, FeedbackSink consoleStream) {
 		this.feedbackStream = consoleStream;
-		cbmDisk = imageData;
+		setImageData(imageData);
 		bam = new CbmBam(0, 1);
 	}
 
+	public LNX(DiskImageType imageFormat, FeedbackSink consoleStream) {
+		this(consoleStream);
+		this.imageFormat = imageFormat;
+	}
+
+	public LNX(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
+		this(imageData, consoleStream);
+		this.imageFormat = imageFormat;
+	}
+
 	@Override
 	public byte[] getBlock(int track, int sector) throws CbmException {
 		return new byte[0];
 	}
 
+	@Override
+	protected boolean supportsMappedStorage() {
+		return false;
+	}
+
 	@Override
 	protected DiskImage readImage(File file) throws CbmException {
 		bam = new CbmBam(1, 1);
+		index = null;
 		return readImage(file, DiskImageType.LNX);
 	}
 
@@ -62,87 +76,70 @@ public class LNX extends DiskImage {
 
 	@Override
 	public void readDirectory() {
-		int pos = 0;
-		int count = 0;
-		int num = 0;
-		try {
-			// Look for 0x00,0x00,0x00 after end of BASIC
-			while (count != 3 && pos < cbmDisk.length) {
-				if ((cbmDisk[pos++]& 0xff) == 0x00) {
-					count++;
-				}
+		if (index == null) {
+			if (blockStore == null) {
+				feedbackStream.append(Level.ERROR, "Error: No LNX data loaded.\n");
+				return;
 			}
-			if (count == 3 && (pos + 1) < cbmDisk.length && (cbmDisk[++pos] & 0xff) == LNX_MARK) {
-				// Found end of basic.
-				// Get numDirBlocks and lnxName string
-				int end = findNextMark(++pos);
-				if (end < 0) {
-					feedbackStream.append("Failed to find number of dir entries.\n");
-					return;
-				}
-				// numDirBlocks & lnxName
-				String str = new String(Arrays.copyOfRange(cbmDisk, pos, end));
-				String[] dirItems = str.trim().split(" +", 2);
-				int numDirBlocks = Integer.parseInt(dirItems[0]);
-				String diskName = dirItems.length > 1 ? dirItems[1] : Utility.EMPTY;
-				int dataStart = numDirBlocks * LNX_BLOCK_SIZE;
-				setDiskName(diskName, Integer.toString(numDirBlocks));
-				// fileCount
-				pos = end + 1;
-				end = findNextMark(pos);
-				int fileCount = getInt(pos, end);
-				initCbmFile(fileCount);
-				filesUsedCount = fileCount;
-				// Get file entries
-				int dataPos = dataStart;
-				for (num = 0 ; num < fileCount && pos < cbmDisk.length; num++) {
-					// file name
-					pos = end + 1;
-					end = findNextMark(pos);
-					String name = Utility.getPetsciiString(cbmDisk, pos, end);
-					// size in blocks
-					pos = end + 1;
-					end = findNextMark(pos);
-					int size = getInt(pos, end);
-					// file type
-					pos = end + 1;
-					end = findNextMark(pos);
-					String ftype = Utility.getPetsciiString(cbmDisk, pos, end);
-					// Get LSU (last sector usage, i.e. the number of bytes used in last block + 1).
-					pos = end + 1;
-					end = findNextMark(pos);
-					int lsu = getInt(pos, end);
-					// Create entry
-					storeFileEntry(num, dataPos, name, size, ftype, lsu);
-					// Point to first block of data for next entry
-					dataPos += size * LNX_BLOCK_SIZE;
-				}
-			} else {
-				feedbackStream.append("Error: No end of BASIC header found.\n");
+			try {
+				index = LnxIndex.parse(cbmDisk != null ? cbmDisk : blockStore.toByteArray());
+			} catch (CbmException e) {	//NOSONAR
+				feedbackStream.append(Level.ERROR, "Error: ").append(e.getMessage()).append('\n');
+				return;
 			}
-		} catch (NumberFormatException | ParseException e) {	//NOSONAR
-			feedbackStream.append("Error: Failed to parse LNX file ").append(num+1).append(" at index 0x").append(Integer.toHexString(pos)).append(".\n").append(e.getMessage()).append('\n');
 		}
+		setDiskName(index.getDiskName(), Integer.toString(index.getDirBlocks()));
+		initCbmFile(index.getFileCount());
+		filesUsedCount = index.getMembers().size();
+		index.getMembers().forEach(this::storeFileEntry);
+		index.getWarnings().forEach(warning -> feedbackStream.append(Level.WARNING, warning).append('\n'));
+	}
+
+	/**
+	 * Read the directory of an LNX file without loading the files in it. The files are read from the LNX file when used.<br>
+	 * A compressed LNX file is loaded as usual.
+	 * @param file the LNX file
+	 * @param consoleStream the stream for error messages
+	 * @return LNX with directory to be read by {@link #readDirectory()}
+	 * @throws CbmException when the file could not be read
+	 */
+	public static LNX readIndex(File file, FeedbackSink consoleStream) throws CbmException {
+		var lnx = new LNX(DiskImageType.LNX, consoleStream);
+		if (Utility.isGZipped(file)) {
+			return (LNX) lnx.readImage(file);
+		}
+		lnx.bam = new CbmBam(1, 1);
+		lnx.index = LnxIndex.read(file);
+		lnx.setFile(file);
+		return lnx;
 	}
 
-	private void storeFileEntry(int num, int dataPos, String name, int size, String ftype, int lsu) {
+	/** @return the directory, or null if not yet read */
+	public LnxIndex getIndex() {
+		return index;
+	}
+
+	private void storeFileEntry(LnxIndex.Member member) {
 		var cf = new CbmFile();
-		cf.setDirPosition(num);
-		cf.setOffSet(dataPos);
-		cf.setName(name);
-		cf.setSizeInBlocks(size);
-		cf.setFileType(getTypeFromLnxType(ftype));
-		cf.setSizeInBytes(cf.getSizeInBlocks() * LNX_BLOCK_SIZE - (lsu > 0 ?  LNX_BLOCK_SIZE - lsu + 1 : 0));
+		cf.setDirPosition(member.getNumber());
+		cf.setOffSet(member.getOffset());
+		cf.setName(member.getName());
+		cf.setSizeInBlocks(member.getSizeInBlocks());
+		cf.setFileType(member.getFileType());
+		cf.setSizeInBytes(member.getSizeInBytes());
 		cf.setFileScratched(false);
 		cf.setFileLocked(false);
 		cf.setFileClosed(true);
-		cf.setLsu(lsu);
-		setCbmFile(num, cf);
+		cf.setLsu(member.getLsu());
+		setCbmFile(member.getNumber(), cf);
 	}
 
 	@Override
 	public byte[] getFileData(int number) throws CbmException {
 		if (number < getCbmFileSize()) {
+			if (blockStore == null && index != null && getFile() != null) {
+				return index.getData(number, getFile());
+			}
 			var cf = getCbmFile(number);
 			return Arrays.copyOfRange(cbmDisk, cf.getOffSet(), cf.getOffSet() + cf.getSizeInBytes());
 		} else {
@@ -150,6 +147,22 @@ public class LNX extends DiskImage {
 		}
 	}
 
+	@Override
+	public FileDataChannel getFileChannel(int number) throws CbmException {
+		if (number >= 0 && number < getCbmFileSize()) {
+			var cf = getCbmFile(number);
+			if (cf.getOffSet() >= 0 && cf.getSizeInBytes() >= 0 && cf.getOffSet() + cf.getSizeInBytes() <= size()) {
+				return FileDataChannel.of(blockStore.slice(cf.getOffSet(), cf.getSizeInBytes()));
+			}
+		}
+		return FileDataChannel.of(getFileData(number));
+	}
+
+	@Override
+	public ImageFileWriter openFileForWrite(CbmFile cbmFile, boolean isCopyFile) {
+		return openBufferedFileForWrite(cbmFile, isCopyFile);
+	}
+
 	@Override
 	protected TrackSector saveFileData(byte[] saveData) {
 		return null;
@@ -197,74 +210,20 @@ public class LNX extends DiskImage {
 	}
 
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean readSectorFree(int track, int sector) {
 		return false;
 	}
 
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		// Save not implemented
 	}
 
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		// Save not implemented
 	}
 
-	/**
-	 * Find next <code>LNX_MARK</code> in LNX file, on or after <code>start</code>.
-	 * @param start int
-	 * @return position of next <code>LNX_MARK</code> or -1 if none was found.
-	 */
-	private int findNextMark(int start) {
-		for (int i=start; i<cbmDisk.length; i++) {
-			if ((cbmDisk[i]&0xff) == LNX_MARK) {
-				return i;
-			}
-		}
-		return -1;
-	}
-
-	/**
-	 * Get our standard file type out of the ones used in LNX archives.
-	 * @param lnxType
-	 * @return DiskImage.TYPE_&lt;<i>fileType</i>&gt;
-	 */
-	private FileType getTypeFromLnxType(String lnxType) {
-		switch (lnxType) {
-		case "D": return FileType.DEL;
-		case "R": return FileType.REL;
-		case "S": return FileType.SEQ;
-		case "U": return FileType.USR;
-		default:  return FileType.PRG;
-		}
-	}
-
-	/**
-	 * Get integer value stored between <code>start</code> and <code>end</code>.
-	 * @param start
-	 * @param end
-	 * @return int
-	 * @throws NumberFormatException of <code>start</code> or <code>end</code> is not in LNX file.
-	 */
-	private int getInt(int start, int end) {
-		if (end > start && end < cbmDisk.length) {
-			String str = new String(Arrays.copyOfRange(cbmDisk, start, end)).trim();
-			if (str.isEmpty()) {
-				feedbackStream.append("Warning: Tried parsing empty string to integer at 0x").append(start).append('\n');
-				return 0;
-			} else {
-				try {
-					return Integer.parseInt(str.trim());
-				} catch (NumberFormatException e) {
-					throw new NumberFormatException("Failed to parse int at 0x"+Integer.toHexString(start)+" ("+str+").");
-				}
-			}
-		} else {
-			throw new NumberFormatException("Failed to parse int at 0x"+Integer.toHexString(start)+" (no string).");
-		}
-	}
-
 	@Override
 	public int getNextSector(int track, int sector) {
 		return sector;
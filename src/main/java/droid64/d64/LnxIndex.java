@@ -0,0 +1,401 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The directory of an LNX archive: name, type, position and size of each file.<br>
+ * The directory is parsed once, from the archive data or from the start of an archive file, which is read only
+ * as far as the directory goes. File data is then read from the archive when needed, by its position.
+ * The index is serializable, so it can be kept without the archive.
+ * @see LNX
+ */
+public final class LnxIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	/** All LNX blocks are 254 bytes. No track/sector byte first in each block.*/
+	public static final int BLOCK_SIZE = 254;
+	/** The CR delimiter used in the LNX directory structure. */
+	private static final int MARK = 0x0d;
+	/** Bytes read from an archive file at a time while parsing its directory */
+	private static final int READ_SIZE = 4 * 1024;
+	/** The directory is not searched for further than this in an archive file */
+	private static final int MAX_HEADER_SIZE = 1024 * 1024;
+
+	private final String diskName;
+	private final int dirBlocks;
+	private final int fileCount;
+	private final List<Member> members;
+	private final List<String> warnings;
+
+	private LnxIndex(String diskName, int dirBlocks, int fileCount, List<Member> members, List<String> warnings) {
+		this.diskName = diskName;
+		this.dirBlocks = dirBlocks;
+		this.fileCount = fileCount;
+		this.members = Collections.unmodifiableList(members);
+		this.warnings = Collections.unmodifiableList(warnings);
+	}
+
+	/**
+	 * Parse the directory of an LNX archive.
+	 * @param data the archive data
+	 * @return LnxIndex
+	 * @throws CbmException when there is no LNX directory
+	 */
+	public static LnxIndex parse(byte[] data) throws CbmException {
+		try {
+			return parse(new Header(data));
+		} catch (IOException e) {
+			throw new CbmException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parse the directory of an LNX archive, reading only the start of it.
+	 * @param channel the archive
+	 * @return LnxIndex
+	 * @throws CbmException when there is no LNX directory, or the archive could not be read
+	 */
+	public static LnxIndex read(SeekableByteChannel channel) throws CbmException {
+		try {
+			return parse(new Header(channel));
+		} catch (IOException e) {
+			throw new CbmException("Failed to read LNX file. " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Parse the directory of an LNX archive file, reading only the start of it.
+	 * @param file the archive file, which must not be compressed
+	 * @return LnxIndex
+	 * @throws CbmException when there is no LNX directory, or the file could not be read
+	 */
+	public static LnxIndex read(File file) throws CbmException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return read(channel);
+		} catch (IOException e) {
+			throw new CbmException("Failed to read LNX file. " + e.getMessage(), e);
+		}
+	}
+
+	private static LnxIndex parse(Header header) throws IOException, CbmException {
+		int pos = 0;
+		int count = 0;
+		// Look for 0x00,0x00,0x00 after end of BASIC
+		while (count != 3 && header.get(pos) >= 0) {
+			if (header.get(pos++) == 0x00) {
+				count++;
+			}
+		}
+		if (count != 3 || header.get(pos + 1) != MARK) {
+			throw new CbmException("No end of BASIC header found.");
+		}
+		// numDirBlocks & lnxName
+		pos += 2;
+		int end = header.findNextMark(pos);
+		if (end < 0) {
+			throw new CbmException("Failed to find number of dir entries.");
+		}
+		var warnings = new ArrayList<String>();
+		var dirItems = header.getString(pos, end).trim().split(" +", 2);
+		int numDirBlocks;
+		int fileCount;
+		try {
+			numDirBlocks = Integer.parseInt(dirItems[0]);
+			pos = end + 1;
+			end = header.findNextMark(pos);
+			fileCount = header.getInt(pos, end, warnings);
+		} catch (NumberFormatException e) {
+			throw new CbmException("Failed to parse LNX directory at index 0x" + Integer.toHexString(pos) + ". " + e.getMessage(), e);
+		}
+		var members = new ArrayList<Member>(Math.max(0, Math.min(fileCount, 1024)));
+		int dataPos = numDirBlocks * BLOCK_SIZE;
+		try {
+			for (int num = 0; num < fileCount && header.get(pos) >= 0; num++) {
+				pos = end + 1;
+				end = header.findNextMark(pos);
+				var name = header.getPetsciiString(pos, end);
+				pos = end + 1;
+				end = header.findNextMark(pos);
+				int size = header.getInt(pos, end, warnings);
+				pos = end + 1;
+				end = header.findNextMark(pos);
+				var type = header.getPetsciiString(pos, end);
+				// LSU (last sector usage, i.e. the number of bytes used in last block + 1).
+				pos = end + 1;
+				end = header.findNextMark(pos);
+				int lsu = header.getInt(pos, end, warnings);
+				members.add(new Member(num, name, getFileType(type), dataPos, size, lsu));
+				// Point to first block of data for next entry
+				dataPos += size * BLOCK_SIZE;
+			}
+		} catch (NumberFormatException | ParseException e) {
+			warnings.add("Error: Failed to parse LNX file " + (members.size() + 1) + " at index 0x" + Integer.toHexString(pos) + ".\n" + e.getMessage());
+		}
+		return new LnxIndex(dirItems.length > 1 ? dirItems[1] : Utility.EMPTY, numDirBlocks, fileCount, members, warnings);
+	}
+
+	/**
+	 * Get our standard file type out of the ones used in LNX archives.
+	 * @param lnxType type letter
+	 * @return FileType
+	 */
+	private static FileType getFileType(String lnxType) {
+		switch (lnxType) {
+		case "D": return FileType.DEL;
+		case "R": return FileType.REL;
+		case "S": return FileType.SEQ;
+		case "U": return FileType.USR;
+		default:  return FileType.PRG;
+		}
+	}
+
+	/** @return name of the archive */
+	public String getDiskName() {
+		return diskName;
+	}
+
+	/** @return number of blocks used by the BASIC header and the directory, after which the file data starts */
+	public int getDirBlocks() {
+		return dirBlocks;
+	}
+
+	/** @return number of files the directory says there are, which is more than the members found if it is broken */
+	public int getFileCount() {
+		return fileCount;
+	}
+
+	/** @return the files found in the directory */
+	public List<Member> getMembers() {
+		return members;
+	}
+
+	/**
+	 * @param number number of file
+	 * @return the file, or null if there is no such file
+	 */
+	public Member getMember(int number) {
+		return number >= 0 && number < members.size() ? members.get(number) : null;
+	}
+
+	/** @return problems found while parsing, for the parts of the directory which were used anyway */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	/**
+	 * Get the data of a file from the archive data.
+	 * @param number number of file
+	 * @param data the archive data
+	 * @return the file data, padded with zeroes if the archive is too short
+	 * @throws CbmException when there is no such file
+	 */
+	public byte[] getData(int number, byte[] data) throws CbmException {
+		var member = getExistingMember(number);
+		return Arrays.copyOfRange(data, member.offset, member.offset + member.sizeInBytes);
+	}
+
+	/**
+	 * Get the data of a file by reading its part of the archive.
+	 * @param number number of file
+	 * @param channel the archive
+	 * @return the file data, padded with zeroes if the archive is too short
+	 * @throws CbmException when there is no such file, or the archive could not be read
+	 */
+	public byte[] getData(int number, SeekableByteChannel channel) throws CbmException {
+		var member = getExistingMember(number);
+		var buf = ByteBuffer.allocate(member.sizeInBytes);
+		try {
+			channel.position(member.offset);
+			while (buf.hasRemaining() && channel.read(buf) > 0) {
+				// Read until full or end of archive
+			}
+		} catch (IOException e) {
+			throw new CbmException("Failed to read " + member.name + " from LNX file. " + e.getMessage(), e);
+		}
+		return buf.array();
+	}
+
+	/**
+	 * Get the data of a file by reading its part of the archive file.
+	 * @param number number of file
+	 * @param file the archive file, which must not be compressed
+	 * @return the file data, padded with zeroes if the archive is too short
+	 * @throws CbmException when there is no such file, or the archive could not be read
+	 */
+	public byte[] getData(int number, File file) throws CbmException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return getData(number, channel);
+		} catch (IOException e) {
+			throw new CbmException("Failed to read LNX file. " + e.getMessage(), e);
+		}
+	}
+
+	private Member getExistingMember(int number) throws CbmException {
+		var member = getMember(number);
+		if (member == null) {
+			throw new CbmException("LNX file number " + number + " does not exist.");
+		}
+		return member;
+	}
+
+	@Override
+	public String toString() {
+		return "LnxIndex [diskName=" + diskName + ", dirBlocks=" + dirBlocks + ", fileCount=" + fileCount + ", members=" + members + "]";
+	}
+
+	/** A file in an LNX archive */
+	public static final class Member implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final int number;
+		private final String name;
+		private final FileType fileType;
+		private final int offset;
+		private final int sizeInBlocks;
+		private final int sizeInBytes;
+		private final int lsu;
+
+		private Member(int number, String name, FileType fileType, int offset, int sizeInBlocks, int lsu) {
+			this.number = number;
+			this.name = name;
+			this.fileType = fileType;
+			this.offset = offset;
+			this.sizeInBlocks = sizeInBlocks;
+			this.sizeInBytes = Math.max(0, sizeInBlocks * BLOCK_SIZE - (lsu > 0 ? BLOCK_SIZE - lsu + 1 : 0));
+			this.lsu = lsu;
+		}
+
+		/** @return position in the directory */
+		public int getNumber() {
+			return number;
+		}
+
+		/** @return file name */
+		public String getName() {
+			return name;
+		}
+
+		/** @return file type */
+		public FileType getFileType() {
+			return fileType;
+		}
+
+		/** @return position of the data in the archive */
+		public int getOffset() {
+			return offset;
+		}
+
+		/** @return size in blocks of 254 bytes */
+		public int getSizeInBlocks() {
+			return sizeInBlocks;
+		}
+
+		/** @return size in bytes */
+		public int getSizeInBytes() {
+			return sizeInBytes;
+		}
+
+		/** @return last sector usage, i.e. the number of bytes used in last block + 1 */
+		public int getLsu() {
+			return lsu;
+		}
+
+		@Override
+		public String toString() {
+			return "Member [number=" + number + ", name=" + name + ", fileType=" + fileType + ", offset=" + offset
+					+ ", sizeInBlocks=" + sizeInBlocks + ", sizeInBytes=" + sizeInBytes + ", lsu=" + lsu + "]";
+		}
+	}
+
+	/** The start of an archive, read from its channel as far as the parser looks */
+	private static final class Header {
+		private final SeekableByteChannel channel;
+		private byte[] data;
+		private int length;
+
+		Header(byte[] data) {
+			this.channel = null;
+			this.data = data;
+			this.length = data.length;
+		}
+
+		Header(SeekableByteChannel channel) {
+			this.channel = channel;
+			this.data = new byte[READ_SIZE];
+			this.length = 0;
+		}
+
+		/** @return the byte at pos, or -1 if after the end */
+		int get(int pos) throws IOException {
+			while (pos >= length && fill()) {
+				// Read until pos is read or end of archive
+			}
+			return pos >= 0 && pos < length ? data[pos] & 0xff : -1;
+		}
+
+		/** @return position of next <code>MARK</code> on or after <code>start</code>, or -1 if none was found. */
+		int findNextMark(int start) throws IOException {
+			for (int i = Math.max(0, start); get(i) >= 0; i++) {
+				if (data[i] == MARK) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		String getString(int start, int end) {
+			return new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+		}
+
+		String getPetsciiString(int start, int end) throws ParseException {
+			return Utility.getPetsciiString(end <= length ? data : Arrays.copyOf(data, length), start, end);
+		}
+
+		/**
+		 * Get integer value stored between <code>start</code> and <code>end</code>.
+		 * @throws NumberFormatException if there is no integer there
+		 */
+		int getInt(int start, int end, List<String> warnings) {
+			if (end > start && end < length) {
+				var str = getString(start, end).trim();
+				if (str.isEmpty()) {
+					warnings.add("Warning: Tried parsing empty string to integer at 0x" + Integer.toHexString(start));
+					return 0;
+				}
+				try {
+					return Integer.parseInt(str);
+				} catch (NumberFormatException e) {
+					throw new NumberFormatException("Failed to parse int at 0x" + Integer.toHexString(start) + " (" + str + ").");
+				}
+			}
+			throw new NumberFormatException("Failed to parse int at 0x" + Integer.toHexString(start) + " (no string).");
+		}
+
+		private boolean fill() throws IOException {
+			if (channel == null || length >= MAX_HEADER_SIZE) {
+				return false;
+			}
+			if (length == data.length) {
+				data = Arrays.copyOf(data, Math.min(data.length * 2, MAX_HEADER_SIZE));
+			}
+			channel.position(length);
+			int n = channel.read(ByteBuffer.wrap(data, length, data.length - length));
+			if (n <= 0) {
+				return false;
+			}
+			length += n;
+			return true;
+		}
+	}
+}
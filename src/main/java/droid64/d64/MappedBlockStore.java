@@ -0,0 +1,101 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Image data memory mapped from file.<br>
+ * The file is mapped privately (copy-on-write), so modifications stay in memory until the image is saved.
+ */
+public class MappedBlockStore implements BlockStore {
+
+	private final MappedByteBuffer buffer;
+	private final File file;
+
+	private MappedBlockStore(File file, MappedByteBuffer buffer) {
+		this.file = file;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Map file into memory. A private mapping requires the file to be opened for writing,
+	 * although nothing is written to it.
+	 * @param file the file to map
+	 * @return MappedBlockStore
+	 * @throws IOException when file could not be mapped
+	 */
+	public static MappedBlockStore open(File file) throws IOException {
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large.");
+			}
+			// The mapping stays valid after the channel is closed
+			return new MappedBlockStore(file, channel.map(MapMode.PRIVATE, 0, size));
+		}
+	}
+
+	/**
+	 * @return the mapped file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public int size() {
+		return buffer.capacity();
+	}
+
+	@Override
+	public int get(int position) {
+		return buffer.get(position) & 0xff;
+	}
+
+	@Override
+	public void set(int position, int value) {
+		buffer.put(position, (byte) value);
+	}
+
+	@Override
+	public void get(int position, byte[] dest, int destPos, int length) {
+		buffer.duplicate().position(position).get(dest, destPos, length);
+	}
+
+	@Override
+	public void put(int position, byte[] src, int srcPos, int length) {
+		buffer.duplicate().position(position).put(src, srcPos, length);
+	}
+
+	@Override
+	public void put(int position, ByteBuffer src) {
+		buffer.duplicate().position(position).put(src);
+	}
+
+	@Override
+	public void fill(int from, int to, byte value) {
+		for (int i = from; i < to; i++) {
+			buffer.put(i, value);
+		}
+	}
+
+	@Override
+	public ByteBuffer slice(int position, int length) {
+		return buffer.duplicate().position(position).limit(position + length).slice().asReadOnlyBuffer();
+	}
+
+	@Override
+	public boolean isMapped() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "MappedBlockStore[file=" + file + " size=" + size() + ']';
+	}
+}
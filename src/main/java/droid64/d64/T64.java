@@ -5,7 +5,6 @@ import java.util.Arrays;
 import java.util.List;
 
 import droid64.gui.BAMPanel.BamTrack;
-import droid64.gui.ConsoleStream;
 
 /**<pre style='font-family:sans-serif;'>
  * Created on 2015-Oct-15
@@ -38,17 +37,17 @@ public class T64 extends DiskImage {
 	private static final String T64_SIGNATURE = "C64S tape file\r\n";
 	private static final byte SPACE = 0x20;
 
-	public T64(DiskImageType imageFormat, ConsoleStream consoleStream) {
+	public T64(DiskImageType imageFormat, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
 		this.feedbackStream = consoleStream;
 		initCbmFile(0);
 		bam = new CbmBam(1, 1);
 	}
 
-	public T64(DiskImageType imageFormat, byte[] imageData, ConsoleStream consoleStream) {
+	public T64(DiskImageType imageFormat, byte[] imageData, FeedbackSink consoleStream) {
 		this.imageFormat  = imageFormat;
 		this.feedbackStream = consoleStream;
-		cbmDisk = imageData;
+		setImageData(imageData);
 		int entryCapacity = Utility.getInt16(cbmDisk, 0x22);
 		filesUsedCount = Utility.getInt16(cbmDisk, 0x24);
 		initCbmFile(entryCapacity);
@@ -60,6 +59,11 @@ public class T64 extends DiskImage {
 		return new byte[0];
 	}
 
+	@Override
+	protected boolean supportsMappedStorage() {
+		return false;
+	}
+
 	@Override
 	protected DiskImage readImage(File file) throws CbmException {
 		bam = new CbmBam(1, 1);
@@ -150,6 +154,17 @@ public class T64 extends DiskImage {
 		}
 	}
 
+	@Override
+	public FileDataChannel getFileChannel(int number) throws CbmException {
+		// Load address is not stored with the data, so it has to be copied.
+		return FileDataChannel.of(getFileData(number));
+	}
+
+	@Override
+	public ImageFileWriter openFileForWrite(CbmFile cbmFile, boolean isCopyFile) {
+		return openBufferedFileForWrite(cbmFile, isCopyFile);
+	}
+
 	@Override
 	protected TrackSector saveFileData(byte[] saveData) {
 		return new TrackSector(0,0);
@@ -174,7 +189,7 @@ public class T64 extends DiskImage {
 
 	@Override
 	public boolean saveNewImage(File file, String newDiskName, String newDiskID) {
-		cbmDisk = null;
+		setImageData((byte[]) null);
 		expand(0);
 		Utility.setPaddedString(cbmDisk, 0x00, T64_SIGNATURE, T64_SIGNATURE.length());
 		setDiskName(Utility.cbmFileName(newDiskName, DISK_NAME_LENGTH), Utility.cbmFileName(newDiskID, DISK_NAME_LENGTH));
@@ -212,18 +227,18 @@ public class T64 extends DiskImage {
 	}
 
 	@Override
-	public boolean isSectorFree(int track, int sector) {
+	protected boolean readSectorFree(int track, int sector) {
 		// No sectors on tape
 		return false;
 	}
 
 	@Override
-	public void markSectorFree(int track, int sector) {
+	protected void writeSectorFree(int track, int sector) {
 		// No sectors on tape
 	}
 
 	@Override
-	public void markSectorUsed(int track, int sector) {
+	protected void writeSectorUsed(int track, int sector) {
 		// No sectors on tape
 	}
 
@@ -270,7 +285,7 @@ public class T64 extends DiskImage {
 		if (cbmDisk != null) {
 			byte[] oldDisk = cbmDisk;
 			int oldCapacity = Utility.getInt16(cbmDisk, 0x22);
-			cbmDisk = new byte[cbmDisk.length + DIR_ENTRY_SIZE + dataSize];
+			setImageData(new byte[oldDisk.length + DIR_ENTRY_SIZE + dataSize]);
 			Arrays.fill(cbmDisk, (byte) 0);
 			// copy header
 			Utility.copyBytes(oldDisk, cbmDisk, 0, 0, 0x40);
@@ -291,7 +306,7 @@ public class T64 extends DiskImage {
 			newCapacity = oldCapacity + 1;
 			dataPos = oldDisk.length + DIR_ENTRY_SIZE;
 		} else {
-			cbmDisk = new byte[0x40 + DIR_ENTRY_SIZE + dataSize];
+			setImageData(new byte[0x40 + DIR_ENTRY_SIZE + dataSize]);
 			Arrays.fill(cbmDisk, (byte) 0);
 			Utility.setInt16(cbmDisk, 0x20, 0x0101);	// version
 			Utility.setInt16(cbmDisk, 0x22, 1);	// maxEntries
@@ -6,11 +6,19 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
@@ -24,12 +32,14 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.MissingResourceException;
+import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.Scanner;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -80,6 +90,16 @@ public class Utility {
 	private static final int INPUT_BUFFER_SIZE = 65536;
 	/** Size of buffer writing uncompressed data to byte[] */
 	private static final int OUTPUT_BUFFER_SIZE = 1048576;
+	/** Largest uncompressed size trusted from a gzip trailer or a size hint */
+	private static final int MAX_GZIP_SIZE_HINT = 256 * 1024 * 1024;
+	/** Data at least this large is gzipped by several threads */
+	private static final int PARALLEL_GZIP_SIZE = 1024 * 1024;
+	/** Size of blocks gzipped by separate threads */
+	private static final int GZIP_BLOCK_SIZE = 128 * 1024;
+	/** Size of the data before a block which is used as dictionary when the block is compressed */
+	private static final int GZIP_DICTIONARY_SIZE = 32 * 1024;
+	/** Gzip header without file name or time */
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
 	private static String hostName = null;
 
 	/** Used for quick translation from byte to string */
@@ -206,6 +226,32 @@ public class Utility {
 		}
 	}
 
+	/**
+	 * Write the data of a channel to file on local file system.
+	 * Each part of the data is written directly from the channel, without copying it to an array first.
+	 *
+	 * @param targetFile
+	 *            the file
+	 * @param channel
+	 *            the data to write
+	 * @return true if successful
+	 */
+	public static boolean writeFileSafe(File targetFile, FileDataChannel channel) {
+		if (targetFile == null || channel == null) {
+			return false;
+		}
+		try (var output = FileChannel.open(targetFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (var slice = channel.nextSlice(); slice != null; slice = channel.nextSlice()) {
+				while (slice.hasRemaining()) {
+					output.write(slice);
+				}
+			}
+			return true;
+		} catch (Exception e) { // NOSONAR
+			return false;
+		}
+	}
+
 	/**
 	 * Write data to file on local file system.
 	 *
@@ -258,24 +304,73 @@ public class Utility {
 	 * @throws CbmException when failure
 	 */
 	public static byte[] readGZippedFile(File file) throws CbmException {
-		var buf = new byte[INPUT_BUFFER_SIZE];
-		try (var gis = new GZIPInputStream(new FileInputStream(file), INPUT_BUFFER_SIZE);
-				var bos = new ByteArrayOutputStream(OUTPUT_BUFFER_SIZE);) {
-			while (true) {
-				int size = gis.read(buf);
-				if (size <= 0) {
-					break;
-				}
-				bos.write(buf, 0, size);
+		return readGZippedFile(file, 0);
+	}
+
+	/**
+	 * Read gzipped file. The data is decompressed into a buffer of the size found in the gzip trailer, or else of
+	 * the expected size. The buffer is only copied if the data turns out not to fit.
+	 *
+	 * @param file the zip file
+	 * @param expectedSize expected size of uncompressed data, or zero if not known
+	 * @return byte array with uncompressed data
+	 * @throws CbmException when failure
+	 */
+	public static byte[] readGZippedFile(File file, int expectedSize) throws CbmException {
+		try (var in = new FileInputStream(file)) {
+			var channel = in.getChannel();
+			int size = -1;
+			if (channel.size() >= GZIP_HEADER.length + 8) {
+				var trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+				channel.read(trailer, channel.size() - 4);
+				size = trailer.flip().remaining() == 4 ? trailer.getInt() : -1;
 			}
-			return bos.toByteArray();
+			return readAll(new GZIPInputStream(in, INPUT_BUFFER_SIZE), size > 0 ? size : expectedSize);
+		} catch (IOException e) {
+			throw new CbmException(ERR_ZIP_READ_ERROR + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Decompress gzipped data into a buffer of the size found in the gzip trailer.
+	 *
+	 * @param data the gzipped data
+	 * @return byte array with uncompressed data
+	 * @throws CbmException when failure
+	 */
+	public static byte[] gunzip(byte[] data) throws CbmException {
+		int size = data.length >= GZIP_HEADER.length + 8
+				? ByteBuffer.wrap(data, data.length - 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() : -1;
+		try (var in = new GZIPInputStream(new ByteArrayInputStream(data), INPUT_BUFFER_SIZE)) {
+			return readAll(in, size);
 		} catch (IOException e) {
 			throw new CbmException(ERR_ZIP_READ_ERROR + e.getMessage(), e);
 		}
 	}
 
+	/** Read all data from a stream into a buffer of the hinted size, which is replaced by a larger one if needed. */
+	private static byte[] readAll(InputStream in, int sizeHint) throws IOException {
+		if (sizeHint <= 0 || sizeHint > MAX_GZIP_SIZE_HINT) {
+			return in.readAllBytes();
+		}
+		var data = new byte[sizeHint];
+		int len = in.readNBytes(data, 0, sizeHint);
+		if (len < sizeHint) {
+			return Arrays.copyOf(data, len);
+		}
+		int next = in.read();
+		if (next < 0) {
+			return data;
+		}
+		var bos = new ByteArrayOutputStream(Math.max(sizeHint * 2, OUTPUT_BUFFER_SIZE));
+		bos.write(data, 0, len);
+		bos.write(next);
+		in.transferTo(bos);
+		return bos.toByteArray();
+	}
+
 	/**
-	 * Write data to a gzipped file
+	 * Write data to a gzipped file, compressed at the configured level.
 	 *
 	 * @param file
 	 *            the zip file to create
@@ -288,10 +383,110 @@ public class Utility {
 		if (data == null) {
 			return;
 		}
-		try (var zipStream = new GZIPOutputStream(new FileOutputStream(file))) {
-			zipStream.write(data);
+		var gzipped = gzip(data);
+		try (var out = new FileOutputStream(file)) {
+			out.write(gzipped);
+		} catch (IOException e) {
+			throw new CbmException(ERR_ZIP_WRITE_ERROR + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gzip data at the configured level.
+	 *
+	 * @param data the data
+	 * @return the gzipped data
+	 */
+	public static byte[] gzip(byte[] data) {
+		return gzip(data, Optional.ofNullable(Setting.GZIP_LEVEL.getInteger()).orElse(Deflater.DEFAULT_COMPRESSION));
+	}
+
+	/**
+	 * Gzip data. Large data is split into blocks which are compressed by several threads, each block using the data
+	 * before it as dictionary. The blocks make up one deflate stream, which is read like any other.
+	 *
+	 * @param data the data
+	 * @param level compression level, 0 to 9, or -1 for the default level
+	 * @return the gzipped data
+	 */
+	public static byte[] gzip(byte[] data, int level) {
+		int compressionLevel = Math.max(Deflater.DEFAULT_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, level));
+		int blockSize = data.length >= PARALLEL_GZIP_SIZE ? GZIP_BLOCK_SIZE : Math.max(1, data.length);
+		int blockCount = Math.max(1, (data.length + blockSize - 1) / blockSize);
+		var blocks = IntStream.range(0, blockCount);
+		var compressed = (blockCount > 1 ? blocks.parallel() : blocks)
+				.mapToObj(i -> deflate(data, i * blockSize, Math.min(blockSize, data.length - i * blockSize), compressionLevel, i == blockCount - 1))
+				.toArray(byte[][]::new);
+		var crc = new CRC32();
+		crc.update(data);
+		int size = GZIP_HEADER.length + 8 + Arrays.stream(compressed).mapToInt(b -> b.length).sum();
+		var out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		out.put(GZIP_HEADER);
+		Arrays.stream(compressed).forEach(out::put);
+		out.putInt((int) crc.getValue());
+		out.putInt(data.length);
+		return out.array();
+	}
+
+	/** Deflate one block, ending it at a byte boundary, or ending the stream if it is the last block. */
+	private static byte[] deflate(byte[] data, int offset, int length, int level, boolean last) {
+		var deflater = new Deflater(level, true);
+		try {
+			if (offset > 0) {
+				int dictionaryStart = Math.max(0, offset - GZIP_DICTIONARY_SIZE);
+				deflater.setDictionary(data, dictionaryStart, offset - dictionaryStart);
+			}
+			deflater.setInput(data, offset, length);
+			var out = new ByteArrayOutputStream(length / 2 + 64);
+			var buf = new byte[INPUT_BUFFER_SIZE];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					out.write(buf, 0, deflater.deflate(buf));
+				}
+			} else {
+				int len;
+				do {
+					len = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+					out.write(buf, 0, len);
+				} while (len == buf.length);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Write data to a gzipped file. Data is first written to a temporary file which then replaces the file,
+	 * so the file is never left half written.
+	 *
+	 * @param file
+	 *            the zip file to create or replace
+	 * @param data
+	 *            the data
+	 * @throws CbmException
+	 *             when error
+	 */
+	public static void writeGZippedFileAtomic(File file, byte[] data) throws CbmException {
+		if (data == null) {
+			return;
+		}
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile(".droid64_", ".tmp", file.getAbsoluteFile().getParentFile());
+			writeGZippedFile(tmpFile, data);
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {	// NOSONAR
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
 		} catch (IOException e) {
 			throw new CbmException(ERR_ZIP_WRITE_ERROR + e.getMessage(), e);
+		} finally {
+			if (tmpFile != null && tmpFile.exists()) {
+				tmpFile.delete();	// NOSONAR
+			}
 		}
 	}
 
@@ -303,20 +498,9 @@ public class Utility {
 	 * @throws CbmException in case of zip errors
 	 */
 	public static List<DirEntry> getZipFileEntries(File file, int firstFileNum) throws CbmException {
-		var list = new ArrayList<DirEntry> ();
-		try (var zipFile = new ZipFile(file)) {
-			int fileNum = firstFileNum;
-			var entries = zipFile.entries();
-			while (entries.hasMoreElements()){
-				var entry = entries.nextElement();
-				if (!entry.isDirectory()) {
-					list.add(new DirEntry(file, entry, fileNum++));
-				}
-			}
-		} catch (IOException e) {
-			throw new CbmException(ERR_ZIP_READ_ERROR + e.getMessage(), e);
+		try (var archive = ZipArchive.open(file)) {
+			return archive.getDirEntries(firstFileNum);
 		}
-		return list;
 	}
 
 	/**
@@ -343,7 +527,7 @@ public class Utility {
 	}
 
 	/**
-	 * Extract data from an entry in a Zip file.
+	 * Extract data from an entry in a Zip file. Use a {@link ZipArchive} to read several entries.
 	 *
 	 * @param zipFile
 	 *            the zip file
@@ -356,22 +540,10 @@ public class Utility {
 	public static byte[] getDataFromZipFileEntry(File zipFile, String entryName) throws IOException {
 		byte[] data = null;
 		try (var zf = new ZipFile(zipFile)) {
-			var entries = zf.entries();
-			while (entries.hasMoreElements()) {
-				var entry = entries.nextElement();
-				if (entryName.equals(entry.getName())) {
-					var zin = zf.getInputStream(entry);
-					var bos = new ByteArrayOutputStream();
-					var bytesIn = new byte[1024];
-					int read;
-					while ((read = zin.read(bytesIn)) != -1) {
-						bos.write(bytesIn, 0, read);
-					}
-					bos.close();
-					data = bos.toByteArray();
-					bos.close();
-					zin.close();
-					break;
+			var entry = zf.getEntry(entryName);
+			if (entry != null && !entry.isDirectory()) {
+				try (var zin = zf.getInputStream(entry)) {
+					data = zin.readAllBytes();
 				}
 			}
 		}
@@ -402,18 +574,60 @@ public class Utility {
 	 * @throws CbmException when failure
 	 */
 	public static String calcMd5Checksum(byte[] data) throws CbmException {
+		return calcMd5Checksum(FileDataChannel.of(data));
+	}
+
+	/**
+	 * Calculate MD5 checksum on the data of a channel. The data is digested one part at a time, without copying.
+	 *
+	 * @param channel
+	 *            the data
+	 * @return string with MD5 checksum
+	 * @throws CbmException when failure
+	 */
+	public static String calcMd5Checksum(FileDataChannel channel) throws CbmException {
 		try {
-			var digest = MessageDigest.getInstance("MD5").digest(data);
-			var buf = new StringBuilder();
-			for (byte b : digest) {
-				buf.append(HEX[(b) & 0xff]);
+			var md = MessageDigest.getInstance("MD5");
+			for (var slice = channel.nextSlice(); slice != null; slice = channel.nextSlice()) {
+				md.update(slice);
+			}
+			return toHexString(md.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new CbmException("Failed to get MD5", e);
+		}
+	}
+
+	/**
+	 * Calculate MD5 checksum on the contents of a file. The file is read one part at a time.
+	 *
+	 * @param file
+	 *            the file
+	 * @return string with MD5 checksum
+	 * @throws CbmException when failure
+	 */
+	public static String calcMd5Checksum(File file) throws CbmException {
+		try (var in = new FileInputStream(file)) {
+			var md = MessageDigest.getInstance("MD5");
+			var data = new byte[0x10000];
+			for (int len = in.read(data); len >= 0; len = in.read(data)) {
+				md.update(data, 0, len);
 			}
-			return buf.toString();
+			return toHexString(md.digest());
 		} catch (NoSuchAlgorithmException e) {
 			throw new CbmException("Failed to get MD5", e);
+		} catch (IOException e) {
+			throw new CbmException("Failed to read " + file + ". " + e.getMessage(), e);
 		}
 	}
 
+	private static String toHexString(byte[] data) {
+		var buf = new StringBuilder(data.length * 2);
+		for (byte b : data) {
+			buf.append(HEX[(b) & 0xff]);
+		}
+		return buf.toString();
+	}
+
 	/**
 	 * Convert an 32 bit int to a hexadecimal string with leading zeroes (unlike
 	 * Integer.tohexString())
@@ -0,0 +1,124 @@
+package droid64.d64;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A zip file kept open while it is browsed.<br>
+ * The central directory is read once when opened, and the entries are looked up by name, so reading
+ * all entries of an archive opens it once instead of once per entry.
+ */
+public class ZipArchive implements Closeable {
+
+	private final File file;
+	private final ZipFile zipFile;
+	/** Entries which are not directories, by name, in archive order */
+	private final Map<String, ZipEntry> entries = new LinkedHashMap<>();
+
+	private ZipArchive(File file, ZipFile zipFile) {
+		this.file = file;
+		this.zipFile = zipFile;
+		var it = zipFile.entries();
+		while (it.hasMoreElements()) {
+			var entry = it.nextElement();
+			if (!entry.isDirectory()) {
+				entries.putIfAbsent(entry.getName(), entry);
+			}
+		}
+	}
+
+	/**
+	 * Open a zip file.
+	 * @param file the zip file
+	 * @return ZipArchive, which must be closed when done
+	 * @throws CbmException when the file could not be read as a zip file
+	 */
+	public static ZipArchive open(File file) throws CbmException {
+		ZipFile zipFile = null;
+		try {
+			zipFile = new ZipFile(file);
+			return new ZipArchive(file, zipFile);
+		} catch (IOException | IllegalStateException e) {
+			closeQuietly(zipFile);
+			throw new CbmException("Failed to read zip file. " + e.getMessage(), e);
+		}
+	}
+
+	/** @return the zip file */
+	public File getFile() {
+		return file;
+	}
+
+	/** @return number of entries which are not directories */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @param name name of entry
+	 * @return true if there is an entry with the name
+	 */
+	public boolean contains(String name) {
+		return entries.containsKey(name);
+	}
+
+	/**
+	 * Get the entries which are not directories.
+	 * @param firstFileNum the fileNumber to assign to the first entry.
+	 * @return the list of entries in the zip file.
+	 */
+	public List<DirEntry> getDirEntries(int firstFileNum) {
+		var list = new ArrayList<DirEntry>(entries.size());
+		int fileNum = firstFileNum;
+		for (var entry : entries.values()) {
+			list.add(new DirEntry(file, entry, fileNum++));
+		}
+		return list;
+	}
+
+	/**
+	 * Extract the data of an entry.
+	 * @param name name of the entry
+	 * @return the data, or null if there is no entry with the name
+	 * @throws CbmException when the entry could not be read
+	 */
+	public byte[] getData(String name) throws CbmException {
+		var entry = entries.get(name);
+		if (entry == null) {
+			return null;	//NOSONAR
+		}
+		try (var in = zipFile.getInputStream(entry)) {
+			long size = entry.getSize();
+			if (size >= 0 && size < Integer.MAX_VALUE) {
+				var data = in.readNBytes((int) size);
+				if (in.read() < 0) {
+					return data;
+				}
+				throw new CbmException("Size of " + name + " does not match its data.");
+			}
+			return in.readAllBytes();
+		} catch (IOException | IllegalStateException e) {
+			throw new CbmException("Failed to read " + name + " from zip file. " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void close() {
+		closeQuietly(zipFile);
+	}
+
+	private static void closeQuietly(ZipFile zipFile) {
+		if (zipFile != null) {
+			try {
+				zipFile.close();
+			} catch (IOException e) {}	//NOSONAR
+		}
+	}
+}
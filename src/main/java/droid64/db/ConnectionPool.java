@@ -0,0 +1,410 @@
+package droid64.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A small pool of JDBC connections.<br>
+ * Connections are handed out as proxies. Closing a connection returns it to the pool, and closing a prepared statement
+ * keeps it in a cache of its connection to be used again. Idle connections are validated by a background timer.
+ * A connection which has been idle for longer than the timer interval is validated when borrowed.
+ * The number of open connections is limited. When all are in use, borrowing waits for one to be returned.
+ */
+final class ConnectionPool {
+	/** Number of idle connections kept. More connections are opened when needed, and closed when returned. */
+	private static final int MAX_IDLE = 4;
+	/** Number of connections open, idle or in use */
+	private static final int MAX_CONNECTIONS = 16;
+	/** Milliseconds to wait for a connection when all are in use */
+	private static final long CONNECTION_TIMEOUT = 30_000L;
+	/** Prepared statements cached per connection */
+	private static final int MAX_CACHED_STATEMENTS = 32;
+	/** Milliseconds between validations of idle connections */
+	private static final long VALIDATION_INTERVAL = 60_000L;
+	/** Seconds to wait for a connection to be validated */
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int maxConnections;
+	private final long timeout;
+	/** Idle connections. Most recently used first. */
+	private final Deque<PooledConnection> idle = new ArrayDeque<>();
+	private final Timer timer = new Timer("droid64-connection-validator", true);
+	/** Number of connections open, or being opened */
+	private int open = 0;
+	private boolean closed = false;
+
+	/**
+	 * @param url connection URL
+	 * @param user user name, or null
+	 * @param password password
+	 */
+	ConnectionPool(String url, String user, String password) {
+		this(url, user, password, MAX_CONNECTIONS, CONNECTION_TIMEOUT);
+	}
+
+	/**
+	 * @param url connection URL
+	 * @param user user name, or null
+	 * @param password password
+	 * @param maxConnections max number of connections open
+	 * @param timeout milliseconds to wait for a connection when all are in use
+	 */
+	ConnectionPool(String url, String user, String password, int maxConnections, long timeout) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.maxConnections = maxConnections;
+		this.timeout = timeout;
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				validateIdle();
+			}
+		}, VALIDATION_INTERVAL, VALIDATION_INTERVAL);
+	}
+
+	/**
+	 * Borrow a connection. It is returned to the pool when closed.
+	 * @return connection
+	 * @throws SQLException when no connection could be opened
+	 */
+	Connection getConnection() throws SQLException {
+		return borrow().lease();
+	}
+
+	/**
+	 * Borrow a connection and prepare a statement on it. The connection is returned to the pool when the statement is closed.
+	 * @param sql SQL statement
+	 * @param autoGeneratedKeys flag for auto generated keys, or null for a statement without it
+	 * @return prepared statement
+	 * @throws SQLException when error
+	 */
+	PreparedStatement prepareStatement(String sql, Integer autoGeneratedKeys) throws SQLException {
+		var pc = borrow();
+		var connection = pc.lease();
+		try {
+			return pc.prepare(sql, autoGeneratedKeys, connection, true);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+	}
+
+	private PooledConnection borrow() throws SQLException {
+		PooledConnection pc;
+		while ((pc = take()) != null) {
+			if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_INTERVAL || pc.isValid()) {
+				return pc;
+			}
+			pc.discard();
+		}
+		try {
+			Connection connection;
+			if (user != null && !user.isEmpty()) {
+				connection = DriverManager.getConnection(url, user, password);
+			} else {
+				connection = DriverManager.getConnection(url);
+			}
+			connection.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+			connection.setAutoCommit(true);
+			return new PooledConnection(connection);
+		} catch (SQLException | RuntimeException e) {
+			connectionClosed();
+			throw e;
+		}
+	}
+
+	/**
+	 * Take an idle connection, waiting for one to be returned if the max number of connections are open.
+	 * @return idle connection, or null if a new connection is to be opened, which is then counted as open
+	 * @throws SQLException when the pool is closed, or no connection was returned in time
+	 */
+	private synchronized PooledConnection take() throws SQLException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while (true) {
+			if (closed) {
+				throw new SQLException("Connection pool is closed.");
+			} else if (!idle.isEmpty()) {
+				return idle.pollFirst();
+			} else if (open < maxConnections) {
+				open++;
+				return null;
+			}
+			long wait = deadline - System.currentTimeMillis();
+			if (wait <= 0) {
+				throw new SQLException("No database connection available. All " + maxConnections + " connections are in use.");
+			}
+			try {
+				wait(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for a database connection.", e);
+			}
+		}
+	}
+
+	/** Count a connection as closed, and wake up those waiting for a connection */
+	private synchronized void connectionClosed() {
+		open--;
+		notifyAll();
+	}
+
+	private void release(PooledConnection pc) {
+		pc.lastUsed = System.currentTimeMillis();
+		synchronized (this) {
+			if (!closed && idle.size() < MAX_IDLE) {
+				idle.addFirst(pc);
+				notifyAll();
+				return;
+			}
+		}
+		pc.discard();
+	}
+
+	/** Validate connections which have been idle for a while, and close the ones no longer valid. */
+	private void validateIdle() {
+		var stale = new ArrayList<PooledConnection>();
+		long limit = System.currentTimeMillis() - VALIDATION_INTERVAL;
+		synchronized (this) {
+			idle.removeIf(pc -> pc.lastUsed < limit && stale.add(pc));
+		}
+		for (var pc : stale) {
+			if (pc.isValid()) {
+				release(pc);
+			} else {
+				pc.discard();
+			}
+		}
+	}
+
+	/** Close all idle connections and stop the validation timer. Connections in use are closed when returned. */
+	void close() {
+		timer.cancel();
+		var list = new ArrayList<PooledConnection>();
+		synchronized (this) {
+			closed = true;
+			list.addAll(idle);
+			idle.clear();
+		}
+		list.forEach(PooledConnection::discard);
+	}
+
+	/** Number of idle connections */
+	synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/** Number of open connections, idle or in use */
+	synchronized int getOpenCount() {
+		return open;
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/** A physical connection with its statement cache */
+	private final class PooledConnection {
+		private final Connection connection;
+		/** Cached statements in least recently used order */
+		private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+		/** Cached statements currently handed out */
+		private final Set<PreparedStatement> inUse = new HashSet<>();
+		private long lastUsed = System.currentTimeMillis();
+		private boolean autoCommit = true;
+		private boolean discarded = false;
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		private boolean isValid() {
+			try {
+				return connection.isValid(VALIDATION_TIMEOUT);
+			} catch (SQLException e) {	//NOSONAR
+				return false;
+			}
+		}
+
+		private void discard() {
+			synchronized (this) {
+				if (discarded) {
+					return;
+				}
+				discarded = true;
+			}
+			try {
+				connection.close();
+			} catch (SQLException e) {}	//NOSONAR
+			connectionClosed();
+		}
+
+		/**
+		 * Hand out the connection as a proxy.
+		 * @return proxy which returns the connection to the pool when closed
+		 */
+		private Connection lease() {
+			var handler = new InvocationHandler() {
+				private boolean leaseClosed = false;
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					switch (method.getName()) {
+					case "close":
+						if (!leaseClosed) {
+							leaseClosed = true;
+							giveBack();
+						}
+						return null;
+					case "isClosed":
+						return leaseClosed || connection.isClosed();
+					default:
+						break;
+					}
+					if (leaseClosed) {
+						throw new SQLException("Connection is closed.");
+					} else if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+						return prepare((String) args[0], null, (Connection) proxy, false);
+					} else if ("prepareStatement".equals(method.getName()) && args.length == 2 && args[1] instanceof Integer) {
+						return prepare((String) args[0], (Integer) args[1], (Connection) proxy, false);
+					} else if ("setAutoCommit".equals(method.getName())) {
+						connection.setAutoCommit((Boolean) args[0]);
+						autoCommit = (Boolean) args[0];
+						return null;
+					}
+					return ConnectionPool.invoke(connection, method, args);
+				}
+			};
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+		}
+
+		/** Return to pool, with any open transaction rolled back and auto commit restored. */
+		private void giveBack() {
+			try {
+				if (connection.isClosed()) {
+					return;
+				} else if (!autoCommit) {
+					connection.rollback();
+					connection.setAutoCommit(true);
+					autoCommit = true;
+				}
+			} catch (SQLException e) {	//NOSONAR
+				discard();
+				return;
+			}
+			release(this);
+		}
+
+		/**
+		 * Get a prepared statement from the cache, or prepare a new one.
+		 * @param sql SQL statement
+		 * @param autoGeneratedKeys flag for auto generated keys, or null
+		 * @param proxy the connection proxy, returned by getConnection() on the statement
+		 * @param ownsConnection true if the connection was borrowed for this statement only, and is to be returned when the statement is closed.
+		 * @return proxy of the statement
+		 * @throws SQLException when error
+		 */
+		private synchronized PreparedStatement prepare(String sql, Integer autoGeneratedKeys, Connection proxy, boolean ownsConnection) throws SQLException {
+			var key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + ":" + sql;
+			var stmt = statements.get(key);
+			boolean cached = stmt != null && inUse.add(stmt);
+			if (!cached) {
+				stmt = autoGeneratedKeys == null ? connection.prepareStatement(sql) : connection.prepareStatement(sql, autoGeneratedKeys);
+				if (!statements.containsKey(key)) {
+					statements.put(key, stmt);
+					inUse.add(stmt);
+					cached = true;
+					evictStatements();
+				}
+			}
+			var target = stmt;
+			var keep = cached;
+			var handler = new InvocationHandler() {
+				private boolean stmtClosed = false;
+				@Override
+				public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+					switch (method.getName()) {
+					case "close":
+						if (!stmtClosed) {
+							stmtClosed = true;
+							try {
+								closeStatement(target, keep);
+							} finally {
+								if (ownsConnection) {
+									proxy.close();
+								}
+							}
+						}
+						return null;
+					case "isClosed":
+						return stmtClosed || target.isClosed();
+					case "getConnection":
+						return proxy;
+					default:
+						return ConnectionPool.invoke(target, method, args);
+					}
+				}
+			};
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, handler);
+		}
+
+		/**
+		 * Close a statement, or reset it when cached so the next user gets it as newly prepared.
+		 * A cached statement which fails to reset is closed and dropped from the cache.
+		 */
+		private synchronized void closeStatement(PreparedStatement stmt, boolean cached) throws SQLException {
+			if (cached) {
+				inUse.remove(stmt);
+				try {
+					var rs = stmt.getResultSet();
+					if (rs != null) {
+						rs.close();
+					}
+					stmt.clearParameters();
+					stmt.clearBatch();
+					stmt.setFetchSize(0);
+					stmt.setMaxRows(0);
+					return;
+				} catch (SQLException e) {	//NOSONAR
+					statements.values().remove(stmt);
+				}
+			}
+			stmt.close();
+		}
+
+		/** Close least recently used statements not in use, while there are too many. */
+		private void evictStatements() {
+			var it = statements.values().iterator();
+			while (statements.size() > MAX_CACHED_STATEMENTS && it.hasNext()) {
+				var stmt = it.next();
+				if (!inUse.contains(stmt)) {
+					it.remove();
+					try {
+						stmt.close();
+					} catch (SQLException e) {}	//NOSONAR
+				}
+			}
+		}
+	}
+}
@@ -9,6 +9,7 @@ public abstract class DaoFactory {
 	public enum LimitType {LIMIT, FIRST, FETCH}
 	private static final String [] LIMIT_TYPE_NAMES = {"LIMIT", "FIRST", "FETCH FIRST"};
 	protected static LimitType limitType = LimitType.LIMIT;
+	protected static long maxRows = 25L;
 
 	/**
 	 * Get <code>Disk</code> DAO
@@ -36,4 +37,9 @@ public abstract class DaoFactory {
 		return LIMIT_TYPE_NAMES;
 	}
 
+	/** @return max number of rows returned by a search */
+	public static long getMaxRows() {
+		return maxRows;
+	}
+
 }
@@ -12,14 +12,7 @@ import java.sql.SQLException;
  */
 public class DaoFactoryImpl extends DaoFactory {
 
-	private static Connection connection = null;
-	private static final int CONNECTION_TIMEOUT = 30;
-
-	private static String jdbcDriver = null;
-	private static String jdbcUrl = null;
-	private static String jdbcUser = null;
-	private static String jdbcPassword = null;
-	private static long maxRows = 25L;
+	private static ConnectionPool pool = null;
 	private static boolean initialized = false;
 
 	@Override
@@ -37,7 +30,7 @@ public class DaoFactoryImpl extends DaoFactory {
 	 * @param jdbcLimitType the type of syntax for limit the number of returned rows
 	 * @throws DatabaseException when error
 	 */
-	public static void initialize(String className, String url, String user, String password, long maxRows, int jdbcLimitType) throws DatabaseException {
+	public static synchronized void initialize(String className, String url, String user, String password, long maxRows, int jdbcLimitType) throws DatabaseException {
 
 		switch (jdbcLimitType) {
 		case 1:
@@ -51,11 +44,9 @@ public class DaoFactoryImpl extends DaoFactory {
 			limitType = LimitType.LIMIT;
 			break;
 		}
-		if (connection != null) {
-			try {
-				connection.close();
-			} catch (SQLException e) {}	//NOSONAR
-			connection = null;
+		if (pool != null) {
+			pool.close();
+			pool = null;
 		}
 		try {
 			initialized = false;
@@ -66,15 +57,14 @@ public class DaoFactoryImpl extends DaoFactory {
 				throw new DatabaseException("No URL");
 			}
 			Class.forName (className);
-			if (user!=null && !user.isEmpty()) {
-				connection = DriverManager.getConnection(url, user, password);
-			} else {
-				connection = DriverManager.getConnection(url );
+			var newPool = new ConnectionPool(url, user, password);
+			try {
+				newPool.getConnection().close();
+			} catch (SQLException e) {
+				newPool.close();
+				throw e;
 			}
-			jdbcDriver = className;
-			jdbcUrl = url;
-			jdbcUser = user;
-			jdbcPassword = password;
+			pool = newPool;
 			DaoFactoryImpl.maxRows = maxRows;
 			initialized = true;
 		} catch (ClassNotFoundException | SQLException e) {
@@ -122,64 +112,42 @@ public class DaoFactoryImpl extends DaoFactory {
 	}
 
 	/**
-	 * Get a connection. If current connection is not valid a new connection will be made.<br>
+	 * Get a connection from the pool. Closing the connection returns it to the pool.<br>
 	 * Requires that {@link #initialize(String, String, String, String, long, int)} has been called before.
 	 * @return Connection
 	 * @throws DatabaseException when error
 	 */
 	public static Connection getConnection() throws DatabaseException {
-		if (!initialized) {
-			throw new DatabaseException("Database factory not initilized");
-		}
 		try {
-			if (connection == null || !connection.isValid(CONNECTION_TIMEOUT)) {
-				connect();
-			}
-			connection.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
-			connection.setAutoCommit(true);
-			return connection;
-		} catch (ClassNotFoundException | SQLException e) {
+			return getPool().getConnection();
+		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
 	}
 
-	private static void connect() throws DatabaseException, ClassNotFoundException, SQLException {
-		if (connection != null) {
-			try {
-				connection.close();
-			} catch (SQLException e) {}	//NOSONAR
-		}
-		connection = null;
-		if (jdbcDriver==null || jdbcDriver.trim().isEmpty()) {
-			throw new DatabaseException("No driver class");
-		}
-		if (jdbcUrl==null || jdbcUrl.trim().isEmpty()) {
-			throw new DatabaseException("No URL");
-		}
-		Class.forName ("com.mysql.cj.jdbc.Driver");
-		if (jdbcUser!=null && !jdbcUser.isEmpty()) {
-			connection = DriverManager.getConnection(jdbcUrl, jdbcUser, jdbcPassword);
-		} else {
-			connection = DriverManager.getConnection(jdbcUrl);
+	private static synchronized ConnectionPool getPool() throws DatabaseException {
+		if (!initialized || pool == null) {
+			throw new DatabaseException("Database factory not initilized");
 		}
+		return pool;
 	}
 
 	/**
-	 * Get prepared statement.
+	 * Get prepared statement on a connection from the pool. The connection is returned to the pool when the statement is closed.
 	 * @param sql String with SQL statement
 	 * @return PreparedStatement
 	 * @throws DatabaseException when error
 	 */
 	public static PreparedStatement prepareStatement(String sql) throws DatabaseException {
 		try {
-			return getConnection().prepareStatement(sql);
+			return getPool().prepareStatement(sql, null);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
 	}
 
 	/**
-	 * Get prepared statement.
+	 * Get prepared statement on a connection from the pool. The connection is returned to the pool when the statement is closed.
 	 * @param sql String with SQL statement
 	 * @param autoGeneratedKeys if true primary keys will be auto generated
 	 * @return PreparedStatement
@@ -187,14 +155,10 @@ public class DaoFactoryImpl extends DaoFactory {
 	 */
 	public static PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws DatabaseException {
 		try {
-			return getConnection().prepareStatement(sql, autoGeneratedKeys);
+			return getPool().prepareStatement(sql, autoGeneratedKeys);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
 	}
 
-	public static long getMaxRows() {
-		return maxRows;
-	}
-
 }
@@ -4,7 +4,6 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import droid64.d64.DiskImageType;
 
@@ -24,6 +23,12 @@ public class Disk extends Value implements Serializable {
 	private Integer errors;
 	private Integer warnings;
 	private String hostName;
+	/** Size of image file in bytes */
+	private Long fileSize;
+	/** Last modification time of image file in milliseconds */
+	private Long modified;
+	/** MD5 checksum of image file */
+	private String hash;
 
 	private List<DiskFile> diskFiles = null;
 
@@ -110,6 +115,30 @@ public class Disk extends Value implements Serializable {
 		this.hostName = hostName;
 	}
 
+	public Long getFileSize() {
+		return fileSize;
+	}
+
+	public void setFileSize(Long fileSize) {
+		this.fileSize = fileSize;
+	}
+
+	public Long getModified() {
+		return modified;
+	}
+
+	public void setModified(Long modified) {
+		this.modified = modified;
+	}
+
+	public String getHash() {
+		return hash;
+	}
+
+	public void setHash(String hash) {
+		this.hash = hash;
+	}
+
 	@Override
 	public String toString() {
 		return new StringBuilder()
@@ -124,25 +153,10 @@ public class Disk extends Value implements Serializable {
 		.append(" .warnings=").append(warnings)
 		.append(" .diskFiles=").append(diskFiles)
 		.append(" .hostName=").append(hostName)
+		.append(" .fileSize=").append(fileSize)
+		.append(" .modified=").append(modified)
+		.append(" .hash=").append(hash)
 		.append(" .state=").append(getState())
 		.append(']').toString();
 	}
-
-	public String toXML() {
-		return new StringBuilder().append("<Disk>")
-				.append("<diskId>").append(diskId).append("</diskId>")
-				.append("<label>").append(label).append("</label>")
-				.append("<filePath>").append(filePath).append("</filePath>")
-				.append("<fileName>").append(fileName).append("</fileName>")
-				.append("<updated>").append(updated).append("</updated>")
-				.append("<imageType>").append(imageType).append("</imageType>")
-				.append("<errors>").append(errors).append("</errors>")
-				.append("<warnings>").append(warnings).append("</warnings>")
-				.append("<hostName>").append(hostName).append("</hostName>")
-				.append("<state>").append(getState()).append("</state>")
-				.append("\n<diskFiles>\n")
-				.append(diskFiles.stream().map(DiskFile::toXML).collect(Collectors.joining()))
-				.append("</diskFiles>\n")
-				.append("</Disk>\n").toString();
-	}
 }
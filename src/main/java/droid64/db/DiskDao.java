@@ -1,17 +1,34 @@
 package droid64.db;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 public interface DiskDao {
 
 	/**
-	 * Get stream of all stored disks.
+	 * Get stream of all stored disks.<br>
+	 * Disks are read from the database as the stream is consumed. The stream holds a connection until all disks have been read,
+	 * or until the stream is closed. A failure while reading is thrown as IllegalStateException.
 	 * @param composite if true return composite with child entities
 	 * @return Stream of Disk
 	 * @throws DatabaseException when error
 	 */
 	public Stream<Disk> getAllDisks(boolean composite) throws DatabaseException;
 
+	/**
+	 * @return number of stored disks, of all hosts
+	 * @throws DatabaseException when error
+	 */
+	public long getDiskCount() throws DatabaseException;
+
+	/**
+	 * @return highest disk id, or 0 if there are no disks
+	 * @throws DatabaseException when error
+	 */
+	public long getMaxDiskId() throws DatabaseException;
+
 	/**
 	 * Get one specified disk
 	 * @param diskId disk id
@@ -34,6 +51,23 @@ public interface DiskDao {
 	 */
 	public void delete(Disk disk) throws DatabaseException;
 
+	/**
+	 * Delete disks, with their files, in one transaction.
+	 * @param diskIds ids of the disks
+	 * @throws DatabaseException when error
+	 */
+	public void deleteAll(Collection<Long> diskIds) throws DatabaseException;
+
+	/**
+	 * Delete disks of image files in one directory, or of all image files in a directory and its sub directories, in one transaction.
+	 * @param filePath the directory
+	 * @param fileNames names of image files in the directory, or null to delete all disks in the directory and its sub directories
+	 * @param hostName the host, or null. Disks stored without host are included.
+	 * @return number of deleted disks
+	 * @throws DatabaseException when error
+	 */
+	public int deleteDisks(String filePath, Collection<String> fileNames, String hostName) throws DatabaseException;
+
 	/**
 	 * Search for disks
 	 * @param criteria search criteria
@@ -49,6 +83,32 @@ public interface DiskDao {
 	 */
 	public void save(Disk disk) throws DatabaseException;
 
+	/**
+	 * Save several disk composites in one transaction. If the transaction fails, the disks are saved in smaller
+	 * transactions, so only the disks which fail on their own are not saved.
+	 * Disks without an updated time are saved as updated now.
+	 * @param disks list of Disk
+	 * @throws PartialSaveException when some disks were not saved
+	 * @throws DatabaseException when error
+	 */
+	public void saveAll(List<Disk> disks) throws DatabaseException;
+
+	/**
+	 * Get the stored disks of one directory, without files.
+	 * @param filePath the directory
+	 * @param hostName the host, or null. Disks stored without host are included.
+	 * @return map from file name to disk
+	 * @throws DatabaseException when error
+	 */
+	public Map<String, Disk> getDisksInPath(String filePath, String hostName) throws DatabaseException;
+
+	/**
+	 * Mark disks as found unchanged when scanned. Only the updated time and modification time of the disks are written.
+	 * @param disks list of Disk
+	 * @throws DatabaseException when error
+	 */
+	public void touch(List<Disk> disks) throws DatabaseException;
+
 	/**
 	 * Get Disk by filename
 	 * @param fileName name of file
@@ -8,9 +8,21 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import droid64.d64.DiskImageType;
 import droid64.d64.FileType;
@@ -23,17 +35,50 @@ import droid64.d64.Utility;
 public class DiskDaoImpl implements DiskDao {
 
 	private static final String SELECT = "SELECT ";
-	private static final String COLUMN_NAMES = "diskId, label, filePath, fileName, updated, imagetype, errors, warnings, hostname";
-	private static final String UPDATE_COLUMN_NAMES = "label=?, filePath=?, fileName=?, updated=?, imagetype=?, errors=?, warnings=?, hostname=?";
+	private static final String COLUMN_NAMES = "diskId, label, filePath, fileName, updated, imagetype, errors, warnings, hostname, filesize, modified, hash";
+	private static final String UPDATE_COLUMN_NAMES = "label=?, filePath=?, fileName=?, updated=?, imagetype=?, errors=?, warnings=?, hostname=?, label_uc=?, filepath_uc=?, filename_uc=?, hostname_uc=?, filesize=?, modified=?, hash=?";
 	private static final String AND_SPACE = "AND ";
+	private static final String LIKE = "LIKE ? ESCAPE '!' ";
+	private static final String DISK_COLUMN_NAMES = "d.diskId, d.label, d.filePath, d.fileName, d.updated, d.imagetype, d.errors, d.warnings, d.hostname, d.filesize, d.modified, d.hash";
+	private static final String FILE_COLUMN_NAMES = "df.diskId, df.fileid, df.name, df.filetype, df.size, df.fileNum, df.flags, df.namebytes";
+	/** Column of first file column when selecting DISK_COLUMN_NAMES and FILE_COLUMN_NAMES */
+	private static final int FILE_COLUMN = 13;
+	/** Number of rows to fetch at a time when streaming */
+	private static final int FETCH_SIZE = 500;
+	/** Max number of ids in each IN list */
+	private static final int IN_LIST_SIZE = 500;
+	/** Sizes of the upper case columns. Upper case text can be longer than the text, so it is cut to fit. */
+	private static final int LABEL_UC_SIZE = 32;
+	private static final int FILEPATH_UC_SIZE = 500;
+	private static final int FILENAME_UC_SIZE = 100;
+	private static final int HOSTNAME_UC_SIZE = 256;
+	private static final int NAME_UC_SIZE = 32;
+	private static final String SAVE_COLUMN_NAMES = "d.diskid, d.filepath, d.filename, d.label, df.fileid, df.name, df.filetype, df.size, df.fileNum, df.flags, d.imagetype, d.errors, d.warnings, d.hostname, df.namebytes ";
+	private static final String INSERT_FILE = "INSERT INTO diskfile(diskid,name,filetype,size,filenum,flags,namebytes,name_uc) VALUES (?,?,?,?,?,?,?,?)";
+	private static final String UPDATE_FILE = "UPDATE diskfile SET name=?,filetype=?,size=?,filenum=?,flags=?,namebytes=?,name_uc=? WHERE diskid=? AND fileid=?";
+	private static final String DELETE_FILE = "DELETE FROM diskfile WHERE diskid=? AND fileid=?";
 
 	@Override
 	public Stream<Disk> getAllDisks(boolean composite) throws DatabaseException {
-		String sql = SELECT + COLUMN_NAMES + " FROM disk";
-		try (var stmt = DaoFactoryImpl.prepareStatement(sql)) {
-			ResultSet rs = stmt.executeQuery();
-			return consumeRows(rs, composite);
+		String sql = composite
+				? SELECT + DISK_COLUMN_NAMES + ", " + FILE_COLUMN_NAMES + " FROM disk d LEFT JOIN diskfile df ON df.diskid = d.diskid ORDER BY d.diskid, df.fileid"
+				: SELECT + COLUMN_NAMES + " FROM disk";
+		Connection conn = null;
+		try {
+			conn = DaoFactoryImpl.getConnection();
+			// Some drivers only fetch rows from a cursor in parts when inside a transaction
+			conn.setAutoCommit(false);
+			var stmt = conn.prepareStatement(sql);
+			var cursor = new DiskCursor(conn, stmt, composite);
+			stmt.setFetchSize(FETCH_SIZE);
+			cursor.rs = stmt.executeQuery();
+			return StreamSupport.stream(cursor, false).onClose(cursor::close);
 		} catch (SQLException e) {
+			if (conn != null) {
+				try {
+					conn.close();
+				} catch (SQLException e2) { /* ignore */ }
+			}
 			throw new DatabaseException(e);
 		}
 	}
@@ -45,7 +90,7 @@ public class DiskDaoImpl implements DiskDao {
 			stmt.setLong(1, diskId);
 			try (var rs = stmt.executeQuery()) {
 				if (rs.next()) {
-					return consumeRow(rs, false);
+					return consumeRow(rs);
 				} else {
 					throw new NotFoundException("No such diskId ("+diskId+").");
 				}
@@ -55,6 +100,25 @@ public class DiskDaoImpl implements DiskDao {
 		}
 	}
 
+	@Override
+	public long getDiskCount() throws DatabaseException {
+		return queryLong(SELECT + "COUNT(1) FROM disk");
+	}
+
+	@Override
+	public long getMaxDiskId() throws DatabaseException {
+		return queryLong(SELECT + "MAX(diskid) FROM disk");
+	}
+
+	/** @return the value of a query with one number, or 0 if null */
+	private long queryLong(String sql) throws DatabaseException {
+		try (var stmt = DaoFactoryImpl.prepareStatement(sql); var rs = stmt.executeQuery()) {
+			return rs.next() ? rs.getLong(1) : 0L;
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
 	@Override
 	public Disk getDiskByFileName(String fileName) throws DatabaseException {
 		String sql = SELECT + COLUMN_NAMES + " FROM disk WHERE filepath=? AND filename=?";
@@ -68,7 +132,7 @@ public class DiskDaoImpl implements DiskDao {
 
 			try (var rs = stmt.executeQuery()) {
 				if (rs.next()) {
-					return consumeRow(rs, false);
+					return consumeRow(rs);
 				} else {
 					throw new NotFoundException("No such disk ("+fileName+").");
 				}
@@ -78,6 +142,52 @@ public class DiskDaoImpl implements DiskDao {
 		}
 	}
 
+	@Override
+	public Map<String, Disk> getDisksInPath(String filePath, String hostName) throws DatabaseException {
+		String sql = SELECT + COLUMN_NAMES + " FROM disk WHERE filepath_uc=? AND filepath=? AND (hostname_uc=? OR hostname IS NULL) ORDER BY diskid";
+		try (var stmt = DaoFactoryImpl.prepareStatement(sql)) {
+			stmt.setString(1, toUpperCase(filePath, FILEPATH_UC_SIZE));
+			stmt.setString(2, filePath);
+			stmt.setString(3, hostName != null ? toUpperCase(hostName, HOSTNAME_UC_SIZE) : Utility.EMPTY);
+			var disks = new HashMap<String, Disk>();
+			try (var rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					var disk = consumeRow(rs);
+					disks.putIfAbsent(disk.getFileName(), disk);
+				}
+			}
+			return disks;
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	@Override
+	public void touch(List<Disk> disks) throws DatabaseException {
+		if (disks.isEmpty()) {
+			return;
+		}
+		var now = new Timestamp(new Date().getTime());
+		try (var conn = DaoFactoryImpl.getConnection()) {
+			conn.setAutoCommit(false);
+			try (var stmt = conn.prepareStatement("UPDATE disk SET updated=?, modified=? WHERE diskid=?")) {
+				for (var disk : disks) {
+					stmt.setTimestamp(1, now);
+					setLong(stmt, 2, disk.getModified());
+					stmt.setLong(3, disk.getDiskId());
+					stmt.addBatch();
+				}
+				stmt.executeBatch();
+			} catch (SQLException e) {
+				rollback("Touch failed. " + e.getMessage(), e, conn);
+			}
+			commit(conn);
+			disks.forEach(disk -> disk.setUpdated(now));
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
 	@Override
 	public void update(Disk disk) throws DatabaseException {
 		if (disk == null) {
@@ -93,7 +203,9 @@ public class DiskDaoImpl implements DiskDao {
 			setInteger(stmt, 6, disk.getErrors());
 			setInteger(stmt, 7, disk.getWarnings());
 			stmt.setString(8, disk.getHostName());
-			stmt.setLong(9, disk.getDiskId());
+			setUpperCase(stmt, 9, disk);
+			setFileInfo(stmt, 13, disk);
+			stmt.setLong(16, disk.getDiskId());
 			if (1 != stmt.executeUpdate()) {
 				throw new NotFoundException("DiskId "+disk.getDiskId()+" could not be updated.");
 			}
@@ -114,6 +226,7 @@ public class DiskDaoImpl implements DiskDao {
 		}  catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
+		TrigramIndex.removed(disk.getDiskId());
 		String sql2 = "DELETE FROM disk WHERE diskId=?";
 		try (var stmt = DaoFactoryImpl.prepareStatement(sql2)){
 			stmt.setLong(1, disk.getDiskId());
@@ -126,9 +239,102 @@ public class DiskDaoImpl implements DiskDao {
 	}
 
 	@Override
-	public Stream<Disk> search(DiskSearchCriteria criteria) throws DatabaseException {
-		Stream.Builder<Disk> builder = Stream.builder();
+	public int deleteDisks(String filePath, Collection<String> fileNames, String hostName) throws DatabaseException {
+		if (fileNames != null && fileNames.isEmpty()) {
+			return 0;
+		}
+		var diskIds = new ArrayList<Long>();
+		if (fileNames == null) {
+			findDiskIds(filePath, null, hostName, diskIds);
+		} else {
+			var names = new ArrayList<>(fileNames);
+			for (int i = 0; i < names.size(); i += IN_LIST_SIZE) {
+				findDiskIds(filePath, names.subList(i, Math.min(i + IN_LIST_SIZE, names.size())), hostName, diskIds);
+			}
+		}
+		deleteAll(diskIds);
+		return diskIds.size();
+	}
+
+	/** Add ids of disks with some names in a path, or of all disks in the path and below if names is null. */
+	private void findDiskIds(String filePath, List<String> fileNames, String hostName, List<Long> diskIds) throws DatabaseException {
+		var sql = new StringBuilder(SELECT).append("diskid FROM disk WHERE ");
+		if (fileNames != null) {
+			sql.append("filepath_uc=? AND filepath=? AND filename IN (").append(String.join(",", Collections.nCopies(fileNames.size(), "?"))).append(") ");
+		} else {
+			sql.append("(filepath_uc=? AND filepath=? OR filepath_uc LIKE ? ESCAPE '!' AND filepath LIKE ? ESCAPE '!') ");
+		}
+		sql.append("AND (hostname_uc=? OR hostname IS NULL)");
+		try (var stmt = DaoFactoryImpl.prepareStatement(sql.toString())) {
+			int idx = 1;
+			stmt.setString(idx++, toUpperCase(filePath, FILEPATH_UC_SIZE));
+			stmt.setString(idx++, filePath);
+			if (fileNames != null) {
+				for (var name : fileNames) {
+					stmt.setString(idx++, name);
+				}
+			} else {
+				var subDirs = escapeLike(filePath + File.separator) + "%";
+				stmt.setString(idx++, toUpperCase(subDirs));
+				stmt.setString(idx++, subDirs);
+			}
+			stmt.setString(idx, hostName != null ? toUpperCase(hostName, HOSTNAME_UC_SIZE) : Utility.EMPTY);
+			try (var rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					diskIds.add(rs.getLong(1));
+				}
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	/**
+	 * Delete disks and their files in one transaction. Each statement deletes many disks.
+	 */
+	@Override
+	public void deleteAll(Collection<Long> ids) throws DatabaseException {
+		if (ids.isEmpty()) {
+			return;
+		}
+		var diskIds = new ArrayList<>(ids);
+		try (var conn = DaoFactoryImpl.getConnection()) {
+			conn.setAutoCommit(false);
+			try {
+				for (int i = 0; i < diskIds.size(); i += IN_LIST_SIZE) {
+					var chunk = diskIds.subList(i, Math.min(i + IN_LIST_SIZE, diskIds.size()));
+					var in = " IN (" + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+					try (var stmt1 = conn.prepareStatement("DELETE FROM diskfile WHERE diskid" + in);
+							var stmt2 = conn.prepareStatement("DELETE FROM disk WHERE diskid" + in)) {
+						for (int j = 0; j < chunk.size(); j++) {
+							stmt1.setLong(j + 1, chunk.get(j));
+							stmt2.setLong(j + 1, chunk.get(j));
+						}
+						stmt1.executeUpdate();
+						stmt2.executeUpdate();
+					}
+				}
+			} catch (SQLException e) {
+				rollback("Delete failed. " + e.getMessage(), e, conn);
+			}
+			commit(conn);
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+		diskIds.forEach(TrigramIndex::removed);
+	}
 
+	/**
+	 * Search using the upper case columns, which are indexed.<br>
+	 * Text criteria without wildcards are matched against the start of the text, which can use the index,
+	 * or anywhere in the text if the criteria asks for it. Text with wildcards is matched as given.
+	 * When the search is restricted to some disks, such as those found by the search index, only those are read.
+	 */
+	@Override
+	public Stream<Disk> search(DiskSearchCriteria criteria) throws DatabaseException {
+		if (criteria.getDiskIds() != null && criteria.getDiskIds().isEmpty()) {
+			return Stream.empty();
+		}
 		String columns = "d.diskid, d.filepath, d.filename, d.label, df.fileid, df.name, df.filetype, df.size, df.fileNum, df.flags, d.updated, d.imagetype, d.errors, d.warnings, d.hostname, df.namebytes";
 		var sqlBuf = new StringBuilder();
 		sqlBuf.append(SELECT);
@@ -147,18 +353,18 @@ public class DiskDaoImpl implements DiskDao {
 		String sql = sqlBuf.toString();
 		try (var stmt = DaoFactoryImpl.prepareStatement(sql)) {
 			setSearchCriterias(stmt, criteria);
+			var list = new ArrayList<Disk>();
 			try (var rs = stmt.executeQuery()) {
 				while (rs.next()) {
-					builder.add(consumeDiskComposite(rs));
+					list.add(consumeDiskComposite(rs));
 				}
 			}
-			return builder.build();
+			return list.stream();
 		}  catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
 	}
 
-
 	private void buildSearchCriteria(DiskSearchCriteria criteria, StringBuilder sqlBuf) {
 		if (!criteria.hasCriteria()) {
 			return;
@@ -166,19 +372,19 @@ public class DiskDaoImpl implements DiskDao {
 		String and = Utility.EMPTY;
 		sqlBuf.append("WHERE ");
 		if (!isStringNullOrEmpty(criteria.getFileName())) {
-			sqlBuf.append("UPPER(df.name) LIKE ? ");
+			sqlBuf.append("df.name_uc ").append(LIKE);
 			and = AND_SPACE;
 		}
 		if (!isStringNullOrEmpty(criteria.getDiskLabel())) {
-			sqlBuf.append(and).append("UPPER(d.label) LIKE ? ");
+			sqlBuf.append(and).append("d.label_uc ").append(LIKE);
 			and = AND_SPACE;
 		}
 		if (!isStringNullOrEmpty(criteria.getDiskPath())) {
-			sqlBuf.append(and).append("UPPER(d.filepath) LIKE ? ");
+			sqlBuf.append(and).append("d.filepath_uc ").append(LIKE);
 			and = AND_SPACE;
 		}
 		if (!isStringNullOrEmpty(criteria.getDiskFileName())) {
-			sqlBuf.append(and).append("UPPER(d.filename) LIKE ? ");
+			sqlBuf.append(and).append("d.filename_uc ").append(LIKE);
 			and = AND_SPACE;
 		}
 		if (criteria.getFileSizeMin()!=null) {
@@ -194,11 +400,15 @@ public class DiskDaoImpl implements DiskDao {
 			and = AND_SPACE;
 		}
 		if (!isStringNullOrEmpty(criteria.getHostName())) {
-			sqlBuf.append(and).append("UPPER(d.hostname) LIKE ? ");
+			sqlBuf.append(and).append("d.hostname_uc ").append(LIKE);
 			and = AND_SPACE;
 		}
 		if (criteria.getImageType()!=null) {
 			sqlBuf.append(and).append("d.imagetype = ? ");
+			and = AND_SPACE;
+		}
+		if (criteria.getDiskIds() != null) {
+			sqlBuf.append(and).append("d.diskid IN (").append(String.join(",", Collections.nCopies(criteria.getDiskIds().size(), "?"))).append(") ");
 		}
 	}
 
@@ -209,16 +419,16 @@ public class DiskDaoImpl implements DiskDao {
 		}
 		if (criteria.hasCriteria()) {
 			if (!isStringNullOrEmpty(criteria.getFileName())) {
-				stmt.setString(idx++, "%"+criteria.getFileName().toUpperCase()+"%");
+				stmt.setString(idx++, toLikePattern(criteria.getFileName(), criteria.isContains()));
 			}
 			if (!isStringNullOrEmpty(criteria.getDiskLabel())) {
-				stmt.setString(idx++, "%"+criteria.getDiskLabel().toUpperCase()+"%");
+				stmt.setString(idx++, toLikePattern(criteria.getDiskLabel(), criteria.isContains()));
 			}
 			if (!isStringNullOrEmpty(criteria.getDiskPath())) {
-				stmt.setString(idx++, "%"+criteria.getDiskPath().toUpperCase()+"%");
+				stmt.setString(idx++, toLikePattern(criteria.getDiskPath(), criteria.isContains()));
 			}
 			if (!isStringNullOrEmpty(criteria.getDiskFileName())) {
-				stmt.setString(idx++, "%"+criteria.getDiskFileName().toUpperCase()+"%");
+				stmt.setString(idx++, toLikePattern(criteria.getDiskFileName(), criteria.isContains()));
 			}
 			if (criteria.getFileSizeMin()!=null) {
 				stmt.setInt(idx++, criteria.getFileSizeMin());
@@ -230,17 +440,72 @@ public class DiskDaoImpl implements DiskDao {
 				stmt.setInt(idx++, criteria.getFileType().type);
 			}
 			if (!isStringNullOrEmpty(criteria.getHostName())) {
-				stmt.setString(idx++, "%"+criteria.getHostName().toUpperCase()+"%");
+				stmt.setString(idx++, toLikePattern(criteria.getHostName(), criteria.isContains()));
 			}
 			if (criteria.getImageType()!=null) {
 				stmt.setInt(idx++, criteria.getImageType().type);
 			}
+			if (criteria.getDiskIds() != null) {
+				for (var diskId : criteria.getDiskIds()) {
+					stmt.setLong(idx++, diskId);
+				}
+			}
 		}
 		if (DaoFactory.getLimitType() == DaoFactory.LimitType.LIMIT || DaoFactory.getLimitType() == DaoFactory.LimitType.FETCH) {
 			stmt.setLong(idx, DaoFactoryImpl.getMaxRows());
 		}
 	}
 
+	private static boolean hasWildcards(String str) {
+		return str.indexOf('*') >= 0 || str.indexOf('?') >= 0;
+	}
+
+	/**
+	 * Make a pattern for LIKE from search text. The characters * and ? are wildcards for any text and any character.
+	 * Text without wildcards matches text starting with it, or containing it.
+	 * @param str search text
+	 * @param contains if true, text without wildcards can be anywhere
+	 * @return pattern, using ! to escape
+	 */
+	static String toLikePattern(String str, boolean contains) {
+		var buf = new StringBuilder(str.length() + 2);
+		boolean wildcards = hasWildcards(str);
+		if (contains && !wildcards) {
+			buf.append('%');
+		}
+		for (var c : toUpperCase(str).toCharArray()) {
+			if (c == '*') {
+				buf.append('%');
+			} else if (c == '?') {
+				buf.append('_');
+			} else if (c == '%' || c == '_' || c == '!') {
+				buf.append('!').append(c);
+			} else {
+				buf.append(c);
+			}
+		}
+		if (!wildcards) {
+			buf.append('%');
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Escape text to be matched literally by LIKE.
+	 * @param str the text
+	 * @return text with % and _ escaped using !
+	 */
+	static String escapeLike(String str) {
+		var buf = new StringBuilder(str.length() + 8);
+		for (var c : str.toCharArray()) {
+			if (c == '%' || c == '_' || c == '!') {
+				buf.append('!');
+			}
+			buf.append(c);
+		}
+		return buf.toString();
+	}
+
 	private Disk consumeDiskComposite(ResultSet rs) throws SQLException {
 		var disk = new Disk();
 		var file = new DiskFile();
@@ -269,56 +534,168 @@ public class DiskDaoImpl implements DiskDao {
 		if (disk == null) {
 			return;
 		}
-		String sql = "SELECT d.diskid, d.filepath, d.filename, d.label, df.fileid, df.name, df.filetype, df.size, df.fileNum, df.flags, d.imagetype, d.errors, d.warnings, d.hostname, df.namebytes " +
+		String sql = SELECT + SAVE_COLUMN_NAMES +
 				"FROM disk d " +
 				"LEFT JOIN diskfile df ON df.diskid = d.diskid " +
-				"WHERE d.filePath = ? AND d.filename = ? AND (UPPER(hostname) = ? OR hostname IS NULL)" +
+				"WHERE d.filePath = ? AND d.filename = ? AND (hostname_uc = ? OR hostname IS NULL)" +
 				"ORDER BY d.filepath, d.filename, df.fileNum;\n ";
 		try (var stmt = DaoFactoryImpl.prepareStatement(sql)) {
 			int idx = 1;
 			stmt.setString(idx++, disk.getFilePath());
 			stmt.setString(idx++, disk.getFileName());
-			stmt.setString(idx, disk.getHostName() != null ? disk.getHostName().toUpperCase() : Utility.EMPTY);
+			stmt.setString(idx, disk.getHostName() != null ? toUpperCase(disk.getHostName(), HOSTNAME_UC_SIZE) : Utility.EMPTY);
 			try (var rs = stmt.executeQuery()) {
 				Disk oldDisk = null;
 				while (rs.next()) {
 					oldDisk = consumeSaveRs(rs, oldDisk);
 				}
-				if (oldDisk != null) {
-					disk.setDiskId(oldDisk.getDiskId());
-					disk.setUpdate();
-					int longestList = disk.getDiskFiles().size() > oldDisk.getDiskFiles().size() ? disk.getDiskFiles().size() : oldDisk.getDiskFiles().size();
-					int newFileCount = disk.getDiskFiles().size();
-					int oldfileCount = oldDisk.getDiskFiles().size();
-					for (int i = 0; i < longestList; i++) {
-						if (i < newFileCount && i < oldfileCount) {
-							DiskFile newFile = disk.getDiskFiles().get(i);
-							DiskFile oldFile = oldDisk.getDiskFiles().get(i);
-							newFile.setDiskId(disk.getDiskId());
-							newFile.setFileId(oldFile.getFileId());
-							newFile.setUpdate();
-						} else if (i >= newFileCount) {
-							DiskFile oldFile = oldDisk.getDiskFiles().get(i);
-							oldFile.setDelete();
-							disk.getDiskFiles().add(oldFile);
-						} else {
-							disk.getDiskFiles().get(i).setDelete();
-							disk.getDiskFiles().get(i).setDiskId(disk.getDiskId());
-						}
-					}
-				} else {
-					disk.setInsert();
-					for (DiskFile newFile : disk.getDiskFiles()) {
-						newFile.setInsert();
+				mergeWithStored(disk, oldDisk);
+			}
+			performSave(List.of(disk));
+		}  catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	}
+
+	@Override
+	public void saveAll(List<Disk> disks) throws DatabaseException {
+		var groups = new LinkedHashMap<String, List<Disk>>();
+		disks.stream().filter(Objects::nonNull).forEach(disk -> groups.computeIfAbsent(
+				disk.getFilePath() + '\n' + (disk.getHostName() != null ? toUpperCase(disk.getHostName(), HOSTNAME_UC_SIZE) : Utility.EMPTY),
+				k -> new ArrayList<>()).add(disk));
+		if (groups.isEmpty()) {
+			return;
+		}
+		for (var group : groups.values()) {
+			var stored = getStoredDisks(group);
+			group.forEach(disk -> mergeWithStored(disk, stored.get(disk.getFileName())));
+		}
+		var all = groups.values().stream().flatMap(List::stream).collect(Collectors.toList());
+		var failed = new ArrayList<Disk>();
+		var error = saveInParts(all, failed);
+		if (error != null) {
+			var disk = failed.get(0);
+			throw new PartialSaveException(failed.size() + " of " + all.size() + " disk(s) could not be saved. "
+					+ disk.getFilePath() + File.separator + disk.getFileName() + " : " + error.getMessage(), failed, error);
+		}
+	}
+
+	/**
+	 * Save disks in one transaction. When it fails, the disks are saved again in halves, so a disk which can't be
+	 * saved does not stop the others from being saved.
+	 * @param disks the disks to save
+	 * @param failed where to add the disks which could not be saved
+	 * @return the error of the first disk which could not be saved, or null if all were saved
+	 */
+	private DatabaseException saveInParts(List<Disk> disks, List<Disk> failed) {
+		var states = disks.stream().map(SaveState::new).collect(Collectors.toList());
+		try {
+			performSave(disks);
+			return null;
+		} catch (DatabaseException e) {
+			states.forEach(SaveState::restore);
+			if (disks.size() == 1) {
+				failed.add(disks.get(0));
+				return e;
+			}
+			int half = disks.size() / 2;
+			var first = saveInParts(disks.subList(0, half), failed);
+			var second = saveInParts(disks.subList(half, disks.size()), failed);
+			return first != null ? first : second;
+		}
+	}
+
+	/**
+	 * Get stored disks in one directory, with one query for each IN_LIST_SIZE names.
+	 * @param disks disks which all have the same path and host name
+	 * @return map from file name to stored disk with files
+	 * @throws DatabaseException when error
+	 */
+	private Map<String, Disk> getStoredDisks(List<Disk> disks) throws DatabaseException {
+		var names = disks.stream().map(Disk::getFileName).distinct().collect(Collectors.toList());
+		var stored = new HashMap<String, Disk>();
+		for (int i = 0; i < names.size(); i += IN_LIST_SIZE) {
+			getStoredDisks(disks.get(0), names.subList(i, Math.min(i + IN_LIST_SIZE, names.size())), stored);
+		}
+		return stored;
+	}
+
+	/**
+	 * The IN list is padded to a power of two by repeating the last name, so there are few different statements to cache.
+	 * @param first disk with the path and host name
+	 * @param names names of the disks, at most IN_LIST_SIZE
+	 * @param stored map from file name to stored disk with files, to add to
+	 */
+	private void getStoredDisks(Disk first, List<String> names, Map<String, Disk> stored) throws DatabaseException {
+		int size = 1;
+		while (size < names.size()) {
+			size <<= 1;
+		}
+		size = Math.min(size, IN_LIST_SIZE);
+		String sql = SELECT + SAVE_COLUMN_NAMES +
+				"FROM disk d " +
+				"LEFT JOIN diskfile df ON df.diskid = d.diskid " +
+				"WHERE d.filePath = ? AND d.filename IN (" + String.join(",", Collections.nCopies(size, "?")) + ") " +
+				"AND (hostname_uc = ? OR hostname IS NULL) " +
+				"ORDER BY d.filename, d.diskid, df.fileNum";
+		try (var stmt = DaoFactoryImpl.prepareStatement(sql)) {
+			int idx = 1;
+			stmt.setString(idx++, first.getFilePath());
+			for (int i = 0; i < size; i++) {
+				stmt.setString(idx++, names.get(Math.min(i, names.size() - 1)));
+			}
+			stmt.setString(idx, first.getHostName() != null ? toUpperCase(first.getHostName(), HOSTNAME_UC_SIZE) : Utility.EMPTY);
+			try (var rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					var oldDisk = stored.get(rs.getString(3));
+					if (oldDisk == null) {
+						stored.put(rs.getString(3), consumeSaveRs(rs, null));
+					} else if (oldDisk.getDiskId() == rs.getLong(1)) {
+						consumeSaveRs(rs, oldDisk);
 					}
 				}
 			}
-			performSave(disk);
-		}  catch (SQLException e) {
+		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
 	}
 
+	/**
+	 * Set disk and its files to be inserted, updated or deleted depending on what is already stored.
+	 * @param disk the disk to save
+	 * @param oldDisk the stored disk with files, or null if not stored
+	 */
+	private void mergeWithStored(Disk disk, Disk oldDisk) {
+		if (oldDisk != null) {
+			disk.setDiskId(oldDisk.getDiskId());
+			disk.setUpdate();
+			int longestList = disk.getDiskFiles().size() > oldDisk.getDiskFiles().size() ? disk.getDiskFiles().size() : oldDisk.getDiskFiles().size();
+			int newFileCount = disk.getDiskFiles().size();
+			int oldfileCount = oldDisk.getDiskFiles().size();
+			for (int i = 0; i < longestList; i++) {
+				if (i < newFileCount && i < oldfileCount) {
+					DiskFile newFile = disk.getDiskFiles().get(i);
+					DiskFile oldFile = oldDisk.getDiskFiles().get(i);
+					newFile.setDiskId(disk.getDiskId());
+					newFile.setFileId(oldFile.getFileId());
+					newFile.setUpdate();
+				} else if (i >= newFileCount) {
+					DiskFile oldFile = oldDisk.getDiskFiles().get(i);
+					oldFile.setDelete();
+					disk.getDiskFiles().add(oldFile);
+				} else {
+					disk.getDiskFiles().get(i).setInsert();
+					disk.getDiskFiles().get(i).setDiskId(disk.getDiskId());
+				}
+			}
+		} else {
+			disk.setInsert();
+			for (DiskFile newFile : disk.getDiskFiles()) {
+				newFile.setInsert();
+			}
+		}
+	}
+
 	private Disk consumeSaveRs(ResultSet rs, Disk oldDisk) throws SQLException {
 		Disk disk;
 		if (oldDisk == null) {
@@ -353,35 +730,53 @@ public class DiskDaoImpl implements DiskDao {
 	}
 
 	/**
-	 * Save disk
+	 * Save disks in one transaction. Rows of files are written in batches.
 	 *
-	 * @param disk Disk
+	 * @param disks list of Disk
 	 * @throws DatabaseException
 	 */
-	private void performSave(Disk disk) throws DatabaseException {
+	private void performSave(List<Disk> disks) throws DatabaseException {
+		Disk current = null;
 		try (var conn = DaoFactoryImpl.getConnection()) {
 			conn.setAutoCommit(false);
-			if (disk.isInsert()) {
-				insertDisk(disk, conn);
-			} else if (disk.isUpdate()) {
-				updateDisk(disk, conn);
-			} else if (disk.isDelete()) {
-				deleteDisk(disk, conn);
-			} else {
-				if( disk.getDiskFiles().stream().noneMatch(df -> !df.isClean())) {
-					return;
-				}
-			}
-			if (!disk.isDelete()) {
-				for (DiskFile file : disk.getDiskFiles()) {
-					saveDiskFile(file, conn);
+			try (var insertFile = conn.prepareStatement(INSERT_FILE);
+					var updateFile = conn.prepareStatement(UPDATE_FILE);
+					var deleteFile = conn.prepareStatement(DELETE_FILE)) {
+				for (var disk : disks) {
+					current = disk;
+					if (disk.isInsert()) {
+						insertDisk(disk, conn);
+					} else if (disk.isUpdate()) {
+						updateDisk(disk, conn);
+					} else if (disk.isDelete()) {
+						deleteDisk(disk, conn);
+					}
+					if (!disk.isDelete()) {
+						for (var it = disk.getDiskFiles().iterator(); it.hasNext();) {
+							var file = it.next();
+							boolean deleted = file.isDelete();
+							addDiskFile(file, insertFile, updateFile, deleteFile);
+							if (deleted) {
+								it.remove();
+							}
+						}
+					}
 				}
+				current = null;
+				deleteFile.executeBatch();
+				updateFile.executeBatch();
+				insertFile.executeBatch();
+			} catch (SQLException e) {
+				rollback("Save failed. " + e.getMessage(), e, conn);
 			}
 			commit(conn);
+			TrigramIndex.updated(disks);
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
+		} catch (DatabaseException e) {
+			throw e;
 		} catch (Exception ex) {
-			throw new DatabaseException(String.valueOf(disk), ex);
+			throw new DatabaseException(String.valueOf(current), ex);
 		}
 	}
 
@@ -394,17 +789,19 @@ public class DiskDaoImpl implements DiskDao {
 	}
 
 	private void insertDisk(Disk disk, Connection conn) throws DatabaseException {
-		String sqlDisk = "INSERT INTO disk(label, filepath, filename, updated, imagetype, errors, warnings, hostname) VALUES(?,?,?,?,?,?,?,?)";
+		String sqlDisk = "INSERT INTO disk(label, filepath, filename, updated, imagetype, errors, warnings, hostname, label_uc, filepath_uc, filename_uc, hostname_uc, filesize, modified, hash) VALUES(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
 		ResultSet generatedKeys = null;
 		try (var stmt = conn.prepareStatement(sqlDisk, Statement.RETURN_GENERATED_KEYS)) {
 			stmt.setString(1, disk.getLabel());
 			stmt.setString(2, disk.getFilePath());
 			stmt.setString(3, disk.getFileName());
-			stmt.setTimestamp(4, new Timestamp(new Date().getTime()));
+			stmt.setTimestamp(4, getUpdated(disk));
 			stmt.setInt(5, disk.getImageType().type);
 			setInteger(stmt, 6, disk.getErrors());
 			setInteger(stmt, 7, disk.getWarnings());
 			stmt.setString(8, disk.getHostName());
+			setUpperCase(stmt, 9, disk);
+			setFileInfo(stmt, 13, disk);
 			int rows = stmt.executeUpdate();
 			if (rows == 0) {
 				conn.rollback();
@@ -434,17 +831,19 @@ public class DiskDaoImpl implements DiskDao {
 	}
 
 	private void updateDisk(Disk disk, Connection conn) throws DatabaseException {
-		String sqlDisk = "UPDATE disk SET label=?,filepath=?,filename=?,updated=?,imageType=?,errors=?,warnings=?,hostname=? WHERE diskid=?";
+		String sqlDisk = "UPDATE disk SET " + UPDATE_COLUMN_NAMES + " WHERE diskid=?";
 		try (var stmt = conn.prepareStatement(sqlDisk)) {
 			stmt.setString(1, disk.getLabel());
 			stmt.setString(2, disk.getFilePath());
 			stmt.setString(3, disk.getFileName());
-			stmt.setTimestamp(4, new Timestamp(new Date().getTime()));
+			stmt.setTimestamp(4, getUpdated(disk));
 			stmt.setInt(5, disk.getImageType().type);
 			setInteger(stmt, 6, disk.getErrors());
 			setInteger(stmt, 7, disk.getWarnings());
 			stmt.setString(8, disk.getHostName());
-			stmt.setLong(9, disk.getDiskId());
+			setUpperCase(stmt, 9, disk);
+			setFileInfo(stmt, 13, disk);
+			stmt.setLong(16, disk.getDiskId());
 			int rows = stmt.executeUpdate();
 			if (rows == 0) {
 				conn.rollback();
@@ -456,6 +855,11 @@ public class DiskDaoImpl implements DiskDao {
 		}
 	}
 
+	/** @return the updated time of the disk, or now if it has none, as when imported from a disk list */
+	private static Timestamp getUpdated(Disk disk) {
+		return new Timestamp(disk.getUpdated() != null ? disk.getUpdated().getTime() : new Date().getTime());
+	}
+
 	private void deleteDisk(Disk disk, Connection conn) throws DatabaseException {
 		String sqlFile = "DELETE FROM diskfile WHERE diskid=?";
 		String sqlDisk = "DELETE FROM disk WHERE diskid=?";
@@ -469,46 +873,33 @@ public class DiskDaoImpl implements DiskDao {
 		}
 	}
 
-	private void saveDiskFile(DiskFile file, Connection conn) throws DatabaseException {
+	private void addDiskFile(DiskFile file, PreparedStatement insertFile, PreparedStatement updateFile, PreparedStatement deleteFile) throws SQLException {
 		int idx = 1;
 		if (file.isInsert()) {
-			String sql = "INSERT INTO diskfile(diskid,name,filetype,size,filenum,flags,namebytes) VALUES (?,?,?,?,?,?,?)";
-			try (var stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-				stmt.setLong(idx++, file.getDiskId());
-				stmt.setString(idx++, file.getName());
-				stmt.setInt(idx++, file.getFileType().type);
-				stmt.setInt(idx++, file.getSize());
-				stmt.setInt(idx++, file.getFileNum());
-				stmt.setInt(idx++, file.getFlags());
-				stmt.setBytes(idx++, file.getNameAsBytes());
-				stmt.executeUpdate();
-			} catch (SQLException  e) {
-				rollback("Insert failed. " + e.getMessage()+" : "+file, e, conn);
-			}
+			insertFile.setLong(idx++, file.getDiskId());
+			insertFile.setString(idx++, file.getName());
+			insertFile.setInt(idx++, file.getFileType().type);
+			insertFile.setInt(idx++, file.getSize());
+			insertFile.setInt(idx++, file.getFileNum());
+			insertFile.setInt(idx++, file.getFlags());
+			insertFile.setBytes(idx++, file.getNameAsBytes());
+			insertFile.setString(idx, toUpperCase(file.getName(), NAME_UC_SIZE));
+			insertFile.addBatch();
 		} else if (file.isUpdate()) {
-			String sql = "UPDATE diskfile SET name=?,filetype=?,size=?,filenum=?,flags=?,namebytes=? WHERE diskid=? AND fileid=?";
-			try (var stmt = conn.prepareStatement(sql)) {
-				stmt.setString(idx++, file.getName());
-				stmt.setInt(idx++, file.getFileType()!=null?file.getFileType().type:0);
-				stmt.setInt(idx++, file.getSize());
-				stmt.setInt(idx++, file.getFileNum());
-				stmt.setInt(idx++, file.getFlags());
-				stmt.setBytes(idx++, file.getNameAsBytes());
-				stmt.setLong(idx++, file.getDiskId());
-				stmt.setLong(idx++, file.getFileId());
-				stmt.executeUpdate();
-			} catch (SQLException e) {
-				rollback("Update failed. "+ e.getMessage(), e, conn);
-			}
+			updateFile.setString(idx++, file.getName());
+			updateFile.setInt(idx++, file.getFileType()!=null?file.getFileType().type:0);
+			updateFile.setInt(idx++, file.getSize());
+			updateFile.setInt(idx++, file.getFileNum());
+			updateFile.setInt(idx++, file.getFlags());
+			updateFile.setBytes(idx++, file.getNameAsBytes());
+			updateFile.setString(idx++, toUpperCase(file.getName(), NAME_UC_SIZE));
+			updateFile.setLong(idx++, file.getDiskId());
+			updateFile.setLong(idx, file.getFileId());
+			updateFile.addBatch();
 		} else if (file.isDelete()) {
-			String sql = "DELETE FROM diskfile WHERE diskid=? AND fileid=?";
-			try (var stmt = conn.prepareStatement(sql)) {
-				stmt.setLong(idx++, file.getDiskId());
-				stmt.setLong(idx++, file.getFileId());
-				stmt.executeUpdate();
-			} catch (SQLException e) {
-				rollback("Delete failed. " + e.getMessage(), e, conn);
-			}
+			deleteFile.setLong(idx++, file.getDiskId());
+			deleteFile.setLong(idx, file.getFileId());
+			deleteFile.addBatch();
 		}
 		file.setClean();
 	}
@@ -521,31 +912,13 @@ public class DiskDaoImpl implements DiskDao {
 	}
 
 
-	/**
-	 * Convert ResultSet to a Stream of Disk.
-	 * @param rs ResultSet
-	 * @param composite load composite
-	 * @return Stream of Disk
-	 * @throws SQLException
-	 * @throws DatabaseException
-	 */
-	private Stream<Disk> consumeRows(ResultSet rs, boolean composite) throws SQLException, DatabaseException {
-		Stream.Builder<Disk> builder = Stream.builder();
-		while (rs.next()) {
-			builder.add(consumeRow(rs, composite));
-		}
-		return builder.build();
-	}
-
 	/**
 	 * Convert one ResultSet to a Disk
 	 * @param rs ResultSet
-	 * @param composite load composite
 	 * @return Disk
 	 * @throws SQLException
-	 * @throws DatabaseException
 	 */
-	private Disk consumeRow(ResultSet rs, boolean composite) throws SQLException, DatabaseException {
+	private Disk consumeRow(ResultSet rs) throws SQLException {
 		var vo = new Disk();
 		vo.setDiskId(rs.getLong(1));
 		vo.setLabel(rs.getString(2));
@@ -556,40 +929,101 @@ public class DiskDaoImpl implements DiskDao {
 		vo.setErrors(getInteger(rs, 7));
 		vo.setWarnings(getInteger(rs, 8));
 		vo.setHostName(rs.getString(9));
+		vo.setFileSize(getLong(rs, 10));
+		vo.setModified(getLong(rs, 11));
+		vo.setHash(rs.getString(12));
+		return vo;
+	}
 
-		if (composite) {
-			vo.setDiskFiles(getFiles(vo));
-		}
+	private DiskFile consumeFileRow(ResultSet rs, int col) throws SQLException {
+		var vo = new DiskFile();
+		vo.setDiskId(rs.getLong(col));
+		vo.setFileId(rs.getLong(col + 1));
+		vo.setName(rs.getString(col + 2));
+		vo.setFileType(FileType.get(rs.getInt(col + 3)));
+		vo.setSize(rs.getInt(col + 4));
+		vo.setFileNum(rs.getInt(col + 5));
+		vo.setFlags(rs.getInt(col + 6));
+		vo.setNameAsBytes(getBytes(rs, col + 7));
 		return vo;
 	}
 
-	private List<DiskFile> getFiles(Disk disk) throws SQLException, DatabaseException {
-		final String sql = SELECT + " diskId, fileid, name, filetype, size, fileNum, flags, namebytes FROM diskfile WHERE diskId=? ORDER BY fileid";
-		try (var stmt = DaoFactoryImpl.prepareStatement(sql)) {
-			stmt.setLong(1, disk.getDiskId());
-			try (ResultSet rs = stmt.executeQuery()) {
-				var list = new ArrayList<DiskFile>();
-				while (rs.next()) {
-					list.add(consumeFileRow(rs));
+	/**
+	 * Reads disks from a ResultSet as they are consumed.<br>
+	 * A composite disk is assembled from consecutive rows of a join ordered by disk.
+	 * The connection is returned when there are no more rows, or when the stream is closed.
+	 */
+	private final class DiskCursor extends Spliterators.AbstractSpliterator<Disk> {
+		private final Connection conn;
+		private final PreparedStatement stmt;
+		private final boolean composite;
+		private ResultSet rs;
+		/** Disk of the row following the last disk handed out */
+		private Disk next;
+		private boolean closed = false;
+
+		DiskCursor(Connection conn, PreparedStatement stmt, boolean composite) {
+			super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+			this.conn = conn;
+			this.stmt = stmt;
+			this.composite = composite;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Disk> action) {
+			if (closed) {
+				return false;
+			}
+			Disk disk;
+			try {
+				disk = composite ? nextComposite() : rs.next() ? consumeRow(rs) : null;
+			} catch (SQLException e) {
+				close();
+				throw new IllegalStateException("Failed to read disk. " + e.getMessage(), e);
+			}
+			if (disk == null) {
+				close();
+				return false;
+			}
+			action.accept(disk);
+			return true;
+		}
+
+		private Disk nextComposite() throws SQLException {
+			var disk = next;
+			next = null;
+			while (rs.next()) {
+				if (disk == null) {
+					disk = consumeRow(rs);
+				} else if (disk.getDiskId() != rs.getLong(1)) {
+					next = consumeRow(rs);
+					addFile(next);
+					return disk;
 				}
-				return list;
+				addFile(disk);
 			}
+			return disk;
 		}
-	}
 
-	private DiskFile consumeFileRow(ResultSet rs) throws SQLException {
-		var vo = new DiskFile();
-		vo.setDiskId(rs.getLong(1));
-		vo.setFileId(rs.getLong(2));
-		vo.setName(rs.getString(3));
-		vo.setFileType(FileType.get(rs.getInt(4)));
-		vo.setSize(rs.getInt(5));
-		vo.setFileNum(rs.getInt(6));
-		vo.setFlags(rs.getInt(7));
-		vo.setNameAsBytes(getBytes(rs, 8));
-		return vo;
-	}
+		private void addFile(Disk disk) throws SQLException {
+			rs.getLong(FILE_COLUMN);
+			if (!rs.wasNull()) {
+				disk.getDiskFiles().add(consumeFileRow(rs, FILE_COLUMN));
+			}
+		}
 
+		void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try (conn; stmt) {
+				if (rs != null) {
+					rs.close();
+				}
+			} catch (SQLException e) {} //NOSONAR
+		}
+	}
 
 	/**
 	 * Test if string is null or empty.
@@ -600,6 +1034,34 @@ public class DiskDaoImpl implements DiskDao {
 		return str==null || str.trim().isEmpty();
 	}
 
+	/**
+	 * Normalize text for the upper case columns used when searching.
+	 * @param str the text, or null
+	 * @return upper case text, or null
+	 */
+	static String toUpperCase(String str) {
+		return str != null ? str.toUpperCase(Locale.ROOT) : null;
+	}
+
+	/** @return upper case text, cut to the size of its column */
+	static String toUpperCase(String str, int size) {
+		var upper = toUpperCase(str);
+		return upper != null && upper.length() > size ? upper.substring(0, size) : upper;
+	}
+
+	private void setUpperCase(PreparedStatement stmt, int col, Disk disk) throws SQLException {
+		stmt.setString(col, toUpperCase(disk.getLabel(), LABEL_UC_SIZE));
+		stmt.setString(col + 1, toUpperCase(disk.getFilePath(), FILEPATH_UC_SIZE));
+		stmt.setString(col + 2, toUpperCase(disk.getFileName(), FILENAME_UC_SIZE));
+		stmt.setString(col + 3, toUpperCase(disk.getHostName(), HOSTNAME_UC_SIZE));
+	}
+
+	private void setFileInfo(PreparedStatement stmt, int col, Disk disk) throws SQLException {
+		setLong(stmt, col, disk.getFileSize());
+		setLong(stmt, col + 1, disk.getModified());
+		stmt.setString(col + 2, disk.getHash());
+	}
+
 	private Integer getInteger(ResultSet rs, int col) throws SQLException {
 		int value = rs.getInt(col);
 		return rs.wasNull() ? null : value;
@@ -613,9 +1075,77 @@ public class DiskDaoImpl implements DiskDao {
 		}
 	}
 
+	private Long getLong(ResultSet rs, int col) throws SQLException {
+		long value = rs.getLong(col);
+		return rs.wasNull() ? null : value;
+	}
+
+	private void setLong(PreparedStatement stmt, int col, Long value) throws SQLException {
+		if (value == null) {
+			stmt.setNull(col, java.sql.Types.BIGINT);
+		} else {
+			stmt.setLong(col, value.longValue());
+		}
+	}
+
 	private byte[] getBytes(ResultSet rs, int col) throws SQLException {
 		byte[] bytes = rs.getBytes(col);
 		return rs.wasNull() ? null : bytes;
 	}
 
+
+	/** Ids and modes of a disk and its files, to save it again after its transaction was rolled back */
+	private static final class SaveState {
+		private final Disk disk;
+		private final long diskId;
+		private final String state;
+		private final List<DiskFile> files;
+		private final long[] fileIds;
+		private final long[] fileDiskIds;
+		private final String[] fileStates;
+
+		SaveState(Disk disk) {
+			this.disk = disk;
+			this.diskId = disk.getDiskId();
+			this.state = disk.getState();
+			this.files = new ArrayList<>(disk.getDiskFiles());
+			this.fileIds = new long[files.size()];
+			this.fileDiskIds = new long[files.size()];
+			this.fileStates = new String[files.size()];
+			for (int i = 0; i < files.size(); i++) {
+				fileIds[i] = files.get(i).getFileId();
+				fileDiskIds[i] = files.get(i).getDiskId();
+				fileStates[i] = files.get(i).getState();
+			}
+		}
+
+		void restore() {
+			disk.setDiskId(diskId);
+			setState(disk, state);
+			disk.getDiskFiles().clear();
+			disk.getDiskFiles().addAll(files);
+			for (int i = 0; i < files.size(); i++) {
+				files.get(i).setFileId(fileIds[i]);
+				files.get(i).setDiskId(fileDiskIds[i]);
+				setState(files.get(i), fileStates[i]);
+			}
+		}
+
+		private static void setState(Value value, String state) {
+			switch (state) {
+			case "clean":
+				value.setClean();
+				break;
+			case "delete":
+				value.setDelete();
+				break;
+			case "update":
+				value.setUpdate();
+				break;
+			default:
+				value.setInsert();
+				break;
+			}
+		}
+	}
 }
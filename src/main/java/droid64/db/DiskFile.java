@@ -129,13 +129,4 @@ public class DiskFile extends Value implements Serializable {
 		.append(" .nameAsBytes=").append(Utility.hexDumpData(nameAsBytes))
 		.append(']').toString();
 	}
-
-	public String toXML() {
-		return new StringBuilder().append("<DiskFile>\n").append("<fileId>").append(fileId).append("</fileId>")
-				.append("<diskId>").append(diskId).append("</diskId>").append("<name>").append(name).append("</name>")
-				.append("<size>").append(size).append("</size>").append("<flags>").append(flags).append("</flags>")
-				.append("<fileNum>").append(fileNum).append("</fileNum>").append("<fileType>").append(fileType)
-				.append("</fileType>").append("<state>").append(getState()).append("</state>").append("<nameAsBytes>")
-				.append(Utility.hexDumpData(nameAsBytes)).append("</nameAsBytes>").append("</DiskFile>\n").toString();
-	}
 }
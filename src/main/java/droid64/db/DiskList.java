@@ -1,19 +1,53 @@
 package droid64.db;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import javax.swing.JOptionPane;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
-/** Disk List */
+import droid64.d64.DiskImageType;
+import droid64.d64.FileType;
+import droid64.d64.Utility;
+
+/**
+ * Disk List.<br>
+ * Stored disks are exported to and imported from XML one disk at a time, so the size of the collection does not matter.
+ */
 public class DiskList implements Serializable {
 
 	private static final long serialVersionUID = -1L;
 
+	private static final String GZIP_SUFFIX = ".gz";
+	private static final String DISK_LIST = "DiskList";
+	private static final String DISK = "Disk";
+	private static final String DISK_FILES = "diskFiles";
+	private static final String DISK_FILE = "DiskFile";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
 	private List<Disk> disks;
 
 	public List<Disk> getDisks() {
@@ -23,23 +57,334 @@ public class DiskList implements Serializable {
 		return this.disks;
 	}
 
-	private static void saveXml(File file, DiskList diskList) {
-		try (var writer = new FileWriter(file)) {
-			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
-			writer.write("<DiskList>\n");
-			for (var d: diskList.getDisks()) {
-				writer.write(d.toXML());
+	/**
+	 * Write all stored disks to an XML file. Each disk is written as it is read from the database.
+	 * @param f the file. Written with gzip if the name ends with .gz
+	 * @return number of disks written
+	 * @throws DatabaseException when error
+	 */
+	public static int export(File f) throws DatabaseException {
+		try (var disks = DaoFactory.getDaoFactory().getDiskDao().getAllDisks(true);
+				var out = openOutput(f)) {
+			return write(disks, out);
+		} catch (IOException | XMLStreamException e) {
+			throw new DatabaseException("Failed to write " + f + ". " + e.getMessage(), e);
+		} catch (IllegalStateException e) {
+			throw new DatabaseException(e.getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Read disks from an XML file written by {@link #export(File)} and save them in the database.
+	 * Disks already stored are updated.
+	 * @param f the file, with or without gzip
+	 * @param batchSize number of disks to save in each transaction
+	 * @return number of disks read
+	 * @throws DatabaseException when error
+	 */
+	public static int importXml(File f, int batchSize) throws DatabaseException {
+		try (var in = openInput(f)) {
+			return read(in, DaoFactory.getDaoFactory().getDiskDao(), batchSize);
+		} catch (IOException | XMLStreamException e) {
+			throw new DatabaseException("Failed to read " + f + ". " + e.getMessage(), e);
+		}
+	}
+
+	private static OutputStream openOutput(File f) throws IOException {
+		var out = new BufferedOutputStream(new FileOutputStream(f));
+		return f.getName().toLowerCase().endsWith(GZIP_SUFFIX) ? new GZIPOutputStream(out) : out;
+	}
+
+	/** Open file, with gzip if it starts with the gzip magic bytes. */
+	private static InputStream openInput(File f) throws IOException {
+		var in = new BufferedInputStream(new FileInputStream(f));
+		in.mark(2);
+		boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+		in.reset();
+		return gzip ? new GZIPInputStream(in) : in;
+	}
+
+	/**
+	 * Write disks as XML.
+	 * @param disks the disks to write
+	 * @param out the stream to write to. Not closed.
+	 * @return number of disks written
+	 * @throws XMLStreamException when error
+	 */
+	static int write(Stream<Disk> disks, OutputStream out) throws XMLStreamException {
+		var writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+		writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+		writer.writeCharacters("\n");
+		writer.writeStartElement(DISK_LIST);
+		writer.writeCharacters("\n");
+		int count = 0;
+		for (var it = disks.iterator(); it.hasNext(); count++) {
+			var disk = it.next();
+			writer.writeStartElement(DISK);
+			writeElement(writer, "diskId", disk.getDiskId());
+			writeElement(writer, "label", disk.getLabel());
+			writeElement(writer, "filePath", disk.getFilePath());
+			writeElement(writer, "fileName", disk.getFileName());
+			writeElement(writer, "updated", disk.getUpdated() != null ? disk.getUpdated().toInstant() : null);
+			writeElement(writer, "imageType", disk.getImageType() != null ? disk.getImageType().name() : null);
+			writeElement(writer, "errors", disk.getErrors());
+			writeElement(writer, "warnings", disk.getWarnings());
+			writeElement(writer, "hostName", disk.getHostName());
+			writeElement(writer, "fileSize", disk.getFileSize());
+			writeElement(writer, "modified", disk.getModified());
+			writeElement(writer, "hash", disk.getHash());
+			writer.writeCharacters("\n");
+			writer.writeStartElement(DISK_FILES);
+			writer.writeCharacters("\n");
+			for (var file : disk.getDiskFiles()) {
+				writer.writeStartElement(DISK_FILE);
+				writeElement(writer, "fileId", file.getFileId());
+				writeElement(writer, "name", file.getName());
+				writeElement(writer, "size", file.getSize());
+				writeElement(writer, "flags", file.getFlags());
+				writeElement(writer, "fileNum", file.getFileNum());
+				writeElement(writer, "fileType", file.getFileType() != null ? file.getFileType().name() : null);
+				writeElement(writer, "nameAsBytes", toHex(file.getNameAsBytes()));
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
 			}
-			writer.write("</DiskList>\n");
-		} catch (IOException ex) {
-			JOptionPane.showMessageDialog(null, "Can't write file\n"+ex, "Error", JOptionPane.ERROR_MESSAGE);
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
 		}
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+		writer.writeEndDocument();
+		writer.flush();
+		return count;
 	}
 
-	public static int export(File f) throws DatabaseException {
-		var dl = new DiskList();
-		DaoFactory.getDaoFactory().getDiskDao().getAllDisks(true).forEach(d -> dl.getDisks().add(d));
-		saveXml(f, dl);
-		return dl.getDisks().size();
+	private static void writeElement(XMLStreamWriter writer, String name, Object value) throws XMLStreamException {
+		if (value != null) {
+			writer.writeStartElement(name);
+			writer.writeCharacters(toXmlText(String.valueOf(value)));
+			writer.writeEndElement();
+		}
+	}
+
+	/** Replace characters which are not allowed in XML, like the control characters of some disk names. */
+	private static String toXmlText(String str) {
+		var buf = new StringBuilder(str.length());
+		for (var c : str.toCharArray()) {
+			buf.append(c < 0x20 && c != '\t' && c != '\n' && c != '\r' || c == 0xfffe || c == 0xffff ? '?' : c);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Read disks from XML and save them in batches.
+	 * @param in the stream to read from. Not closed.
+	 * @param dao where to save the disks
+	 * @param batchSize number of disks to save in each transaction
+	 * @return number of disks read
+	 * @throws XMLStreamException when error in XML
+	 * @throws PartialSaveException when some disks could not be saved, after saving the others
+	 * @throws DatabaseException when failing to save
+	 */
+	static int read(InputStream in, DiskDao dao, int batchSize) throws XMLStreamException, DatabaseException {
+		var factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		var reader = factory.createXMLStreamReader(in);
+		var batch = new LinkedHashMap<String, Disk>();
+		var failed = new ArrayList<Disk>();
+		Disk disk = null;
+		DiskFile file = null;
+		int count = 0;
+		try {
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					var name = reader.getLocalName();
+					if (DISK.equals(name)) {
+						disk = new Disk();
+						disk.setImageType(DiskImageType.UNDEFINED);
+					} else if (DISK_FILE.equals(name) && disk != null) {
+						file = new DiskFile();
+						file.setFileType(FileType.DEL);
+					} else if (file != null) {
+						setFileValue(file, name, getText(reader));
+					} else if (disk != null && !DISK_FILES.equals(name)) {
+						setDiskValue(disk, name, getText(reader));
+					} else if (!DISK_LIST.equals(name) && !DISK_FILES.equals(name)) {
+						throw new XMLStreamException("Unexpected element " + name, reader.getLocation());
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT && DISK_FILE.equals(reader.getLocalName()) && file != null) {
+					disk.getDiskFiles().add(file);
+					file = null;
+				} else if (event == XMLStreamConstants.END_ELEMENT && DISK.equals(reader.getLocalName()) && disk != null) {
+					if (disk.getFilePath() == null || disk.getFileName() == null) {
+						throw new XMLStreamException("Disk without filePath or fileName", reader.getLocation());
+					}
+					batch.put(getKey(disk), disk);
+					disk = null;
+					count++;
+					if (batch.size() >= batchSize) {
+						failed.addAll(save(new ArrayList<>(batch.values()), dao));
+						batch.clear();
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		failed.addAll(save(new ArrayList<>(batch.values()), dao));
+		if (!failed.isEmpty()) {
+			var first = failed.get(0);
+			throw new PartialSaveException(failed.size() + " of " + count + " disk(s) could not be saved. First was "
+					+ first.getFilePath() + File.separator + first.getFileName() + ".", failed, null);
+		}
+		return count;
+	}
+
+	/** @return the key of a disk in a batch. A disk found more than once in a batch is saved only as last found. */
+	private static String getKey(Disk disk) {
+		return disk.getFilePath() + '\n' + disk.getFileName() + '\n'
+				+ (disk.getHostName() != null ? DiskDaoImpl.toUpperCase(disk.getHostName()) : Utility.EMPTY);
+	}
+
+	/**
+	 * Save a batch of disks.
+	 * @return the disks which could not be saved
+	 */
+	private static List<Disk> save(List<Disk> batch, DiskDao dao) throws DatabaseException {
+		try {
+			dao.saveAll(batch);
+			return Collections.emptyList();
+		} catch (PartialSaveException e) {	//NOSONAR
+			return e.getFailed();
+		}
+	}
+
+	/** @return text of element, or null if empty */
+	private static String getText(XMLStreamReader reader) throws XMLStreamException {
+		var text = reader.getElementText();
+		return text.isEmpty() ? null : text;
+	}
+
+	private static void setDiskValue(Disk disk, String name, String value) throws XMLStreamException {
+		switch (name) {
+		case "label":
+			disk.setLabel(value);
+			break;
+		case "filePath":
+			disk.setFilePath(value);
+			break;
+		case "fileName":
+			disk.setFileName(value);
+			break;
+		case "updated":
+			disk.setUpdated(value != null ? Date.from(parseInstant(value)) : null);
+			break;
+		case "imageType":
+			disk.setImageType(DiskImageType.get(value));
+			break;
+		case "errors":
+			disk.setErrors(parseInteger(value));
+			break;
+		case "warnings":
+			disk.setWarnings(parseInteger(value));
+			break;
+		case "hostName":
+			disk.setHostName(value);
+			break;
+		case "fileSize":
+			disk.setFileSize(parseLong(value));
+			break;
+		case "modified":
+			disk.setModified(parseLong(value));
+			break;
+		case "hash":
+			disk.setHash(value);
+			break;
+		default:
+			// diskId and unknown elements are ignored. The database assigns the id.
+			break;
+		}
+	}
+
+	private static void setFileValue(DiskFile file, String name, String value) throws XMLStreamException {
+		switch (name) {
+		case "name":
+			file.setName(value);
+			break;
+		case "size":
+			file.setSize(Optional.ofNullable(parseInteger(value)).orElse(0));
+			break;
+		case "flags":
+			file.setFlags(Optional.ofNullable(parseInteger(value)).orElse(0));
+			break;
+		case "fileNum":
+			file.setFileNum(Optional.ofNullable(parseInteger(value)).orElse(0));
+			break;
+		case "fileType":
+			file.setFileType(Optional.ofNullable(FileType.get(value)).orElse(FileType.DEL));
+			break;
+		case "nameAsBytes":
+			file.setNameAsBytes(fromHex(value));
+			break;
+		default:
+			// fileId and unknown elements are ignored. The database assigns the id.
+			break;
+		}
+	}
+
+	private static Integer parseInteger(String value) throws XMLStreamException {
+		try {
+			return value != null ? Integer.valueOf(value.trim()) : null;
+		} catch (NumberFormatException e) {
+			throw new XMLStreamException("Bad number " + value, e);
+		}
+	}
+
+	private static Long parseLong(String value) throws XMLStreamException {
+		try {
+			return value != null ? Long.valueOf(value.trim()) : null;
+		} catch (NumberFormatException e) {
+			throw new XMLStreamException("Bad number " + value, e);
+		}
+	}
+
+	private static Instant parseInstant(String value) throws XMLStreamException {
+		try {
+			return Instant.parse(value.trim());
+		} catch (DateTimeParseException e) {
+			throw new XMLStreamException("Bad time " + value, e);
+		}
+	}
+
+	private static String toHex(byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		var buf = new StringBuilder(data.length * 2);
+		for (var b : data) {
+			buf.append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+		}
+		return buf.toString();
+	}
+
+	private static byte[] fromHex(String hex) throws XMLStreamException {
+		if (hex == null) {
+			return null;	//NOSONAR
+		} else if (hex.length() % 2 != 0) {
+			throw new XMLStreamException("Bad hex data " + hex);
+		}
+		var data = new byte[hex.length() / 2];
+		for (int i = 0; i < data.length; i++) {
+			int hi = Character.digit(hex.charAt(i * 2), 16);
+			int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (hi < 0 || lo < 0) {
+				throw new XMLStreamException("Bad hex data " + hex);
+			}
+			data[i] = (byte) (hi << 4 | lo);
+		}
+		return data;
 	}
 }
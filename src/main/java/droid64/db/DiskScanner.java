@@ -0,0 +1,441 @@
+package droid64.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import droid64.d64.CbmException;
+import droid64.d64.DiskImage;
+import droid64.d64.DiskImageType;
+import droid64.d64.FeedbackSink;
+import droid64.d64.FeedbackSink.Level;
+import droid64.d64.ImageTypeDetector;
+import droid64.d64.LNX;
+import droid64.d64.Utility;
+
+/**
+ * Scanner saving the disk images found in a directory tree to the database.<br>
+ * The calling thread walks the directories, a pool of threads reads the images, and one thread writes the disks to the
+ * database in batches, in the order the images were found. The walker waits while too many images are waiting to be
+ * read or written, so the memory used does not depend on the size of the tree.<br>
+ * With incremental scan, images with the same size and modification time, or the same MD5 checksum, as when saved are
+ * not read again. Only their updated time is written.
+ */
+public class DiskScanner {
+	/** Number of images waiting to be read or written, per reading thread */
+	private static final int QUEUE_PER_THREAD = 4;
+	/** Marks the end of the queue */
+	private static final Entry END = new Entry(null, null, null);
+	/** Seconds between checks that the writer is still running, while waiting for room in the queue */
+	private static final long PUT_TIMEOUT = 1L;
+
+	private final DiskDao dao;
+	private final FeedbackSink console;
+	private Pattern excludePattern = null;
+	private boolean validate = true;
+	private boolean incremental = true;
+	private int batchSize = 100;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private Consumer<Summary> progressListener = null;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * @param dao where to save the disks
+	 * @param console where to write messages of images which could not be read
+	 */
+	public DiskScanner(DiskDao dao, FeedbackSink console) {
+		this.dao = dao;
+		this.console = console;
+	}
+
+	/**
+	 * Scan a directory and its sub directories, and return when all found disks have been saved.
+	 * @param dir the directory
+	 * @return summary of the scan
+	 */
+	public Summary scan(File dir) {
+		return scan(dir, null);
+	}
+
+	/**
+	 * Scan some files of a directory, and return when all found disks have been saved.
+	 * Directories among the files are scanned with their sub directories. A scanner can be used for one scan at a time.
+	 * @param dir the directory
+	 * @param files files in the directory, or null to scan all files
+	 * @return summary of the scan
+	 */
+	public Summary scan(File dir, List<File> files) {
+		cancelled = false;
+		var summary = new Summary();
+		var queue = new ArrayBlockingQueue<Entry>(threads * QUEUE_PER_THREAD);
+		var readers = Executors.newFixedThreadPool(threads, runnable -> {
+			var thread = new Thread(runnable, "droid64-scan-reader");
+			thread.setDaemon(true);
+			return thread;
+		});
+		var writer = new Thread(() -> write(queue, summary), "droid64-scan-writer");
+		writer.setDaemon(true);
+		writer.setUncaughtExceptionHandler((thread, e) -> {
+			cancelled = true;
+			console.append(Level.ERROR, "Scan stopped. " + e + "\n");
+		});
+		writer.start();
+		try {
+			walk(dir, files, queue, readers, summary, writer);
+			put(queue, END, writer);
+			writer.join();
+		} catch (InterruptedException e) {
+			cancelled = true;
+			queue.clear();
+			queue.offer(END);
+			Thread.currentThread().interrupt();
+		} finally {
+			readers.shutdownNow();
+		}
+		summary.cancelled = cancelled;
+		summary.stop = System.currentTimeMillis();
+		progress(summary);
+		return summary;
+	}
+
+	/** Stop the running scan. Images already read are saved. */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	private void walk(File dir, List<File> selected, BlockingQueue<Entry> queue, ExecutorService readers, Summary summary, Thread writer) throws InterruptedException {
+		if (cancelled || dir == null || dir.getName().startsWith(".")) {
+			return;
+		}
+		List<File> files;
+		if (selected != null) {
+			files = selected.stream().filter(f -> !f.getName().startsWith(".")).sorted().collect(Collectors.toList());
+		} else {
+			try (var stream = Files.newDirectoryStream(dir.toPath(), p -> !p.getFileName().toString().startsWith("."))) {
+				var paths = new ArrayList<Path>();
+				stream.forEach(paths::add);
+				files = paths.stream().sorted().map(Path::toFile).collect(Collectors.toList());
+			} catch (IOException e) {
+				console.append(Level.ERROR, "Error: " + e.getMessage() + "\n");
+				return;
+			}
+		}
+		summary.directories.incrementAndGet();
+		var stored = getStoredDisks(dir);
+		for (var file : files) {
+			if (cancelled) {
+				return;
+			} else if (file.isDirectory()) {
+				walk(file, null, queue, readers, summary, writer);
+			} else if (file.isFile() && ImageTypeDetector.getType(file.getName()) != DiskImageType.UNDEFINED
+					&& (excludePattern == null || !excludePattern.matcher(file.getAbsolutePath()).matches())) {
+				summary.images.incrementAndGet();
+				var storedDisk = stored.get(file.getName());
+				Future<Disk> disk;
+				if (storedDisk != null && isSameSizeAndTime(file, storedDisk)) {
+					disk = CompletableFuture.completedFuture(storedDisk);
+				} else {
+					disk = readers.submit(() -> storedDisk != null && isSameHash(file, storedDisk) ? storedDisk : readDisk(file, dir));
+				}
+				put(queue, new Entry(file, storedDisk, disk), writer);
+			}
+		}
+	}
+
+	/** Wait for room in the queue, unless the writer has stopped, which cancels the scan. */
+	private void put(BlockingQueue<Entry> queue, Entry entry, Thread writer) throws InterruptedException {
+		while (!queue.offer(entry, PUT_TIMEOUT, TimeUnit.SECONDS)) {
+			if (!writer.isAlive()) {
+				cancelled = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Take images from the queue, in the order found, and save them in batches.
+	 * Runs until the end of the queue, also if cancelled, so the walker is never left waiting.
+	 */
+	private void write(BlockingQueue<Entry> queue, Summary summary) {
+		var pending = new ArrayList<Disk>();
+		var unchanged = new ArrayList<Disk>();
+		try {
+			for (var entry = queue.take(); entry != END; entry = queue.take()) {
+				var disk = getDisk(entry);
+				if (disk == null) {
+					summary.failed.incrementAndGet();
+				} else if (disk == entry.stored) {
+					unchanged.add(disk);
+					if (unchanged.size() >= batchSize) {
+						touch(unchanged, summary);
+					}
+				} else {
+					pending.add(disk);
+					if (pending.size() >= batchSize) {
+						save(pending, summary);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			save(pending, summary);
+			touch(unchanged, summary);
+		}
+	}
+
+	/** @return the disk of an entry, or null if it could not be read or the scan is cancelled before it was read */
+	private Disk getDisk(Entry entry) throws InterruptedException {
+		if (cancelled && !entry.disk.isDone()) {
+			entry.disk.cancel(true);
+			return null;
+		}
+		try {
+			return entry.disk.get();
+		} catch (ExecutionException e) {
+			console.append(Level.ERROR, entry.file + " : " + e.getCause() + "\n");
+		} catch (CancellationException e) {	//NOSONAR
+			// Cancelled while waiting
+		}
+		return null;
+	}
+
+	private void save(List<Disk> disks, Summary summary) {
+		if (disks.isEmpty()) {
+			return;
+		}
+		try {
+			dao.saveAll(disks);
+			summary.saved.addAndGet(disks.size());
+		} catch (PartialSaveException e) {	//NOSONAR
+			console.append(Level.ERROR, e.getMessage() + "\n");
+			summary.saved.addAndGet(disks.size() - e.getFailed().size());
+			summary.failed.addAndGet(e.getFailed().size());
+		} catch (DatabaseException | RuntimeException e) {	//NOSONAR
+			console.append(Level.ERROR, disks.get(0).getFilePath() + " : " + e.getMessage() + "\n");
+			summary.failed.addAndGet(disks.size());
+		}
+		disks.clear();
+		progress(summary);
+	}
+
+	private void touch(List<Disk> disks, Summary summary) {
+		if (disks.isEmpty()) {
+			return;
+		}
+		try {
+			dao.touch(disks);
+			summary.unchanged.addAndGet(disks.size());
+		} catch (DatabaseException | RuntimeException e) {	//NOSONAR
+			console.append(Level.ERROR, disks.get(0).getFilePath() + " : " + e.getMessage() + "\n");
+			summary.failed.addAndGet(disks.size());
+		}
+		disks.clear();
+		progress(summary);
+	}
+
+	private void progress(Summary summary) {
+		if (progressListener != null) {
+			try {
+				progressListener.accept(summary);
+			} catch (RuntimeException e) {	//NOSONAR
+				console.append(Level.ERROR, "Progress failed. " + e + "\n");
+			}
+		}
+	}
+
+	/**
+	 * Get disks already saved from a directory, if doing an incremental scan.
+	 * @param dir the directory
+	 * @return map from file name to disk. Empty if not incremental.
+	 */
+	private Map<String, Disk> getStoredDisks(File dir) {
+		if (!incremental) {
+			return Collections.emptyMap();
+		}
+		try {
+			return dao.getDisksInPath(dir.getAbsolutePath(), Utility.getHostName());
+		} catch (DatabaseException e) {	//NOSONAR
+			console.append(Level.ERROR, dir + " : " + e.getMessage() + "\n");
+			return Collections.emptyMap();
+		}
+	}
+
+	private static boolean isSameSizeAndTime(File file, Disk disk) {
+		return disk.getFileSize() != null && disk.getFileSize() == file.length()
+				&& disk.getModified() != null && disk.getModified() == file.lastModified();
+	}
+
+	/**
+	 * Check if an image file with a new modification time has the same contents as when saved.
+	 * If so, the new modification time is set on the disk.
+	 * @param file the image file
+	 * @param disk the saved disk
+	 * @return true if unchanged
+	 */
+	private boolean isSameHash(File file, Disk disk) {
+		if (disk.getFileSize() == null || disk.getFileSize() != file.length() || disk.getHash() == null) {
+			return false;
+		}
+		long modified = file.lastModified();
+		try {
+			if (disk.getHash().equals(Utility.calcMd5Checksum(file))) {
+				disk.setModified(modified);
+				return true;
+			}
+		} catch (CbmException e) {	//NOSONAR
+			console.append(Level.ERROR, file + " : " + e.getMessage() + "\n");
+		}
+		return false;
+	}
+
+	/**
+	 * Read an image file.
+	 * @param file the image file
+	 * @param dir the directory of the file
+	 * @return disk, or null if the image could not be read
+	 */
+	Disk readDisk(File file, File dir) {
+		try {
+			long size = file.length();
+			long modified = file.lastModified();
+			// Only the directory of LNX archives is needed, not the files in them
+			var diskImage = ImageTypeDetector.getType(file.getName()) == DiskImageType.LNX
+					? LNX.readIndex(file, console) : DiskImage.getDiskImage(file, console);
+			diskImage.readBAM();
+			diskImage.readDirectory();
+			var disk = diskImage.getDisk(validate);
+			disk.setFilePath(dir.getAbsolutePath());
+			disk.setFileName(file.getName());
+			disk.setHostName(Utility.getHostName());
+			disk.setFileSize(size);
+			disk.setModified(modified);
+			disk.setHash(Utility.calcMd5Checksum(file));
+			return disk;
+		} catch (CbmException e) {	//NOSONAR
+			console.append(Level.ERROR, file + " : " + e.getMessage() + "\n");
+			return null;
+		}
+	}
+
+	/** @param excludePattern image files with an absolute path matching this are not saved, or null to save all */
+	public void setExcludePattern(Pattern excludePattern) {
+		this.excludePattern = excludePattern;
+	}
+
+	/** @param validate true to validate the images, to save their number of errors and warnings */
+	public void setValidate(boolean validate) {
+		this.validate = validate;
+	}
+
+	/** @param incremental true to not read images which are unchanged since saved */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/** @param batchSize number of disks to write in each transaction */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/** @param threads number of threads reading images */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/** @param progressListener called with the summary after each batch written, and when done. Called from the writer thread. */
+	public void setProgressListener(Consumer<Summary> progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/** An image file with its stored disk, and the disk which is to be saved */
+	private static final class Entry {
+		private final File file;
+		/** The stored disk, or null if not stored */
+		private final Disk stored;
+		/** The disk read from the image, or the stored disk if unchanged. Null if it could not be read. */
+		private final Future<Disk> disk;
+
+		Entry(File file, Disk stored, Future<Disk> disk) {
+			this.file = file;
+			this.stored = stored;
+			this.disk = disk;
+		}
+	}
+
+	/** Counts of a scan */
+	public static final class Summary {
+		private final long start = System.currentTimeMillis();
+		private volatile long stop = 0L;
+		private volatile boolean cancelled = false;
+		private final AtomicInteger directories = new AtomicInteger();
+		private final AtomicInteger images = new AtomicInteger();
+		private final AtomicInteger saved = new AtomicInteger();
+		private final AtomicInteger unchanged = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+
+		/** @return number of directories scanned */
+		public int getDirectories() {
+			return directories.get();
+		}
+
+		/** @return number of disk images found */
+		public int getImages() {
+			return images.get();
+		}
+
+		/** @return number of disks read and saved */
+		public int getSaved() {
+			return saved.get();
+		}
+
+		/** @return number of disks unchanged since saved */
+		public int getUnchanged() {
+			return unchanged.get();
+		}
+
+		/** @return number of disk images which could not be read or saved */
+		public int getFailed() {
+			return failed.get();
+		}
+
+		/** @return true if the scan was cancelled */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/** @return milliseconds since the scan started, or the duration of the scan when done */
+		public long getElapsedMillis() {
+			return (stop != 0L ? stop : System.currentTimeMillis()) - start;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d disk images in %d directories%s. %d saved, %d unchanged, %d failed in %.1f s.",
+					getImages(), getDirectories(), cancelled ? " (cancelled)" : "", getSaved(), getUnchanged(), getFailed(),
+					getElapsedMillis() / 1000.0);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package droid64.db;
 
+import java.util.Collection;
+
 import droid64.d64.DiskImageType;
 import droid64.d64.FileType;
 
@@ -18,6 +20,10 @@ public class DiskSearchCriteria {
 	private String diskFileName;
 	private DiskImageType imageType;
 	private String hostName;
+	/** Only search these disks, or null to search all */
+	private Collection<Long> diskIds;
+	/** Match text without wildcards anywhere, instead of at the start */
+	private boolean contains = false;
 
 	public String getFileName() {
 		return fileName;
@@ -81,12 +87,36 @@ public class DiskSearchCriteria {
 		this.hostName = hostName;
 	}
 
+	public Collection<Long> getDiskIds() {
+		return diskIds;
+	}
+
+	/**
+	 * Restrict the search to some disks, like the ones found in a {@link TrigramIndex}.
+	 * @param diskIds the disks to search, or null to search all.
+	 */
+	public void setDiskIds(Collection<Long> diskIds) {
+		this.diskIds = diskIds;
+	}
+
+	public boolean isContains() {
+		return contains;
+	}
+
+	/**
+	 * Match text without wildcards anywhere, instead of at the start which can use an index of the database.
+	 * @param contains true to match anywhere
+	 */
+	public void setContains(boolean contains) {
+		this.contains = contains;
+	}
+
 	/**
 	 * Has search criteria.
 	 * @return false if all values are null or empty.
 	 */
 	public boolean hasCriteria() {
-		return !( (fileName==null || fileName.trim().isEmpty()) &&
+		return diskIds != null || !( (fileName==null || fileName.trim().isEmpty()) &&
 				(diskLabel==null || diskLabel.trim().isEmpty()) &&
 				(diskPath==null || diskPath.trim().isEmpty()) &&
 				(diskFileName==null || diskFileName.trim().isEmpty()) &&
@@ -107,6 +137,8 @@ public class DiskSearchCriteria {
 		.append(" .fileSizeMax=").append(fileSizeMax)
 		.append(" .imageType=").append(imageType)
 		.append(" .hostName=").append(hostName)
+		.append(" .diskIds=").append(diskIds)
+		.append(" .contains=").append(contains)
 		.append(" .fileType=").append(fileType).append(']')
 		.toString();
 	}
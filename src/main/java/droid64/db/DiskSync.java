@@ -0,0 +1,181 @@
+package droid64.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import droid64.d64.FeedbackSink;
+import droid64.d64.FeedbackSink.Level;
+import droid64.d64.Utility;
+
+/**
+ * Removes stored disks of this host whose image files no longer exist.<br>
+ * The disks are grouped by directory, and each directory is listed once, instead of looking up each image file.
+ * Directories are listed in parallel, as listing is mostly waiting for the file system, and all stale disks are
+ * deleted together in one transaction.<br>
+ * Disks in a directory which exists but cannot be listed are kept.
+ */
+public class DiskSync {
+
+	private final DiskDao dao;
+	private final FeedbackSink console;
+	private int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * @param dao where the disks are stored
+	 * @param console where to write the removed images
+	 */
+	public DiskSync(DiskDao dao, FeedbackSink console) {
+		this.dao = dao;
+		this.console = console;
+	}
+
+	/** @param threads number of threads listing directories */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Remove the disks of missing image files.
+	 * @return summary of the sync
+	 * @throws DatabaseException when error
+	 */
+	public Summary sync() throws DatabaseException {
+		long start = System.currentTimeMillis();
+		var hostName = Utility.getHostName();
+		var dirs = new TreeMap<String, Map<String, Long>>();
+		int checked = 0;
+		try (var disks = dao.getAllDisks(false)) {
+			for (var it = disks.iterator(); it.hasNext(); ) {
+				var disk = it.next();
+				if (disk.getHostName() == null || disk.getHostName().equals(hostName)) {
+					dirs.computeIfAbsent(disk.getFilePath(), k -> new HashMap<>()).put(disk.getFileName(), disk.getDiskId());
+					checked++;
+				}
+			}
+		} catch (IllegalStateException e) {
+			throw new DatabaseException(e);
+		}
+		var executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, dirs.size())));
+		var staleIds = new ArrayList<Long>();
+		int failed = 0;
+		try {
+			var futures = new ArrayList<Future<Set<String>>>();
+			dirs.keySet().forEach(dir -> futures.add(executor.submit(() -> listFiles(dir))));
+			int i = 0;
+			for (var entry : dirs.entrySet()) {
+				Set<String> files;
+				try {
+					files = futures.get(i++).get();
+				} catch (ExecutionException e) {
+					console.append(Level.ERROR, "Failed to list " + entry.getKey() + ". " + e.getCause() + "\n");
+					failed++;
+					continue;
+				}
+				var names = new ArrayList<>(entry.getValue().keySet());
+				Collections.sort(names);
+				for (var name : names) {
+					if (!files.contains(name)) {
+						console.append(Level.INFO, "Removing info for " + entry.getKey() + File.separator + name + "\n");
+						staleIds.add(entry.getValue().get(name));
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+		dao.deleteAll(staleIds);
+		return new Summary(checked, dirs.size(), staleIds.size(), failed, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * List the regular files of a directory. Symbolic links are followed, as by {@link File#isFile()}.
+	 * @param dir the directory
+	 * @return the names of the files, or an empty set if the directory does not exist
+	 * @throws IOException when failing to list an existing directory
+	 */
+	static Set<String> listFiles(String dir) throws IOException {
+		var names = new HashSet<String>();
+		Path path;
+		try {
+			path = Paths.get(dir);
+		} catch (IllegalArgumentException e) {	//NOSONAR
+			return names;
+		}
+		try (var stream = Files.newDirectoryStream(path)) {
+			for (var file : stream) {
+				if (Files.isRegularFile(file)) {
+					names.add(file.getFileName().toString());
+				}
+			}
+		} catch (NoSuchFileException | NotDirectoryException e) {	//NOSONAR
+			names.clear();
+		}
+		return names;
+	}
+
+	/** What a sync found */
+	public static final class Summary {
+		private final int checked;
+		private final int directories;
+		private final int removed;
+		private final int failed;
+		private final long elapsedMillis;
+
+		private Summary(int checked, int directories, int removed, int failed, long elapsedMillis) {
+			this.checked = checked;
+			this.directories = directories;
+			this.removed = removed;
+			this.failed = failed;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/** @return number of disks checked */
+		public int getChecked() {
+			return checked;
+		}
+
+		/** @return number of directories listed */
+		public int getDirectories() {
+			return directories;
+		}
+
+		/** @return number of disks removed */
+		public int getRemoved() {
+			return removed;
+		}
+
+		/** @return number of directories which could not be listed */
+		public int getFailed() {
+			return failed;
+		}
+
+		/** @return duration of the sync */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Removed %d of %d disk(s) in %d directories%s in %.1f s.", removed, checked, directories,
+					failed > 0 ? " (" + failed + " not listed)" : "", elapsedMillis / 1000.0);
+		}
+	}
+}
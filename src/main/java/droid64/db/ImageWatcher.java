@@ -0,0 +1,244 @@
+package droid64.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import droid64.d64.FeedbackSink;
+import droid64.d64.FeedbackSink.Level;
+import droid64.d64.Utility;
+
+/**
+ * Keeps the stored disks up to date with the disk images in some directories, by watching the directories for changes.<br>
+ * Events are collected until no event has arrived for a while, and are then applied together. The file system is
+ * looked at when applying, so a file created and removed in the meantime is only removed. New and changed images are
+ * saved by an incremental {@link DiskScanner}, and disks of removed images and directories are deleted.<br>
+ * Changes made while not watching are not seen. Use a scan or a sync of the database for those.
+ */
+public class ImageWatcher {
+	/** Milliseconds without events before collected events are applied */
+	private static final long QUIET_TIME = 2000L;
+	/** Milliseconds after the first collected event when events are applied, even if events are still arriving */
+	private static final long MAX_DELAY = 30_000L;
+
+	private final List<File> roots;
+	private final Supplier<DiskScanner> scanners;
+	private final DiskDao dao;
+	private final FeedbackSink console;
+	/** Directory of each registered key */
+	private final Map<WatchKey, Path> keys = new HashMap<>();
+	/** Watched directories */
+	private final Set<Path> dirs = new HashSet<>();
+	/** Paths with events since last applied */
+	private final Set<Path> changed = new LinkedHashSet<>();
+	/** Directories where events were lost, which are scanned again */
+	private final Set<Path> overflowed = new LinkedHashSet<>();
+	private WatchService watchService = null;
+	private Thread thread = null;
+	private volatile boolean running = false;
+
+	/**
+	 * @param roots directories to watch, with their sub directories
+	 * @param scanners creates the scanner used to save new and changed images
+	 * @param dao used to delete disks of removed images
+	 * @param console where to write what was done
+	 */
+	public ImageWatcher(List<File> roots, Supplier<DiskScanner> scanners, DiskDao dao, FeedbackSink console) {
+		this.roots = List.copyOf(roots);
+		this.scanners = scanners;
+		this.dao = dao;
+		this.console = console;
+	}
+
+	/**
+	 * Start watching in a background thread.
+	 * @throws IOException when failing to watch
+	 */
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		watchService = FileSystems.getDefault().newWatchService();
+		try {
+			for (var root : roots) {
+				register(root.toPath());
+			}
+		} catch (IOException e) {
+			watchService.close();
+			keys.clear();
+			dirs.clear();
+			throw e;
+		}
+		running = true;
+		thread = new Thread(this::run, "droid64-image-watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stop watching. Events not yet applied are dropped. */
+	public synchronized void stop() {
+		running = false;
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {}	//NOSONAR
+		}
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	public List<File> getRoots() {
+		return roots;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/** Register a directory and its sub directories, except hidden ones. */
+	private void register(Path start) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (!dir.equals(start) && dir.getFileName().toString().startsWith(".")) {
+					return FileVisitResult.SKIP_SUBTREE;
+				} else if (dirs.add(dir)) {
+					keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void run() {
+		long first = 0L;
+		long last = 0L;
+		try {
+			while (running) {
+				WatchKey key;
+				if (changed.isEmpty() && overflowed.isEmpty()) {
+					key = watchService.take();
+				} else {
+					long now = System.currentTimeMillis();
+					long wait = Math.min(last + QUIET_TIME, first + MAX_DELAY) - now;
+					key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+				}
+				if (key != null) {
+					collect(key);
+					last = System.currentTimeMillis();
+					first = first == 0L ? last : first;
+				}
+				long now = System.currentTimeMillis();
+				if ((!changed.isEmpty() || !overflowed.isEmpty()) && (now - last >= QUIET_TIME || now - first >= MAX_DELAY)) {
+					apply();
+					first = 0L;
+				}
+			}
+		} catch (ClosedWatchServiceException e) {	//NOSONAR
+			// Stopped
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			console.append(Level.ERROR, "Image watcher stopped. " + e + "\n");
+		}
+		running = false;
+	}
+
+	private void collect(WatchKey key) {
+		var dir = keys.get(key);
+		for (var event : key.pollEvents()) {
+			if (dir == null) {
+				continue;
+			} else if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				overflowed.add(dir);
+			} else {
+				changed.add(dir.resolve((Path) event.context()));
+			}
+		}
+		if (!key.reset()) {
+			keys.remove(key);
+		}
+	}
+
+	/** Apply collected events to the database, by what is now found in the file system. */
+	void apply() {
+		var scanFiles = new TreeMap<Path, List<File>>();
+		var removedFiles = new TreeMap<Path, List<String>>();
+		var removedDirs = new ArrayList<Path>();
+		var newDirs = new ArrayList<Path>();
+		for (var path : changed) {
+			if (Files.isDirectory(path)) {
+				if (!dirs.contains(path)) {
+					newDirs.add(path);
+					scanFiles.computeIfAbsent(path.getParent(), k -> new ArrayList<>()).add(path.toFile());
+				}
+			} else if (Files.isRegularFile(path)) {
+				scanFiles.computeIfAbsent(path.getParent(), k -> new ArrayList<>()).add(path.toFile());
+			} else if (dirs.contains(path)) {
+				removedDirs.add(path);
+			} else {
+				removedFiles.computeIfAbsent(path.getParent(), k -> new ArrayList<>()).add(path.getFileName().toString());
+			}
+		}
+		changed.clear();
+		for (var dir : newDirs) {
+			try {
+				register(dir);
+			} catch (IOException e) {
+				console.append(Level.ERROR, "Failed to watch " + dir + ". " + e.getMessage() + "\n");
+			}
+		}
+		int deleted = 0;
+		try {
+			for (var dir : removedDirs) {
+				dirs.removeIf(d -> d.startsWith(dir));
+				deleted += dao.deleteDisks(dir.toString(), null, Utility.getHostName());
+			}
+			for (var entry : removedFiles.entrySet()) {
+				deleted += dao.deleteDisks(entry.getKey().toString(), entry.getValue(), Utility.getHostName());
+			}
+		} catch (DatabaseException e) {	//NOSONAR
+			console.append(Level.ERROR, "Failed to delete removed disks. " + e.getMessage() + "\n");
+		}
+		int saved = 0;
+		for (var entry : scanFiles.entrySet()) {
+			if (!overflowed.contains(entry.getKey())) {
+				saved += scanners.get().scan(entry.getKey().toFile(), entry.getValue()).getSaved();
+			}
+		}
+		for (var dir : overflowed) {
+			saved += scanners.get().scan(dir.toFile()).getSaved();
+		}
+		overflowed.clear();
+		if (saved > 0 || deleted > 0) {
+			console.append(Level.INFO, "Image watcher saved " + saved + " and deleted " + deleted + " disks.\n");
+		}
+	}
+}
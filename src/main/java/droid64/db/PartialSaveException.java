@@ -0,0 +1,32 @@
+package droid64.db;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when some disks of a batch could not be saved. The other disks of the batch were saved.
+ */
+public class PartialSaveException extends DatabaseException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient List<Disk> failed;
+
+	public PartialSaveException(String message, List<Disk> failed, Throwable t) {
+		super(message, t);
+		this.failed = Collections.unmodifiableList(failed);
+	}
+
+	/** @return the disks which were not saved */
+	public List<Disk> getFailed() {
+		return failed;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder()
+				.append("PartialSaveException[")
+				.append(" .message=").append(getMessage())
+				.append(" .failed=").append(failed.size()).append(']').toString();
+	}
+}
@@ -0,0 +1,372 @@
+package droid64.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Trigram index of disk labels and file names, to find text anywhere in a name without scanning the database.<br>
+ * Names are normalized so that shifted and unshifted PETSCII letters, and upper and lower case, are the same,
+ * and every sequence of three characters in a name points to the name. A search looks at the names pointed to by
+ * the rarest trigram of the text, and keeps the disks with a name really containing the text.<br>
+ * The file only holds the normalized names of each disk. The trigrams are created when it is loaded.<br>
+ * The index is only used when complete, which it is after being built from the database. After that, disks saved and
+ * deleted through {@link DiskDao} are updated in the index. The file is tied to the database it was built from, and an
+ * index is no longer complete when the number of disks or the highest disk id in the database differs from the index,
+ * such as after changes made by others to a shared database. It must then be built again.
+ */
+public final class TrigramIndex {
+	/** Number of characters in a gram */
+	public static final int GRAM_LENGTH = 3;
+	private static final int MAGIC = 0x44363449;
+	private static final int VERSION = 3;
+	/** Slot of the label among the names of a disk */
+	private static final int LABEL_SLOT = 0;
+	/** Bits of the slot of a name in the keys of the grams, which limits the number of names of a disk */
+	private static final int SLOT_BITS = 20;
+
+	private static File indexFile = null;
+	/** The database of the index, such as its JDBC URL */
+	private static String indexSource = null;
+	private static TrigramIndex instance = null;
+
+	/** Normalized names per disk id. The label first, followed by the file names. */
+	private final Map<Long, String[]> disks = new HashMap<>();
+	/** Keys of names having a trigram. A key is disk id and slot of name. Keys of removed or replaced disks are left until next load. */
+	private final Map<Integer, LongList> postings = new HashMap<>();
+	/** The database the index was built from */
+	private final String source;
+	private boolean complete = false;
+	private boolean changed = false;
+
+	TrigramIndex(String source) {
+		this.source = source != null ? source : "";
+	}
+
+	/**
+	 * Set the file of the index. Any index already loaded from another file, or for another database, is dropped.
+	 * An index file built from another database is not used.
+	 * @param file the file, or null to not use an index.
+	 * @param source the database, such as its JDBC URL
+	 */
+	public static synchronized void setFile(File file, String source) {
+		if (file == null || !file.equals(indexFile) || !Objects.equals(source, indexSource)) {
+			indexFile = file;
+			indexSource = source;
+			instance = null;
+		}
+	}
+
+	/**
+	 * Get the index, which is loaded from file the first time.
+	 * @return the index, or null if no file has been set
+	 */
+	public static synchronized TrigramIndex getInstance() {
+		if (instance == null && indexFile != null) {
+			instance = new TrigramIndex(indexSource);
+			if (indexFile.exists()) {
+				try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+					instance.read(in);
+				} catch (IOException e) {	//NOSONAR
+					instance = new TrigramIndex(indexSource);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Build the index from disks, and save it.
+	 * @param disks composite disks, such as from {@link DiskDao#getAllDisks(boolean)}
+	 * @return number of disks in index
+	 * @throws IOException when failing to save
+	 */
+	public static int rebuild(Stream<Disk> disks) throws IOException {
+		String source;
+		synchronized (TrigramIndex.class) {
+			source = indexSource;
+		}
+		var index = new TrigramIndex(source);
+		disks.forEach(index::put);
+		index.complete = true;
+		index.changed = true;
+		synchronized (TrigramIndex.class) {
+			instance = index;
+		}
+		saveIfChanged();
+		return index.size();
+	}
+
+	/**
+	 * Save the index if it has been changed since loaded or saved.
+	 * @throws IOException when error
+	 */
+	public static void saveIfChanged() throws IOException {
+		TrigramIndex index;
+		File file;
+		synchronized (TrigramIndex.class) {
+			index = instance;
+			file = indexFile;
+		}
+		if (index != null && file != null) {
+			index.save(file);
+		}
+	}
+
+	/**
+	 * Called when disks have been saved.
+	 * @param savedDisks the saved disks
+	 */
+	static void updated(Collection<Disk> savedDisks) {
+		var index = getInstance();
+		if (index != null) {
+			index.update(savedDisks);
+		}
+	}
+
+	/**
+	 * Called when a disk has been deleted.
+	 * @param diskId the id of the disk
+	 */
+	static void removed(long diskId) {
+		var index = getInstance();
+		if (index != null) {
+			index.remove(diskId);
+		}
+	}
+
+	/**
+	 * Normalize text. Letters are upper case, and shifted space is space.
+	 * @param str the text, or null
+	 * @return normalized text, or empty text if null
+	 */
+	public static String normalize(String str) {
+		if (str == null) {
+			return "";
+		}
+		var chars = str.toUpperCase(Locale.ROOT).toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] == '\u00a0') {
+				chars[i] = ' ';
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Find disks which may match a search. Disks with a file name containing the file name of the criteria, and a label
+	 * containing the label of the criteria are returned. Other criteria are not looked at.
+	 * @param criteria the search criteria
+	 * @return ordered ids of disks, or null if the index can not be used for the criteria.
+	 */
+	public synchronized Set<Long> findDisks(DiskSearchCriteria criteria) {
+		if (!complete) {
+			return null;	//NOSONAR
+		}
+		var fileName = getSearchText(criteria.getFileName());
+		var label = getSearchText(criteria.getDiskLabel());
+		if (fileName == null && label == null) {
+			return null;	//NOSONAR
+		}
+		Set<Long> found = null;
+		if (fileName != null) {
+			found = find(fileName, false, null);
+		}
+		if (label != null) {
+			found = find(label, true, found);
+		}
+		return found;
+	}
+
+	/** @return normalized text if long enough for the index, else null */
+	private static String getSearchText(String str) {
+		if (str == null || str.indexOf('*') >= 0 || str.indexOf('?') >= 0) {
+			return null;
+		}
+		var text = normalize(str);
+		return text.length() >= GRAM_LENGTH ? text : null;
+	}
+
+	/**
+	 * @param text normalized text, at least one gram long
+	 * @param label true to search labels, else file names
+	 * @param within disks to search within, or null for all
+	 * @return ids of disks with a matching name
+	 */
+	private Set<Long> find(String text, boolean label, Set<Long> within) {
+		LongList rarest = null;
+		for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+			var keys = postings.get(gram(text, i));
+			if (keys == null) {
+				return new TreeSet<>();
+			} else if (rarest == null || keys.size < rarest.size) {
+				rarest = keys;
+			}
+		}
+		var found = new TreeSet<Long>();
+		for (int i = 0; i < rarest.size; i++) {
+			long key = rarest.values[i];
+			long diskId = key >>> SLOT_BITS;
+			int slot = (int) (key & ((1 << SLOT_BITS) - 1));
+			var names = disks.get(diskId);
+			if ((slot == LABEL_SLOT) == label && names != null && slot < names.length
+					&& (within == null || within.contains(diskId)) && names[slot].contains(text)) {
+				found.add(diskId);
+			}
+		}
+		return found;
+	}
+
+	private static int gram(String text, int pos) {
+		return (text.charAt(pos) & 0x3ff) << 20 | (text.charAt(pos + 1) & 0x3ff) << 10 | (text.charAt(pos + 2) & 0x3ff);
+	}
+
+	private synchronized void update(Collection<Disk> savedDisks) {
+		if (complete) {
+			for (var disk : savedDisks) {
+				if (disk.isDelete()) {
+					remove(disk.getDiskId());
+				} else {
+					put(disk);
+				}
+			}
+		}
+	}
+
+	private synchronized void remove(long diskId) {
+		if (complete && disks.remove(diskId) != null) {
+			changed = true;
+		}
+	}
+
+	private synchronized void put(Disk disk) {
+		var files = disk.getDiskFiles();
+		var names = new String[Math.min(files.size() + 1, 1 << SLOT_BITS)];
+		names[LABEL_SLOT] = normalize(disk.getLabel());
+		for (int i = 1; i < names.length; i++) {
+			names[i] = normalize(files.get(i - 1).getName());
+		}
+		put(disk.getDiskId(), names);
+	}
+
+	private void put(long diskId, String[] names) {
+		var old = disks.put(diskId, names);
+		for (int slot = 0; slot < names.length; slot++) {
+			if (old != null && slot < old.length && old[slot].equals(names[slot])) {
+				continue;
+			}
+			long key = diskId << SLOT_BITS | slot;
+			var name = names[slot];
+			for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+				var keys = postings.computeIfAbsent(gram(name, i), k -> new LongList());
+				if (keys.size == 0 || keys.values[keys.size - 1] != key) {
+					keys.add(key);
+				}
+			}
+		}
+		changed = true;
+	}
+
+	/** @return number of disks in index */
+	public synchronized int size() {
+		return disks.size();
+	}
+
+	/** @return true if the index has been built from the database, and can be used */
+	public synchronized boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Check that the index matches the database. If not, the index is no longer complete, and is not used until built again.
+	 * @param diskCount number of disks in the database
+	 * @param maxDiskId highest disk id in the database, or 0 if none
+	 * @return true if the index is complete and matches the database
+	 */
+	public synchronized boolean verify(long diskCount, long maxDiskId) {
+		if (complete && (disks.size() != diskCount || disks.keySet().stream().mapToLong(Long::longValue).max().orElse(0L) != maxDiskId)) {
+			complete = false;
+			changed = true;
+		}
+		return complete;
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Not a search index.");
+		} else if (!source.equals(in.readUTF())) {
+			throw new IOException("Search index of another database.");
+		}
+		var data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+		complete = data.readBoolean();
+		int count = data.readInt();
+		for (int i = 0; i < count; i++) {
+			long diskId = data.readLong();
+			var names = new String[data.readInt()];
+			for (int j = 0; j < names.length; j++) {
+				names[j] = data.readUTF();
+			}
+			put(diskId, names);
+		}
+		changed = false;
+	}
+
+	/** Write to a temporary file, which then replaces the file. */
+	private synchronized void save(File file) throws IOException {
+		if (!changed) {
+			return;
+		}
+		var tmpFile = new File(file.getPath() + ".tmp");
+		try (var out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(source);
+			var deflater = new DeflaterOutputStream(out);
+			var data = new DataOutputStream(new BufferedOutputStream(deflater));
+			data.writeBoolean(complete);
+			data.writeInt(disks.size());
+			for (var entry : disks.entrySet()) {
+				data.writeLong(entry.getKey());
+				data.writeInt(entry.getValue().length);
+				for (var name : entry.getValue()) {
+					data.writeUTF(name);
+				}
+			}
+			data.flush();
+			deflater.finish();
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		changed = false;
+	}
+
+	/** Growing array of keys */
+	private static final class LongList {
+		private long[] values = new long[4];
+		private int size = 0;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+}
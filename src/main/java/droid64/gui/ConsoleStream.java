@@ -3,14 +3,53 @@ package droid64.gui;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import droid64.d64.FeedbackSink;
+
+/**
+ * Feedback messages written to a text area.<br>
+ * Text is put together into lines for each thread, so lines written by several threads at once are not mixed up.
+ * Complete lines are collected in a buffer and written to the text area by a timer,
+ * so a burst of messages only causes a single update of the text area.
+ * When the buffer is full the oldest TRACE and INFO lines are dropped. WARNING and ERROR lines are dropped only
+ * when there are more of them than the buffer has room for.
+ */
+public class ConsoleStream extends OutputStream implements FeedbackSink {
+	/** Max number of characters waiting to be written to the text area */
+	private static final int MAX_CHARS = 64 * 1024;
+	/** Max number of lines waiting to be written to the text area */
+	private static final int MAX_LINES = 1000;
+	/** Max length of a line before it is written without waiting for its end */
+	private static final int MAX_LINE = 4096;
+	/** Milliseconds between first message in a batch and the update of the text area */
+	private static final int FLUSH_DELAY = 100;
 
-public class ConsoleStream extends OutputStream {
 	private final JTextArea textArea;
+	/** Complete lines in order */
+	private final Set<Line> lines = new LinkedHashSet<>();
+	/** Lines which may be dropped, oldest first */
+	private final Deque<Line> droppable = new ArrayDeque<>();
+	/** Unfinished line of each thread */
+	private final Map<Thread, Line> partial = new HashMap<>();
+	private final Timer flushTimer;
+	private int chars = 0;
+	private int dropped = 0;
+	private volatile Level level = Level.INFO;
 
 	public ConsoleStream(JTextArea textArea) {
 		this.textArea = textArea;
+		this.flushTimer = new Timer(FLUSH_DELAY, event -> writeToTextArea());
+		this.flushTimer.setRepeats(false);
 	}
 
 	@Override
@@ -23,16 +62,145 @@ public class ConsoleStream extends OutputStream {
 		append(new String(data, off, len, StandardCharsets.ISO_8859_1));
 	}
 
-	public ConsoleStream append(String str) {
-		// redirects data to the text area
-		textArea.append(str);
-		// scrolls the text area to the end of data
-		textArea.setCaretPosition(textArea.getDocument().getLength());
+	/**
+	 * Write all waiting messages to the text area, including the line not yet ended by the calling thread.
+	 */
+	@Override
+	public void flush() {
+		synchronized (lines) {
+			var line = partial.remove(Thread.currentThread());
+			if (line != null) {
+				add(line);
+			}
+		}
+		if (SwingUtilities.isEventDispatchThread()) {
+			writeToTextArea();
+		} else {
+			SwingUtilities.invokeLater(this::writeToTextArea);
+		}
+	}
+
+	/**
+	 * Set the lowest level of messages to keep.
+	 * @param level the level
+	 */
+	public void setLevel(Level level) {
+		this.level = level;
+	}
+
+	@Override
+	public boolean isEnabled(Level level) {
+		return level.compareTo(this.level) >= 0;
+	}
+
+	@Override
+	public ConsoleStream append(Level level, String str) {
+		if (!isEnabled(level) || str == null || str.isEmpty()) {
+			return this;
+		}
+		boolean added = false;
+		synchronized (lines) {
+			var line = partial.computeIfAbsent(Thread.currentThread(), t -> new Line());
+			if (level.compareTo(line.level) > 0) {
+				line.level = level;
+			}
+			int start = 0;
+			for (int end = str.indexOf('\n'); end >= 0; end = str.indexOf('\n', start)) {
+				line.text.append(str, start, end + 1);
+				add(line);
+				line = new Line();
+				line.level = level;
+				start = end + 1;
+				added = true;
+			}
+			line.text.append(str, start, str.length());
+			if (line.text.length() >= MAX_LINE) {
+				add(line);
+				added = true;
+				partial.remove(Thread.currentThread());
+			} else if (line.text.length() > 0) {
+				partial.put(Thread.currentThread(), line);
+			} else {
+				partial.remove(Thread.currentThread());
+			}
+		}
+		if (added && !flushTimer.isRunning()) {
+			flushTimer.start();
+		}
 		return this;
 	}
 
+	@Override
+	public ConsoleStream append(String str) {
+		return append(Level.INFO, str);
+	}
+
+	@Override
 	public ConsoleStream append(Object obj) {
-		return append(String.valueOf(obj));
+		return append(Level.INFO, String.valueOf(obj));
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Add complete line. If the buffer is full, the oldest TRACE and INFO lines are dropped,
+	 * and then the oldest lines of any level while there are too many. Called holding lock.
+	 */
+	private void add(Line line) {
+		lines.add(line);
+		chars += line.text.length();
+		if (line.level.compareTo(Level.INFO) <= 0) {
+			droppable.addLast(line);
+		}
+		while ((chars > MAX_CHARS || lines.size() > MAX_LINES) && !droppable.isEmpty()) {
+			drop(droppable.removeFirst());
+		}
+		while (lines.size() > MAX_LINES) {
+			drop(lines.iterator().next());
+		}
+	}
+
+	private void drop(Line line) {
+		lines.remove(line);
+		chars -= line.text.length();
+		dropped++;
+	}
+
+	/** Add the unfinished lines of threads which have ended. Called holding lock. */
+	private void expire() {
+		for (var it = partial.entrySet().iterator(); it.hasNext();) {
+			var entry = it.next();
+			if (!entry.getKey().isAlive()) {
+				it.remove();
+				var line = entry.getValue();
+				line.text.append('\n');
+				add(line);
+			}
+		}
+	}
+
+	private void writeToTextArea() {
+		var buf = new StringBuilder();
+		synchronized (lines) {
+			expire();
+			if (dropped > 0) {
+				buf.append("[").append(dropped).append(" messages dropped]\n");
+				dropped = 0;
+			}
+			lines.forEach(line -> buf.append(line.text));
+			lines.clear();
+			droppable.clear();
+			chars = 0;
+		}
+		if (buf.length() > 0) {
+			// redirects data to the text area
+			textArea.append(buf.toString());
+			// scrolls the text area to the end of data
+			textArea.setCaretPosition(textArea.getDocument().getLength());
+		}
+	}
+
+	/** Text of a line, and the highest level of its parts */
+	private static final class Line {
+		private final StringBuilder text = new StringBuilder();
+		private Level level = Level.TRACE;
+	}
+}
@@ -53,9 +53,13 @@ import droid64.d64.CpmFile;
 import droid64.d64.DirEntry;
 import droid64.d64.DiskImage;
 import droid64.d64.DiskImageType;
+import droid64.d64.FileCopy;
+import droid64.d64.FileDataChannel;
 import droid64.d64.FileType;
+import droid64.d64.ImageSource;
 import droid64.d64.Utility;
 import droid64.d64.ValidationError;
+import droid64.d64.ZipArchive;
 import droid64.db.DaoFactory;
 import droid64.db.DatabaseException;
 
@@ -114,6 +118,10 @@ public class DiskPanel extends JPanel implements TableModelListener {
 
 	/** True when a Zip file has been loaded */
 	private boolean zipFileLoaded = false;
+	/** The loaded Zip file, kept open until unloaded */
+	private ZipArchive zipArchive = null;
+	/** The loaded Zip file, or Zip file inside a Zip file */
+	private ImageSource zipSource = null;
 	private File directory = new File(".");
 	private int rowHeight = 12;
 	/** True when this is the active disk panel */
@@ -429,19 +437,23 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	protected void doubleClickedZipFile(String zipName, int row) throws CbmException {
 		mainPanel.appendConsole("doubleClickedZipFile: "+zipName);
 
-		if (Setting.isImageFileName(new File(zipName))) {
+		if (Setting.isImageFileName(zipName)) {
 			mainPanel.appendConsole("doubleClickedZipFile: is disk image");
-			diskImage = DiskImage.getDiskImage(new File(zipName), getFileData(row), consoleStream);
-			diskImage.setFile(new File(zipName));
-			setDiskName(currentImagePath + File.separator + zipName);
+			var source = zipSource.resolve(zipName);
+			diskImage = DiskImage.getDiskImage(source, consoleStream);
+			setDiskName(source.toString());
 			clearDirTable();
 			imageLoaded = true;
 			zipFileLoaded = true;
 			updateImageFile();
 			showDirectory();
+		} else if (zipName.toLowerCase().endsWith(ZIP_EXT)) {
+			loadZipFile(zipSource.resolve(zipName));
 		} else if (PARENT_DIR.equals(zipName)) {
 			File file = currentImagePath.getParentFile();
-			if (file.exists() && file.isDirectory()) {
+			if (zipSource.isArchived()) {
+				loadZipFile(zipSource.getParent());
+			} else if (file.exists() && file.isDirectory()) {
 				loadLocalDirectory(file);
 			}
 		} else {
@@ -641,10 +653,22 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	 * @param file the zip file to load
 	 */
 	private void loadZipFile(File file) {
-		mainPanel.appendConsole("loadZipFile: "+file.getName());
+		loadZipFile(ImageSource.of(file.getAbsoluteFile()));
+	}
+
+	/**
+	 * Load a zip file, which may be inside another zip file
+	 * @param source the zip file to load
+	 */
+	private void loadZipFile(ImageSource source) {
+		mainPanel.appendConsole("loadZipFile: "+source.getName());
+		var file = source.getFile();
 		try {
-			var list = Utility.getZipFileEntries(file, 2);
+			var archive = source.isArchived() ? null : ZipArchive.open(file);
+			var list = archive != null ? archive.getDirEntries(2) : source.getDirEntries(2);
 			clearDirTable();
+			zipArchive = archive;
+			zipSource = source;
 			var parent = new DirEntry(file.getParentFile(), 1);
 			parent.setName(PARENT_DIR);
 			tableModel.updateDirEntry(parent);
@@ -654,7 +678,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 			for (int i=0; i< tcm.getColumnCount(); i++) {
 				tcm.getColumn(i).setHeaderValue(tableModel.getColumnName(i));
 			}
-			setDiskName(file.getAbsolutePath());
+			setDiskName(source.toString());
 			diskLabel.setText("ZIP FILE");
 			zipFileLoaded = true;
 			currentImagePath = file;
@@ -687,7 +711,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 			diskImage.readBAM();
 			diskImage.readDirectory();
 			if (Boolean.TRUE.equals(Setting.USE_DB.getBoolean())) {
-				var disk = diskImage.getDisk();
+				var disk = diskImage.getDisk(Boolean.TRUE.equals(Setting.VALIDATE_ON_SCAN.getBoolean()));
 				var f = diskImage.getFile();
 				var excludePattern = Utility.isEmpty(Setting.EXCLUDED_IMAGE_FILES.getString()) ? null : Pattern.compile(Setting.EXCLUDED_IMAGE_FILES.getString());
 				if (excludePattern == null || !excludePattern.matcher(f.getAbsolutePath()).matches()) {
@@ -709,23 +733,40 @@ public class DiskPanel extends JPanel implements TableModelListener {
 		}
 	}
 
+	/**
+	 * Write files to the image in the other panel as one batch.
+	 * @param files the files to write
+	 * @return true if all files were written
+	 * @throws CbmException if files can not be written to the image
+	 */
+	private boolean copyToImage(List<FileCopy> files) throws CbmException {
+		if (files.isEmpty()) {
+			return true;
+		}
+		int count = otherDiskPanel.diskImage.saveFiles(files);
+		if (count < files.size()) {
+			logFileSaveFailedAbort(files.get(count).getCbmFile().getName());
+			return false;
+		}
+		return true;
+	}
+
 	private void logFileSaveFailedAbort(String filename) {
 		mainPanel.appendConsole("Failed to save copy of "+filename+".\nAborting copy.");
 	}
 
 	public void copyFile() {
-		if (otherDiskPanel.zipFileLoaded) {
+		if (otherDiskPanel.zipFileLoaded && !otherDiskPanel.isWritableImageLoaded()) {
 			mainPanel.appendConsole("Error: copying to Zip files not supported.");
 			return;
 		}
 		boolean filesCopied = false;
+		var batch = new ArrayList<FileCopy>();
 		try {
-			boolean success = false;
 			if (imageLoaded) {
 				for (var row : table.getSelectedRows()) {
 					filesCopied = true;
 					mainPanel.appendConsole("Disk copy [" + row + "] " + tableModel.getValueAt(row, 2));
-					var saveData = diskImage.getFileData(row);
 					var source = diskImage.getCbmFile(row);
 					CbmFile copy;
 					if (source instanceof CpmFile) {
@@ -735,22 +776,18 @@ public class DiskPanel extends JPanel implements TableModelListener {
 					}
 					if (otherDiskPanel.imageLoaded) {
 						// Copy file from image to image
-						success = otherDiskPanel.diskImage.saveFile(copy, true, saveData);
+						batch.add(FileCopy.of(copy, diskImage.getFileChannel(row)));
 					} else {
 						// Copy file from image to local file system
 						var outName = otherDiskPanel.currentImagePath + File.separator + Utility.pcFilename(copy);
 						mainPanel.appendConsole("DiskPanel.copyFile: "+outName+" class="+copy.getClass().getName());
 						var targetFile = new File(outName);
-						success = Utility.writeFileSafe(targetFile, saveData);
-					}
-					if (!success) {
-						logFileSaveFailedAbort(copy.getName());
-						break;
+						if (!Utility.writeFileSafe(targetFile, diskImage.getFileChannel(row))) {
+							logFileSaveFailedAbort(copy.getName());
+							break;
+						}
 					}
 				}
-				if (success && otherDiskPanel.imageLoaded) {
-					otherDiskPanel.diskImage.save();
-				}
 			} else if (zipFileLoaded) {
 				for (var row = 0; row < table.getRowCount(); row++) {
 					if (table.isRowSelected(row)) {
@@ -764,23 +801,16 @@ public class DiskPanel extends JPanel implements TableModelListener {
 							cbmFile.setName(Utility.cbmFileName(filename, DiskImage.DISK_NAME_LENGTH));
 							cbmFile.setNameAsBytes(cbmFile.getName().getBytes());
 							cbmFile.setFileType(CbmFile.getFileTypeFromFileExtension(filename));
-							success = otherDiskPanel.diskImage.saveFile(cbmFile, false, data);
-							if (!success) {
-								logFileSaveFailedAbort(filename);
-								break;
-							}
+							batch.add(FileCopy.of(cbmFile, data));
 						} else if (otherDiskPanel.zipFileLoaded) {
 							mainPanel.appendConsole("Target is a zip file");
 						} else {
 							// Copy file from file system to file system (no images involved)
 							var targetFile = new File(otherDiskPanel.currentImagePath + File.separator + filename);
-							success = Utility.writeFileSafe(targetFile, data);
+							Utility.writeFileSafe(targetFile, data);
 						}
 					}
 				}
-				if (success && otherDiskPanel.imageLoaded) {
-					otherDiskPanel.diskImage.save();
-				}
 			} else {
 				// local file system
 				for (var row = 0; row < table.getRowCount(); row++) {
@@ -792,17 +822,12 @@ public class DiskPanel extends JPanel implements TableModelListener {
 							mainPanel.appendConsole("Local copy [" + row + "] " + filename);
 							if (otherDiskPanel.imageLoaded) {
 								// Copy file from local file system to disk image
-								var data = Utility.readFile(sourceFile);
 								var cbmFile = new CbmFile();
 								cbmFile.setName(Utility.cbmFileName(filename, DiskImage.DISK_NAME_LENGTH));
 								cbmFile.setNameAsBytes(cbmFile.getName().getBytes());
 								cbmFile.setFileType(CbmFile.getFileTypeFromFileExtension(filename));
 								cbmFile.setFsFile(sourceFile);
-								success = otherDiskPanel.diskImage.saveFile(cbmFile, false, data);
-								if (!success) {
-									logFileSaveFailedAbort(filename);
-									break;
-								}
+								batch.add(FileCopy.of(cbmFile, sourceFile));
 							} else {
 								// Copy file from file system to file system (no images involved)
 								var targetFile = new File(otherDiskPanel.currentImagePath + File.separator + filename);
@@ -813,14 +838,16 @@ public class DiskPanel extends JPanel implements TableModelListener {
 						}
 					}
 				}
-				if (success && otherDiskPanel.imageLoaded) {
-					otherDiskPanel.diskImage.save();
-				}
+			}
+			if (otherDiskPanel.imageLoaded) {
+				copyToImage(batch);
 			}
 		} catch (Exception|OutOfMemoryError e) {	//NOSONAR
 			GuiHelper.showException(mainPanel.getParent(), "Error", e, "Failed to copy file.");
 		}
-		if (filesCopied) {
+		if (filesCopied && otherDiskPanel.imageLoaded) {
+			otherDiskPanel.refreshDiskImage();
+		} else if (filesCopied) {
 			otherDiskPanel.reloadDiskImage(true);
 		}
 	}
@@ -856,6 +883,11 @@ public class DiskPanel extends JPanel implements TableModelListener {
 		try {
 			if (imageLoaded) {
 				return diskImage.getFileData(fileNum);
+			} else if (zipArchive != null) {
+				var data = zipArchive.getData((String) table.getValueAt(fileNum, 1));
+				return data != null ? data : new byte[0];
+			} else if (zipSource != null) {
+				return zipSource.resolve((String) table.getValueAt(fileNum, 1)).readRaw();
 			} else if (zipFileLoaded) {
 				return Utility.getDataFromZipFileEntry(currentImagePath, (String) table.getValueAt(fileNum, 1));
 			} else {
@@ -867,6 +899,22 @@ public class DiskPanel extends JPanel implements TableModelListener {
 		return new byte[0];
 	}
 
+	/** Get data from file as a channel. Data in disk images is read as the channel is read.
+	 * @param file number in listing
+	 * @return channel
+	 */
+	private FileDataChannel getFileChannel(int fileNum) {
+		if (imageLoaded) {
+			try {
+				return diskImage.getFileChannel(fileNum);
+			} catch (Exception e) {	//NOSONAR
+				GuiHelper.showException(mainPanel.getParent(), "Error", e, "Failed to get file data.");
+				return FileDataChannel.of(new byte[0]);
+			}
+		}
+		return FileDataChannel.of(getFileData(fileNum));
+	}
+
 	public void hexViewFile() {
 		for (var i : table.getSelectedRows()) {
 			mainPanel.appendConsole("Hex view '" + getName(i) + "'");
@@ -877,7 +925,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	public void calcMd5Checksum() {
 		try {
 			for (var i : table.getSelectedRows()) {
-				String sum = Utility.calcMd5Checksum(getFileData(i));
+				String sum = Utility.calcMd5Checksum(getFileChannel(i));
 				mainPanel.appendConsole(sum + "  " + getName(i));
 			}
 		} catch (CbmException e) {
@@ -1036,12 +1084,17 @@ public class DiskPanel extends JPanel implements TableModelListener {
 				return;
 			}
 			mainPanel.appendConsole("Unload disk.");
+			var source = diskImage.getSource();
 			diskImage = null;
 			setDiskName(null);
 			imageLoaded = false;
 			diskLabel.setText(Utility.getMessage("droid64.nodisk"));
 			clearDirTable();
-			loadLocalDirectory(currentImagePath);
+			if (source != null) {
+				loadZipFile(source.getParent());
+			} else {
+				loadLocalDirectory(currentImagePath);
+			}
 			table.revalidate();
 			if (openedRow != null && openedRow < table.getRowCount() && openedRow >= 0) {
 				// Select and scroll to last opened file
@@ -1063,7 +1116,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	}
 
 	public void renameFile() {
-		if (zipFileLoaded) {
+		if (zipFileLoaded && !isWritableImageLoaded()) {
 			mainPanel.appendConsole("Error: renaming files in Zip files not supported.");
 			return;
 		}
@@ -1118,7 +1171,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	}
 
 	public void newFile() {
-		if (zipFileLoaded) {
+		if (zipFileLoaded && !isWritableImageLoaded()) {
 			mainPanel.appendConsole("Error: add new files to Zip files not supported.");
 			return;
 		}
@@ -1191,7 +1244,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	}
 
 	public void deleteFile() {
-		if (zipFileLoaded) {
+		if (zipFileLoaded && !isWritableImageLoaded()) {
 			mainPanel.appendConsole("Error: deleting from Zip files not supported.");
 			return;
 		}
@@ -1223,6 +1276,11 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	private void clearDirTable(){
 		tableModel.clear();
 		zipFileLoaded = false;
+		if (zipArchive != null) {
+			zipArchive.close();
+			zipArchive = null;
+		}
+		zipSource = null;
 	}
 
 	public void setOtherDiskPanelObject ( DiskPanel otherOne ) {
@@ -1259,15 +1317,32 @@ public class DiskPanel extends JPanel implements TableModelListener {
 		}
 	}
 
+	/**
+	 * Show the image as it is in memory, without reading it from file again.
+	 * Used when the image has been changed and saved by this program.
+	 */
+	public void refreshDiskImage() {
+		if (imageLoaded && diskImage != null) {
+			mainPanel.appendConsole("refreshDiskImage\n");
+			clearDirTable();
+			updateImageFile();
+			showDirectory();
+		} else {
+			reloadDiskImage(true);
+		}
+	}
+
 	public void reloadDiskImage(boolean updateList){
 		mainPanel.appendConsole("reloadDiskImage "+imageLoaded+'\n');
 		if (imageLoaded){
 			if (diskImage != null) {
 				try {
 					var currentPartition = diskImage.getCurrentPartition();
-					diskImage = DiskImage.getDiskImage(diskImage.getFile(), consoleStream);
+					var source = diskImage.getSource();
+					diskImage = source != null ? DiskImage.getDiskImage(source, consoleStream) : DiskImage.getDiskImage(diskImage.getFile(), consoleStream);
 					setDiskName(diskImage.getFile().getPath());
 					clearDirTable();
+					zipFileLoaded = source != null;
 					updateImageFile();
 					if (currentPartition != null) {
 						diskImage.setCurrentPartition(currentPartition);
@@ -1487,7 +1562,8 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	}
 
 	public boolean isWritableImageLoaded() {
-		if (imageLoaded && !zipFileLoaded && diskImage != null && !diskImage.isCpmImage()) {
+		if (imageLoaded && diskImage != null && !diskImage.isCpmImage()
+				&& (!zipFileLoaded || diskImage.getSource() != null && diskImage.getSource().isWritable())) {
 			return !diskImage.getImageFormat().isReadonly();
 		} else {
 			return false;
@@ -1503,7 +1579,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	}
 
 	public void moveFile(final boolean upwards) {
-		if (zipFileLoaded) {
+		if (zipFileLoaded && !isWritableImageLoaded()) {
 			mainPanel.appendConsole("Error: files can't be moved in zip file.");
 			return;
 		} else if (!imageLoaded) {
@@ -1552,7 +1628,7 @@ public class DiskPanel extends JPanel implements TableModelListener {
 	}
 
 	public void sortFiles() {
-		if (zipFileLoaded) {
+		if (zipFileLoaded && !isWritableImageLoaded()) {
 			mainPanel.appendConsole("Error: files can't be sorted in zip file.");
 			return;
 		} else if (!imageLoaded) {
@@ -13,8 +13,7 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -22,9 +21,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -55,13 +54,17 @@ import droid64.DroiD64;
 import droid64.cfg.Bookmark;
 import droid64.cfg.BookmarkType;
 import droid64.d64.CbmException;
-import droid64.d64.DiskImage;
-import droid64.d64.DiskImageType;
+import droid64.d64.FeedbackSink.Level;
 import droid64.d64.Utility;
 import droid64.db.DaoFactory;
 import droid64.db.DaoFactoryImpl;
 import droid64.db.DatabaseException;
+import droid64.db.Disk;
 import droid64.db.DiskList;
+import droid64.db.DiskScanner;
+import droid64.db.DiskSync;
+import droid64.db.ImageWatcher;
+import droid64.db.TrigramIndex;
 
 /**<pre>
  * Created on 21.06.2004
@@ -93,6 +96,8 @@ public class MainPanel implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private static final int COLOUR_POWER_1 = 5;
 	private static final int COLOUR_POWER_2 = 35;
+	/** Milliseconds between progress messages while scanning */
+	private static final long SCAN_PROGRESS_INTERVAL = 2000L;
 
 	public static final Insets BUTTON_MARGINS = new Insets(1, 4, 1, 4);
 	/** Left disk panel */
@@ -101,6 +106,8 @@ public class MainPanel implements Serializable {
 	private final DiskPanel diskPanel2;
 	/** True when scanning for disk images is running. */
 	private boolean scannerActive = false;
+	private transient volatile DiskScanner activeScanner = null;
+	private transient ImageWatcher imageWatcher = null;
 	private final transient HashMap<Object, Object> colorHashMap = new HashMap<>();
 	/** The position of the divider in the splitPane. */
 	private int dividerLoc = -1;
@@ -703,6 +710,7 @@ public class MainPanel implements Serializable {
 		var fileName = FileDialogHelper.openTextFileDialog(active != null ? active.getCurrentImagePath() : null, "console.txt", true);
 		if (fileName != null) {
 			try {
+				consoleStream.flush();
 				Utility.writeFile(new File(fileName), consoleText.getText());
 			} catch (CbmException e) {	//NOSONAR
 				appendConsole("Failed to save console.\n"+e.getMessage());
@@ -785,11 +793,17 @@ public class MainPanel implements Serializable {
 		searchMenu.add (syncMenuItem);
 		var exportMenuItem = new JMenuItem("Export database to XML..", 'e');
 		searchMenu.add (exportMenuItem);
+		var importMenuItem = new JMenuItem("Import database from XML..", 'm');
+		searchMenu.add (importMenuItem);
+		var indexMenuItem = new JMenuItem("Rebuild search index", 'r');
+		searchMenu.add (indexMenuItem);
 
 		searchMenuItem.addActionListener(ae -> new SearchPanel(DroiD64.PROGNAME+" - Search", mainPanel).showDialog());
 		scanMenuItem.addActionListener(ae -> showScanForImages(parent));
 		syncMenuItem.addActionListener(ae -> syncDatabase());
 		exportMenuItem.addActionListener(ae -> exportDatabase());
+		importMenuItem.addActionListener(ae -> importDatabase());
+		indexMenuItem.addActionListener(ae -> rebuildSearchIndex());
 
 		searchMenu.setEnabled(Setting.USE_DB.getBoolean());
 		searchMenu.setToolTipText(Boolean.TRUE.equals(Setting.USE_DB.getBoolean()) ? null : "You must configure and enable database to use search.");
@@ -804,6 +818,10 @@ public class MainPanel implements Serializable {
 		if (! Boolean.TRUE.equals(Setting.ASK_QUIT.getBoolean())|| JOptionPane.showConfirmDialog(
 				parent, "Really quit?", "Leaving this program...",
 				JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
+			if (imageWatcher != null) {
+				imageWatcher.stop();
+			}
+			saveSearchIndex();
 			parent.dispose();
 			System.exit(0);	//NOSONAR
 		}
@@ -823,7 +841,11 @@ public class MainPanel implements Serializable {
 	 */
 	private synchronized void showScanForImages(JFrame parent) {
 		if (scannerActive) {
-			GuiHelper.showErrorMessage(parent, "Scan failed", "Disk scanner is already active.");
+			var scanner = activeScanner;
+			if (scanner != null && JOptionPane.showConfirmDialog(parent, "Disk scanner is already active.\nDo you want to cancel it?",
+					"Scan for disk images", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+				scanner.cancel();
+			}
 		} else {
 			var chooser = new JFileChooser(Setting.DEFAULT_IMAGE_DIR.getFile());
 			chooser.setToolTipText("Select directory to start scanning for disk images in.");
@@ -838,8 +860,10 @@ public class MainPanel implements Serializable {
 					@Override
 					public void run() {
 						try {
-							int numDisks = scanForD64Files(dir, excludePattern);
-							GuiHelper.showInfoMessage(parent, "Scan completed", "Done scanning.%nFound %d disk images in %s.",numDisks, dir );
+							var summary = scanForD64Files(dir, excludePattern);
+							saveSearchIndex();
+							appendConsole("Scanned " + summary);
+							GuiHelper.showInfoMessage(parent, "Scan completed", "Done scanning %s.%nFound %s", dir, summary);
 						} finally {
 							scannerActive = false;
 						}
@@ -852,29 +876,15 @@ public class MainPanel implements Serializable {
 	}
 
 	/**
-	 * Get all stored disks from database, and verify that files still exists in file system.
+	 * Get all stored disks from database, and remove those whose files no longer exists in file system.
 	 */
 	private void syncDatabase() {
 		try {
-			var myHostName = Utility.getHostName();
-			var map = DaoFactory.getDaoFactory().getDiskDao().getAllDisks(false)
-				.filter(d -> d.getHostName() == null || d.getHostName().equals(myHostName))
-				.map(disk -> {
-					// map from disk to boolean which is true if it was deleted
-					var f = new File(disk.getFilePath() + File.separator + disk.getFileName());
-					if (!f.exists() || !f.isFile()) {
-						try {
-							appendConsole("Removing info for " + f.getPath());
-							disk.setDelete();
-							DaoFactory.getDaoFactory().getDiskDao().delete(disk);
-							return Boolean.TRUE;
-						} catch (DatabaseException ignored) { /* ignored */ }
-					}
-					return Boolean.FALSE;
-				})
-				.collect(Collectors.groupingBy(b -> b, Collectors.counting()));
+			var summary = new DiskSync(DaoFactory.getDaoFactory().getDiskDao(), consoleStream).sync();
+			saveSearchIndex();
+			appendConsole("Sync done. " + summary);
 			GuiHelper.showInfoMessage(parent, "Sync completed", "Sync done.%nRemoved %d of %d disk(s) from database.",
-					Optional.ofNullable(map.get(true)).orElse(0L), Optional.ofNullable(map.get(false)).orElse(0L));
+					summary.getRemoved(), summary.getChecked());
 		} catch (DatabaseException e) {	//NOSONAR
 			GuiHelper.showException(parent, "Sync failed", e, "Sync failed.");
 		}
@@ -883,22 +893,66 @@ public class MainPanel implements Serializable {
 	private void exportDatabase() {
 		try {
 			var chooser = new JFileChooser(Setting.DEFAULT_IMAGE_DIR.getFile());
-			chooser.setToolTipText("Select XML file.");
+			chooser.setToolTipText("Select XML file. Use .gz suffix to compress.");
 			chooser.setDialogTitle("Export database to XML");
 			chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
 			chooser.setMultiSelectionEnabled(false);
-			chooser.setFileFilter(new FileNameExtensionFilter("XML file", "xml"));
+			chooser.setFileFilter(new FileNameExtensionFilter("XML file", "xml", "gz"));
 			if (chooser.showSaveDialog(parent) == JFileChooser.APPROVE_OPTION) {
 				var f = chooser.getSelectedFile();
 				appendConsole("Exporting database to " + f);
 				var count = DiskList.export(f);
 				appendConsole("Exported database with " + count + " disk images.");
 			}
-		} catch (DatabaseException | OutOfMemoryError e) {	//NOSONAR
+		} catch (DatabaseException e) {	//NOSONAR
 			GuiHelper.showException(parent, "Export failed", e, "Export failed.");
 		}
 	}
 
+	private void importDatabase() {
+		try {
+			var chooser = new JFileChooser(Setting.DEFAULT_IMAGE_DIR.getFile());
+			chooser.setToolTipText("Select XML file.");
+			chooser.setDialogTitle("Import database from XML");
+			chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+			chooser.setMultiSelectionEnabled(false);
+			chooser.setFileFilter(new FileNameExtensionFilter("XML file", "xml", "gz"));
+			if (chooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION) {
+				var f = chooser.getSelectedFile();
+				appendConsole("Importing database from " + f);
+				var count = DiskList.importXml(f, Optional.ofNullable(Setting.JDBC_BATCH_SIZE.getInteger()).orElse(100));
+				appendConsole("Imported database with " + count + " disk images.");
+				saveSearchIndex();
+			}
+		} catch (DatabaseException e) {	//NOSONAR
+			GuiHelper.showException(parent, "Import failed", e, "Import failed.");
+		}
+	}
+
+	/**
+	 * Build the search index from all disks in the database.
+	 */
+	private void rebuildSearchIndex() {
+		appendConsole("Building search index.");
+		var builder = new Thread(() -> {
+			try (var disks = DaoFactory.getDaoFactory().getDiskDao().getAllDisks(true)) {
+				int count = TrigramIndex.rebuild(disks);
+				appendConsole("Search index built with " + count + " disk images.");
+			} catch (DatabaseException | IOException | IllegalStateException e) {	//NOSONAR
+				appendConsole("Failed to build search index: " + e.getMessage());
+			}
+		});
+		builder.start();
+	}
+
+	private void saveSearchIndex() {
+		try {
+			TrigramIndex.saveIfChanged();
+		} catch (IOException e) {	//NOSONAR
+			appendConsole("Failed to save search index: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Apply settings to GUI
 	 */
@@ -910,9 +964,11 @@ public class MainPanel implements Serializable {
 		consoleText.setFont(Setting.CONSOLE_FONT.getFont());
 		bookmarkBar.setVisible(Boolean.TRUE.equals(Setting.BOOKMARK_BAR.getBoolean()));
 		hideConsole(Setting.HIDECONSOLE.getBoolean());
+		consoleStream.setLevel(Boolean.TRUE.equals(Setting.VERBOSE_CONSOLE.getBoolean()) ? Level.TRACE : Level.INFO);
 
 		if (Boolean.TRUE.equals(Setting.USE_DB.getBoolean())) {
 			try {
+				TrigramIndex.setFile(Setting.getSearchIndexFile(), Setting.JDBC_URL.getString());
 				DaoFactoryImpl.initialize(Setting.JDBC_DRIVER.getString(), Setting.JDBC_URL.getString(),
 						Setting.JDBC_USER.getString(), Setting.JDBC_PASS.getString(),
 						Setting.MAX_ROWS.getInteger(), Setting.JDBC_LIMIT_TYPE.getInteger());
@@ -920,6 +976,7 @@ public class MainPanel implements Serializable {
 				appendConsole("Load settings failed: "+e.getMessage());
 			}
 		}
+		updateImageWatcher();
 	}
 
 	private void setDefaultFonts() {
@@ -1034,48 +1091,56 @@ public class MainPanel implements Serializable {
 	 * Recursively scan dir for D64 images and add to database.
 	 * @param dir directory to start searching in.
 	 * @param excludePattern the regexp
-	 * @return number of found disk images
+	 * @return summary of the scan
 	 */
-	protected int scanForD64Files(File dir, Pattern excludePattern) {
-		if (dir == null || dir.getName().startsWith(".")) {
-			return 0;
-		}
-
-		appendConsole("Scanning " + dir);
-		int diskCount = 0;
-		try (var stream = Files.newDirectoryStream(dir.toPath(), p -> !p.getFileName().startsWith("."))) {
-			Stream.Builder<Path> builder = Stream.builder();
-			stream.forEach(builder::add);
-			var files = builder.build().sorted().map(Path::toFile).collect(Collectors.toList());
-			for (var file : files) {
-				if (file.isDirectory()) {
-					diskCount += scanForD64Files(file, excludePattern);
-				} else if (file.isFile() && Setting.getDiskImageType(file) != DiskImageType.UNDEFINED
-						&& (excludePattern == null || !excludePattern.matcher(file.getAbsolutePath()).matches())) {
-					saveDiskToDatabase(file, dir);
-					diskCount++;
-				}
+	protected DiskScanner.Summary scanForD64Files(File dir, Pattern excludePattern) {
+		var scanner = createScanner(excludePattern, Boolean.TRUE.equals(Setting.INCREMENTAL_SCAN.getBoolean()));
+		var lastProgress = new AtomicLong(System.currentTimeMillis());
+		scanner.setProgressListener(summary -> {
+			long now = System.currentTimeMillis();
+			if (now - lastProgress.get() >= SCAN_PROGRESS_INTERVAL) {
+				lastProgress.set(now);
+				appendConsole("Scanned " + summary);
 			}
-			return diskCount;
-		} catch (IOException e) {
-			appendConsole("Error: " + e.getMessage());
-			return diskCount;
+		});
+		activeScanner = scanner;
+		try {
+			return scanner.scan(dir);
+		} finally {
+			activeScanner = null;
 		}
 	}
 
-	private void saveDiskToDatabase(File file, File dir) {
-		try {
-			var diskImage =  DiskImage.getDiskImage(file, consoleStream);
-			diskImage.readBAM();
-			diskImage.readDirectory();
-			var disk = diskImage.getDisk();
-			disk.setFilePath(dir.getAbsolutePath());
-			disk.setFileName(file.getName());
-			disk.setHostName(Utility.getHostName());
-			DaoFactory.getDaoFactory().getDiskDao().save(disk);
-			appendConsole("Saved info for " + file);
-		} catch (DatabaseException | CbmException e) {	//NOSONAR
-			appendConsole(file +" : "+e.getMessage());
+	private DiskScanner createScanner(Pattern excludePattern, boolean incremental) {
+		var scanner = new DiskScanner(DaoFactory.getDaoFactory().getDiskDao(), consoleStream);
+		scanner.setExcludePattern(excludePattern);
+		scanner.setValidate(Boolean.TRUE.equals(Setting.VALIDATE_ON_SCAN.getBoolean()));
+		scanner.setIncremental(incremental);
+		scanner.setBatchSize(Optional.ofNullable(Setting.JDBC_BATCH_SIZE.getInteger()).orElse(100));
+		return scanner;
+	}
+
+	/**
+	 * Start watching the configured directories, or stop if no directories or database. A running watcher is restarted if the directories changed.
+	 */
+	private void updateImageWatcher() {
+		var dirs = Boolean.TRUE.equals(Setting.USE_DB.getBoolean()) ? Setting.getWatchDirectories() : new ArrayList<File>();
+		if (imageWatcher != null && imageWatcher.isRunning() && imageWatcher.getRoots().equals(dirs)) {
+			return;
+		} else if (imageWatcher != null) {
+			imageWatcher.stop();
+			imageWatcher = null;
+		}
+		if (!dirs.isEmpty()) {
+			var excludePattern = Utility.isEmpty(Setting.EXCLUDED_IMAGE_FILES.getString()) ? null : Pattern.compile(Setting.EXCLUDED_IMAGE_FILES.getString());
+			var watcher = new ImageWatcher(dirs, () -> createScanner(excludePattern, true), DaoFactory.getDaoFactory().getDiskDao(), consoleStream);
+			try {
+				watcher.start();
+				imageWatcher = watcher;
+				appendConsole("Watching " + dirs + " for disk images.");
+			} catch (IOException e) {	//NOSONAR
+				appendConsole("Failed to watch " + dirs + ": " + e.getMessage());
+			}
 		}
 	}
 
@@ -117,11 +117,17 @@ public class Resources {
 	public static final String DROID64_SETTINGS_EXT_D88 = "droid64.settings.ext.d88";
 	public static final String DROID64_SETTINGS_EXT_T64 = "droid64.settings.ext.t64";
 	public static final String DROID64_SETTINGS_EXT_LNX = "droid64.settings.ext.lnx";
+	public static final String DROID64_SETTINGS_MAPPED_IMAGES = "droid64.settings.mapped_images";
+	public static final String DROID64_SETTINGS_MAPPED_IMAGES_TOOLTIP = "droid64.settings.mapped_images.tooltip";
+	public static final String DROID64_SETTINGS_GZIP_LEVEL = "droid64.settings.gzip_level";
+	public static final String DROID64_SETTINGS_GZIP_LEVEL_TOOLTIP = "droid64.settings.gzip_level.tooltip";
 	public static final String DROID64_SETTINGS_CONFIRMEXIT = "droid64.settings.confirmexit";
 	public static final String DROID64_SETTINGS_CONFIRMEXIT_TOOLTIP = "droid64.settings.confirmexit.tooltip";
 	public static final String DROID64_SETTINGS_HIDECONSOLE = "droid64.settings.hideconsole";
 	public static final String DROID64_SETTINGS_BOOKMARKBAR = "droid64.settings.bookmarkbar";
 	public static final String DROID64_SETTINGS_HIDECONSOLE_TOOLTIP = "droid64.settings.hideconsole.tooltip";
+	public static final String DROID64_SETTINGS_VERBOSECONSOLE = "droid64.settings.verboseconsole";
+	public static final String DROID64_SETTINGS_VERBOSECONSOLE_TOOLTIP = "droid64.settings.verboseconsole.tooltip";
 	public static final String DROID64_SETTINGS_LOOKFEEL = "droid64.settings.lookfeel";
 	public static final String DROID64_SETTINGS_LOOKFEEL_TOOLTIP = "droid64.settings.lookfeel.tooltip";
 	public static final String DROID64_SETTINGS_GRIDSPACING_TOOLTIP = "droid64.settings.gridspacing.tooltip";
@@ -152,6 +158,8 @@ public class Resources {
 	public static final String DROID64_SETTINGS_JDBC_ROWS = "droid64.settings.jdbc.rows";
 	public static final String DROID64_SETTINGS_JDBC_LIMIT = "droid64.settings.jdbc.limit";
 	public static final String DROID64_SETTINGS_JDBC_LIMIT_TOOLTIP = "droid64.settings.jdbc.limit.tooltip";
+	public static final String DROID64_SETTINGS_JDBC_BATCH = "droid64.settings.jdbc.batch";
+	public static final String DROID64_SETTINGS_JDBC_BATCH_TOOLTIP = "droid64.settings.jdbc.batch.tooltip";
 	public static final String DROID64_SETTINGS_JDBC_STATUS = "droid64.settings.jdbc.status";
 	public static final String DROID64_SETTINGS_JDBC_SQL = "droid64.settings.jdbc.sql";
 	public static final String DROID64_SETTINGS_JDBC_TEST = "droid64.settings.jdbc.test";
@@ -179,6 +187,8 @@ public class Resources {
 	public static final String DROID64_SEARCH_IMAGEPATH = "droid64.search.imagepath";
 	public static final String DROID64_SEARCH_IMAGEFILE = "droid64.search.imagefile";
 	public static final String DROID64_SEARCH_HOSTNAME = "droid64.search.hostname";
+	public static final String DROID64_SEARCH_TEXT_TOOLTIP = "droid64.search.text.tooltip";
+	public static final String DROID64_SEARCH_CONTAINS = "droid64.search.contains";
 	//
 	public static final String DROID64_BUGS_INGRESS = "droid64.bugsframe.ingress";
 	public static final String DROID64_BUGS_BUGS = "droid64.bugsframe.bugs";
@@ -197,5 +207,11 @@ public class Resources {
 	public static final String DROID64_BAM_SECTOR = "droid64.bam.sector";
 	public static final String DROID64_SETTINGS_EXCLUDE_IMAGE_FILES = "droid64.exclude_image_files";
 	public static final String DROID64_SETTINGS_EXCLUDE_IMAGE_FILES_TOOLTIP = "droid64.exclude_image_files.tooltip";
+	public static final String DROID64_SETTINGS_VALIDATE_ON_SCAN = "droid64.settings.validate_on_scan";
+	public static final String DROID64_SETTINGS_VALIDATE_ON_SCAN_TOOLTIP = "droid64.settings.validate_on_scan.tooltip";
+	public static final String DROID64_SETTINGS_INCREMENTAL_SCAN = "droid64.settings.incremental_scan";
+	public static final String DROID64_SETTINGS_WATCH_DIRECTORIES = "droid64.settings.watch_directories";
+	public static final String DROID64_SETTINGS_WATCH_DIRECTORIES_TOOLTIP = "droid64.settings.watch_directories.tooltip";
+	public static final String DROID64_SETTINGS_INCREMENTAL_SCAN_TOOLTIP = "droid64.settings.incremental_scan.tooltip";
 
 }
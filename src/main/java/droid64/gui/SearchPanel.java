@@ -9,6 +9,7 @@ import java.io.File;
 import java.text.DecimalFormat;
 
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JDialog;
@@ -31,6 +32,7 @@ import droid64.db.DaoFactory;
 import droid64.db.DatabaseException;
 import droid64.db.DiskSearchCriteria;
 import droid64.db.SearchResultRow;
+import droid64.db.TrigramIndex;
 
 /**
  * Search dialog for DroiD64
@@ -40,6 +42,8 @@ import droid64.db.SearchResultRow;
 public class SearchPanel extends JPanel {
 
 	private static final long serialVersionUID = 1L;
+	/** Max number of disks found in search index to get from database in one query. With more, the index is not used. */
+	private static final int MAX_INDEX_DISKS = 500;
 	private final MainPanel mainPanel;
 	private final SearchResultTableModel tableModel = new SearchResultTableModel();
 
@@ -48,6 +52,7 @@ public class SearchPanel extends JPanel {
 	private final JTextField diskPathText = new JTextField(Utility.EMPTY, 20);
 	private final JTextField diskFileNameText = new JTextField(Utility.EMPTY, 20);
 	private final JTextField hostNameText = new JTextField(Utility.EMPTY, 20);
+	private final JCheckBox containsBox = new JCheckBox(Utility.getMessage(Resources.DROID64_SEARCH_CONTAINS));
 	private final JFormattedTextField fileSizeMinField = getNumericField(10, 8);
 	private final JFormattedTextField fileSizeMaxField = getNumericField(250, 8);
 	private final JButton closeButton = new JButton("Close");
@@ -94,6 +99,10 @@ public class SearchPanel extends JPanel {
 
 	/** Setup the search panel */
 	private JPanel drawSearchPanel() {
+		var textTooltip = Utility.getMessage(Resources.DROID64_SEARCH_TEXT_TOOLTIP);
+		for (var text : new JTextField[] { fileNameText, diskLabelText, diskPathText, diskFileNameText, hostNameText }) {
+			text.setToolTipText(textTooltip);
+		}
 
 		var fileSizePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
 		fileSizePanel.add(fileSizeMinField);
@@ -185,10 +194,11 @@ public class SearchPanel extends JPanel {
 		addComponent(6, Resources.DROID64_SEARCH_IMAGEPATH, panel, diskPathText, gbc);
 		addComponent(7, Resources.DROID64_SEARCH_IMAGEFILE, panel, diskFileNameText, gbc);
 		addComponent(8, Resources.DROID64_SEARCH_HOSTNAME, panel, hostNameText, gbc);
+		addComponent(9, Utility.EMPTY, panel, containsBox, gbc);
 		gbc.weighty = 1.0;
-		addComponent(9, Utility.EMPTY, panel, tableScrollPane, gbc);
+		addComponent(10, Utility.EMPTY, panel, tableScrollPane, gbc);
 		gbc.weighty = 0.0;
-		addComponent(10, Utility.EMPTY, panel, buttonPanel, gbc);
+		addComponent(11, Utility.EMPTY, panel, buttonPanel, gbc);
 		return panel;
 	}
 
@@ -206,20 +216,31 @@ public class SearchPanel extends JPanel {
 		criteria.setFileSizeMin(Utility.parseInteger(fileSizeMinField.getText(), 10));
 		criteria.setFileSizeMax(Utility.parseInteger(fileSizeMaxField.getText(), 250));
 		criteria.setHostName(hostNameText.getText());
+		criteria.setContains(containsBox.isSelected());
 		criteria.setFileType(selectedFileType);
 		criteria.setImageType(imageType != null && imageType != DiskImageType.UNDEFINED ? imageType : null);
 		runSearch(criteria);
 	}
 
 	/**
-	 * Perform search using criteria. Update table model with search results.
+	 * Perform search using criteria. Update table model with search results.<br>
+	 * When the search index can be used, it finds the disks with matching names,
+	 * and the database is only asked for the rows of those disks. If it finds too many disks for one query,
+	 * the index is not used, so the rows are always the first ones in the order of the database.
 	 * @param criteria DiskSearchCriteria
 	 */
 	private void runSearch(DiskSearchCriteria criteria) {
 		try {
 			tableModel.clear();
-			DaoFactory.getDaoFactory().getDiskDao()
-				.search(criteria)
+			var dao = DaoFactory.getDaoFactory().getDiskDao();
+			var index = TrigramIndex.getInstance();
+			if (index != null && index.isComplete() && !index.verify(dao.getDiskCount(), dao.getMaxDiskId()) && mainPanel != null) {
+				mainPanel.appendConsole("Search index does not match the database. It is not used until built again.");
+			}
+			var diskIds = index != null ? index.findDisks(criteria) : null;
+			criteria.setDiskIds(diskIds != null && diskIds.size() <= MAX_INDEX_DISKS ? diskIds : null);
+			dao.search(criteria)
+				.limit(DaoFactory.getMaxRows())
 				.map(disk -> new SearchResultRow(disk, disk.getDiskFiles().get(0)))
 				.forEach(tableModel::updateDirEntry);
 		} catch (DatabaseException e) {	//NOSONAR
@@ -22,7 +22,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -33,6 +32,7 @@ import javax.swing.JPanel;
 import droid64.DroiD64;
 import droid64.cfg.ParameterType;
 import droid64.d64.DiskImageType;
+import droid64.d64.ImageTypeDetector;
 import droid64.d64.Utility;
 
 public enum Setting {
@@ -60,12 +60,19 @@ public enum Setting {
 	JDBC_USER("jdbc_user",                       ParameterType.STRING,           Setting.DROID64),
 	JDBC_PASS("jdbc_password",                   ParameterType.STRING,           Setting.JDBC_DEFAULT_PASS),
 	JDBC_LIMIT_TYPE("jdbc_limit_type",           ParameterType.INTEGER,          Integer.valueOf(0)),
+	JDBC_BATCH_SIZE("jdbc_batch_size",           ParameterType.INTEGER,          Integer.valueOf(100)),
 	EXCLUDED_IMAGE_FILES("excluded_image_files", ParameterType.STRING,           null),
 	MAX_ROWS("max_rows",                         ParameterType.INTEGER,          Integer.valueOf(25)),
 	ROW_HEIGHT("row_height",                     ParameterType.INTEGER,          Integer.valueOf(10)),
 	LOCAL_ROW_HEIGHT("local_row_height",         ParameterType.INTEGER,          Integer.valueOf(10)),
 	USE_DB("use_database",                       ParameterType.BOOLEAN,          Boolean.FALSE),
+	VALIDATE_ON_SCAN("validate_on_scan",         ParameterType.BOOLEAN,          Boolean.TRUE),
+	INCREMENTAL_SCAN("incremental_scan",         ParameterType.BOOLEAN,          Boolean.TRUE),
+	WATCH_DIRECTORIES("watch_directories",       ParameterType.STRING_LIST,      Collections.emptyList()),
+	VERBOSE_CONSOLE("verbose_console",           ParameterType.BOOLEAN,          Boolean.FALSE),
 	LOOK_AND_FEEL("look_and_feel",               ParameterType.STRING,           "javax.swing.plaf.metal.MetalLookAndFeel"),
+	MAPPED_IMAGES("mapped_images",               ParameterType.BOOLEAN,          Boolean.FALSE),
+	GZIP_LEVEL("gzip_level",                     ParameterType.INTEGER,          Integer.valueOf(6)),
 	PLUGIN_COMMAND("plugin_command",             ParameterType.INDEXED_STRING,   Utility.makeList( "d64copy", "x64", "128", "cbmctrl", "xpet", "x64", "x64" )),
 	PLUGIN_ARGUMENTS("plugin_arguments",         ParameterType.INDEXED_STRING,   Utility.makeList( "{Image} 8", Setting.VICE_PLUGIN_ARGS, Setting.VICE_PLUGIN_ARGS, Setting.VICE_PLUGIN_ARGS, "-drive8type {DriveType} -model 8032 {ImageFiles}", "-fs8convertp00 {Files}", "-fs8 {Image}" )),
 	PLUGIN_DESCRIPTION("plugin_description",     ParameterType.INDEXED_STRING,   Utility.makeList( "Transfer this disk image to a real floppy.", "Invoke VICE 64 emulator with this disk image", "Invoke VICE 128 emulator with this disk image", "List files using OpenCBM", "VICE PET emulator", "VICE program", "VICE FS" )),
@@ -119,6 +126,8 @@ public enum Setting {
 	private static final String DEFAULT_SETTING_FILE_NAME = ".droiD64.cfg";
 	/** Default name of bookmark settings file (without path). */
 	private static final String DEFAULT_BOOKMARK_FILE_NAME = ".droid64_book.xml";
+	/** Default name of search index file (without path). */
+	private static final String DEFAULT_SEARCH_INDEX_FILE_NAME = ".droid64_index.bin";
 	public static final int MAX_PLUGINS = 8;
 	/**
 	 * Constructor
@@ -254,6 +263,7 @@ public enum Setting {
 			this.value = value;
 			break;
 		}
+		invalidateExtensions();
 	}
 	/** Reset parameter to default value */
 	public void reset() {
@@ -295,6 +305,13 @@ public enum Setting {
 			this.value = string;
 			break;
 		}
+		invalidateExtensions();
+	}
+	/** File name extensions are prepared for matching, and must be prepared again when changed */
+	private void invalidateExtensions() {
+		if (name().startsWith("FILE_EXT_")) {
+			ImageTypeDetector.invalidate();
+		}
 	}
 	protected File parseFile(String string) {
 		return string != null ? new File(string) : (File) defaultValue;
@@ -384,6 +401,18 @@ public enum Setting {
 		return new File ((USER_HOME != null ? USER_HOME + File.separator : "") + DEFAULT_BOOKMARK_FILE_NAME);
 	}
 
+	public static File getSearchIndexFile() {
+		return new File ((USER_HOME != null ? USER_HOME + File.separator : "") + DEFAULT_SEARCH_INDEX_FILE_NAME);
+	}
+
+	/**
+	 * @return directories to watch for changed disk images
+	 */
+	public static List<File> getWatchDirectories() {
+		return WATCH_DIRECTORIES.getList().stream()
+				.map(String::trim).filter(s -> !s.isEmpty()).map(File::new).collect(Collectors.toList());
+	}
+
 	public static void load(File file) throws IOException {
 		load(new FileReader(file));
 	}
@@ -549,18 +578,29 @@ public enum Setting {
 		if (file.isDirectory()) {
 			return DiskImageType.UNDEFINED;
 		}
-		final String name = file.getName().toLowerCase();
-		return Setting.getFileExtensionMap().entrySet().stream()
-				.filter(entry -> entry.getValue().stream().anyMatch(ext -> name.endsWith(ext.toLowerCase())))
-				.findFirst()
-				.map(Entry::getKey)
-				.orElse(DiskImageType.UNDEFINED);
+		return getDiskImageType(file.getName());
+	}
+
+	/**
+	 * @param name file name
+	 * @return type of image by the file name extension, or UNDEFINED
+	 */
+	public static DiskImageType getDiskImageType(String name) {
+		return ImageTypeDetector.getType(name);
 	}
 
 	public static boolean isImageFileName(File file) {
 		return !DiskImageType.UNDEFINED.equals(getDiskImageType(file));
 	}
 
+	/**
+	 * @param name file name
+	 * @return true if the name has a disk image file name extension
+	 */
+	public static boolean isImageFileName(String name) {
+		return !DiskImageType.UNDEFINED.equals(getDiskImageType(name));
+	}
+
 	/**
 	 * Check if name ends with a matching file extension. <br>
 	 * If so, return name, else return name with the first matching name+extension.
@@ -89,6 +89,8 @@ public class SettingsPanel extends JPanel {
 			Utility.getMessage(Resources.DROID64_SETTINGS_HIDECONSOLE));
 	private final JCheckBox bookmarkBarCheckBox = new JCheckBox(
 			Utility.getMessage(Resources.DROID64_SETTINGS_BOOKMARKBAR));
+	private final JCheckBox verboseConsoleCheckBox = new JCheckBox(
+			Utility.getMessage(Resources.DROID64_SETTINGS_VERBOSECONSOLE));
 	private final JComboBox<UIManager.LookAndFeelInfo> lookAndFeelBox = new JComboBox<>(UIManager.getInstalledLookAndFeels());
 	private final JSpinner rowHeightSpinner = new JSpinner(
 			new SpinnerNumberModel((int) Setting.ROW_HEIGHT.getInteger(), 8, 256, 1));
@@ -99,6 +101,8 @@ public class SettingsPanel extends JPanel {
 	// Files
 	private final JTextField extRemoval = new JTextField(
 			Setting.EXT_REMOVAL.getList().stream().collect(Collectors.joining(Setting.DELIM)));
+	private final JCheckBox mappedImagesCheckBox = new JCheckBox(
+			Utility.getMessage(Resources.DROID64_SETTINGS_MAPPED_IMAGES));
 	private final JTextField fileExtD64 = new JTextField(
 			Setting.FILE_EXT_D64.getList().stream().collect(Collectors.joining(Setting.DELIM)));
 	private final JTextField fileExtD67 = new JTextField(
@@ -157,14 +161,20 @@ public class SettingsPanel extends JPanel {
 
 	// Database settings
 	private final JCheckBox useJdbcCheckBox = new JCheckBox(Utility.getMessage(Resources.DROID64_SETTINGS_JDBC_USEDB));
+	private final JCheckBox validateOnScanCheckBox = new JCheckBox(Utility.getMessage(Resources.DROID64_SETTINGS_VALIDATE_ON_SCAN));
+	private final JCheckBox incrementalScanCheckBox = new JCheckBox(Utility.getMessage(Resources.DROID64_SETTINGS_INCREMENTAL_SCAN));
 	private final JTextField jdbcDriver = new JTextField(Setting.JDBC_DRIVER.getString());
 	private final JTextField jdbcUrl = new JTextField(Setting.JDBC_URL.getString());
 	private final JTextField jdbcUser = new JTextField(Setting.JDBC_USER.getString());
 	private final JPasswordField jdbcPassword = new JPasswordField(Setting.JDBC_PASS.getString());
 	private final JFormattedTextField maxRows = SearchPanel.getNumericField(Setting.MAX_ROWS.getInteger(), 8);
 	private final JComboBox<String> limitTypeBox = new JComboBox<>(DaoFactory.getLimitNames());
+	private final JFormattedTextField batchSize = SearchPanel.getNumericField(Setting.JDBC_BATCH_SIZE.getInteger(), 8);
+	private final JFormattedTextField gzipLevel = SearchPanel.getNumericField(Setting.GZIP_LEVEL.getInteger(), 2);
 	private final List<String> jdbcDriverClasses = GuiHelper.getClassNames(java.sql.Driver.class);
 	private final JTextField excludeImageFiles = new JTextField(Setting.EXCLUDED_IMAGE_FILES.getString());
+	private final JTextField watchDirectories = new JTextField(
+			Setting.getWatchDirectories().stream().map(File::getPath).collect(Collectors.joining(Setting.DELIM)));
 
 	/** Colors */
 	private static final String[] COLORS = { "gray", "red", "green", "blue", "light-blue", "dark-grey", "cyan" };
@@ -282,7 +292,14 @@ public class SettingsPanel extends JPanel {
 		addFields(10, Resources.DROID64_SETTINGS_EXT_T64, fileExtT64, fileExtT64gz, guiPanel, gbc);
 		addFields(11, Resources.DROID64_SETTINGS_EXT_LNX, fileExtLNX, fileExtLNXgz, guiPanel, gbc);
 
-		GuiHelper.addToGridBag(0, 12, 1.0, 0.8, 3, gbc, guiPanel, new JPanel());
+		mappedImagesCheckBox.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_MAPPED_IMAGES_TOOLTIP));
+		mappedImagesCheckBox.setSelected(Setting.MAPPED_IMAGES.getBoolean());
+		GuiHelper.addToGridBag(1, 12, 1.0, 0.0, 2, gbc, guiPanel, mappedImagesCheckBox);
+
+		gzipLevel.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_GZIP_LEVEL_TOOLTIP));
+		addField(13, Resources.DROID64_SETTINGS_GZIP_LEVEL, gzipLevel, guiPanel, gbc);
+
+		GuiHelper.addToGridBag(0, 14, 1.0, 0.8, 3, gbc, guiPanel, new JPanel());
 		return guiPanel;
 	}
 
@@ -320,6 +337,9 @@ public class SettingsPanel extends JPanel {
 
 		bookmarkBarCheckBox.setSelected(Setting.BOOKMARK_BAR.getBoolean());
 
+		verboseConsoleCheckBox.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_VERBOSECONSOLE_TOOLTIP));
+		verboseConsoleCheckBox.setSelected(Setting.VERBOSE_CONSOLE.getBoolean());
+
 		lookAndFeelBox.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_LOOKFEEL_TOOLTIP));
 		lookAndFeelBox.setEditable(false);
 		lookAndFeelBox.setSelectedIndex(0);
@@ -453,6 +473,7 @@ public class SettingsPanel extends JPanel {
 		checkboxPanel.add(exitConfirmCheckBox);
 		checkboxPanel.add(hideConsoleCheckBox);
 		checkboxPanel.add(bookmarkBarCheckBox);
+		checkboxPanel.add(verboseConsoleCheckBox);
 
 		var localRowHeightPanel = new JPanel(new BorderLayout());
 		localRowHeightPanel.add(rowHeightSpinner, BorderLayout.WEST);
@@ -488,6 +509,7 @@ public class SettingsPanel extends JPanel {
 		Setting.ASK_QUIT.set(exitConfirmCheckBox.isSelected());
 		Setting.BOOKMARK_BAR.set(bookmarkBarCheckBox.isSelected());
 		Setting.HIDECONSOLE.set(hideConsoleCheckBox.isSelected());
+		Setting.VERBOSE_CONSOLE.set(verboseConsoleCheckBox.isSelected());
 		Setting.COLOUR.set(colourBox.getSelectedIndex());
 		Setting.ROW_HEIGHT.set(Integer.parseInt(rowHeightSpinner.getValue().toString()));
 		Setting.LOOK_AND_FEEL.set(Optional.ofNullable(lookAndFeelBox.getSelectedItem())
@@ -502,6 +524,9 @@ public class SettingsPanel extends JPanel {
 		Setting.JDBC_PASS.set(String.valueOf(jdbcPassword.getPassword()));
 		Setting.JDBC_LIMIT_TYPE.set(limitTypeBox.getSelectedIndex());
 		Setting.EXCLUDED_IMAGE_FILES.set(excludeImageFiles.getText());
+		Setting.WATCH_DIRECTORIES.set(watchDirectories.getText());
+		Setting.VALIDATE_ON_SCAN.set(validateOnScanCheckBox.isSelected());
+		Setting.INCREMENTAL_SCAN.set(incrementalScanCheckBox.isSelected());
 		Setting.WINDOW.set(winSizePosField.getText());
 		Setting.SYS_FONT.set(sysFont);
 		Setting.CBM_FONT.set(cbmFont);
@@ -515,6 +540,7 @@ public class SettingsPanel extends JPanel {
 		Setting.DIR_LOCAL_FG.set(colorLocalFgButton.getForeground());
 
 		Setting.EXT_REMOVAL.set(extRemoval.getText());
+		Setting.MAPPED_IMAGES.set(mappedImagesCheckBox.isSelected());
 		Setting.FILE_EXT_D64.set(fileExtD64.getText());
 		Setting.FILE_EXT_D67.set(fileExtD67.getText());
 		Setting.FILE_EXT_D71.set(fileExtD71.getText());
@@ -540,6 +566,16 @@ public class SettingsPanel extends JPanel {
 		} catch (NumberFormatException e) {
 			maxRows.setValue(25L);
 		}
+		try {
+			Setting.JDBC_BATCH_SIZE.set(Math.max(1, Integer.parseInt(batchSize.getText())));
+		} catch (NumberFormatException e) {
+			batchSize.setValue(100L);
+		}
+		try {
+			Setting.GZIP_LEVEL.set(Math.max(1, Math.min(9, Integer.parseInt(gzipLevel.getText()))));
+		} catch (NumberFormatException e) {
+			gzipLevel.setValue(6L);
+		}
 
 		for (var i = 0; i < pluginCommandField.length; i++) {
 			mainPanel.setPluginButtonLabel(i, pluginLabelTextField[i].getText());
@@ -670,6 +706,10 @@ public class SettingsPanel extends JPanel {
 			jdbcUser.setEnabled(enabled);
 			jdbcPassword.setEnabled(enabled);
 			maxRows.setEnabled(enabled);
+			batchSize.setEnabled(enabled);
+			validateOnScanCheckBox.setEnabled(enabled);
+			incrementalScanCheckBox.setEnabled(enabled);
+			watchDirectories.setEnabled(enabled);
 			testConnectionButton.setEnabled(enabled);
 		});
 
@@ -686,6 +726,10 @@ public class SettingsPanel extends JPanel {
 		jdbcUser.setEnabled(jdbcEnabled);
 		jdbcPassword.setEnabled(jdbcEnabled);
 		maxRows.setEnabled(jdbcEnabled);
+		batchSize.setEnabled(jdbcEnabled);
+		validateOnScanCheckBox.setEnabled(jdbcEnabled);
+		incrementalScanCheckBox.setEnabled(jdbcEnabled);
+		watchDirectories.setEnabled(jdbcEnabled);
 		testConnectionButton.setEnabled(jdbcEnabled);
 
 		limitTypeBox.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_JDBC_LIMIT_TOOLTIP));
@@ -694,8 +738,14 @@ public class SettingsPanel extends JPanel {
 		limitTypeBox.setSelectedIndex(Setting.JDBC_LIMIT_TYPE.getInteger() < DaoFactory.getLimitNames().length
 				? Setting.JDBC_LIMIT_TYPE.getInteger()
 				: 0);
+		batchSize.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_JDBC_BATCH_TOOLTIP));
 
 		excludeImageFiles.setToolTipText(Utility.getResource(Resources.DROID64_SETTINGS_EXCLUDE_IMAGE_FILES_TOOLTIP));
+		watchDirectories.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_WATCH_DIRECTORIES_TOOLTIP));
+		validateOnScanCheckBox.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_VALIDATE_ON_SCAN_TOOLTIP));
+		validateOnScanCheckBox.setSelected(Setting.VALIDATE_ON_SCAN.getBoolean());
+		incrementalScanCheckBox.setToolTipText(Utility.getMessage(Resources.DROID64_SETTINGS_INCREMENTAL_SCAN_TOOLTIP));
+		incrementalScanCheckBox.setSelected(Setting.INCREMENTAL_SCAN.getBoolean());
 
 		var jdbcDriverBrowse = new JButton(BROWSELABEL);
 		jdbcDriverBrowse.setEnabled(!jdbcDriverClasses.isEmpty());
@@ -739,17 +789,24 @@ public class SettingsPanel extends JPanel {
 		addField(4, Resources.DROID64_SETTINGS_JDBC_PASS, jdbcPassword, dbPanel, gbc);
 		addField(5, Resources.DROID64_SETTINGS_JDBC_ROWS, maxRows, dbPanel, gbc);
 		addField(6, Resources.DROID64_SETTINGS_JDBC_LIMIT, limitTypeBox, dbPanel, gbc);
+		addField(7, Resources.DROID64_SETTINGS_JDBC_BATCH, batchSize, dbPanel, gbc);
 
-		addField(7, Resources.DROID64_SETTINGS_EXCLUDE_IMAGE_FILES, excludeImageFiles, dbPanel, gbc);
-
-		GuiHelper.addToGridBag(0, 8, 0.0, 0.0, 1, gbc, dbPanel, new JPanel());
-		GuiHelper.addToGridBag(1, 8, 0.5, 0.0, 2, gbc, dbPanel, buttonPanel);
+		addField(8, Resources.DROID64_SETTINGS_EXCLUDE_IMAGE_FILES, excludeImageFiles, dbPanel, gbc);
 
-		addField(9, Resources.DROID64_SETTINGS_JDBC_STATUS, status, dbPanel, gbc);
+		addField(9, Resources.DROID64_SETTINGS_WATCH_DIRECTORIES, watchDirectories, dbPanel, gbc);
 
 		GuiHelper.addToGridBag(0, 10, 0.0, 0.0, 1, gbc, dbPanel, new JPanel());
+		GuiHelper.addToGridBag(1, 10, 0.5, 0.0, 1, gbc, dbPanel, validateOnScanCheckBox);
+		GuiHelper.addToGridBag(2, 10, 0.0, 0.0, 1, gbc, dbPanel, incrementalScanCheckBox);
+
+		GuiHelper.addToGridBag(0, 11, 0.0, 0.0, 1, gbc, dbPanel, new JPanel());
+		GuiHelper.addToGridBag(1, 11, 0.5, 0.0, 2, gbc, dbPanel, buttonPanel);
+
+		addField(12, Resources.DROID64_SETTINGS_JDBC_STATUS, status, dbPanel, gbc);
+
+		GuiHelper.addToGridBag(0, 13, 0.0, 0.0, 1, gbc, dbPanel, new JPanel());
 		gbc.fill = GridBagConstraints.BOTH;
-		GuiHelper.addToGridBag(1, 10, 0.5, 0.9, 1, gbc, dbPanel, new JScrollPane(messageTextArea));
+		GuiHelper.addToGridBag(1, 13, 0.5, 0.9, 1, gbc, dbPanel, new JScrollPane(messageTextArea));
 
 		return dbPanel;
 	}
@@ -7,7 +7,7 @@
   * Note: this SQL script contains several different scripts to fit different
   *       databases. Comment out and uncomment the section for your database.
   *
-  * Script updated for DroiD64 version 0.13b.
+  * Script updated for DroiD64 version 0.95.
   * See http://droid64.sourceforge.net/ for latest updates.
   */
 
@@ -51,6 +51,24 @@ ALTER TABLE disk ADD COLUMN IF NOT EXISTS errors int DEFAULT NULL;
 ALTER TABLE disk ADD COLUMN IF NOT EXISTS warnings int DEFAULT NULL;
 /** Apply changes for DroiD64 version 0.13 */
 ALTER TABLE disk ADD COLUMN IF NOT EXISTS hostname VARCHAR(255) DEFAULT NULL;
+/** Apply changes for DroiD64 version 0.95: upper case columns for case insensitive search */
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS filepath_uc VARCHAR(500) DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS filename_uc VARCHAR(100) DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS label_uc VARCHAR(32) DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS hostname_uc VARCHAR(256) DEFAULT NULL;
+ALTER TABLE diskfile ADD COLUMN IF NOT EXISTS name_uc VARCHAR(32) DEFAULT NULL;
+UPDATE disk SET filepath_uc = UPPER(filepath), filename_uc = UPPER(filename), label_uc = UPPER(label), hostname_uc = UPPER(hostname) WHERE filepath_uc IS NULL;
+UPDATE diskfile SET name_uc = UPPER(name) WHERE name_uc IS NULL;
+CREATE INDEX IF NOT EXISTS disk_filepath_uc_idx ON disk (filepath_uc);
+CREATE INDEX IF NOT EXISTS disk_filename_uc_idx ON disk (filename_uc);
+CREATE INDEX IF NOT EXISTS disk_label_uc_idx ON disk (label_uc);
+CREATE INDEX IF NOT EXISTS disk_hostname_uc_idx ON disk (hostname_uc);
+CREATE INDEX IF NOT EXISTS diskfile_name_uc_idx ON diskfile (name_uc);
+CREATE INDEX IF NOT EXISTS diskfile_diskid_idx ON diskfile (diskid);
+/** Size, modification time and MD5 of image files, to skip unchanged files when scanning */
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS filesize BIGINT DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS modified BIGINT DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS hash VARCHAR(32) DEFAULT NULL;
 
 /** End of setup for MySQL and H2 database **/
 
@@ -89,6 +107,24 @@ CREATE TABLE IF NOT EXISTS diskfile (
   flags INTEGER NOT NULL DEFAULT 0,
   namebytes BYTEA );
   
+/* Apply changes for DroiD64 version 0.95 */
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS filepath_uc VARCHAR(500) DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS filename_uc VARCHAR(100) DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS label_uc VARCHAR(32) DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS hostname_uc VARCHAR(256) DEFAULT NULL;
+ALTER TABLE diskfile ADD COLUMN IF NOT EXISTS name_uc VARCHAR(32) DEFAULT NULL;
+UPDATE disk SET filepath_uc = UPPER(filepath), filename_uc = UPPER(filename), label_uc = UPPER(label), hostname_uc = UPPER(hostname) WHERE filepath_uc IS NULL;
+UPDATE diskfile SET name_uc = UPPER(name) WHERE name_uc IS NULL;
+CREATE INDEX IF NOT EXISTS disk_filepath_uc_idx ON disk (filepath_uc varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS disk_filename_uc_idx ON disk (filename_uc varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS disk_label_uc_idx ON disk (label_uc varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS disk_hostname_uc_idx ON disk (hostname_uc varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS diskfile_name_uc_idx ON diskfile (name_uc varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS diskfile_diskid_idx ON diskfile (diskid);
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS filesize BIGINT DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS modified BIGINT DEFAULT NULL;
+ALTER TABLE disk ADD COLUMN IF NOT EXISTS hash VARCHAR(32) DEFAULT NULL;
+
 GRANT ALL PRIVILEGES ON disk TO droid64;
 GRANT ALL PRIVILEGES ON diskfile TO droid64;
 GRANT USAGE, SELECT ON SEQUENCE disk_diskid_seq TO droid64;
@@ -140,6 +176,23 @@ CREATE TABLE diskfile (
   FOREIGN KEY (diskid) REFERENCES disk(diskid) ON DELETE CASCADE
 );
 
+/* Apply changes for DroiD64 version 0.95 */
+ALTER TABLE disk ADD filepath_uc VARCHAR(500) DEFAULT NULL;
+ALTER TABLE disk ADD filename_uc VARCHAR(100) DEFAULT NULL;
+ALTER TABLE disk ADD label_uc VARCHAR(32) DEFAULT NULL;
+ALTER TABLE disk ADD hostname_uc VARCHAR(256) DEFAULT NULL;
+ALTER TABLE diskfile ADD name_uc VARCHAR(32) DEFAULT NULL;
+UPDATE disk SET filepath_uc = UPPER(filepath), filename_uc = UPPER(filename), label_uc = UPPER(label), hostname_uc = UPPER(hostname) WHERE filepath_uc IS NULL;
+UPDATE diskfile SET name_uc = UPPER(name) WHERE name_uc IS NULL;
+CREATE INDEX disk_filepath_uc_idx ON disk (filepath_uc);
+CREATE INDEX disk_filename_uc_idx ON disk (filename_uc);
+CREATE INDEX disk_label_uc_idx ON disk (label_uc);
+CREATE INDEX disk_hostname_uc_idx ON disk (hostname_uc);
+CREATE INDEX diskfile_name_uc_idx ON diskfile (name_uc);
+ALTER TABLE disk ADD filesize BIGINT DEFAULT NULL;
+ALTER TABLE disk ADD modified BIGINT DEFAULT NULL;
+ALTER TABLE disk ADD hash VARCHAR(32) DEFAULT NULL;
+
 CREATE SEQUENCE disk_id_sequence;
 CREATE SEQUENCE diskfile_id_sequence;
 
@@ -0,0 +1,53 @@
+package droid64.d64;
+
+import java.io.File;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.gui.ConsoleStream;
+
+public class BamBitmapTest {
+
+	@Test
+	public void testNextFree() {
+		var bitmap = new BamBitmap(2, 70);
+		bitmap.setSectorCount(1, 70);
+		bitmap.setSectorCount(2, 20);
+		Assert.assertEquals(-1, bitmap.nextFree(1, 0));
+		bitmap.setFree(1, 3, true);
+		bitmap.setFree(1, 66, true);
+		bitmap.setFree(1, 66, true);
+		Assert.assertEquals(2, bitmap.getFreeCount(1));
+		Assert.assertEquals(3, bitmap.nextFree(1, 0));
+		Assert.assertEquals(66, bitmap.nextFree(1, 4));
+		Assert.assertEquals("wrap around", 3, bitmap.nextFree(1, 67));
+		Assert.assertEquals(-1, bitmap.nextFree(2, 0));
+		bitmap.setFree(1, 3, false);
+		Assert.assertEquals(1, bitmap.getFreeCount(1));
+		Assert.assertEquals(66, bitmap.nextFree(1, 0));
+		Assert.assertFalse(bitmap.contains(2, 20));
+		Assert.assertTrue(bitmap.contains(2, 19));
+	}
+
+	@Test
+	public void testWriteThrough() throws Exception {
+		File imgFile = File.createTempFile("UnitTest_", ".d64");
+		imgFile.deleteOnExit();
+		D64 d64 = new D64(DiskImageType.D64, new ConsoleStream(new JTextArea()));
+		Assert.assertTrue("Create D64 image ", d64.saveNewImage(imgFile, "D64 UNIT TEST", "00D64"));
+		Assert.assertTrue(d64.isSectorFree(1, 0));
+		d64.markSectorUsed(1, 0);
+		Assert.assertFalse(d64.isSectorFree(1, 0));
+		Assert.assertFalse("written to BAM", d64.readSectorFree(1, 0));
+		Assert.assertNotEquals(0, d64.findFreeSector(1, 0));
+
+		// BAM changed without markSectorFree
+		int bamPos = d64.getSectorOffset(18, 0) + 4 + 1;
+		d64.setCbmDiskValue(bamPos, 0xff);
+		Assert.assertTrue(d64.isSectorFree(1, 0));
+		Assert.assertEquals(0, d64.findFreeSector(1, 0));
+	}
+}
@@ -0,0 +1,84 @@
+package droid64.d64;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.d64.ValidationError.Error;
+import droid64.gui.ConsoleStream;
+
+public class BlockValidatorTest {
+
+	private D64 createImage() throws Exception {
+		File imgFile = File.createTempFile("UnitTest_", ".d64");
+		imgFile.deleteOnExit();
+		D64 d64 = new D64(DiskImageType.D64, new ConsoleStream(new JTextArea()));
+		Assert.assertTrue("Create D64 image ", d64.saveNewImage(imgFile, "D64 UNIT TEST", "00D64"));
+		CbmFile cbmFile = new CbmFile();
+		cbmFile.setName("file1");
+		cbmFile.setNameAsBytes("file1".getBytes());
+		cbmFile.setFileType(FileType.PRG);
+		Assert.assertTrue("saveFile ", d64.saveFile(cbmFile, false, new byte[1000]));
+		d64.readDirectory();
+		d64.readBAM();
+		return d64;
+	}
+
+	@Test
+	public void testCyclicFile() throws Exception {
+		D64 d64 = createImage();
+		CbmFile cf = d64.getCbmFile(0);
+		// Let the second block of the file point back to the first block
+		int first = d64.getSectorOffset(cf.getTrack(), cf.getSector());
+		int second = d64.getSectorOffset(d64.getCbmDiskValue(first), d64.getCbmDiskValue(first + 1));
+		d64.setCbmDiskValue(second, cf.getTrack());
+		d64.setCbmDiskValue(second + 1, cf.getSector());
+
+		d64.validate(new ArrayList<>());
+		var errorList = d64.getValidationErrorList().stream().map(ValidationError::getError).collect(Collectors.toList());
+		Assert.assertEquals(Arrays.asList(Error.ERROR_FILE_SECTOR_ALREADY_USED, Error.ERROR_FILE_SECTOR_ALREADY_USED,
+				Error.ERROR_FILE_SECTOR_ALREADY_SEEN), errorList.subList(0, 3));
+		Assert.assertEquals("file1", d64.getValidationErrorList().get(2).getFileName());
+		Assert.assertEquals(cf.getTrack(), d64.getValidationErrorList().get(2).getTrack());
+		Assert.assertEquals(cf.getSector(), d64.getValidationErrorList().get(2).getSector());
+	}
+
+	@Test
+	public void testBamRepair() throws Exception {
+		D64 d64 = createImage();
+		Assert.assertEquals("Validation errors ", Integer.valueOf(0), d64.validate(new ArrayList<>()));
+		CbmFile cf = d64.getCbmFile(0);
+		d64.markSectorFree(cf.getTrack(), cf.getSector());
+		d64.markSectorUsed(30, 1);
+
+		Assert.assertEquals("Validation errors ", Integer.valueOf(2), d64.validate(new ArrayList<>()));
+		Assert.assertEquals("Errors ", Integer.valueOf(1), d64.getErrors());
+		Assert.assertEquals("Warnings ", Integer.valueOf(1), d64.getWarnings());
+		Assert.assertEquals(Error.ERROR_USED_SECTOR_IS_FREE, d64.getValidationErrorList().get(0).getError());
+		Assert.assertEquals(Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED, d64.getValidationErrorList().get(1).getError());
+
+		d64.validate(Arrays.asList(Error.ERROR_USED_SECTOR_IS_FREE, Error.ERROR_UNUSED_SECTOR_IS_ALLOCATED));
+		Assert.assertEquals("Validation errors ", Integer.valueOf(0), d64.validate(new ArrayList<>()));
+	}
+
+	@Test
+	public void testDeferredValidation() throws Exception {
+		D64 d64 = createImage();
+		Assert.assertTrue("Pending after readDirectory", d64.isValidationPending());
+		Assert.assertNull("Errors not known", d64.getDisk(false).getErrors());
+		Assert.assertEquals("Errors ", Integer.valueOf(0), d64.getErrors());
+		Assert.assertFalse("Not pending after getErrors", d64.isValidationPending());
+		Assert.assertEquals("Warnings ", Integer.valueOf(0), d64.getDisk(false).getWarnings());
+
+		d64.markSectorUsed(30, 1);
+		Assert.assertTrue("Pending after write", d64.isValidationPending());
+		Assert.assertEquals("Warnings ", Integer.valueOf(1), d64.getWarnings());
+		Assert.assertEquals("Errors ", Integer.valueOf(0), d64.getErrors());
+	}
+}
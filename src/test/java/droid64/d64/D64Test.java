@@ -1,6 +1,7 @@
 package droid64.d64;
 
 import java.io.File;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Random;
 
@@ -62,6 +63,64 @@ public class D64Test extends DiskImageBaseTest {
 		Assert.assertNotNull(d64.getBlock(18, 1));
 	}
 
+	@Test
+	public void testMappedImage() throws Exception {
+		var consoleStream = new ConsoleStream(new JTextArea());
+		File imgFile = getTempFile(".d64", true);
+		D64 d64 = new D64(DiskImageType.D64, consoleStream);
+		Assert.assertTrue("Create D64 image ", d64.saveNewImage(imgFile, "D64 UNIT TEST", "00D64"));
+		byte[] data = generateRandom(1000);
+		addFileToImage(d64, "file1", data);
+		d64.saveAs(imgFile);
+
+		D64 img = new D64(DiskImageType.D64, consoleStream);
+		img.setImageData(MappedBlockStore.open(imgFile));
+		Assert.assertTrue("Mapped ", img.isMapped());
+		Assert.assertNull("Heap data ", img.cbmDisk);
+		img.readDirectory();
+		Assert.assertEquals("Files used ", 1, img.getFilesUsedCount());
+		compareData(data, img.getFileData(0));
+		addFileToImage(img, "file2", data);
+		img.saveAs(imgFile);
+
+		DiskImage copy = DiskImage.getDiskImage(imgFile, consoleStream);
+		Assert.assertFalse("Mapped ", copy.isMapped());
+		copy.readDirectory();
+		Assert.assertEquals("Files used ", 2, copy.getFilesUsedCount());
+		Assert.assertEquals("Image size ", DiskImageType.D64.expectedSize, imgFile.length());
+		compareData(data, copy.getFileData(1));
+	}
+
+	@Test
+	public void testIncrementalSave() throws Exception {
+		var consoleStream = new ConsoleStream(new JTextArea());
+		File imgFile = getTempFile(".d64", true);
+		D64 d64 = new D64(DiskImageType.D64, consoleStream);
+		Assert.assertTrue("Create D64 image ", d64.saveNewImage(imgFile, "D64 UNIT TEST", "00D64"));
+
+		DiskImage img = DiskImage.getDiskImage(imgFile, consoleStream);
+		Assert.assertEquals("Dirty blocks ", 0, img.getDirtyBlockCount());
+		byte[] data = generateRandom(1000);
+		addFileToImage(img, "file1", data);
+		// BAM and directory sector, and four data blocks
+		Assert.assertEquals("Dirty blocks ", 6, img.getDirtyBlockCount());
+
+		// Change an unused block in the file. Only dirty blocks are written, so this must survive the save.
+		int marker = img.getSectorOffset(35, 16);
+		try (var raf = new RandomAccessFile(imgFile, "rw")) {
+			raf.seek(marker);
+			raf.write(0x42);
+		}
+		Assert.assertTrue("Save ", img.save());
+		Assert.assertEquals("Dirty blocks ", 0, img.getDirtyBlockCount());
+
+		DiskImage copy = DiskImage.getDiskImage(imgFile, consoleStream);
+		copy.readDirectory();
+		Assert.assertEquals("Files used ", 1, copy.getFilesUsedCount());
+		compareData(data, copy.getFileData(0));
+		Assert.assertEquals("Untouched block ", 0x42, copy.getCbmDiskValue(marker));
+	}
+
 	@Test
 	public void testSwitchFileLocations() throws Exception {
 		File imgFile = getTempFile(".d64");
@@ -2,6 +2,7 @@ package droid64.d64;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 import javax.swing.JTextArea;
@@ -259,6 +260,43 @@ public class D81Test extends DiskImageBaseTest {
 		Assert.assertEquals("Expect no files after", 0, d81.filesUsedCount);
 	}
 
+	@Test
+	public void testSaveFiles() throws Exception {
+		var consoleStream = new ConsoleStream(new JTextArea());
+		D81 source = new D81(DiskImageType.D81, consoleStream);
+		Assert.assertTrue("Create D81 image ", source.saveNewImage(getTempFile(".d81", true), "D81 BATCH", "00D81"));
+		for (int i = 0; i < D81.FILE_NUMBER_LIMIT / 2; i++) {
+			var cbmFile = new CbmFile();
+			cbmFile.setName("FILE" + i);
+			cbmFile.setNameAsBytes(cbmFile.getName().getBytes());
+			cbmFile.setFileType(FileType.PRG);
+			var data = new byte[i * 37];
+			Arrays.fill(data, (byte) i);
+			Assert.assertTrue("saveFile " + i, source.saveFile(cbmFile, false, data));
+		}
+		source.readDirectory();
+
+		File imgFile = getTempFile(".d81", true);
+		Assert.assertTrue("Create D81 image ", new D81(DiskImageType.D81, consoleStream).saveNewImage(imgFile, "D81 BATCH", "00D81"));
+		DiskImage target = DiskImage.getDiskImage(imgFile, consoleStream);
+		var files = new ArrayList<FileCopy>();
+		for (int i = 0; i < source.getFilesUsedCount(); i++) {
+			files.add(FileCopy.of(new CbmFile(source.getCbmFile(i)), source.getFileChannel(i)));
+		}
+		Assert.assertEquals("Files written ", files.size(), target.saveFiles(files));
+		Assert.assertEquals("Dirty blocks after save ", 0, target.getDirtyBlockCount());
+		Assert.assertArrayEquals("Image data ", source.blockStore.toByteArray(), Utility.readFile(imgFile));
+
+		var tooLarge = new ArrayList<FileCopy>();
+		tooLarge.add(FileCopy.of(new CbmFile(), new byte[(target.getBlocksFree() + 1) * 254]));
+		try {
+			target.saveFiles(tooLarge);
+			Assert.fail("Expected not enough free blocks");
+		} catch (CbmException e) {
+			Assert.assertEquals("Files after failed batch ", files.size(), target.getFilesUsedCount());
+		}
+	}
+
 	private CbmFile mkPart(final String pName, final int fileNum, final int track, final int size, final int free, D81 d81, File imgFile) throws CbmException {
 		int partSize = Math.max(3*40, size);
 
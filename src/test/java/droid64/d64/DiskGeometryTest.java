@@ -0,0 +1,41 @@
+package droid64.d64;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiskGeometryTest {
+
+	@Test
+	public void testAllBlocks() {
+		DiskImageType.stream().filter(type -> type.expectedSize > 0).forEach(type -> {
+			var geometry = DiskGeometry.get(type);
+			int blocks = 0;
+			for (int track = 0; geometry.getSectorOffset(track, 0) != DiskGeometry.OUTSIDE || track == 0; track++) {
+				for (int sector = 0; sector < 256; sector++) {
+					int offset = geometry.getSectorOffset(track, sector);
+					var ts = geometry.getSector(offset);
+					if (ts != null && ts.getTrack() == track && ts.getSector() == sector) {
+						blocks++;
+					}
+				}
+			}
+			Assert.assertEquals(type.id, geometry.getSize() / DiskImage.BLOCK_SIZE, blocks);
+		});
+	}
+
+	@Test
+	public void testOffsets() {
+		Assert.assertEquals(0x16500, DiskGeometry.get(DiskImageType.D64).getSectorOffset(18, 0));
+		Assert.assertEquals(39 * 40 * 256, DiskGeometry.get(DiskImageType.D81_CPM).getSectorOffset(40, 0));
+		Assert.assertEquals((52 + 26) * 256, DiskGeometry.get(DiskImageType.D88).getSectorOffset(1, 33));
+		Assert.assertEquals(6 * 32 * 256, DiskGeometry.get(DiskImageType.D90_9090).getSectorOffset(1, 0));
+		Assert.assertEquals(new TrackSector(1, 33), DiskGeometry.get(DiskImageType.D88).getSector((52 + 26) * 256 + 1));
+		Assert.assertEquals(new TrackSector(35, 16), DiskGeometry.get(DiskImageType.D67).getSector(176640 - 1));
+		Assert.assertNull(DiskGeometry.get(DiskImageType.D80).getSector(533248));
+		Assert.assertTrue(DiskGeometry.get(DiskImageType.D64).getSectorOffset(0, 0) + 255 < 0);
+		Assert.assertTrue(DiskGeometry.get(DiskImageType.D71).getSectorOffset(99, 0) + 255 < 0);
+		Assert.assertEquals(0, DiskGeometry.get(DiskImageType.D82).getSectors(155));
+		Assert.assertEquals(23, DiskGeometry.get(DiskImageType.D82).getSectors(154));
+		Assert.assertNull(DiskGeometry.get(DiskImageType.T64).getSector(0));
+	}
+}
@@ -0,0 +1,81 @@
+package droid64.d64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.gui.ConsoleStream;
+
+public class FileDataChannelTest {
+
+	private D64 createImage(byte[] data) throws Exception {
+		File imgFile = File.createTempFile("UnitTest_", ".d64");
+		imgFile.deleteOnExit();
+		D64 d64 = new D64(DiskImageType.D64, new ConsoleStream(new JTextArea()));
+		Assert.assertTrue("Create D64 image ", d64.saveNewImage(imgFile, "D64 UNIT TEST", "00D64"));
+		CbmFile cbmFile = new CbmFile();
+		cbmFile.setName("file1");
+		cbmFile.setNameAsBytes("file1".getBytes());
+		cbmFile.setFileType(FileType.PRG);
+		Assert.assertTrue("saveFile ", d64.saveFile(cbmFile, false, data));
+		d64.readDirectory();
+		return d64;
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		var data = new byte[3000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 7);
+		}
+		D64 d64 = createImage(data);
+		Assert.assertArrayEquals(data, d64.getFileData(0));
+
+		var out = new ByteArrayOutputStream();
+		var buffer = ByteBuffer.allocate(100);
+		try (var channel = d64.getFileChannel(0)) {
+			while (channel.read(buffer) >= 0) {
+				out.write(buffer.array(), 0, buffer.position());
+				buffer.clear();
+			}
+		}
+		Assert.assertArrayEquals(data, out.toByteArray());
+		Assert.assertEquals(Utility.calcMd5Checksum(data), Utility.calcMd5Checksum(d64.getFileChannel(0)));
+
+		File outFile = File.createTempFile("UnitTest_", ".prg");
+		outFile.deleteOnExit();
+		Assert.assertTrue(Utility.writeFileSafe(outFile, d64.getFileChannel(0)));
+		Assert.assertArrayEquals(data, Utility.readFile(outFile));
+	}
+
+	@Test
+	public void testCyclicChain() throws Exception {
+		D64 d64 = createImage(new byte[1000]);
+		CbmFile cf = d64.getCbmFile(0);
+		int first = d64.getSectorOffset(cf.getTrack(), cf.getSector());
+		int second = d64.getSectorOffset(d64.getCbmDiskValue(first), d64.getCbmDiskValue(first + 1));
+		d64.setCbmDiskValue(second, cf.getTrack());
+		d64.setCbmDiskValue(second + 1, cf.getSector());
+		try {
+			d64.getFileData(0);
+			Assert.fail("Cyclic chain not detected");
+		} catch (CbmException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Cyclic error."));
+		}
+		try (var channel = d64.getFileChannel(0)) {
+			var buffer = ByteBuffer.allocate(1000);
+			while (channel.read(buffer) >= 0) {
+				buffer.clear();
+			}
+			Assert.fail("Cyclic chain not detected");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getCause() instanceof CbmException);
+		}
+	}
+}
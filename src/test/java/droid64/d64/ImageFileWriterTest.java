@@ -0,0 +1,82 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.gui.ConsoleStream;
+
+public class ImageFileWriterTest {
+
+	private D64 createImage() throws Exception {
+		File imgFile = File.createTempFile("UnitTest_", ".d64");
+		imgFile.deleteOnExit();
+		D64 d64 = new D64(DiskImageType.D64, new ConsoleStream(new JTextArea()));
+		Assert.assertTrue("Create D64 image ", d64.saveNewImage(imgFile, "D64 UNIT TEST", "00D64"));
+		d64.readBAM();
+		return d64;
+	}
+
+	private CbmFile createFile(String name) {
+		CbmFile cbmFile = new CbmFile();
+		cbmFile.setName(name);
+		cbmFile.setNameAsBytes(name.getBytes());
+		cbmFile.setFileType(FileType.PRG);
+		return cbmFile;
+	}
+
+	@Test
+	public void testSameAsSaveFile() throws Exception {
+		var data = new byte[254 * 3 + 10];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 3);
+		}
+		D64 saved = createImage();
+		Assert.assertTrue(saved.saveFile(createFile("file1"), false, data));
+		D64 streamed = createImage();
+		try (var out = streamed.openFileForWrite(createFile("file1"), false)) {
+			out.write(data, 0, 100);
+			out.write(data[100]);
+			out.write(ByteBuffer.wrap(data, 101, 500).asReadOnlyBuffer());
+			out.write(data, 601, data.length - 601);
+		}
+		Assert.assertArrayEquals(saved.blockStore.toByteArray(), streamed.blockStore.toByteArray());
+		streamed.readDirectory();
+		Assert.assertArrayEquals(data, streamed.getFileData(0));
+		Assert.assertEquals("Validation errors ", Integer.valueOf(0), streamed.validate(new ArrayList<>()));
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		D64 d64 = createImage();
+		int blocksFree = d64.getBlocksFree();
+		var out = d64.openFileForWrite(createFile("file1"), false);
+		out.write(new byte[2000]);
+		out.cancel();
+		out.close();
+		d64.readBAM();
+		d64.readDirectory();
+		Assert.assertEquals(blocksFree, d64.getBlocksFree());
+		Assert.assertEquals(0, d64.getFilesUsedCount());
+	}
+
+	@Test
+	public void testDiskFull() throws Exception {
+		D64 d64 = createImage();
+		int blocksFree = d64.getBlocksFree();
+		try (var out = d64.openFileForWrite(createFile("file1"), false)) {
+			out.write(new byte[(blocksFree + 1) * 254]);
+			Assert.fail("Disk full not detected");
+		} catch (IOException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("Disk is full"));
+		}
+		d64.readBAM();
+		Assert.assertEquals(blocksFree, d64.getBlocksFree());
+	}
+}
@@ -0,0 +1,146 @@
+package droid64.d64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.gui.ConsoleStream;
+
+public class ImageSourceTest {
+
+	private static final byte[] DATA1 = { 1, 2, 3 };
+	private static final byte[] DATA2 = { 4, 5, 6, 7 };
+	private static final byte[] DATA3 = { 8, 9 };
+
+	@Test
+	public void testReadAndWrite() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".zip");
+		file.deleteOnExit();
+		var inner = new ByteArrayOutputStream();
+		writeZip(inner, Map.of("dir/disk3.d64", DATA3));
+		try (var out = new FileOutputStream(file)) {
+			writeZip(out, Map.of("disk1.d64", DATA1, "disk2.d64.gz", gzip(DATA2), "inner.zip", inner.toByteArray()));
+		}
+		ImageSource.clearCache();
+
+		var outer = ImageSource.of(file);
+		Assert.assertFalse(outer.isArchived());
+		Assert.assertEquals(Set.of("disk1.d64", "disk2.d64.gz", "inner.zip"),
+				outer.getDirEntries(1).stream().map(DirEntry::getName).collect(Collectors.toSet()));
+		var disk1 = outer.resolve("disk1.d64");
+		Assert.assertTrue(disk1.isArchived());
+		Assert.assertEquals("disk1.d64", disk1.getName());
+		Assert.assertEquals(outer, disk1.getParent());
+		Assert.assertEquals(file.getPath() + "!/disk1.d64", disk1.toString());
+		Assert.assertArrayEquals(DATA1, disk1.read());
+		var disk2 = outer.resolve("disk2.d64.gz");
+		Assert.assertTrue(disk2.isCompressed());
+		Assert.assertArrayEquals(DATA2, disk2.read());
+		var innerZip = outer.resolve("inner.zip");
+		Assert.assertEquals("dir/disk3.d64", innerZip.getDirEntries(1).get(0).getName());
+		var disk3 = innerZip.resolve("dir/disk3.d64");
+		Assert.assertArrayEquals(DATA3, disk3.read());
+
+		disk3.write(DATA1);
+		disk2.write(DATA3);
+		Assert.assertArrayEquals(DATA1, disk3.read());
+		ImageSource.clearCache();
+		Assert.assertArrayEquals(DATA1, disk3.read());
+		Assert.assertArrayEquals(DATA3, disk2.read());
+		Assert.assertTrue(disk2.isCompressed());
+		Assert.assertArrayEquals(DATA1, disk1.read());
+
+		try {
+			outer.resolve("missing.d64").read();
+			Assert.fail("Missing entry");
+		} catch (CbmException e) {	//NOSONAR
+			// Expected
+		}
+	}
+
+	@Test
+	public void testDataNotShared() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".zip");
+		file.deleteOnExit();
+		try (var out = new FileOutputStream(file)) {
+			writeZip(out, Map.of("disk1.d64", DATA1, "disk2.d64.gz", gzip(DATA2)));
+		}
+		ImageSource.clearCache();
+		for (var name : new String[] { "disk1.d64", "disk2.d64.gz" }) {
+			var source = ImageSource.of(file).resolve(name);
+			var data = source.read();
+			var original = data.clone();
+			data[0] = 99;
+			Assert.assertArrayEquals(original, source.read());
+
+			var written = new byte[] { 10, 11, 12 };
+			source.write(written);
+			written[0] = 99;
+			Assert.assertArrayEquals(new byte[] { 10, 11, 12 }, source.read());
+		}
+	}
+
+	@Test
+	public void testDiskImage() throws Exception {
+		var d64File = File.createTempFile("UnitTest_", ".d64");
+		d64File.deleteOnExit();
+		var console = new ConsoleStream(new JTextArea());
+		Assert.assertTrue(new D64(DiskImageType.D64, console).saveNewImage(d64File, "ZIPPED", "00"));
+		var file = File.createTempFile("UnitTest_", ".zip");
+		file.deleteOnExit();
+		try (var out = new FileOutputStream(file)) {
+			writeZip(out, Map.of("image.d64", Utility.readFile(d64File)));
+		}
+
+		var source = ImageSource.of(file).resolve("image.d64");
+		var image = DiskImage.getDiskImage(source, console);
+		Assert.assertEquals(source, image.getSource());
+		image.readBAM();
+		image.readDirectory();
+		Assert.assertTrue(image.getBam().getDiskName().startsWith("ZIPPED"));
+		var cbmFile = new CbmFile();
+		cbmFile.setName("file1");
+		cbmFile.setNameAsBytes("file1".getBytes());
+		cbmFile.setFileType(FileType.PRG);
+		Assert.assertTrue(image.saveFile(cbmFile, false, new byte[] { 1, 8, 2, 3 }));
+		Assert.assertTrue(image.save());
+
+		ImageSource.clearCache();
+		var loaded = DiskImage.getDiskImage(source, console);
+		loaded.readBAM();
+		loaded.readDirectory();
+		Assert.assertEquals(1, loaded.getFilesUsedCount());
+		Assert.assertNull(DiskImage.getDiskImage(ImageSource.of(d64File), console).getSource());
+	}
+
+	private static void writeZip(OutputStream out, Map<String, byte[]> entries) throws IOException {
+		try (var zos = new ZipOutputStream(out)) {
+			for (var entry : entries.entrySet()) {
+				zos.putNextEntry(new ZipEntry(entry.getKey()));
+				zos.write(entry.getValue());
+				zos.closeEntry();
+			}
+		}
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		var bos = new ByteArrayOutputStream();
+		try (var out = new GZIPOutputStream(bos)) {
+			out.write(data);
+		}
+		return bos.toByteArray();
+	}
+}
@@ -0,0 +1,77 @@
+package droid64.d64;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.gui.ConsoleStream;
+import droid64.gui.Setting;
+
+public class ImageTypeDetectorTest {
+
+	@Test
+	public void testGetType() {
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.getType("disk.d64"));
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.getType("DISK.D64"));
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.getType("disk.d64.gz"));
+		Assert.assertEquals(DiskImageType.D81, ImageTypeDetector.getType("disk.d81"));
+		Assert.assertEquals(DiskImageType.D90_9060, ImageTypeDetector.getType("disk.d90"));
+		Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.getType("disk.txt"));
+		Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.getType("d64"));
+		Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.getType(null));
+	}
+
+	@Test
+	public void testSettingChanged() {
+		try {
+			Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.getType("disk.zz"));
+			Setting.FILE_EXT_D67.parse(".d67;.zz");
+			Assert.assertEquals(DiskImageType.D67, ImageTypeDetector.getType("disk.zz"));
+			Assert.assertEquals(DiskImageType.D67, Setting.getDiskImageType(new File("disk.ZZ")));
+		} finally {
+			Setting.FILE_EXT_D67.reset();
+		}
+		Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.getType("disk.zz"));
+	}
+
+	@Test
+	public void testDetect() throws Exception {
+		var dir = Files.createTempDirectory("UnitTest_").toFile();
+		dir.deleteOnExit();
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.detect(createImage(DiskImageType.D64, dir, "d64.d64")));
+		Assert.assertEquals(DiskImageType.D81, ImageTypeDetector.detect(createImage(DiskImageType.D81, dir, "d81.d64")));
+		Assert.assertEquals(DiskImageType.D71, ImageTypeDetector.detect(createImage(DiskImageType.D71, dir, "d71.d64")));
+		Assert.assertEquals(DiskImageType.D80, ImageTypeDetector.detect(createImage(DiskImageType.D80, dir, "d80.d82")));
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.detect(createImage(DiskImageType.D64, dir, "d64.bin")));
+		Assert.assertEquals(DiskImageType.D90_9090, ImageTypeDetector.detect(createImage(DiskImageType.D90_9090, dir, "d90.d90")));
+		Assert.assertEquals(DiskImageType.D81, ImageTypeDetector.detect(createImage(DiskImageType.D81, dir, "d81.d81.gz")));
+		Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.detect(dir));
+
+		// No header, so only the name is used
+		var noHeader = createFile(dir, "blank.d64", DiskImageType.D81.expectedSize);
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.detect(noHeader));
+		Assert.assertEquals(DiskImageType.UNDEFINED, ImageTypeDetector.detect(createFile(dir, "blank.bin", DiskImageType.D81.expectedSize)));
+		Assert.assertEquals(DiskImageType.D64, ImageTypeDetector.detect(createFile(dir, "short.d64", 10)));
+
+		var image = DiskImage.getDiskImage(new File(dir, "d81.d64"), new ConsoleStream(new JTextArea()));
+		Assert.assertEquals(DiskImageType.D81, image.getDiskImageType());
+	}
+
+	private File createImage(DiskImageType type, File dir, String name) throws Exception {
+		var file = new File(dir, name);
+		file.deleteOnExit();
+		Assert.assertTrue(type.getInstance(new ConsoleStream(new JTextArea())).saveNewImage(file, "DETECT", "00"));
+		return file;
+	}
+
+	private File createFile(File dir, String name, int size) throws Exception {
+		var file = new File(dir, name);
+		file.deleteOnExit();
+		Files.write(file.toPath(), new byte[size]);
+		return file;
+	}
+}
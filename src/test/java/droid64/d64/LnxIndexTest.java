@@ -0,0 +1,126 @@
+package droid64.d64;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.gui.ConsoleStream;
+
+public class LnxIndexTest {
+
+	private static final byte[] BASIC = { 0x01, 0x08, 0x00, 0x00, 0x00, 0x00, 0x0d };
+	private static final String DIRECTORY = " 1  UNIT TEST\r 2 \rFILE1\r 2 \rP\r 3 \rFILE2\r 1 \rS\r 11 \r";
+
+	@Test
+	public void testParse() throws Exception {
+		var data = createArchive();
+		var index = LnxIndex.parse(data);
+		assertIndex(index);
+		Assert.assertArrayEquals(fileData(1, 256), index.getData(0, data));
+		Assert.assertArrayEquals(fileData(2, 10), index.getData(1, data));
+		Assert.assertTrue(index.getWarnings().isEmpty());
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".lnx");
+		file.deleteOnExit();
+		Files.write(file.toPath(), createArchive());
+		var index = LnxIndex.read(file);
+		assertIndex(index);
+		Assert.assertArrayEquals(fileData(1, 256), index.getData(0, file));
+		Assert.assertArrayEquals(fileData(2, 10), index.getData(1, file));
+
+		var console = new ConsoleStream(new JTextArea());
+		var lnx = LNX.readIndex(file, console);
+		lnx.readBAM();
+		lnx.readDirectory();
+		Assert.assertEquals(DiskImageType.LNX, lnx.getDiskImageType());
+		Assert.assertEquals("FILE2", lnx.getCbmFile(1).getName());
+		Assert.assertArrayEquals(fileData(2, 10), lnx.getFileData(1));
+		Assert.assertEquals(2, lnx.getDisk(false).getDiskFiles().size());
+
+		var loaded = DiskImage.getDiskImage(file, console);
+		loaded.readBAM();
+		loaded.readDirectory();
+		Assert.assertArrayEquals(fileData(1, 256), loaded.getFileData(0));
+	}
+
+	@Test
+	public void testSerialize() throws Exception {
+		var index = LnxIndex.parse(createArchive());
+		var out = new ByteArrayOutputStream();
+		try (var oos = new ObjectOutputStream(out)) {
+			oos.writeObject(index);
+		}
+		try (var ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+			var copy = (LnxIndex) ois.readObject();
+			assertIndex(copy);
+			Assert.assertEquals(index.toString(), copy.toString());
+		}
+	}
+
+	@Test
+	public void testBroken() throws Exception {
+		var data = createArchive();
+		// Cut in the middle of the second file entry
+		var cut = Arrays.copyOf(data, BASIC.length + DIRECTORY.indexOf("FILE2") + 3);
+		var index = LnxIndex.parse(cut);
+		Assert.assertEquals(2, index.getFileCount());
+		Assert.assertEquals(1, index.getMembers().size());
+		Assert.assertFalse(index.getWarnings().isEmpty());
+		Assert.assertNull(index.getMember(1));
+		try {
+			LnxIndex.parse(new byte[100]);
+			Assert.fail("Expected CbmException");
+		} catch (CbmException e) {
+			Assert.assertNotNull(e.getMessage());
+		}
+	}
+
+	private void assertIndex(LnxIndex index) {
+		Assert.assertEquals("UNIT TEST", index.getDiskName());
+		Assert.assertEquals(1, index.getDirBlocks());
+		Assert.assertEquals(2, index.getFileCount());
+		Assert.assertEquals(2, index.getMembers().size());
+		var member = index.getMember(0);
+		Assert.assertEquals("FILE1", member.getName());
+		Assert.assertEquals(FileType.PRG, member.getFileType());
+		Assert.assertEquals(LnxIndex.BLOCK_SIZE, member.getOffset());
+		Assert.assertEquals(2, member.getSizeInBlocks());
+		Assert.assertEquals(256, member.getSizeInBytes());
+		member = index.getMember(1);
+		Assert.assertEquals("FILE2", member.getName());
+		Assert.assertEquals(FileType.SEQ, member.getFileType());
+		Assert.assertEquals(3 * LnxIndex.BLOCK_SIZE, member.getOffset());
+		Assert.assertEquals(10, member.getSizeInBytes());
+	}
+
+	private byte[] createArchive() throws Exception {
+		var out = new ByteArrayOutputStream();
+		out.write(BASIC);
+		out.write(DIRECTORY.getBytes(StandardCharsets.US_ASCII));
+		out.write(new byte[LnxIndex.BLOCK_SIZE - out.size()]);
+		out.write(Arrays.copyOf(fileData(1, 256), 2 * LnxIndex.BLOCK_SIZE));
+		out.write(Arrays.copyOf(fileData(2, 10), LnxIndex.BLOCK_SIZE));
+		return out.toByteArray();
+	}
+
+	private byte[] fileData(int seed, int size) {
+		var data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (seed * 31 + i);
+		}
+		return data;
+	}
+}
@@ -1,11 +1,14 @@
 package droid64.d64;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -110,6 +113,46 @@ public class UtilityTest {
 		Assert.assertEquals("00cafe00", Utility.getIntHexString(0x00cafe00));
 	}
 
+	@Test
+	public void testMd5File() throws Exception {
+		var f = File.createTempFile("UnitTest_", ".d64");
+		f.deleteOnExit();
+		Utility.writeFile(f, "abcdefGHIJKL012345-.,?+()".getBytes());
+		Assert.assertEquals("18c77f6046b49d927ddc3aa9c840a7f3", Utility.calcMd5Checksum(f));
+	}
+
+	@Test
+	public void testGzipRoundTrip() throws Exception {
+		var data = new byte[3 * 1024 * 1024 + 123];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i / 256) * 7 + (i % 13));
+		}
+		for (int level : new int[] { 1, 6, 9 }) {
+			var gzipped = Utility.gzip(data, level);
+			try (var in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+				Assert.assertArrayEquals("Level " + level, data, in.readAllBytes());
+			}
+			Assert.assertArrayEquals(data, Utility.gunzip(gzipped));
+		}
+		Assert.assertArrayEquals(new byte[0], Utility.gunzip(Utility.gzip(new byte[0], 6)));
+		Assert.assertArrayEquals(new byte[] { 1, 2, 3 }, Utility.gunzip(Utility.gzip(new byte[] { 1, 2, 3 }, 6)));
+
+		var file = getTempFile("tmp.gz");
+		Utility.writeGZippedFile(file, data);
+		Assert.assertArrayEquals(data, Utility.readGZippedFile(file, 1000));
+
+		// Two gzip members, where the trailer only has the size of the last
+		var twoMembers = new ByteArrayOutputStream();
+		twoMembers.write(Utility.gzip(Arrays.copyOf(data, 1000), 6));
+		twoMembers.write(Utility.gzip(new byte[] { 1, 2 }, 6));
+		Utility.writeFile(file, twoMembers.toByteArray());
+		var expected = Arrays.copyOf(Arrays.copyOf(data, 1000), 1002);
+		expected[1000] = 1;
+		expected[1001] = 2;
+		Assert.assertArrayEquals(expected, Utility.readGZippedFile(file, 0));
+		Assert.assertArrayEquals(expected, Utility.gunzip(twoMembers.toByteArray()));
+	}
+
 	@Test
 	public void testZip() throws Exception {
 
@@ -123,6 +166,9 @@ public class UtilityTest {
 
 		Assert.assertEquals(Utility.hexDump(b), 12, Utility.readGZippedFile(gzipTemp).length);
 
+		Utility.writeGZippedFileAtomic(gzipTemp, "Hello again world!".getBytes());
+		Assert.assertEquals(18, Utility.readGZippedFile(gzipTemp).length);
+
 		File zipTemp = getTempFile("tmp.zip");
 		byte[] testData = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
 		Utility.createNewZipFile(zipTemp, "TestEntryName", testData);
@@ -0,0 +1,48 @@
+package droid64.d64;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ZipArchiveTest {
+
+	@Test
+	public void testReadEntries() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".zip");
+		file.deleteOnExit();
+		try (var zos = new ZipOutputStream(new FileOutputStream(file))) {
+			zos.putNextEntry(new ZipEntry("dir/"));
+			zos.closeEntry();
+			for (int i = 0; i < 50; i++) {
+				zos.putNextEntry(new ZipEntry("dir/disk" + i + ".d64"));
+				zos.write(new byte[] { (byte) i, 1, 2, 3 });
+				zos.closeEntry();
+			}
+		}
+		try (var archive = ZipArchive.open(file)) {
+			Assert.assertEquals(file, archive.getFile());
+			Assert.assertEquals(50, archive.size());
+			Assert.assertTrue(archive.contains("dir/disk49.d64"));
+			Assert.assertFalse(archive.contains("dir/"));
+			var entries = archive.getDirEntries(2);
+			Assert.assertEquals("dir/disk0.d64", entries.get(0).getName());
+			Assert.assertEquals(2, entries.get(0).getNumber());
+			for (int i = 49; i >= 0; i--) {
+				Assert.assertArrayEquals(new byte[] { (byte) i, 1, 2, 3 }, archive.getData("dir/disk" + i + ".d64"));
+			}
+			Assert.assertNull(archive.getData("missing"));
+		}
+	}
+
+	@Test(expected = CbmException.class)
+	public void testNotZip() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".zip");
+		file.deleteOnExit();
+		Utility.writeFile(file, "not a zip file");
+		ZipArchive.open(file).close();
+	}
+}
@@ -1,5 +1,7 @@
 package droid64.db;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import org.junit.Assert;
@@ -36,4 +38,111 @@ public class DaoFactoryImplTest {
 		Assert.assertTrue(rs.getInt(1) >= 0);
 	}
 
+	@Test
+	public void testPool() throws DatabaseException, SQLException {
+		var con1 = DaoFactoryImpl.getConnection();
+		var con2 = DaoFactoryImpl.getConnection();
+		var physical1 = con1.unwrap(Connection.class);
+		Assert.assertNotSame(physical1, con2.unwrap(Connection.class));
+		con1.setAutoCommit(false);
+		var stmt1 = con1.prepareStatement("SELECT COUNT(1) FROM disk WHERE diskid > ?");
+		var cached = stmt1.unwrap(PreparedStatement.class);
+		stmt1.close();
+		Assert.assertTrue(stmt1.isClosed());
+		var stmt2 = con1.prepareStatement("SELECT COUNT(1) FROM disk WHERE diskid > ?");
+		Assert.assertSame(cached, stmt2.unwrap(PreparedStatement.class));
+		var stmt3 = con1.prepareStatement("SELECT COUNT(1) FROM disk WHERE diskid > ?");
+		Assert.assertNotSame(cached, stmt3.unwrap(PreparedStatement.class));
+		stmt3.close();
+		stmt2.setLong(1, 0L);
+		try (var rs = stmt2.executeQuery()) {
+			Assert.assertTrue(rs.next());
+		}
+		stmt2.close();
+		con2.close();
+		con1.close();
+		Assert.assertTrue(con1.isClosed());
+
+		var con3 = DaoFactoryImpl.getConnection();
+		Assert.assertSame(physical1, con3.unwrap(Connection.class));
+		Assert.assertTrue(con3.getAutoCommit());
+		con3.close();
+
+		try (var stmt = DaoFactoryImpl.prepareStatement("SELECT COUNT(1) FROM disk WHERE diskid > ?")) {
+			Assert.assertSame(cached, stmt.unwrap(PreparedStatement.class));
+			Assert.assertSame(physical1, stmt.getConnection().unwrap(Connection.class));
+		}
+	}
+
+	@Test
+	public void testCachedStatementReset() throws DatabaseException, SQLException {
+		var sql = "INSERT INTO disk (filepath, filename, updated, imagetype) VALUES (?, ?, CURRENT_TIMESTAMP, 1)";
+		var con1 = DaoFactoryImpl.getConnection();
+		con1.setAutoCommit(false);
+		var stmt1 = con1.prepareStatement(sql);
+		var cached = stmt1.unwrap(PreparedStatement.class);
+		for (int i = 1; i <= 2; i++) {
+			stmt1.setString(1, "pooltest");
+			stmt1.setString(2, "disk" + i);
+			stmt1.addBatch();
+		}
+		stmt1.setMaxRows(1);
+		stmt1.close();
+		con1.close();
+
+		var con2 = DaoFactoryImpl.getConnection();
+		try (var stmt2 = con2.prepareStatement(sql)) {
+			Assert.assertSame(cached, stmt2.unwrap(PreparedStatement.class));
+			Assert.assertEquals(0, stmt2.getMaxRows());
+			stmt2.setString(1, "pooltest");
+			stmt2.setString(2, "disk99");
+			stmt2.addBatch();
+			Assert.assertEquals(1, stmt2.executeBatch().length);
+		}
+		try (var stmt = con2.prepareStatement("SELECT COUNT(1) FROM disk WHERE filepath = 'pooltest'"); var rs = stmt.executeQuery()) {
+			Assert.assertTrue(rs.next());
+			Assert.assertEquals(1, rs.getInt(1));
+		}
+		try (var stmt = con2.prepareStatement("DELETE FROM disk WHERE filepath = 'pooltest'")) {
+			stmt.executeUpdate();
+		}
+		con2.close();
+	}
+
+	@Test
+	public void testMaxConnections() throws Exception {
+		var pool = new ConnectionPool(URL, USER, PASSWORD, 2, 200L);
+		try {
+			var con1 = pool.getConnection();
+			var con2 = pool.getConnection();
+			var physical1 = con1.unwrap(Connection.class);
+			Assert.assertEquals(2, pool.getOpenCount());
+			try {
+				pool.getConnection();
+				Assert.fail("Expected SQLException");
+			} catch (SQLException e) {
+				Assert.assertNotNull(e.getMessage());
+			}
+
+			// Waiting for a connection to be returned
+			var waiting = new Thread(() -> {
+				try {
+					Thread.sleep(50L);
+					con1.close();
+				} catch (InterruptedException | SQLException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			waiting.start();
+			var con3 = pool.getConnection();
+			waiting.join();
+			Assert.assertSame(physical1, con3.unwrap(Connection.class));
+			con3.close();
+			con2.close();
+			Assert.assertEquals(2, pool.getOpenCount());
+		} finally {
+			pool.close();
+		}
+		Assert.assertEquals(0, pool.getOpenCount());
+	}
 }
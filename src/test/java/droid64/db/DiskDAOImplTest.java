@@ -3,6 +3,8 @@ package droid64.db;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.junit.Assert;
@@ -53,6 +55,192 @@ public class DiskDAOImplTest {
 		impl.save(null);
 	}
 
+	@Test
+	public void testSaveAll() throws DatabaseException {
+		var disks = new ArrayList<Disk>();
+		for (int i = 0; i < 5; i++) {
+			disks.add(createBatchDisk(i, i + 2));
+		}
+		impl.saveAll(disks);
+		var stored = getBatchDisks();
+		Assert.assertEquals(5, stored.size());
+		Assert.assertTrue(impl.getDiskCount() >= 5);
+		Assert.assertEquals(stored.stream().mapToLong(Disk::getDiskId).max().getAsLong(), impl.getMaxDiskId());
+		for (int i = 0; i < 5; i++) {
+			Assert.assertEquals("disk" + i, stored.get(i).getFileName());
+			Assert.assertEquals(i + 2, stored.get(i).getDiskFiles().size());
+		}
+
+		var rescanned = List.of(createBatchDisk(0, 1), createBatchDisk(1, 7), createBatchDisk(5, 2));
+		impl.saveAll(rescanned);
+		var updated = getBatchDisks();
+		Assert.assertEquals(6, updated.size());
+		Assert.assertEquals(stored.get(0).getDiskId(), updated.get(0).getDiskId());
+		Assert.assertEquals(1, updated.get(0).getDiskFiles().size());
+		Assert.assertEquals(7, updated.get(1).getDiskFiles().size());
+		Assert.assertEquals("file006", updated.get(1).getDiskFiles().get(6).getName());
+		Assert.assertEquals(4, updated.get(2).getDiskFiles().size());
+		Assert.assertEquals(2, updated.get(5).getDiskFiles().size());
+		impl.saveAll(new ArrayList<>());
+		for (var disk : updated) {
+			impl.delete(disk);
+		}
+	}
+
+	@Test
+	public void testSaveAllManyDisks() throws DatabaseException {
+		var disks = new ArrayList<Disk>();
+		for (int i = 0; i < 1100; i++) {
+			var disk = createBatchDisk(i, 1);
+			disk.setFilePath("/many/path");
+			disks.add(disk);
+		}
+		impl.saveAll(disks);
+		var stored = impl.getDisksInPath("/many/path", Utility.getHostName());
+		Assert.assertEquals(1100, stored.size());
+
+		// Saved again, the stored disks in all parts of the IN lists are found and updated
+		disks.clear();
+		for (int i = 0; i < 1100; i++) {
+			var disk = createBatchDisk(i, 2);
+			disk.setFilePath("/many/path");
+			disks.add(disk);
+		}
+		impl.saveAll(disks);
+		var updated = impl.getDisksInPath("/many/path", Utility.getHostName());
+		Assert.assertEquals(1100, updated.size());
+		Assert.assertEquals(stored.get("disk1099").getDiskId(), updated.get("disk1099").getDiskId());
+		Assert.assertEquals(1100, impl.deleteDisks("/many/path", null, Utility.getHostName()));
+	}
+
+	@Test
+	public void testSaveAllWithBadDisk() throws DatabaseException {
+		var disks = new ArrayList<Disk>();
+		for (int i = 0; i < 5; i++) {
+			disks.add(createBatchDisk(i, i + 1));
+		}
+		var bad = disks.get(3);
+		bad.setFileName("disk3" + "x".repeat(120));
+		try {
+			impl.saveAll(disks);
+			Assert.fail("Expected PartialSaveException");
+		} catch (PartialSaveException e) {
+			Assert.assertEquals(List.of(bad), e.getFailed());
+		}
+		var stored = getBatchDisks();
+		Assert.assertEquals(List.of("disk0", "disk1", "disk2", "disk4"), stored.stream().map(Disk::getFileName).collect(Collectors.toList()));
+		Assert.assertEquals(List.of(1, 2, 3, 5), stored.stream().map(d -> d.getDiskFiles().size()).collect(Collectors.toList()));
+		for (var disk : stored) {
+			impl.delete(disk);
+		}
+	}
+
+	@Test
+	public void testGetAllDisksComposite() throws DatabaseException {
+		impl.saveAll(List.of(createBatchDisk(0, 3), createBatchDisk(1, 0), createBatchDisk(2, 2)));
+		try (var disks = impl.getAllDisks(true)) {
+			Assert.assertTrue(disks.iterator().hasNext());
+		}
+		var stored = getBatchDisks();
+		Assert.assertEquals(3, stored.size());
+		Assert.assertEquals(List.of("file000", "file001", "file002"), stored.get(0).getDiskFiles().stream().map(DiskFile::getName).collect(Collectors.toList()));
+		Assert.assertTrue(stored.get(1).getDiskFiles().isEmpty());
+		Assert.assertEquals(2, stored.get(2).getDiskFiles().size());
+		Assert.assertTrue(stored.get(2).getDiskFiles().stream().allMatch(f -> f.getDiskId() == stored.get(2).getDiskId()));
+		for (var disk : stored) {
+			impl.delete(disk);
+		}
+		Assert.assertEquals(0, getBatchDisks().size());
+	}
+
+	@Test
+	public void testGetDisksInPathAndTouch() throws DatabaseException {
+		var disk = createBatchDisk(0, 2);
+		disk.setFilePath("/incremental/path");
+		disk.setFileSize(174848L);
+		disk.setModified(1000L);
+		disk.setHash("0123456789abcdef0123456789abcdef");
+		var other = createBatchDisk(1, 1);
+		other.setFilePath("/incremental/path");
+		impl.saveAll(List.of(disk, other));
+
+		var stored = impl.getDisksInPath("/incremental/path", Utility.getHostName());
+		Assert.assertEquals(2, stored.size());
+		var storedDisk = stored.get("disk0");
+		Assert.assertEquals(disk.getDiskId(), storedDisk.getDiskId());
+		Assert.assertEquals(Long.valueOf(174848L), storedDisk.getFileSize());
+		Assert.assertEquals(Long.valueOf(1000L), storedDisk.getModified());
+		Assert.assertEquals("0123456789abcdef0123456789abcdef", storedDisk.getHash());
+		Assert.assertNull(stored.get("disk1").getFileSize());
+		Assert.assertTrue(storedDisk.getDiskFiles().isEmpty());
+		Assert.assertTrue(impl.getDisksInPath("/incremental", Utility.getHostName()).isEmpty());
+
+		storedDisk.setModified(2000L);
+		impl.touch(List.of(storedDisk));
+		impl.touch(new ArrayList<>());
+		var touched = impl.getDisk(disk.getDiskId());
+		Assert.assertEquals(Long.valueOf(2000L), touched.getModified());
+		Assert.assertEquals(Long.valueOf(174848L), touched.getFileSize());
+		Assert.assertEquals("disk0", touched.getFileName());
+		impl.delete(disk);
+		impl.delete(other);
+	}
+
+	@Test
+	public void testDeleteDisks() throws DatabaseException {
+		var disks = new ArrayList<Disk>();
+		for (var path : List.of("/delete/path", "/delete/path/sub", "/delete/path_2", "/delete/path/sub")) {
+			var disk = createBatchDisk(disks.size(), 2);
+			disk.setFilePath(path);
+			disks.add(disk);
+		}
+		impl.saveAll(disks);
+		Assert.assertEquals(0, impl.deleteDisks("/delete/path", List.of(), Utility.getHostName()));
+		// More names than fit in one IN list
+		var names = new ArrayList<String>();
+		for (int i = 0; i < 1200; i++) {
+			names.add("missing" + i);
+		}
+		names.add("disk1");
+		Assert.assertEquals(1, impl.deleteDisks("/delete/path/sub", names, Utility.getHostName()));
+		Assert.assertEquals(Set.of("disk3"), impl.getDisksInPath("/delete/path/sub", Utility.getHostName()).keySet());
+		Assert.assertEquals(2, impl.deleteDisks("/delete/path", null, Utility.getHostName()));
+		Assert.assertTrue(impl.getDisksInPath("/delete/path/sub", Utility.getHostName()).isEmpty());
+		Assert.assertEquals(Set.of("disk2"), impl.getDisksInPath("/delete/path_2", Utility.getHostName()).keySet());
+		Assert.assertEquals(1, impl.deleteDisks("/delete/path_2", null, Utility.getHostName()));
+	}
+
+	@Test
+	public void testDeleteAll() throws DatabaseException {
+		var disks = new ArrayList<Disk>();
+		for (int i = 0; i < 3; i++) {
+			var disk = createBatchDisk(i, 2);
+			disk.setFilePath("/deleteall/path");
+			disks.add(disk);
+		}
+		impl.saveAll(disks);
+		var ids = impl.getDisksInPath("/deleteall/path", Utility.getHostName()).values().stream()
+				.filter(d -> !"disk1".equals(d.getFileName())).map(Disk::getDiskId).collect(Collectors.toList());
+		Assert.assertEquals(2, ids.size());
+		impl.deleteAll(ids);
+		impl.deleteAll(List.of());
+		Assert.assertEquals(Set.of("disk1"), impl.getDisksInPath("/deleteall/path", Utility.getHostName()).keySet());
+		Assert.assertEquals(1, impl.deleteDisks("/deleteall/path", null, Utility.getHostName()));
+	}
+
+	private List<Disk> getBatchDisks() throws DatabaseException {
+		return impl.getAllDisks(true).filter(d -> "/batch/path".equals(d.getFilePath()))
+				.sorted((a, b) -> a.getFileName().compareTo(b.getFileName())).collect(Collectors.toList());
+	}
+
+	private Disk createBatchDisk(int num, int fileCount) {
+		Disk disk = createDisk(0L, fileCount);
+		disk.setFileName("disk" + num);
+		disk.setFilePath("/batch/path");
+		disk.setHostName(Utility.getHostName());
+		return disk;
+	}
+
 	@Test(expected=NotFoundException.class)
 	public void testUpdateFail() throws DatabaseException {
 		impl.update(createDisk(99L, 3));
@@ -100,6 +288,55 @@ public class DiskDAOImplTest {
 		Assert.assertEquals(1, impl.search(criteria).collect(Collectors.toList()).size());
 	}
 
+	@Test
+	public void testSearchPrefixAndContains() throws DatabaseException {
+		Assert.assertEquals("ELITE%", DiskDaoImpl.toLikePattern("elite", false));
+		Assert.assertEquals("%ELITE%", DiskDaoImpl.toLikePattern("elite", true));
+		Assert.assertEquals("ELITE%", DiskDaoImpl.toLikePattern("elite*", true));
+		Assert.assertEquals("%LI_E", DiskDaoImpl.toLikePattern("*li?e", false));
+		Assert.assertEquals("50!%!_!!%", DiskDaoImpl.toLikePattern("50%_!", false));
+		Assert.assertEquals("SSSS", DiskDaoImpl.toUpperCase("\u00df\u00df\u00df", 4));
+
+		Disk disk = createBatchDisk(0, 0);
+		disk.setLabel("\u00df".repeat(20));
+		for (var name : new String[] { "ELITE", "XELITE", "50% OFF", "500 OFF", "\u00df".repeat(20) }) {
+			DiskFile file = new DiskFile();
+			file.setName(name);
+			file.setFileType(FileType.PRG);
+			disk.getDiskFiles().add(file);
+		}
+		impl.saveAll(List.of(disk));
+		Assert.assertEquals(List.of("ELITE"), searchFileNames("elite", false));
+		Assert.assertEquals(List.of(), searchFileNames("lite", false));
+		Assert.assertEquals(List.of("ELITE", "XELITE"), searchFileNames("elite", true));
+		Assert.assertEquals(List.of("ELITE", "XELITE"), searchFileNames("lite", true));
+		Assert.assertEquals(List.of("ELITE", "XELITE"), searchFileNames("*lite", false));
+		Assert.assertEquals(List.of("ELITE"), searchFileNames("el?te", true));
+		Assert.assertEquals(List.of(), searchFileNames("lite*", true));
+		Assert.assertEquals(List.of("50% OFF"), searchFileNames("50%", false));
+		Assert.assertEquals(List.of("\u00df".repeat(20)), searchFileNames("\u00df\u00df", false));
+
+		long diskId = getBatchDisks().get(0).getDiskId();
+		DiskSearchCriteria criteria = new DiskSearchCriteria();
+		criteria.setFileName("lite");
+		criteria.setContains(true);
+		criteria.setDiskIds(List.of(diskId));
+		Assert.assertEquals(2, impl.search(criteria).count());
+		criteria.setDiskIds(List.of(diskId + 1));
+		Assert.assertEquals(0, impl.search(criteria).count());
+		criteria.setDiskIds(List.of());
+		Assert.assertEquals(0, impl.search(criteria).count());
+		impl.delete(getBatchDisks().get(0));
+	}
+
+	private List<String> searchFileNames(String name, boolean contains) throws DatabaseException {
+		DiskSearchCriteria criteria = new DiskSearchCriteria();
+		criteria.setDiskPath("/batch/");
+		criteria.setFileName(name);
+		criteria.setContains(contains);
+		return impl.search(criteria).map(d -> d.getDiskFiles().get(0).getName()).sorted().collect(Collectors.toList());
+	}
+
 	@Test(expected=NotFoundException.class)
 	public void testGetDiskByFileNameFail() throws DatabaseException {
 		impl.getDiskByFileName("filename");
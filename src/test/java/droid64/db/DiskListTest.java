@@ -0,0 +1,140 @@
+package droid64.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import droid64.d64.DiskImageType;
+import droid64.d64.FileType;
+import droid64.d64.Utility;
+
+public class DiskListTest {
+
+	private final static String CLASSNAME = "org.h2.Driver";
+	private final static String URL = "jdbc:h2:mem:test;INIT=RUNSCRIPT FROM 'src/test/resources/droid64/db/setup_h2.sql';DB_CLOSE_DELAY=-1";
+	private final static String USER = "unittest";
+	private final static String PASSWORD = "secret";
+	private final static String PATH = "/export/path";
+	private DiskDaoImpl impl = null;
+
+	@Before
+	public void setup() throws DatabaseException {
+		DaoFactoryImpl.initialize(CLASSNAME, URL, USER, PASSWORD, 10, 0);
+		impl = new DiskDaoImpl();
+	}
+
+	@Test
+	public void testExportImport() throws Exception {
+		var disks = new ArrayList<Disk>();
+		for (int i = 0; i < 3; i++) {
+			disks.add(createDisk(i, i * 2));
+		}
+		disks.get(0).setLabel("LABEL\u0001<&>");
+		impl.saveAll(disks);
+		var stored = getDisks();
+		Assert.assertEquals(3, stored.size());
+
+		var f = File.createTempFile("UnitTest_", ".xml.gz");
+		f.deleteOnExit();
+		Assert.assertTrue(DiskList.export(f) >= 3);
+		try (var in = new GZIPInputStream(new FileInputStream(f))) {
+			Assert.assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("<label>LABEL?&lt;&amp;&gt;</label>"));
+		}
+		for (var disk : stored) {
+			impl.delete(disk);
+		}
+		Assert.assertEquals(0, getDisks().size());
+
+		Assert.assertTrue(DiskList.importXml(f, 2) >= 3);
+		var imported = getDisks();
+		Assert.assertEquals(3, imported.size());
+		Assert.assertEquals("LABEL?<&>", imported.get(0).getLabel());
+		for (int i = 0; i < 3; i++) {
+			var expected = stored.get(i);
+			var actual = imported.get(i);
+			Assert.assertEquals(expected.getFileName(), actual.getFileName());
+			Assert.assertEquals(expected.getImageType(), actual.getImageType());
+			Assert.assertEquals(expected.getHostName(), actual.getHostName());
+			Assert.assertEquals(expected.getErrors(), actual.getErrors());
+			Assert.assertEquals(expected.getUpdated(), actual.getUpdated());
+			Assert.assertEquals(expected.getDiskFiles().size(), actual.getDiskFiles().size());
+			for (int j = 0; j < expected.getDiskFiles().size(); j++) {
+				Assert.assertEquals(expected.getDiskFiles().get(j).getName(), actual.getDiskFiles().get(j).getName());
+				Assert.assertEquals(expected.getDiskFiles().get(j).getSize(), actual.getDiskFiles().get(j).getSize());
+				Assert.assertArrayEquals(expected.getDiskFiles().get(j).getNameAsBytes(), actual.getDiskFiles().get(j).getNameAsBytes());
+			}
+		}
+		for (var disk : imported) {
+			impl.delete(disk);
+		}
+	}
+
+	@Test
+	public void testReadPlainXml() throws Exception {
+		var out = new ByteArrayOutputStream();
+		Assert.assertEquals(1, DiskList.write(List.of(createDisk(9, 1)).stream(), out));
+		var saved = new ArrayList<Disk>();
+		var dao = new DiskDaoImpl() {
+			@Override
+			public void saveAll(List<Disk> disks) {
+				saved.addAll(disks);
+			}
+		};
+		Assert.assertEquals(1, DiskList.read(new ByteArrayInputStream(out.toByteArray()), dao, 10));
+		Assert.assertEquals(1, saved.size());
+		Assert.assertEquals("disk9", saved.get(0).getFileName());
+		Assert.assertEquals(FileType.PRG, saved.get(0).getDiskFiles().get(0).getFileType());
+	}
+
+	@Test
+	public void testReadDuplicates() throws Exception {
+		var first = createDisk(7, 1);
+		var second = createDisk(7, 2);
+		second.setLabel("second");
+		var out = new ByteArrayOutputStream();
+		Assert.assertEquals(3, DiskList.write(List.of(first, createDisk(8, 1), second).stream(), out));
+		Assert.assertEquals(3, DiskList.read(new ByteArrayInputStream(out.toByteArray()), impl, 10));
+		var imported = getDisks();
+		Assert.assertEquals(2, imported.size());
+		Assert.assertEquals("second", imported.get(0).getLabel());
+		Assert.assertEquals(2, imported.get(0).getDiskFiles().size());
+		for (var disk : imported) {
+			impl.delete(disk);
+		}
+	}
+
+	private List<Disk> getDisks() throws DatabaseException {
+		return impl.getAllDisks(true).filter(d -> PATH.equals(d.getFilePath()))
+				.sorted((a, b) -> a.getFileName().compareTo(b.getFileName())).collect(Collectors.toList());
+	}
+
+	private Disk createDisk(int num, int fileCount) {
+		var disk = new Disk();
+		disk.setFileName("disk" + num);
+		disk.setFilePath(PATH);
+		disk.setLabel("label" + num);
+		disk.setErrors(num);
+		disk.setImageType(DiskImageType.D81);
+		disk.setHostName(Utility.getHostName());
+		for (int i = 0; i < fileCount; i++) {
+			var file = new DiskFile();
+			file.setName(String.format("file%03d", i));
+			file.setNameAsBytes(file.getName().getBytes());
+			file.setFileType(FileType.PRG);
+			file.setSize(i + 10);
+			file.setFileNum(i);
+			disk.getDiskFiles().add(file);
+		}
+		return disk;
+	}
+}
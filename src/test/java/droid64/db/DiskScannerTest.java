@@ -0,0 +1,164 @@
+package droid64.db;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.d64.D64;
+import droid64.d64.DiskImageType;
+import droid64.d64.Utility;
+import droid64.gui.ConsoleStream;
+
+public class DiskScannerTest {
+
+	@Test
+	public void testScan() throws Exception {
+		var console = new ConsoleStream(new JTextArea());
+		var root = Files.createTempDirectory("UnitTest_").toFile();
+		var sub = new File(root, "sub");
+		sub.mkdir();
+		for (int i = 0; i < 5; i++) {
+			createImage(new File(i < 3 ? root : sub, "disk" + i + ".d64"), "DISK " + i);
+		}
+		Utility.writeFile(new File(root, "broken.d64"), new byte[100]);
+		Utility.writeFile(new File(root, "readme.txt"), "text");
+		createImage(new File(root, "skip.d64"), "SKIP");
+
+		var dao = new StubDao();
+		var scanner = new DiskScanner(dao, console);
+		scanner.setThreads(3);
+		scanner.setBatchSize(2);
+		scanner.setExcludePattern(Pattern.compile(".*skip\\.d64"));
+		var progress = new ArrayList<Integer>();
+		scanner.setProgressListener(summary -> progress.add(summary.getSaved()));
+		var summary = scanner.scan(root);
+
+		Assert.assertEquals(2, summary.getDirectories());
+		Assert.assertEquals(6, summary.getImages());
+		Assert.assertEquals(5, summary.getSaved());
+		Assert.assertEquals(1, summary.getFailed());
+		Assert.assertEquals(0, summary.getUnchanged());
+		Assert.assertFalse(summary.isCancelled());
+		Assert.assertEquals(Integer.valueOf(5), progress.get(progress.size() - 1));
+		Assert.assertTrue("Batches", dao.batches.stream().allMatch(batch -> batch <= 2));
+		Assert.assertEquals("Saved in order found", List.of("disk0.d64", "disk1.d64", "disk2.d64", "disk3.d64", "disk4.d64"), dao.savedNames);
+		var disk0 = dao.saved.get("disk0.d64");
+		Assert.assertTrue(disk0.getLabel().startsWith("DISK 0"));
+		Assert.assertEquals(root.getAbsolutePath(), disk0.getFilePath());
+		Assert.assertEquals(DiskImageType.D64, disk0.getImageType());
+		Assert.assertEquals(Long.valueOf(new File(root, "disk0.d64").length()), disk0.getFileSize());
+		Assert.assertNotNull(disk0.getHash());
+
+		// Unchanged, touched with same contents, and changed
+		new File(root, "disk1.d64").setLastModified(disk0.getModified() - 60_000L);
+		createImage(new File(sub, "disk4.d64"), "NEW LABEL");
+		new File(sub, "disk4.d64").setLastModified(disk0.getModified() + 60_000L);
+		dao.savedNames.clear();
+		var rescanner = new DiskScanner(dao, console);
+		rescanner.setExcludePattern(Pattern.compile(".*skip\\.d64"));
+		summary = rescanner.scan(root);
+		Assert.assertEquals(6, summary.getImages());
+		Assert.assertEquals(1, summary.getFailed());
+		Assert.assertEquals(4, summary.getUnchanged());
+		Assert.assertEquals(1, summary.getSaved());
+		Assert.assertEquals(List.of("disk4.d64"), dao.savedNames);
+		Assert.assertTrue(dao.saved.get("disk4.d64").getLabel().startsWith("NEW LABEL"));
+		Assert.assertEquals(Long.valueOf(new File(root, "disk1.d64").lastModified()), dao.touched.get("disk1.d64").getModified());
+
+		var cancelled = new DiskScanner(dao, console);
+		cancelled.setBatchSize(1);
+		cancelled.setExcludePattern(Pattern.compile(".*skip\\.d64"));
+		cancelled.setProgressListener(s -> cancelled.cancel());
+		summary = cancelled.scan(root);
+		Assert.assertTrue(summary.isCancelled());
+
+		// Next scan with the same scanner is not cancelled
+		cancelled.setProgressListener(null);
+		summary = cancelled.scan(root);
+		Assert.assertFalse(summary.isCancelled());
+		Assert.assertEquals(6, summary.getImages());
+	}
+
+	@Test(timeout = 60000)
+	public void testWriterFailure() throws Exception {
+		var console = new ConsoleStream(new JTextArea());
+		var root = Files.createTempDirectory("UnitTest_").toFile();
+		for (int i = 0; i < 12; i++) {
+			createImage(new File(root, "disk" + i + ".d64"), "DISK " + i);
+		}
+		var dao = new StubDao();
+		dao.failure = new IllegalStateException("Unit test");
+		var scanner = new DiskScanner(dao, console);
+		scanner.setThreads(1);
+		scanner.setBatchSize(1);
+		scanner.setProgressListener(summary -> {
+			throw new IllegalStateException("Unit test");
+		});
+		var summary = scanner.scan(root);
+		Assert.assertEquals(12, summary.getImages());
+		Assert.assertEquals(12, summary.getFailed());
+		Assert.assertFalse(summary.isCancelled());
+
+		// Writer stopped by an error, so the walker must not wait for it
+		var calls = new AtomicInteger();
+		scanner = new DiskScanner(new StubDao(), console);
+		scanner.setThreads(1);
+		scanner.setBatchSize(1);
+		scanner.setProgressListener(s -> {
+			if (calls.getAndIncrement() == 0) {
+				throw new AssertionError("Unit test");
+			}
+		});
+		summary = scanner.scan(root);
+		Assert.assertTrue(summary.isCancelled());
+		Assert.assertTrue(summary.getSaved() < 12);
+	}
+
+	private void createImage(File file, String label) throws Exception {
+		var d64 = new D64(DiskImageType.D64, new ConsoleStream(new JTextArea()));
+		Assert.assertTrue(d64.saveNewImage(file, label, "00"));
+	}
+
+	/** Keeps saved disks in memory */
+	private static class StubDao extends DiskDaoImpl {
+		private final Map<String, Disk> saved = new HashMap<>();
+		private final Map<String, Disk> touched = new HashMap<>();
+		private final List<String> savedNames = new ArrayList<>();
+		private final List<Integer> batches = new ArrayList<>();
+		private RuntimeException failure = null;
+
+		@Override
+		public synchronized void saveAll(List<Disk> disks) {
+			if (failure != null) {
+				throw failure;
+			}
+			batches.add(disks.size());
+			for (var disk : disks) {
+				saved.put(disk.getFileName(), disk);
+				savedNames.add(disk.getFileName());
+			}
+		}
+
+		@Override
+		public synchronized void touch(List<Disk> disks) {
+			disks.forEach(disk -> touched.put(disk.getFileName(), disk));
+		}
+
+		@Override
+		public synchronized Map<String, Disk> getDisksInPath(String filePath, String hostName) {
+			var disks = new HashMap<String, Disk>();
+			saved.values().stream().filter(disk -> filePath.equals(disk.getFilePath())).forEach(disk -> disks.put(disk.getFileName(), disk));
+			return disks;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package droid64.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import droid64.d64.Utility;
+import droid64.gui.ConsoleStream;
+
+public class DiskSyncTest {
+
+	@Test
+	public void testSync() throws Exception {
+		var root = Files.createTempDirectory("UnitTest_").toFile();
+		var sub = new File(root, "sub");
+		sub.mkdir();
+		Utility.writeFile(new File(root, "disk1.d64"), new byte[10]);
+		Utility.writeFile(new File(sub, "disk3.d64"), new byte[10]);
+		new File(root, "dir.d64").mkdir();
+
+		var dao = new StubDao();
+		dao.disks.add(createDisk(1L, root, "disk1.d64", null));
+		dao.disks.add(createDisk(2L, root, "disk2.d64", Utility.getHostName()));
+		dao.disks.add(createDisk(3L, sub, "disk3.d64", Utility.getHostName()));
+		dao.disks.add(createDisk(4L, root, "dir.d64", null));
+		dao.disks.add(createDisk(5L, new File(root, "gone"), "disk5.d64", null));
+		dao.disks.add(createDisk(6L, root, "disk6.d64", "some.other.host"));
+
+		var sync = new DiskSync(dao, new ConsoleStream(new JTextArea()));
+		sync.setThreads(2);
+		var summary = sync.sync();
+		Assert.assertEquals(5, summary.getChecked());
+		Assert.assertEquals(3, summary.getDirectories());
+		Assert.assertEquals(3, summary.getRemoved());
+		Assert.assertEquals(0, summary.getFailed());
+		Assert.assertEquals(Set.of(2L, 4L, 5L), Set.copyOf(dao.deleted));
+	}
+
+	@Test
+	public void testListFiles() throws Exception {
+		var root = Files.createTempDirectory("UnitTest_").toFile();
+		Utility.writeFile(new File(root, "a.d64"), new byte[1]);
+		new File(root, "b").mkdir();
+		Assert.assertEquals(Set.of("a.d64"), DiskSync.listFiles(root.getPath()));
+		Assert.assertEquals(Set.of(), DiskSync.listFiles(new File(root, "missing").getPath()));
+		Assert.assertEquals(Set.of(), DiskSync.listFiles(new File(root, "a.d64").getPath()));
+	}
+
+	@Test
+	public void testListFilesFollowsLinks() throws Exception {
+		var root = Files.createTempDirectory("UnitTest_").toFile();
+		var real = new File(root, "real");
+		real.mkdir();
+		Utility.writeFile(new File(real, "a.d64"), new byte[1]);
+		var other = new File(root, "other.d64");
+		Utility.writeFile(other, new byte[1]);
+		var dirLink = new File(root, "link");
+		try {
+			Files.createSymbolicLink(new File(real, "b.d64").toPath(), other.toPath());
+			Files.createSymbolicLink(dirLink.toPath(), real.toPath());
+		} catch (UnsupportedOperationException | IOException e) {
+			Assume.assumeNoException(e);
+		}
+		Files.createSymbolicLink(new File(real, "c.d64").toPath(), new File(root, "missing.d64").toPath());
+		Assert.assertEquals(Set.of("a.d64", "b.d64"), DiskSync.listFiles(real.getPath()));
+		Assert.assertEquals(Set.of("a.d64", "b.d64"), DiskSync.listFiles(dirLink.getPath()));
+	}
+
+	private Disk createDisk(long diskId, File dir, String fileName, String hostName) {
+		var disk = new Disk();
+		disk.setDiskId(diskId);
+		disk.setFilePath(dir.getAbsolutePath());
+		disk.setFileName(fileName);
+		disk.setHostName(hostName);
+		return disk;
+	}
+
+	/** Keeps disks in memory */
+	private static class StubDao extends DiskDaoImpl {
+		private final List<Disk> disks = new ArrayList<>();
+		private final List<Long> deleted = new ArrayList<>();
+
+		@Override
+		public Stream<Disk> getAllDisks(boolean composite) {
+			return disks.stream();
+		}
+
+		@Override
+		public void deleteAll(Collection<Long> diskIds) {
+			deleted.addAll(diskIds);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package droid64.db;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.JTextArea;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.d64.D64;
+import droid64.d64.DiskImageType;
+import droid64.gui.ConsoleStream;
+
+public class ImageWatcherTest {
+
+	@Test
+	public void testWatch() throws Exception {
+		var console = new ConsoleStream(new JTextArea());
+		var root = Files.createTempDirectory("UnitTest_").toFile();
+		var sub = new File(root, "sub");
+		sub.mkdir();
+		var dao = new StubDao();
+		var watcher = new ImageWatcher(List.of(root), () -> new DiskScanner(dao, console), dao, console);
+		watcher.start();
+		try {
+			Assert.assertTrue(watcher.isRunning());
+			createImage(new File(root, "disk1.d64"));
+			createImage(new File(sub, "disk2.d64"));
+			waitFor(() -> dao.saved.size() == 2);
+			Assert.assertEquals(root.getAbsolutePath(), dao.saved.get("disk1.d64").getFilePath());
+			Assert.assertEquals(sub.getAbsolutePath(), dao.saved.get("disk2.d64").getFilePath());
+
+			var newDir = new File(root, "new");
+			newDir.mkdir();
+			createImage(new File(newDir, "disk3.d64"));
+			waitFor(() -> dao.saved.containsKey("disk3.d64"));
+
+			Files.delete(new File(root, "disk1.d64").toPath());
+			waitFor(() -> dao.deleted.contains(root.getAbsolutePath() + ":disk1.d64"));
+
+			Files.delete(new File(sub, "disk2.d64").toPath());
+			Files.delete(sub.toPath());
+			waitFor(() -> dao.deleted.contains(sub.getAbsolutePath() + ":*"));
+		} finally {
+			watcher.stop();
+		}
+		Assert.assertFalse(watcher.isRunning());
+	}
+
+	private void waitFor(BooleanSupplier condition) throws InterruptedException {
+		for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(100);
+		}
+		Assert.assertTrue("Timeout", condition.getAsBoolean());
+	}
+
+	private void createImage(File file) throws Exception {
+		var d64 = new D64(DiskImageType.D64, new ConsoleStream(new JTextArea()));
+		Assert.assertTrue(d64.saveNewImage(file, "WATCH", "00"));
+	}
+
+	/** Keeps saved disks in memory */
+	private static class StubDao extends DiskDaoImpl {
+		private final Map<String, Disk> saved = new HashMap<>();
+		private final List<String> deleted = new ArrayList<>();
+
+		@Override
+		public synchronized void saveAll(List<Disk> disks) {
+			disks.forEach(disk -> saved.put(disk.getFileName(), disk));
+		}
+
+		@Override
+		public synchronized void touch(List<Disk> disks) {
+			// Nothing to do
+		}
+
+		@Override
+		public synchronized Map<String, Disk> getDisksInPath(String filePath, String hostName) {
+			return new HashMap<>();
+		}
+
+		@Override
+		public synchronized int deleteDisks(String filePath, Collection<String> fileNames, String hostName) {
+			if (fileNames == null) {
+				deleted.add(filePath + ":*");
+			} else {
+				fileNames.forEach(name -> deleted.add(filePath + ":" + name));
+			}
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package droid64.db;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TrigramIndexTest {
+
+	private static final String URL = "jdbc:h2:mem:test";
+
+	@After
+	public void tearDown() {
+		TrigramIndex.setFile(null, null);
+	}
+
+	@Test
+	public void testFindAndReload() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		TrigramIndex.setFile(file, URL);
+		Assert.assertFalse(TrigramIndex.getInstance().isComplete());
+		Assert.assertNull(TrigramIndex.getInstance().findDisks(criteria("elite", null)));
+
+		Assert.assertEquals(3, TrigramIndex.rebuild(List.of(
+				createDisk(1, "GAMES 1", "ELITE", "Elite Docs"),
+				createDisk(2, "games 2", "XELITE"),
+				createDisk(3, "TOOLS", "TURBO")).stream()));
+		Assert.assertTrue(file.exists());
+
+		var index = TrigramIndex.getInstance();
+		Assert.assertEquals(Set.of(1L, 2L), index.findDisks(criteria("elite", null)));
+		Assert.assertEquals(Set.of(1L), index.findDisks(criteria("e docs", null)));
+		Assert.assertEquals(Set.of(), index.findDisks(criteria("elitex", null)));
+		Assert.assertEquals(Set.of(2L), index.findDisks(criteria("lite", "es 2")));
+		Assert.assertEquals(Set.of(1L, 2L), index.findDisks(criteria(null, "GAMES")));
+		Assert.assertNull("Too short", index.findDisks(criteria("el", null)));
+		Assert.assertNull("Wildcards", index.findDisks(criteria("el*te", null)));
+
+		TrigramIndex.updated(List.of(createDisk(3, "TOOLS", "ELITE CRACK")));
+		TrigramIndex.removed(1L);
+		Assert.assertEquals(Set.of(2L, 3L), index.findDisks(criteria("elite", null)));
+		TrigramIndex.saveIfChanged();
+
+		TrigramIndex.setFile(null, null);
+		TrigramIndex.setFile(file, URL);
+		var loaded = TrigramIndex.getInstance();
+		Assert.assertNotSame(index, loaded);
+		Assert.assertTrue(loaded.isComplete());
+		Assert.assertEquals(2, loaded.size());
+		Assert.assertEquals(Set.of(2L, 3L), loaded.findDisks(criteria("ELITE", null)));
+		Assert.assertEquals(Set.of(), loaded.findDisks(criteria("TURBO", null)));
+	}
+
+	@Test
+	public void testOtherDatabase() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		TrigramIndex.setFile(file, URL);
+		TrigramIndex.rebuild(List.of(createDisk(1, "GAMES", "ELITE"), createDisk(4, "TOOLS", "TURBO")).stream());
+		var index = TrigramIndex.getInstance();
+		Assert.assertTrue(index.verify(2, 4));
+		Assert.assertEquals(Set.of(1L), index.findDisks(criteria("elite", null)));
+
+		TrigramIndex.setFile(file, "jdbc:other");
+		var other = TrigramIndex.getInstance();
+		Assert.assertFalse(other.isComplete());
+		Assert.assertNull(other.findDisks(criteria("elite", null)));
+
+		TrigramIndex.setFile(file, URL);
+		index = TrigramIndex.getInstance();
+		Assert.assertTrue(index.isComplete());
+		Assert.assertFalse("Disk added by others", index.verify(3, 5));
+		Assert.assertNull(index.findDisks(criteria("elite", null)));
+		TrigramIndex.saveIfChanged();
+		TrigramIndex.setFile(null, null);
+		TrigramIndex.setFile(file, URL);
+		Assert.assertFalse(TrigramIndex.getInstance().isComplete());
+	}
+
+	@Test
+	public void testManyNames() throws Exception {
+		var file = File.createTempFile("UnitTest_", ".bin");
+		file.delete();
+		file.deleteOnExit();
+		TrigramIndex.setFile(file, URL);
+		var names = new String[70000];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "FILE" + i;
+		}
+		TrigramIndex.rebuild(List.of(createDisk(1, "MANY", names)).stream());
+		TrigramIndex.setFile(null, null);
+		TrigramIndex.setFile(file, URL);
+		var loaded = TrigramIndex.getInstance();
+		Assert.assertTrue(loaded.isComplete());
+		Assert.assertEquals(Set.of(1L), loaded.findDisks(criteria("file69999", null)));
+	}
+
+	@Test
+	public void testNormalize() {
+		Assert.assertEquals("ABC D", TrigramIndex.normalize("abC d"));
+		Assert.assertEquals("", TrigramIndex.normalize(null));
+	}
+
+	private DiskSearchCriteria criteria(String fileName, String label) {
+		var criteria = new DiskSearchCriteria();
+		criteria.setFileName(fileName);
+		criteria.setDiskLabel(label);
+		return criteria;
+	}
+
+	private Disk createDisk(long diskId, String label, String... names) {
+		var disk = new Disk();
+		disk.setDiskId(diskId);
+		disk.setLabel(label);
+		for (var name : names) {
+			var file = new DiskFile();
+			file.setName(name);
+			disk.getDiskFiles().add(file);
+		}
+		return disk;
+	}
+}
@@ -0,0 +1,107 @@
+package droid64.gui;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import droid64.d64.FeedbackSink.Level;
+
+public class ConsoleStreamTest {
+
+	@Test
+	public void testLevel() throws Exception {
+		var textArea = new JTextArea();
+		var stream = new ConsoleStream(textArea);
+		Assert.assertFalse(stream.isEnabled(Level.TRACE));
+		Assert.assertTrue(stream.isEnabled(Level.ERROR));
+		stream.append("Hello ").append(Level.TRACE, "trace ").append(42).append('\n');
+		SwingUtilities.invokeAndWait(stream::flush);
+		Assert.assertEquals("Hello 42\n", textArea.getText());
+
+		stream.setLevel(Level.TRACE);
+		stream.append(Level.TRACE, "trace");
+		SwingUtilities.invokeAndWait(stream::flush);
+		Assert.assertEquals("Not the line of this thread", "Hello 42\n", textArea.getText());
+		stream.flush();
+		SwingUtilities.invokeAndWait(() -> { });
+		Assert.assertEquals("Hello 42\ntrace", textArea.getText());
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		var textArea = new JTextArea();
+		var stream = new ConsoleStream(textArea);
+		for (int i = 0; i < 20000; i++) {
+			if (i % 1000 == 0) {
+				stream.append(Level.ERROR, "error ").append(Level.ERROR, i + "\n");
+			}
+			stream.append("line ").append(i).append("\n");
+		}
+		SwingUtilities.invokeAndWait(stream::flush);
+		String text = textArea.getText();
+		Assert.assertTrue(text.startsWith("["));
+		Assert.assertTrue(text.contains(" messages dropped]\n"));
+		Assert.assertTrue(text.endsWith("line 19999\n"));
+		for (int i = 0; i < 20000; i += 1000) {
+			Assert.assertTrue(text.contains("error " + i + "\n"));
+		}
+		var lines = text.split("\n");
+		for (int i = 1; i < lines.length; i++) {
+			Assert.assertTrue(lines[i], lines[i].matches("(line|error) \\d+"));
+		}
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		var textArea = new JTextArea();
+		var stream = new ConsoleStream(textArea);
+		var threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			String name = "thread" + t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 200; i++) {
+					stream.append(name).append(" ").append(i).append("\n");
+				}
+			});
+			threads[t].start();
+		}
+		for (var thread : threads) {
+			thread.join();
+		}
+		SwingUtilities.invokeAndWait(stream::flush);
+		var lines = textArea.getText().split("\n");
+		Assert.assertEquals(800, lines.length);
+		for (var line : lines) {
+			Assert.assertTrue(line, line.matches("thread\\d \\d+"));
+		}
+	}
+
+	@Test
+	public void testErrorStorm() throws Exception {
+		var textArea = new JTextArea();
+		var stream = new ConsoleStream(textArea);
+		for (int i = 0; i < 5000; i++) {
+			stream.append(Level.ERROR, "error " + i + "\n");
+		}
+		SwingUtilities.invokeAndWait(stream::flush);
+		var lines = textArea.getText().split("\n");
+		Assert.assertEquals("[4000 messages dropped]", lines[0]);
+		Assert.assertEquals(1001, lines.length);
+		Assert.assertEquals("error 4000", lines[1]);
+		Assert.assertEquals("error 4999", lines[1000]);
+	}
+
+	@Test
+	public void testEndedThread() throws Exception {
+		var textArea = new JTextArea();
+		var stream = new ConsoleStream(textArea);
+		var thread = new Thread(() -> stream.append("unfinished"));
+		thread.start();
+		thread.join();
+		stream.append("done\n");
+		SwingUtilities.invokeAndWait(stream::flush);
+		Assert.assertEquals("done\nunfinished\n", textArea.getText());
+	}
+}
@@ -7,7 +7,14 @@ CREATE TABLE IF NOT EXISTS disk (
   imagetype INTEGER NOT NULL,
   errors INTEGER DEFAULT NULL,
   warnings INTEGER DEFAULT NULL,
-  hostname VARCHAR(256) DEFAULT NULL
+  hostname VARCHAR(256) DEFAULT NULL,
+  filepath_uc VARCHAR(500) DEFAULT NULL,
+  filename_uc VARCHAR(100) DEFAULT NULL,
+  label_uc VARCHAR(32) DEFAULT NULL,
+  hostname_uc VARCHAR(256) DEFAULT NULL,
+  filesize BIGINT DEFAULT NULL,
+  modified BIGINT DEFAULT NULL,
+  hash VARCHAR(32) DEFAULT NULL
 );
 
 CREATE TABLE IF NOT EXISTS diskfile (
@@ -19,5 +26,12 @@ CREATE TABLE IF NOT EXISTS diskfile (
   filenum INTEGER NOT NULL DEFAULT 0,
   flags INTEGER NOT NULL DEFAULT 0,
   namebytes BLOB,
+  name_uc VARCHAR(32) DEFAULT NULL,
   FOREIGN KEY (diskid) REFERENCES disk(diskid) ON DELETE CASCADE
 );
+
+CREATE INDEX IF NOT EXISTS disk_filepath_uc_idx ON disk (filepath_uc);
+CREATE INDEX IF NOT EXISTS disk_filename_uc_idx ON disk (filename_uc);
+CREATE INDEX IF NOT EXISTS disk_label_uc_idx ON disk (label_uc);
+CREATE INDEX IF NOT EXISTS disk_hostname_uc_idx ON disk (hostname_uc);
+CREATE INDEX IF NOT EXISTS diskfile_name_uc_idx ON diskfile (name_uc);